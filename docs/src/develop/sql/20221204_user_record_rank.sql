@@ -0,0 +1,20 @@
+-- 排行榜改为读取个人做题记录表，已部署的数据库升级时需执行本脚本
+-- 1. 为user_record表增加通过数、非比赛提交总数与OI得分三列
+ALTER TABLE `user_record`
+    ADD COLUMN `ac`       INT NOT NULL DEFAULT 0 COMMENT '通过的题目数' AFTER `rating`,
+    ADD COLUMN `total`    INT NOT NULL DEFAULT 0 COMMENT '非比赛提交总数' AFTER `ac`,
+    ADD COLUMN `oi_score` INT NOT NULL DEFAULT 0 COMMENT '各题最高OI得分之和' AFTER `total`;
+
+-- 2. 按历史提交补齐已有记录的三列，没有记录的用户由排行榜重建时补齐
+UPDATE `user_record` r
+SET r.`ac`       = (SELECT COUNT(DISTINCT a.pid) FROM `user_acproblem` a WHERE a.uid = r.uid),
+    r.`total`    = (SELECT COUNT(j.uid) FROM `judge` j WHERE j.uid = r.uid AND j.cid = 0),
+    r.`oi_score` = (SELECT COALESCE(SUM(s.score), 0)
+                    FROM (SELECT j.uid, MAX(j.oi_rank_score) AS score
+                          FROM `judge` j
+                          WHERE j.cid = 0
+                          GROUP BY j.uid, j.pid) s
+                    WHERE s.uid = r.uid);
+
+-- 3. 执行完后删除Redis中已有的排名有序集合，由下次查询排行榜时按本表重建
+-- DEL acm_rank_zset oi_rank_zset
@@ -13,11 +13,7 @@ import java.util.Map;
 public class CacheTypeManager {
     public static final Map<String, CacheType> CACHE_TYPE_MAP = new HashMap<>(){
         {
-            put(RedisConstant.OI_CONTEST_RANK_CACHE, new CacheType(RedisConstant.OI_CONTEST_RANK_CACHE, 3600, 2 * 3600));
-            put(RedisConstant.CONTEST_RANK_CAL_RESULT_CACHE, new CacheType(RedisConstant.CONTEST_RANK_CAL_RESULT_CACHE, 8, 16));
             put(RedisConstant.SUPER_ADMIN_UID_LIST_CACHE, new CacheType(RedisConstant.SUPER_ADMIN_UID_LIST_CACHE, 6 * 3600, 12 * 3600));
-            put(RedisConstant.ACM_RANK_CACHE, new CacheType(RedisConstant.ACM_RANK_CACHE, 30, 60));
-            put(RedisConstant.OI_RANK_CACHE, new CacheType(RedisConstant.OI_RANK_CACHE, 30, 60));
         }
     };
 
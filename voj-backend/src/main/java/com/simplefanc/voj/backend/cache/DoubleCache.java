@@ -10,8 +10,12 @@ import java.util.Objects;
 import java.util.Optional;
 import java.util.Set;
 import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.TimeUnit;
-import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.atomic.LongAdder;
 
 /**
  * @program: double-cache
@@ -20,23 +24,32 @@ import java.util.concurrent.locks.ReentrantLock;
  **/
 @Slf4j
 public class DoubleCache extends AbstractValueAdaptingCache {
-    private String cacheName;
-    private RedisTemplate<Object, Object> redisTemplate;
-    private Cache<Object, Object> caffeineCache;
-    private DoubleCacheProperties cacheConfig;
+    private final String cacheName;
+    private final RedisTemplate<String, Object> redisTemplate;
+    private final Cache<String, Object> caffeineCache;
+    private final DoubleCacheProperties cacheConfig;
+    private final DoubleCacheManager cacheManager;
 
-    protected DoubleCache(boolean allowNullValues) {
-        super(allowNullValues);
-    }
+    /**
+     * 正在加载的key，同一个key同时只有一个线程执行加载，其他线程等待其结果
+     */
+    private final ConcurrentMap<String, CompletableFuture<Object>> loadingMap = new ConcurrentHashMap<>();
 
-    public DoubleCache(String cacheName, RedisTemplate<Object, Object> redisTemplate,
-                       Cache<Object, Object> caffeineCache,
-                       DoubleCacheProperties cacheConfig) {
+    private final LongAdder caffeineHitCount = new LongAdder();
+    private final LongAdder redisHitCount = new LongAdder();
+    private final LongAdder missCount = new LongAdder();
+    private final LongAdder loadSuccessCount = new LongAdder();
+    private final LongAdder loadFailureCount = new LongAdder();
+
+    public DoubleCache(String cacheName, RedisTemplate<String, Object> redisTemplate,
+                       Cache<String, Object> caffeineCache,
+                       DoubleCacheProperties cacheConfig, DoubleCacheManager cacheManager) {
         super(cacheConfig.getAllowNull());
         this.cacheName = cacheName;
         this.redisTemplate = redisTemplate;
         this.caffeineCache = caffeineCache;
         this.cacheConfig = cacheConfig;
+        this.cacheManager = cacheManager;
     }
 
     /**
@@ -46,110 +59,141 @@ public class DoubleCache extends AbstractValueAdaptingCache {
      */
     @Override
     protected Object lookup(Object key) {
+        String cacheKey = toCacheKey(key);
         // 先从caffeine中查找
-        Object obj = caffeineCache.getIfPresent(key);
+        Object obj = caffeineCache.getIfPresent(cacheKey);
         if (Objects.nonNull(obj)) {
-            log.info("get data from caffeine");
+            caffeineHitCount.increment();
             // 不用fromStoreValue，否则返回的是null，会再查数据库
             return obj;
         }
 
-        // 再从redis中查找
-        String redisKey = this.cacheName + ":" + key;
-        obj = redisTemplate.opsForValue().get(redisKey);
+        // 再从redis中查找，redis不可用时当作未命中，直接查数据库
+        try {
+            obj = redisTemplate.opsForValue().get(getRedisKey(cacheKey));
+        } catch (Exception e) {
+            log.error("get data from redis error, cacheName: {}, key: {}", cacheName, cacheKey, e);
+            obj = null;
+        }
         if (Objects.nonNull(obj)) {
-            log.info("get data from redis");
-            caffeineCache.put(key, obj);
+            redisHitCount.increment();
+            caffeineCache.put(cacheKey, obj);
+            return obj;
         }
-        return obj;
+        missCount.increment();
+        return null;
     }
 
     /**
-     * 如果只是使用注解来管理缓存的话，那么这个方法不会被调用到（实际走父类的get方法）
+     * 注解中指定sync = true时调用，同一个key在本节点只会有一个线程执行valueLoader，其他线程等待其结果
      * @param key
      * @param valueLoader
      * @param <T>
      * @return
      */
     @Override
+    @SuppressWarnings("unchecked")
     public <T> T get(Object key, Callable<T> valueLoader) {
-        ReentrantLock lock = new ReentrantLock();
-        lock.lock();
+        Object obj = lookup(key);
+        if (Objects.nonNull(obj)) {
+            return (T) fromStoreValue(obj);
+        }
+
+        String cacheKey = toCacheKey(key);
+        CompletableFuture<Object> future = new CompletableFuture<>();
+        CompletableFuture<Object> loadingFuture = loadingMap.putIfAbsent(cacheKey, future);
+        if (loadingFuture != null) {
+            // 已有线程在加载，等待其结果
+            try {
+                return (T) loadingFuture.join();
+            } catch (CompletionException e) {
+                throw new ValueRetrievalException(key, valueLoader, e.getCause());
+            }
+        }
+
         try {
-            Object obj = lookup(key);
+            // 拿到加载权之前，上一个加载的线程可能刚好已经放入缓存
+            obj = caffeineCache.getIfPresent(cacheKey);
+            T value;
             if (Objects.nonNull(obj)) {
-                return (T) obj;
+                value = (T) fromStoreValue(obj);
+            } else {
+                value = valueLoader.call();
+                loadSuccessCount.increment();
+                // 未命中时加载的数据不是修改，其他节点的本地缓存不需要失效
+                store(cacheKey, value);
             }
-            // 没有找到
-            obj = valueLoader.call();
-            // 放入缓存
-            put(key, obj);
-            return (T) obj;
-        } catch (Exception e) {
-            log.error(e.getMessage());
+            future.complete(value);
+            return value;
+        } catch (Throwable e) {
+            loadFailureCount.increment();
+            future.completeExceptionally(e);
+            throw new ValueRetrievalException(key, valueLoader, e);
         } finally {
-            lock.unlock();
+            loadingMap.remove(cacheKey, future);
         }
-        return null;
     }
 
     /**
-     * 将数据放入缓存中
+     * 将数据放入缓存中，并通知其他节点失效本地缓存。
+     * 只有@CachePut等真正的修改才应调用，@Cacheable需指定sync = true，未命中时加载的数据由get(key, valueLoader)放入且不发通知
      * @param key
      * @param value
      */
     @Override
     public void put(Object key, Object value) {
-        if (!isAllowNullValues() && Objects.isNull(value)) {
-            log.error("the value NULL will not be cached");
-            return;
-        }
-
-        // 使用 toStoreValue(value) 包装，解决caffeine不能存null的问题
-        caffeineCache.put(key, toStoreValue(value));
-
-        // null对象只存在caffeine中一份就够了，不用存redis了
-        if (Objects.isNull(value)) {
-            return;
-        }
-        String redisKey = this.cacheName + ":" + key;
-        final CacheTypeManager.CacheType cacheType = CacheTypeManager.CACHE_TYPE_MAP.get(this.cacheName);
-        if(cacheType != null) {
-            redisTemplate.opsForValue().set(redisKey, toStoreValue(value),
-                    cacheType.ttl2, TimeUnit.SECONDS);
-        } else {
-            Optional<Long> expireOpt = Optional.ofNullable(cacheConfig)
-                    .map(DoubleCacheProperties::getRedisExpire);
-            if (expireOpt.isPresent()) {
-                redisTemplate.opsForValue().set(redisKey, toStoreValue(value),
-                        expireOpt.get(), TimeUnit.SECONDS);
-            } else {
-                redisTemplate.opsForValue().set(redisKey, toStoreValue(value));
-            }
+        String cacheKey = toCacheKey(key);
+        if (store(cacheKey, value)) {
+            cacheManager.publishInvalidation(cacheName, cacheKey);
         }
     }
 
     /**
-     * 删除缓存
+     * 删除缓存，并通知其他节点失效本地缓存
      * @param key
      */
     @Override
     public void evict(Object key) {
-        redisTemplate.delete(this.cacheName + ":" + key);
-        caffeineCache.invalidate(key);
+        String cacheKey = toCacheKey(key);
+        try {
+            redisTemplate.delete(getRedisKey(cacheKey));
+        } catch (Exception e) {
+            // redis中的数据最迟在过期后失效
+            log.error("delete data from redis error, cacheName: {}, key: {}", cacheName, cacheKey, e);
+        }
+        caffeineCache.invalidate(cacheKey);
+        cacheManager.publishInvalidation(cacheName, cacheKey);
     }
 
     /**
-     * 清空缓存中所有数据
+     * 清空缓存中所有数据，并通知其他节点清空本地缓存
      */
     @Override
     public void clear() {
-        // 如果是正式环境，避免使用keys命令
-        Set<Object> keys = redisTemplate.keys(this.cacheName.concat(":*"));
-        for (Object key : keys) {
-            redisTemplate.delete(String.valueOf(key));
+        try {
+            // 如果是正式环境，避免使用keys命令
+            Set<String> keys = redisTemplate.keys(this.cacheName.concat(":*"));
+            if (keys != null && !keys.isEmpty()) {
+                redisTemplate.delete(keys);
+            }
+        } catch (Exception e) {
+            // redis中的数据最迟在过期后失效
+            log.error("clear data from redis error, cacheName: {}", cacheName, e);
         }
         caffeineCache.invalidateAll();
+        cacheManager.publishInvalidation(cacheName, null);
+    }
+
+    /**
+     * 其他节点修改了缓存，只失效本节点的caffeine，之后从redis重新读取
+     * @param cacheKey 为null时清空
+     */
+    void invalidateLocal(String cacheKey) {
+        if (cacheKey == null) {
+            caffeineCache.invalidateAll();
+        } else {
+            caffeineCache.invalidate(cacheKey);
+        }
     }
 
     /**
@@ -170,4 +214,78 @@ public class DoubleCache extends AbstractValueAdaptingCache {
         return this;
     }
 
+    public long getCaffeineHitCount() {
+        return caffeineHitCount.sum();
+    }
+
+    public long getRedisHitCount() {
+        return redisHitCount.sum();
+    }
+
+    public long getMissCount() {
+        return missCount.sum();
+    }
+
+    public long getLoadSuccessCount() {
+        return loadSuccessCount.sum();
+    }
+
+    public long getLoadFailureCount() {
+        return loadFailureCount.sum();
+    }
+
+    public long getCaffeineSize() {
+        return caffeineCache.estimatedSize();
+    }
+
+    /**
+     * 将数据放入caffeine与redis，不通知其他节点
+     * @param cacheKey
+     * @param value
+     * @return 是否放入了缓存
+     */
+    private boolean store(String cacheKey, Object value) {
+        if (!isAllowNullValues() && Objects.isNull(value)) {
+            log.debug("the value NULL will not be cached, cacheName: {}, key: {}", cacheName, cacheKey);
+            return false;
+        }
+
+        // 使用 toStoreValue(value) 包装，解决caffeine不能存null的问题
+        caffeineCache.put(cacheKey, toStoreValue(value));
+
+        // null对象只存在caffeine中一份就够了，不用存redis了
+        if (Objects.nonNull(value)) {
+            try {
+                setRedisValue(getRedisKey(cacheKey), toStoreValue(value));
+            } catch (Exception e) {
+                // 写入redis失败时本节点仍可使用caffeine中的数据，其他节点会重新加载
+                log.error("put data to redis error, cacheName: {}, key: {}", cacheName, cacheKey, e);
+            }
+        }
+        return true;
+    }
+
+    private void setRedisValue(String redisKey, Object storeValue) {
+        final CacheTypeManager.CacheType cacheType = CacheTypeManager.CACHE_TYPE_MAP.get(this.cacheName);
+        if (cacheType != null) {
+            redisTemplate.opsForValue().set(redisKey, storeValue, cacheType.ttl2, TimeUnit.SECONDS);
+            return;
+        }
+        Optional<Long> expireOpt = Optional.ofNullable(cacheConfig)
+                .map(DoubleCacheProperties::getRedisExpire);
+        if (expireOpt.isPresent()) {
+            redisTemplate.opsForValue().set(redisKey, storeValue, expireOpt.get(), TimeUnit.SECONDS);
+        } else {
+            redisTemplate.opsForValue().set(redisKey, storeValue);
+        }
+    }
+
+    private String toCacheKey(Object key) {
+        return String.valueOf(key);
+    }
+
+    private String getRedisKey(String cacheKey) {
+        return this.cacheName + ":" + cacheKey;
+    }
+
 }
@@ -2,31 +2,58 @@ package com.simplefanc.voj.backend.cache;
 
 import com.github.benmanes.caffeine.cache.Caffeine;
 import com.simplefanc.voj.backend.config.property.DoubleCacheProperties;
+import com.simplefanc.voj.common.constants.RedisConstant;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
 import org.springframework.cache.Cache;
 import org.springframework.cache.CacheManager;
 import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.data.redis.serializer.RedisSerializer;
 
 import java.util.Collection;
 import java.util.Map;
 import java.util.Objects;
 import java.util.Optional;
+import java.util.UUID;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.TimeUnit;
+import java.util.function.ToDoubleFunction;
 
 /**
- * @program: 缓存管理器 管理 DoubleCache 作为spring中的缓存使用
+ * @program: 缓存管理器 管理 DoubleCache 作为spring中的缓存使用，
+ * 缓存被修改时通过redis发布订阅通知其他节点失效本地的caffeine缓存
  * @author: chenfan
  * @create: 2022-10-6 10:07
  **/
+@Slf4j
 public class DoubleCacheManager implements CacheManager {
-    Map<String, Cache> cacheMap = new ConcurrentHashMap<>();
-    private RedisTemplate<Object, Object> redisTemplate;
-    private DoubleCacheProperties cacheConfig;
+    private final Map<String, DoubleCache> cacheMap = new ConcurrentHashMap<>();
+    private final RedisTemplate<String, Object> redisTemplate;
+    private final DoubleCacheProperties cacheConfig;
+    private final RedisSerializer<Object> redisValueSerializer;
+    private final MeterRegistry meterRegistry;
 
-    public DoubleCacheManager(RedisTemplate<Object, Object> redisTemplate,
-                              DoubleCacheProperties doubleCacheConfig) {
+    /**
+     * 本节点的标识，用于忽略自己发出的失效消息
+     */
+    private final String nodeId = UUID.randomUUID().toString();
+
+    public DoubleCacheManager(RedisTemplate<String, Object> redisTemplate,
+                              DoubleCacheProperties doubleCacheConfig,
+                              RedisMessageListenerContainer redisMessageListenerContainer,
+                              RedisSerializer<Object> redisValueSerializer,
+                              MeterRegistry meterRegistry) {
         this.redisTemplate = redisTemplate;
         this.cacheConfig = doubleCacheConfig;
+        this.redisValueSerializer = redisValueSerializer;
+        this.meterRegistry = meterRegistry;
+        redisMessageListenerContainer.addMessageListener(
+                (message, pattern) -> handleInvalidation(message.getBody()),
+                new ChannelTopic(RedisConstant.DOUBLE_CACHE_INVALIDATE_CHANNEL));
     }
 
     /**
@@ -36,14 +63,8 @@ public class DoubleCacheManager implements CacheManager {
      */
     @Override
     public Cache getCache(String name) {
-        Cache cache = cacheMap.get(name);
-        if (Objects.nonNull(cache)) {
-            return cache;
-        }
-        cache = new DoubleCache(name, redisTemplate, createCaffeineCache(name), cacheConfig);
-        // 使用 ConcurrentHashMap的putIfAbsent()方法放入，避免重复创建Cache以及造成Cache内数据的丢失
-        Cache oldCache = cacheMap.putIfAbsent(name, cache);
-        return oldCache == null ? cache : oldCache;
+        // 使用 ConcurrentHashMap的computeIfAbsent()方法创建，避免重复创建Cache以及造成Cache内数据的丢失
+        return cacheMap.computeIfAbsent(name, this::createCache);
     }
 
     /**
@@ -55,11 +76,71 @@ public class DoubleCacheManager implements CacheManager {
         return cacheMap.keySet();
     }
 
+    /**
+     * 通知其他节点失效本地缓存，通知失败时其他节点的本地缓存最迟在过期后失效
+     * @param cacheName
+     * @param cacheKey 为null时清空整个缓存
+     */
+    void publishInvalidation(String cacheName, String cacheKey) {
+        try {
+            redisTemplate.convertAndSend(RedisConstant.DOUBLE_CACHE_INVALIDATE_CHANNEL,
+                    new DoubleCacheMessage(cacheName, cacheKey, nodeId));
+        } catch (Exception e) {
+            log.error("publish cache invalidation error, cacheName: {}, key: {}", cacheName, cacheKey, e);
+        }
+    }
+
+    private void handleInvalidation(byte[] body) {
+        try {
+            DoubleCacheMessage message = (DoubleCacheMessage) redisValueSerializer.deserialize(body);
+            if (message == null || Objects.equals(nodeId, message.getSender())) {
+                return;
+            }
+            DoubleCache cache = cacheMap.get(message.getCacheName());
+            // 本节点还未使用过该缓存，不需要处理
+            if (cache != null) {
+                cache.invalidateLocal(message.getKey());
+            }
+        } catch (Exception e) {
+            log.error("handle cache invalidation error", e);
+        }
+    }
+
+    private DoubleCache createCache(String name) {
+        DoubleCache cache = new DoubleCache(name, redisTemplate, createCaffeineCache(name), cacheConfig, this);
+        bindMetrics(cache);
+        return cache;
+    }
+
+    /**
+     * 注册各级缓存的命中、未命中与加载次数，通过actuator的metrics端点查看
+     * @param cache
+     */
+    private void bindMetrics(DoubleCache cache) {
+        registerCounter(cache, "voj.cache.gets", "caffeine_hit", DoubleCache::getCaffeineHitCount);
+        registerCounter(cache, "voj.cache.gets", "redis_hit", DoubleCache::getRedisHitCount);
+        registerCounter(cache, "voj.cache.gets", "miss", DoubleCache::getMissCount);
+        registerCounter(cache, "voj.cache.loads", "success", DoubleCache::getLoadSuccessCount);
+        registerCounter(cache, "voj.cache.loads", "failure", DoubleCache::getLoadFailureCount);
+        Gauge.builder("voj.cache.size", cache, DoubleCache::getCaffeineSize)
+                .tag("cache", cache.getName())
+                .description("caffeine中的缓存数量")
+                .register(meterRegistry);
+    }
+
+    private void registerCounter(DoubleCache cache, String meterName, String result,
+                                 ToDoubleFunction<DoubleCache> countFunction) {
+        FunctionCounter.builder(meterName, cache, countFunction)
+                .tag("cache", cache.getName())
+                .tag("result", result)
+                .register(meterRegistry);
+    }
+
     /**
      * 根据项目配置文件中的具体参数进行初始化
      * @return
      */
-    private com.github.benmanes.caffeine.cache.Cache<Object, Object> createCaffeineCache(String name) {
+    private com.github.benmanes.caffeine.cache.Cache<String, Object> createCaffeineCache(String name) {
         Caffeine<Object, Object> caffeineBuilder = Caffeine.newBuilder();
         Optional<DoubleCacheProperties> cacheConfig = Optional.ofNullable(this.cacheConfig);
         cacheConfig.map(DoubleCacheProperties::getInitialCapacity)
@@ -75,8 +156,6 @@ public class DoubleCacheManager implements CacheManager {
         }
         cacheConfig.map(DoubleCacheProperties::getExpireAfterAccess)
                 .ifPresent(eaa -> caffeineBuilder.expireAfterAccess(eaa, TimeUnit.SECONDS));
-        cacheConfig.map(DoubleCacheProperties::getRefreshAfterWrite)
-                .ifPresent(raw -> caffeineBuilder.refreshAfterWrite(raw, TimeUnit.SECONDS));
         return caffeineBuilder.build();
     }
 }
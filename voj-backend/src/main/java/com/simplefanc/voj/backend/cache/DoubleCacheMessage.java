@@ -0,0 +1,29 @@
+package com.simplefanc.voj.backend.cache;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * @program: 通知其他节点失效本地缓存的消息
+ * @author: chenfan
+ * @create: 2022-12-6 10:20
+ **/
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class DoubleCacheMessage {
+
+    private String cacheName;
+
+    /**
+     * 为null时表示清空整个缓存
+     */
+    private String key;
+
+    /**
+     * 发送消息的节点，节点不处理自己发出的消息
+     */
+    private String sender;
+
+}
@@ -1,15 +1,20 @@
 package com.simplefanc.voj.backend.common.constants;
 
 /**
- * 等待判题的redis队列
+ * 等待判题的redis队列与stream
  *
  * @Since 2021/12/22
  */
 public interface QueueConstant {
 
-    String CONTEST_JUDGE_WAITING = "Contest_Waiting_Handle_Queue";
+    /**
+     * 本地评测任务使用Redis Stream，由消费者组消费，任务分配给判题机后才确认
+     */
+    String CONTEST_JUDGE_STREAM = "Contest_Judge_Stream";
 
-    String GENERAL_JUDGE_WAITING = "General_Waiting_Handle_Queue";
+    String GENERAL_JUDGE_STREAM = "General_Judge_Stream";
+
+    String JUDGE_STREAM_GROUP = "Judge_Dispatcher_Group";
 
     String CONTEST_REMOTE_JUDGE_WAITING_HANDLE = "Contest_Remote_Waiting_Handle_Queue";
 
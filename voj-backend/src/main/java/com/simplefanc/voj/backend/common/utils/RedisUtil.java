@@ -6,10 +6,15 @@ import lombok.extern.slf4j.Slf4j;
 import org.springframework.dao.DataAccessException;
 import org.springframework.data.redis.connection.RedisConnection;
 import org.springframework.data.redis.connection.StringRedisConnection;
+import org.springframework.data.redis.core.DefaultTypedTuple;
 import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.RedisOperations;
 import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.SessionCallback;
+import org.springframework.data.redis.core.ZSetOperations;
 import org.springframework.stereotype.Component;
 
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -217,6 +222,30 @@ public final class RedisUtil {
         return redisTemplate.opsForHash().entries(key);
     }
 
+    /**
+     * 批量获取多个hashKey对应的所有键值，通过pipeline一次发送
+     *
+     * @param keys 键
+     * @return 与键顺序一致的键值，不存在的键对应空Map，出错时返回null
+     */
+    public List<Object> batchHmget(List<String> keys) {
+        try {
+            return redisTemplate.executePipelined(new SessionCallback<Object>() {
+                @Override
+                @SuppressWarnings("unchecked")
+                public <K, V> Object execute(RedisOperations<K, V> operations) throws DataAccessException {
+                    for (String key : keys) {
+                        operations.opsForHash().entries((K) key);
+                    }
+                    return null;
+                }
+            });
+        } catch (Exception e) {
+            e.printStackTrace();
+            return null;
+        }
+    }
+
     /**
      * HashSet
      *
@@ -438,6 +467,109 @@ public final class RedisUtil {
         }
     }
 
+    // ============================zset=============================
+
+    /**
+     * 将数据放入有序集合，已存在时更新分数
+     *
+     * @param key   键
+     * @param value 值
+     * @param score 分数
+     */
+    public boolean zAdd(String key, Object value, double score) {
+        try {
+            redisTemplate.opsForZSet().add(key, value, score);
+            return true;
+        } catch (Exception e) {
+            e.printStackTrace();
+            return false;
+        }
+    }
+
+    /**
+     * 批量放入有序集合
+     *
+     * @param key        键
+     * @param valueScore 值与分数
+     * @return 新增的个数
+     */
+    public long zAddAll(String key, Map<Object, Double> valueScore) {
+        try {
+            Set<ZSetOperations.TypedTuple<Object>> tuples = new HashSet<>();
+            valueScore.forEach((value, score) -> tuples.add(new DefaultTypedTuple<>(value, score)));
+            Long count = redisTemplate.opsForZSet().add(key, tuples);
+            return count == null ? 0 : count;
+        } catch (Exception e) {
+            e.printStackTrace();
+            return 0;
+        }
+    }
+
+    /**
+     * 按分数从高到低获取有序集合指定排名区间的值
+     *
+     * @param key   键
+     * @param start 开始排名
+     * @param end   结束排名 0 到 -1代表所有值
+     */
+    public Set<Object> zReverseRange(String key, long start, long end) {
+        try {
+            return redisTemplate.opsForZSet().reverseRange(key, start, end);
+        } catch (Exception e) {
+            e.printStackTrace();
+            return null;
+        }
+    }
+
+    /**
+     * 获取有序集合的长度
+     *
+     * @param key 键
+     * @return 键不存在时为0，Redis异常时为null
+     */
+    public Long zSize(String key) {
+        try {
+            Long size = redisTemplate.opsForZSet().zCard(key);
+            return size == null ? 0 : size;
+        } catch (Exception e) {
+            e.printStackTrace();
+            return null;
+        }
+    }
+
+    /**
+     * 移除有序集合中的值
+     *
+     * @param key    键
+     * @param values 值 可以是多个
+     * @return 移除的个数
+     */
+    public long zRemove(String key, Object... values) {
+        try {
+            Long count = redisTemplate.opsForZSet().remove(key, values);
+            return count == null ? 0 : count;
+        } catch (Exception e) {
+            e.printStackTrace();
+            return 0;
+        }
+    }
+
+    /**
+     * 重命名键，新键已存在时覆盖
+     *
+     * @param oldKey 原键
+     * @param newKey 新键
+     */
+    public boolean rename(String oldKey, String newKey) {
+        try {
+            redisTemplate.rename(oldKey, newKey);
+            return true;
+        } catch (Exception e) {
+            e.printStackTrace();
+            return false;
+        }
+    }
+
     // ===============================list=================================
 
     /**
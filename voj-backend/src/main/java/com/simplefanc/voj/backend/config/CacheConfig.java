@@ -2,23 +2,27 @@ package com.simplefanc.voj.backend.config;
 
 import com.simplefanc.voj.backend.cache.DoubleCacheManager;
 import com.simplefanc.voj.backend.config.property.DoubleCacheProperties;
-import org.springframework.beans.factory.annotation.Autowired;
+import io.micrometer.core.instrument.MeterRegistry;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.data.redis.serializer.RedisSerializer;
 
 /**
  * @author: chenfan
  * @create: 2022-10-6 10:07
  **/
-//@Configuration
+@Configuration
 public class CacheConfig {
-//    @Autowired
-    DoubleCacheProperties doubleCacheConfig;
 
-//    @Bean
-    public DoubleCacheManager cacheManager(RedisTemplate<Object, Object> redisTemplate,
-                                           DoubleCacheProperties doubleCacheConfig) {
-        return new DoubleCacheManager(redisTemplate, doubleCacheConfig);
+    @Bean
+    public DoubleCacheManager cacheManager(RedisTemplate<String, Object> redisTemplate,
+                                           DoubleCacheProperties doubleCacheConfig,
+                                           RedisMessageListenerContainer redisMessageListenerContainer,
+                                           RedisSerializer<Object> redisValueSerializer,
+                                           MeterRegistry meterRegistry) {
+        return new DoubleCacheManager(redisTemplate, doubleCacheConfig, redisMessageListenerContainer,
+                redisValueSerializer, meterRegistry);
     }
 }
@@ -0,0 +1,39 @@
+package com.simplefanc.voj.backend.controller.file;
+
+import com.simplefanc.voj.backend.service.file.TestCaseSyncService;
+import lombok.RequiredArgsConstructor;
+import org.springframework.core.io.Resource;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+/**
+ * @Author: chenfan
+ * @Date: 2022/11/30 10:26
+ * @Description: 判题机拉取测试数据，使用判题服务token鉴权，测试数据文件支持Range分段下载
+ */
+@RestController
+@RequestMapping("/api/test-case-sync")
+@RequiredArgsConstructor
+public class TestCaseSyncController {
+
+    public static final String JUDGE_TOKEN_HEADER = "Judge-Token";
+
+    private final TestCaseSyncService testCaseSyncService;
+
+    @GetMapping("/{pid}/manifest")
+    public ResponseEntity<Resource> getManifest(@PathVariable("pid") Long pid,
+                                                @RequestHeader(JUDGE_TOKEN_HEADER) String token) {
+        return ResponseEntity.ok().contentType(MediaType.APPLICATION_JSON)
+                .body(testCaseSyncService.getManifest(pid, token));
+    }
+
+    @GetMapping("/{pid}/blob/{hash}")
+    public ResponseEntity<Resource> getBlob(@PathVariable("pid") Long pid, @PathVariable("hash") String hash,
+                                            @RequestHeader(JUDGE_TOKEN_HEADER) String token) {
+        // Resource类型的响应体由Spring MVC处理Range请求头，返回206分段内容
+        return ResponseEntity.ok().contentType(MediaType.APPLICATION_OCTET_STREAM)
+                .body(testCaseSyncService.getBlob(pid, hash, token));
+    }
+
+}
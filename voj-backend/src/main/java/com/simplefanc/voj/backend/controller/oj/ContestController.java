@@ -11,7 +11,9 @@ import com.simplefanc.voj.common.pojo.entity.common.Announcement;
 import com.simplefanc.voj.common.result.CommonResult;
 import lombok.RequiredArgsConstructor;
 import org.apache.shiro.authz.annotation.RequiresAuthentication;
+import org.springframework.http.MediaType;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
 import java.util.List;
 
@@ -128,6 +130,19 @@ public class ContestController {
         return CommonResult.successResponse(contestService.getContestRank(contestRankDTO));
     }
 
+    /**
+     * @MethodName subscribeContestRank
+     * @Description 以服务端推送事件的方式订阅比赛排行榜的一页，参数与分页查询排行榜相同（不支持关键词搜索），
+     * 先推送该页与置顶用户的排名数据，之后只推送变化的部分
+     * @Return
+     * @Since 2022/12/4
+     */
+    @GetMapping(value = "/contest-rank-stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    @RequiresAuthentication
+    public SseEmitter subscribeContestRank(ContestRankDTO contestRankDTO) {
+        return contestService.subscribeContestRank(contestRankDTO);
+    }
+
     /**
      * @MethodName getContestAnnouncement
      * @Description 获得比赛的通知列表
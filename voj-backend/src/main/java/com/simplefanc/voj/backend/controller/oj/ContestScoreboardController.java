@@ -6,7 +6,9 @@ import com.simplefanc.voj.backend.pojo.vo.ContestOutsideInfo;
 import com.simplefanc.voj.backend.service.oj.ContestScoreboardService;
 import com.simplefanc.voj.common.result.CommonResult;
 import lombok.RequiredArgsConstructor;
+import org.springframework.http.MediaType;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
 import java.util.List;
 
@@ -47,4 +49,16 @@ public class ContestScoreboardController {
         return CommonResult.successResponse(contestScoreboardService.getContestOutsideScoreboard(contestRankDTO));
     }
 
+    /**
+     * @MethodName subscribeContestOutsideScoreboard
+     * @Description 以服务端推送事件的方式订阅比赛外榜的一页，参数与分页查询外榜相同（不支持关键词搜索），
+     * 先推送该页与置顶用户的排名数据，之后只推送变化的部分
+     * @Return
+     * @Since 2022/12/4
+     */
+    @GetMapping(value = "/contest-outside-scoreboard-stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public SseEmitter subscribeContestOutsideScoreboard(ContestRankDTO contestRankDTO) {
+        return contestScoreboardService.subscribeContestOutsideScoreboard(contestRankDTO);
+    }
+
 }
\ No newline at end of file
@@ -0,0 +1,30 @@
+package com.simplefanc.voj.backend.controller.oj;
+
+import com.simplefanc.voj.backend.service.oj.JudgeCallbackService;
+import com.simplefanc.voj.common.pojo.dto.JudgeCallbackDTO;
+import com.simplefanc.voj.common.result.CommonResult;
+import lombok.RequiredArgsConstructor;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+/**
+ * @Author: chenfan
+ * @Date: 2022/11/27 15:02
+ * @Description: 接收判题机的评测进度与结果回调，使用判题服务token鉴权
+ */
+@RestController
+@RequestMapping("/api")
+@RequiredArgsConstructor
+public class JudgeCallbackController {
+
+    private final JudgeCallbackService judgeCallbackService;
+
+    @PostMapping(value = "/judge-callback")
+    public CommonResult<Void> judgeCallback(@RequestBody JudgeCallbackDTO judgeCallbackDTO) {
+        judgeCallbackService.handleJudgeCallback(judgeCallbackDTO);
+        return CommonResult.successResponse();
+    }
+
+}
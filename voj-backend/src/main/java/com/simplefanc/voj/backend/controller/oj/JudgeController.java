@@ -12,7 +12,9 @@ import com.simplefanc.voj.common.result.CommonResult;
 import lombok.RequiredArgsConstructor;
 import org.apache.shiro.authz.annotation.RequiresAuthentication;
 import org.apache.shiro.authz.annotation.RequiresPermissions;
+import org.springframework.http.MediaType;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
 import java.util.HashMap;
 import java.util.List;
@@ -82,6 +84,7 @@ public class JudgeController {
     /**
      * @param limit
      * @param currentPage
+     * @param beforeSubmitId    上一页最后一条提交的id，不为空时按游标分页，忽略currentPage且不返回总数
      * @param onlyMine
      * @param searchPid
      * @param searchStatus
@@ -95,13 +98,14 @@ public class JudgeController {
     @RequestMapping(value = "/submissions", method = RequestMethod.GET)
     public CommonResult<IPage<JudgeVO>> getJudgeList(@RequestParam(value = "limit", required = false) Integer limit,
                                                      @RequestParam(value = "currentPage", required = false) Integer currentPage,
+                                                     @RequestParam(value = "beforeSubmitId", required = false) Long beforeSubmitId,
                                                      @RequestParam(value = "onlyMine", required = false) Boolean onlyMine,
                                                      @RequestParam(value = "problemID", required = false) String searchPid,
                                                      @RequestParam(value = "status", required = false) Integer searchStatus,
                                                      @RequestParam(value = "username", required = false) String searchUsername,
                                                      @RequestParam(value = "completeProblemID", defaultValue = "false") Boolean completeProblemId) {
-        return CommonResult.successResponse(judgeService.getJudgeList(limit, currentPage, onlyMine, searchPid,
-                searchStatus, searchUsername, completeProblemId));
+        return CommonResult.successResponse(judgeService.getJudgeList(limit, currentPage, beforeSubmitId, onlyMine,
+                searchPid, searchStatus, searchUsername, completeProblemId));
     }
 
     /**
@@ -128,6 +132,35 @@ public class JudgeController {
         return CommonResult.successResponse(judgeService.checkContestJudgeResult(submitIdListDTO));
     }
 
+    /**
+     * @MethodName subscribeCommonJudgeResult
+     * @Description 以服务端推送事件的方式订阅提交列表的评测状态，评测全部结束后连接关闭
+     * @Return
+     * @Since 2022/12/3
+     */
+    @GetMapping(value = "/submissions-status-stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public SseEmitter subscribeCommonJudgeResult(@RequestParam("submitIds") List<Long> submitIds) {
+        SubmitIdListDTO submitIdListDTO = new SubmitIdListDTO();
+        submitIdListDTO.setSubmitIds(submitIds);
+        return judgeService.subscribeCommonJudgeResult(submitIdListDTO);
+    }
+
+    /**
+     * @MethodName subscribeContestJudgeResult
+     * @Description 以服务端推送事件的方式订阅比赛提交列表的评测状态，封榜期间的提交同样不可查询
+     * @Return
+     * @Since 2022/12/3
+     */
+    @GetMapping(value = "/contest-submissions-status-stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    @RequiresAuthentication
+    public SseEmitter subscribeContestJudgeResult(@RequestParam("cid") Long cid,
+                                                  @RequestParam("submitIds") List<Long> submitIds) {
+        SubmitIdListDTO submitIdListDTO = new SubmitIdListDTO();
+        submitIdListDTO.setCid(cid);
+        submitIdListDTO.setSubmitIds(submitIds);
+        return judgeService.subscribeContestJudgeResult(submitIdListDTO);
+    }
+
     /**
      * @param submitId
      * @MethodName getJudgeCase
@@ -7,12 +7,14 @@ import com.simplefanc.voj.backend.dao.contest.ContestRecordEntityService;
 import com.simplefanc.voj.backend.dao.user.UserInfoEntityService;
 import com.simplefanc.voj.backend.mapper.ContestProblemMapper;
 import com.simplefanc.voj.backend.pojo.vo.ContestProblemVO;
+import com.simplefanc.voj.backend.scoreboard.ContestRecordEventBus;
 import com.simplefanc.voj.common.pojo.entity.contest.ContestProblem;
 import com.simplefanc.voj.common.pojo.entity.contest.ContestRecord;
 import lombok.RequiredArgsConstructor;
 import org.springframework.scheduling.annotation.Async;
 import org.springframework.stereotype.Service;
 
+import java.util.ArrayList;
 import java.util.Date;
 import java.util.List;
 
@@ -35,10 +37,12 @@ public class ContestProblemEntityServiceImpl extends ServiceImpl<ContestProblemM
 
     private final ContestRecordEntityService contestRecordEntityService;
 
+    private final ContestRecordEventBus contestRecordEventBus;
+
     @Override
     public List<ContestProblemVO> getContestProblemList(Long cid, Date startTime, Date endTime, Date sealTime,
                                                         Boolean isAdmin, String contestAuthorUid) {
-        List<String> superAdminUidList = userInfoEntityService.getSuperAdminUidList();
+        List<String> superAdminUidList = new ArrayList<>(userInfoEntityService.getSuperAdminUidList());
         superAdminUidList.add(contestAuthorUid);
 
         return contestProblemMapper.getContestProblemList(cid, startTime, endTime, sealTime, isAdmin,
@@ -52,6 +56,7 @@ public class ContestProblemEntityServiceImpl extends ServiceImpl<ContestProblemM
         UpdateWrapper<ContestRecord> updateWrapper = new UpdateWrapper<>();
         updateWrapper.eq("pid", pid).eq("cid", cid).set("display_id", displayId);
         contestRecordEntityService.update(updateWrapper);
+        contestRecordEventBus.publishContestInvalidated(cid);
     }
 
 }
@@ -20,6 +20,7 @@ import lombok.RequiredArgsConstructor;
 import org.springframework.scheduling.annotation.Async;
 import org.springframework.stereotype.Service;
 
+import java.util.ArrayList;
 import java.util.List;
 
 /**
@@ -57,7 +58,7 @@ public class CommentEntityServiceImpl extends ServiceImpl<CommentMapper, Comment
                     && !contest.getUid().equals(uid);
             // 自己和比赛管理者评论可看
             if (onlyMineAndAdmin) {
-                List<String> myAndAdminUidList = userInfoEntityService.getSuperAdminUidList();
+                List<String> myAndAdminUidList = new ArrayList<>(userInfoEntityService.getSuperAdminUidList());
                 myAndAdminUidList.add(uid);
                 myAndAdminUidList.add(contest.getUid());
                 return commentMapper.getCommentList(page, cid, did, true, myAndAdminUidList);
@@ -78,7 +79,7 @@ public class CommentEntityServiceImpl extends ServiceImpl<CommentMapper, Comment
                     && !contest.getUid().equals(uid);
             // 自己和比赛管理者评论可看
             if (onlyMineAndAdmin) {
-                List<String> myAndAdminUidList = userInfoEntityService.getSuperAdminUidList();
+                List<String> myAndAdminUidList = new ArrayList<>(userInfoEntityService.getSuperAdminUidList());
                 myAndAdminUidList.add(uid);
                 myAndAdminUidList.add(contest.getUid());
                 replyQueryWrapper.in("from_uid", myAndAdminUidList);
@@ -20,9 +20,12 @@ import java.util.List;
 
 public interface JudgeEntityService extends IService<Judge> {
 
-    IPage<JudgeVO> getCommonJudgeList(Integer limit, Integer currentPage, String searchPid, Integer status,
+    IPage<JudgeVO> getCommonJudgeList(Integer limit, Integer currentPage, Long pid, String searchPid, Integer status,
                                       String username, String uid, Boolean completeProblemId);
 
+    List<JudgeVO> getCommonJudgeListBefore(Integer limit, Judge beforeJudge, Long pid, String searchPid, Integer status,
+                                           String username, String uid, Boolean completeProblemId);
+
     // TODO 参数过多
     IPage<JudgeVO> getContestJudgeList(Integer limit, Integer currentPage, String displayId, Long cid, Integer status,
                                        String username, String uid, Boolean beforeContestSubmit, String rule, Date startTime, Date sealRankTime,
@@ -33,10 +36,6 @@ public interface JudgeEntityService extends IService<Judge> {
     ProblemCountVO getContestProblemCount(Long pid, Long cpid, Long cid, Date startTime, Date sealRankTime,
                                           List<String> adminList);
 
-    ProblemCountVO getProblemCount(Long pid);
-
     int getTodayJudgeNum();
 
-    List<ProblemCountVO> getProblemListCount(List<Long> pidList);
-
 }
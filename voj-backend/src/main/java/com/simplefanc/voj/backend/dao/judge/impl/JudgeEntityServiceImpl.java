@@ -38,12 +38,19 @@ public class JudgeEntityServiceImpl extends ServiceImpl<JudgeMapper, Judge> impl
     private final ContestRecordEntityService contestRecordEntityService;
 
     @Override
-    public IPage<JudgeVO> getCommonJudgeList(Integer limit, Integer currentPage, String searchPid, Integer status,
-                                             String username, String uid, Boolean completeProblemId) {
+    public IPage<JudgeVO> getCommonJudgeList(Integer limit, Integer currentPage, Long pid, String searchPid,
+                                             Integer status, String username, String uid, Boolean completeProblemId) {
         // 新建分页
         Page<JudgeVO> page = new Page<>(currentPage, limit);
 
-        return judgeMapper.getCommonJudgeList(page, searchPid, status, username, uid, completeProblemId);
+        return judgeMapper.getCommonJudgeList(page, pid, searchPid, status, username, uid, completeProblemId);
+    }
+
+    @Override
+    public List<JudgeVO> getCommonJudgeListBefore(Integer limit, Judge beforeJudge, Long pid, String searchPid,
+                                                  Integer status, String username, String uid, Boolean completeProblemId) {
+        return judgeMapper.getCommonJudgeListBefore(limit, beforeJudge.getSubmitTime(), beforeJudge.getSubmitId(), pid,
+                searchPid, status, username, uid, completeProblemId);
     }
 
     // TODO 参数过多
@@ -81,19 +88,9 @@ public class JudgeEntityServiceImpl extends ServiceImpl<JudgeMapper, Judge> impl
         return judgeMapper.getContestProblemCount(pid, cpid, cid, startTime, sealRankTime, adminList);
     }
 
-    @Override
-    public ProblemCountVO getProblemCount(Long pid) {
-        return judgeMapper.getProblemCount(pid);
-    }
-
     @Override
     public int getTodayJudgeNum() {
         return judgeMapper.getTodayJudgeNum();
     }
 
-    @Override
-    public List<ProblemCountVO> getProblemListCount(List<Long> pidList) {
-        return judgeMapper.getProblemListCount(pidList);
-    }
-
 }
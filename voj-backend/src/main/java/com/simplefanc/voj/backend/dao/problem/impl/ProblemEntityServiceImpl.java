@@ -6,14 +6,15 @@ import cn.hutool.core.io.file.FileReader;
 import cn.hutool.core.io.file.FileWriter;
 import cn.hutool.core.util.CharsetUtil;
 import cn.hutool.core.util.StrUtil;
+import cn.hutool.crypto.digest.DigestUtil;
 import cn.hutool.json.JSONArray;
 import cn.hutool.json.JSONObject;
 import cn.hutool.json.JSONUtil;
 import com.baomidou.mybatisplus.core.conditions.query.QueryWrapper;
 import com.baomidou.mybatisplus.extension.plugins.pagination.Page;
 import com.baomidou.mybatisplus.extension.service.impl.ServiceImpl;
-import com.simplefanc.voj.backend.dao.judge.JudgeEntityService;
 import com.simplefanc.voj.backend.dao.problem.*;
+import com.simplefanc.voj.backend.judge.ProblemCountCache;
 import com.simplefanc.voj.backend.mapper.ProblemMapper;
 import com.simplefanc.voj.backend.config.property.FilePathProperties;
 import com.simplefanc.voj.backend.pojo.dto.ProblemDTO;
@@ -51,7 +52,7 @@ public class ProblemEntityServiceImpl extends ServiceImpl<ProblemMapper, Problem
 
     private final ProblemMapper problemMapper;
 
-    private final JudgeEntityService judgeEntityService;
+    private final ProblemCountCache problemCountCache;
 
     private final ProblemCaseEntityService problemCaseEntityService;
 
@@ -91,14 +92,9 @@ public class ProblemEntityServiceImpl extends ServiceImpl<ProblemMapper, Problem
 
         if (problemList.size() > 0) {
             List<Long> pidList = problemList.stream().map(ProblemVO::getPid).collect(Collectors.toList());
-            List<ProblemCountVO> problemListCount = judgeEntityService.getProblemListCount(pidList);
+            Map<Long, ProblemCountVO> problemCountMap = problemCountCache.getProblemCountMap(pidList);
             for (ProblemVO problemVO : problemList) {
-                for (ProblemCountVO problemCountVO : problemListCount) {
-                    if (problemVO.getPid().equals(problemCountVO.getPid())) {
-                        problemVO.setProblemCountVO(problemCountVO);
-                        break;
-                    }
-                }
+                problemVO.setProblemCountVO(problemCountMap.get(problemVO.getPid()));
             }
         }
 
@@ -549,6 +545,9 @@ public class ProblemEntityServiceImpl extends ServiceImpl<ProblemMapper, Problem
                     CharsetUtil.UTF_8);
             outFileWriter.write(output);
 
+            // 测试数据文件的内容摘要，判题机据此按需拉取
+            initCaseFileHash(jsonObject, testCasesDir, problemCase.getInput(), problemCase.getOutput());
+
             // spj和interactive是根据特判程序输出判断结果，所以无需初始化测试数据
             if (JudgeMode.DEFAULT.getMode().equals(mode)) {
                 // 原数据MD5
@@ -612,6 +611,9 @@ public class ProblemEntityServiceImpl extends ServiceImpl<ProblemMapper, Problem
             FileWriter outFile = new FileWriter(testCasesDir + "/" + outputName, CharsetUtil.UTF_8);
             outFile.write(outputData);
 
+            // 测试数据文件的内容摘要，判题机据此按需拉取
+            initCaseFileHash(jsonObject, testCasesDir, inputName, outputName);
+
             // spj和interactive是根据特判程序输出判断结果，所以无需初始化测试数据
             if (JudgeMode.DEFAULT.getMode().equals(mode)) {
                 // 原数据MD5
@@ -639,6 +641,14 @@ public class ProblemEntityServiceImpl extends ServiceImpl<ProblemMapper, Problem
         infoFile.write(JSONUtil.toJsonStr(result));
     }
 
+    private void initCaseFileHash(JSONObject jsonObject, String testCasesDir, String inputName, String outputName) {
+        File inputFile = new File(testCasesDir + File.separator + inputName);
+        File outputFile = new File(testCasesDir + File.separator + outputName);
+        jsonObject.set("inputHash", DigestUtil.sha256Hex(inputFile));
+        jsonObject.set("inputSize", inputFile.length());
+        jsonObject.set("outputHash", DigestUtil.sha256Hex(outputFile));
+    }
+
     @Override
     // 如果是有提交记录的
     @SuppressWarnings("All")
@@ -18,6 +18,11 @@ public interface UserInfoEntityService extends IService<UserInfo> {
 
     Boolean addUser(RegisterDTO registerDTO);
 
+    /**
+     * 返回的列表由缓存共享，调用方不可修改
+     */
     List<String> getSuperAdminUidList();
 
+    void evictSuperAdminUidList();
+
 }
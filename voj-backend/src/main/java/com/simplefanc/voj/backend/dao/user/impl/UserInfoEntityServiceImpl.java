@@ -9,6 +9,7 @@ import com.simplefanc.voj.backend.pojo.dto.RegisterDTO;
 import com.simplefanc.voj.common.constants.RedisConstant;
 import com.simplefanc.voj.common.pojo.entity.user.UserInfo;
 import lombok.RequiredArgsConstructor;
+import org.springframework.cache.annotation.CacheEvict;
 import org.springframework.cache.annotation.Cacheable;
 import org.springframework.stereotype.Service;
 
@@ -36,7 +37,7 @@ public class UserInfoEntityServiceImpl extends ServiceImpl<UserInfoMapper, UserI
     }
 
     @Override
-    @Cacheable(value = RedisConstant.SUPER_ADMIN_UID_LIST_CACHE)
+    @Cacheable(value = RedisConstant.SUPER_ADMIN_UID_LIST_CACHE, sync = true)
     public List<String> getSuperAdminUidList() {
 //        List<String> superAdminUidList = (List<String>) redisUtil.get(AccountConstant.SUPER_ADMIN_UID_LIST_CACHE);
 //        if (superAdminUidList == null) {
@@ -47,4 +48,9 @@ public class UserInfoEntityServiceImpl extends ServiceImpl<UserInfoMapper, UserI
         return userInfoMapper.getSuperAdminUidList(RoleEnum.ROOT.getId());
     }
 
+    @Override
+    @CacheEvict(value = RedisConstant.SUPER_ADMIN_UID_LIST_CACHE)
+    public void evictSuperAdminUidList() {
+    }
+
 }
@@ -5,7 +5,6 @@ import com.alibaba.cloud.nacos.NacosServiceManager;
 import com.alibaba.nacos.api.exception.NacosException;
 import com.alibaba.nacos.api.naming.NamingService;
 import com.alibaba.nacos.api.naming.pojo.Instance;
-import com.baomidou.mybatisplus.core.conditions.query.QueryWrapper;
 import com.simplefanc.voj.backend.dao.judge.JudgeServerEntityService;
 import com.simplefanc.voj.backend.mapper.RemoteJudgeAccountMapper;
 import com.simplefanc.voj.common.constants.RemoteOj;
@@ -17,9 +16,13 @@ import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 import org.springframework.transaction.annotation.Transactional;
 
-import java.util.ArrayList;
 import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
 
 /**
  * @Author: chenfan
@@ -42,6 +45,24 @@ public class ChooseUtils {
 
     private final RemoteJudgeAccountMapper remoteJudgeAccountMapper;
 
+    private final JudgeServerSlotAllocator slotAllocator;
+
+    private static final long JUDGE_SERVER_CACHE_MILLIS = 3000;
+
+    /**
+     * 判题机回复繁忙后暂停向其分发的时间，期间收到其结束回调则提前恢复
+     */
+    private static final long BUSY_BACKOFF_MILLIS = 2000;
+
+    /**
+     * key: 判题机id，value: 暂停分发的截止时间
+     */
+    private final Map<Integer, Long> busyUntilMap = new ConcurrentHashMap<>();
+
+    private volatile List<JudgeServer> cachedJudgeServerList;
+
+    private volatile long cachedTime;
+
     /**
      * @param
      * @MethodName chooseServer
@@ -49,43 +70,104 @@ public class ChooseUtils {
      * @Return
      * @Since 2021/4/15
      */
-    @Transactional(rollbackFor = Exception.class)
     public JudgeServer chooseJudgeServer(Boolean isRemote) {
-        // 获取该微服务的所有健康实例
-        List<Instance> instances = getInstances(judgeServiceName);
-        if (instances.size() <= 0) {
+        return chooseJudgeServer(isRemote, null, 0);
+    }
+
+    /**
+     * @param isRemote      是否为远程判题
+     * @param submitId      本地评测任务的提交id，不为null时与槽位一同登记为评测中任务
+     * @param judgeDeadline 评测截止时间
+     * @MethodName chooseJudgeServer
+     * @Description 选择判题机并原子地登记评测中任务
+     * @Return 选中的判题机，无空闲则为null
+     * @Since 2022/12/9
+     */
+    public JudgeServer chooseJudgeServer(Boolean isRemote, Long submitId, long judgeDeadline) {
+        Set<String> keySet = getHealthyUrlSet();
+        if (keySet.isEmpty()) {
             return null;
         }
-        List<String> keyList = new ArrayList<>();
+
+        // 过滤出健康的判题机，由槽位分配器原子地选择负载最小且未满的判题机，无需再对judge_server加排他锁
+        List<JudgeServer> candidates = getJudgeServerList().stream()
+                .filter(judgeServer -> isRemote.equals(judgeServer.getIsRemote()))
+                .filter(judgeServer -> keySet.contains(judgeServer.getUrl()))
+                // 判题机的安全沙箱全部不可用时会将status置为1
+                .filter(judgeServer -> judgeServer.getStatus() == null || judgeServer.getStatus() == 0)
+                .filter(judgeServer -> !isBusy(judgeServer.getId()))
+                .collect(Collectors.toList());
+        return slotAllocator.acquire(candidates, submitId, judgeDeadline);
+    }
+
+    /**
+     * @param judgeServerId 判题机id
+     * @MethodName markBusy
+     * @Description 判题机已达其最大任务数（槽位计数与判题机实际不一致时），暂停向其分发
+     * @Since 2022/12/7
+     */
+    public void markBusy(Integer judgeServerId) {
+        busyUntilMap.put(judgeServerId, System.currentTimeMillis() + BUSY_BACKOFF_MILLIS);
+    }
+
+    /**
+     * @param judgeServerId 判题机id
+     * @MethodName clearBusy
+     * @Description 判题机完成了评测任务，已有空闲，恢复向其分发
+     * @Since 2022/12/7
+     */
+    public void clearBusy(Integer judgeServerId) {
+        busyUntilMap.remove(judgeServerId);
+    }
+
+    private boolean isBusy(Integer judgeServerId) {
+        Long busyUntil = busyUntilMap.get(judgeServerId);
+        if (busyUntil == null) {
+            return false;
+        }
+        if (System.currentTimeMillis() >= busyUntil) {
+            busyUntilMap.remove(judgeServerId, busyUntil);
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * @MethodName getAliveJudgeServerIds
+     * @Description 获取当前仍在线的判题机id，判题机重启后会重新注册，旧的id不再存在
+     * @Return
+     * @Since 2022/11/27
+     */
+    public Set<Integer> getAliveJudgeServerIds() {
+        Set<String> keySet = getHealthyUrlSet();
+        return getJudgeServerList().stream()
+                .filter(judgeServer -> keySet.contains(judgeServer.getUrl()))
+                .map(JudgeServer::getId)
+                .collect(Collectors.toSet());
+    }
+
+    private Set<String> getHealthyUrlSet() {
+        // 获取该微服务的所有健康实例
+        List<Instance> instances = getInstances(judgeServiceName);
+        Set<String> keySet = new HashSet<>();
         // 获取当前健康实例取出ip和port拼接
         for (Instance instance : instances) {
-            keyList.add(instance.getIp() + ":" + instance.getPort());
+            keySet.add(instance.getIp() + ":" + instance.getPort());
         }
+        return keySet;
+    }
 
-        // 过滤出小于或等于规定最大并发判题任务数的服务实例且健康的判题机
-        QueryWrapper<JudgeServer> judgeServerQueryWrapper = new QueryWrapper<>();
-        judgeServerQueryWrapper.in("url", keyList)
-                .eq("is_remote", isRemote)
-                .orderByAsc("task_number")
-                // 开启排他锁
-                .last("for update");
-
-        // 如果一个条件无法通过索引快速过滤，存储引擎层面就会将所有记录加锁后返回，再由MySQL Server层进行过滤
-        // 但在实际使用过程当中，MySQL做了一些改进，在MySQL Server过滤条件，发现不满足后，会调用unlock_row方法，把不满足条件的记录释放锁 (违背了二段锁协议的约束)。
-        List<JudgeServer> judgeServerList = judgeServerEntityService.list(judgeServerQueryWrapper);
-
-        // 获取可用判题机
-        for (JudgeServer judgeServer : judgeServerList) {
-            if (judgeServer.getTaskNumber() < judgeServer.getMaxTaskNumber()) {
-                judgeServer.setTaskNumber(judgeServer.getTaskNumber() + 1);
-                boolean isOk = judgeServerEntityService.updateById(judgeServer);
-                if (isOk) {
-                    return judgeServer;
-                }
-            }
+    /**
+     * 判题机配置变动很少，短时间缓存避免每次分发都查询数据库，判题机上下线时失效
+     */
+    private List<JudgeServer> getJudgeServerList() {
+        List<JudgeServer> judgeServerList = cachedJudgeServerList;
+        if (judgeServerList == null || System.currentTimeMillis() - cachedTime > JUDGE_SERVER_CACHE_MILLIS) {
+            judgeServerList = judgeServerEntityService.list();
+            cachedJudgeServerList = judgeServerList;
+            cachedTime = System.currentTimeMillis();
         }
-
-        return null;
+        return judgeServerList;
     }
 
     /**
@@ -107,6 +189,24 @@ public class ChooseUtils {
         }
     }
 
+    /**
+     * @param callback 判题机实例上下线时的回调
+     * @MethodName subscribeJudgeServerChange
+     * @Description 订阅判题服务实例的变动事件
+     * @Since 2022/11/25
+     */
+    public void subscribeJudgeServerChange(Runnable callback) {
+        NamingService namingService = nacosServiceManager.getNamingService(discoveryProperties.getNacosProperties());
+        try {
+            namingService.subscribe(judgeServiceName, event -> {
+                cachedJudgeServerList = null;
+                callback.run();
+            });
+        } catch (NacosException e) {
+            log.error("订阅判题服务实例变动事件发生异常--------->", e);
+        }
+    }
+
     @Transactional(rollbackFor = Exception.class)
     public RemoteJudgeAccount chooseRemoteAccount(String remoteOjName) {
         if (RemoteOj.GYM.getName().equals(remoteOjName)) {
@@ -0,0 +1,257 @@
+package com.simplefanc.voj.backend.judge;
+
+import cn.hutool.core.bean.BeanUtil;
+import com.baomidou.mybatisplus.core.conditions.query.QueryWrapper;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.simplefanc.voj.backend.common.utils.RedisUtil;
+import com.simplefanc.voj.backend.dao.contest.ContestEntityService;
+import com.simplefanc.voj.backend.dao.contest.ContestProblemEntityService;
+import com.simplefanc.voj.backend.dao.problem.ProblemEntityService;
+import com.simplefanc.voj.common.constants.ContestEnum;
+import com.simplefanc.voj.common.constants.RedisConstant;
+import com.simplefanc.voj.common.pojo.entity.contest.Contest;
+import com.simplefanc.voj.common.pojo.entity.contest.ContestProblem;
+import com.simplefanc.voj.common.pojo.entity.problem.Problem;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * @Author: chenfan
+ * @Date: 2022/12/6 14:20
+ * @Description: 比赛提交与查询评测结果时使用的比赛元数据缓存，包括比赛、比赛题目的展示id映射与题目的提交限制。
+ * 每场比赛的元数据在本地缓存，并记录读取时Redis中该比赛的版本号，管理员修改后递增版本号，
+ * 各后台服务每秒最多检查一次版本号，发现变化时重新从数据库加载
+ */
+@Component
+@Slf4j(topic = "voj")
+@RequiredArgsConstructor
+public class ContestMetadataCache {
+
+    /**
+     * 检查版本号的最小间隔，其他后台服务的修改最迟在该时间后可见
+     */
+    private static final long VERSION_CHECK_INTERVAL_MILLIS = 1000L;
+
+    /**
+     * 版本号的过期时间，过期后版本号从头开始，也会与本地缓存的版本号不一致而重新加载
+     */
+    private static final long VERSION_EXPIRE_SECOND = 7 * 24 * 3600;
+
+    /**
+     * 判断能否提交只需要题目的这些字段，不缓存题面等大字段
+     */
+    private static final String[] PROBLEM_COLUMNS = {"id", "problem_id", "type", "judge_mode", "time_limit",
+            "memory_limit", "stack_limit", "is_remote", "auth"};
+
+    private final Cache<Long, ContestMetadata> metadataCache = Caffeine.newBuilder()
+            .maximumSize(256)
+            .expireAfterAccess(30, TimeUnit.MINUTES)
+            .build();
+
+    private final RedisUtil redisUtil;
+
+    private final ContestEntityService contestEntityService;
+
+    private final ContestProblemEntityService contestProblemEntityService;
+
+    private final ProblemEntityService problemEntityService;
+
+    /**
+     * @param cid 比赛id
+     * @MethodName getContest
+     * @Description 获取比赛，比赛状态按当前时间计算。返回的是副本，调用方可以修改
+     * @Return 比赛不存在时为null
+     * @Since 2022/12/6
+     */
+    public Contest getContest(Long cid) {
+        ContestMetadata metadata = getMetadata(cid);
+        if (metadata == null) {
+            return null;
+        }
+        Contest contest = BeanUtil.copyProperties(metadata.contest, Contest.class);
+        // 数据库中的状态由定时器每秒更新，缓存中的状态会过时，按比赛时间重新计算
+        return contest.setStatus(getStatus(contest, new Date()));
+    }
+
+    /**
+     * @param cid       比赛id
+     * @param displayId 题目在比赛中的展示id
+     * @MethodName getContestProblem
+     * @Description 获取比赛题目，返回的对象为缓存共享，调用方不可修改
+     * @Return 比赛或题目不存在时为null
+     * @Since 2022/12/6
+     */
+    public ContestProblem getContestProblem(Long cid, String displayId) {
+        ContestMetadata metadata = getMetadata(cid);
+        return metadata == null ? null : metadata.contestProblemMap.get(displayId);
+    }
+
+    /**
+     * @param cid 比赛id
+     * @param pid 题目id
+     * @MethodName getProblem
+     * @Description 获取比赛中题目的提交限制，只包含id、题号、类型、判题模式、时空限制、是否远程与权限，
+     * 返回的对象为缓存共享，调用方不可修改
+     * @Return 比赛或题目不存在时为null
+     * @Since 2022/12/6
+     */
+    public Problem getProblem(Long cid, Long pid) {
+        ContestMetadata metadata = getMetadata(cid);
+        return metadata == null ? null : metadata.problemMap.get(pid);
+    }
+
+    /**
+     * @param cid 比赛id
+     * @MethodName invalidate
+     * @Description 比赛或比赛题目被修改，递增版本号使各后台服务重新加载，在事务中时等到事务提交后再递增
+     * @Since 2022/12/6
+     */
+    public void invalidate(Long cid) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    increaseVersion(cid);
+                }
+            });
+        } else {
+            increaseVersion(cid);
+        }
+    }
+
+    /**
+     * @param pid 题目id
+     * @MethodName invalidateByPid
+     * @Description 题目被修改，使包含该题目的比赛重新加载
+     * @Since 2022/12/6
+     */
+    public void invalidateByPid(Long pid) {
+        QueryWrapper<ContestProblem> queryWrapper = new QueryWrapper<>();
+        queryWrapper.select("DISTINCT cid").eq("pid", pid);
+        for (ContestProblem contestProblem : contestProblemEntityService.list(queryWrapper)) {
+            invalidate(contestProblem.getCid());
+        }
+    }
+
+    private void increaseVersion(Long cid) {
+        metadataCache.invalidate(cid);
+        try {
+            String key = RedisConstant.CONTEST_METADATA_VERSION + cid;
+            redisUtil.incr(key, 1);
+            redisUtil.expire(key, VERSION_EXPIRE_SECOND);
+        } catch (Exception e) {
+            log.error("递增比赛[" + cid + "]元数据版本号发生异常-------------->", e);
+        }
+    }
+
+    private ContestMetadata getMetadata(Long cid) {
+        if (cid == null) {
+            return null;
+        }
+        ContestMetadata metadata = metadataCache.getIfPresent(cid);
+        long now = System.currentTimeMillis();
+        if (metadata != null && now - metadata.checkTime < VERSION_CHECK_INTERVAL_MILLIS) {
+            return metadata;
+        }
+        String version = getVersion(cid);
+        if (metadata != null && version != null && version.equals(metadata.version)) {
+            metadata.checkTime = now;
+            return metadata;
+        }
+        // 先读版本号再加载，加载期间的修改会使版本号变化，下次检查时重新加载
+        metadata = load(cid, version, now);
+        if (metadata == null || version == null) {
+            // 比赛不存在，或Redis不可用时无法判断缓存是否过时，不缓存
+            metadataCache.invalidate(cid);
+        } else {
+            metadataCache.put(cid, metadata);
+        }
+        return metadata;
+    }
+
+    private String getVersion(Long cid) {
+        try {
+            return String.valueOf(redisUtil.get(RedisConstant.CONTEST_METADATA_VERSION + cid));
+        } catch (Exception e) {
+            log.error("获取比赛[" + cid + "]元数据版本号发生异常-------------->", e);
+            return null;
+        }
+    }
+
+    private ContestMetadata load(Long cid, String version, long checkTime) {
+        Contest contest = contestEntityService.getById(cid);
+        if (contest == null) {
+            return null;
+        }
+        QueryWrapper<ContestProblem> contestProblemQueryWrapper = new QueryWrapper<>();
+        contestProblemQueryWrapper.eq("cid", cid);
+        Map<String, ContestProblem> contestProblemMap = contestProblemEntityService.list(contestProblemQueryWrapper)
+                .stream()
+                .collect(Collectors.toMap(ContestProblem::getDisplayId, contestProblem -> contestProblem,
+                        (first, second) -> first));
+
+        Map<Long, Problem> problemMap = Collections.emptyMap();
+        if (!contestProblemMap.isEmpty()) {
+            Set<Long> pidSet = contestProblemMap.values().stream().map(ContestProblem::getPid)
+                    .collect(Collectors.toSet());
+            QueryWrapper<Problem> problemQueryWrapper = new QueryWrapper<>();
+            problemQueryWrapper.select(PROBLEM_COLUMNS).in("id", pidSet);
+            problemMap = problemEntityService.list(problemQueryWrapper).stream()
+                    .collect(Collectors.toMap(Problem::getId, problem -> problem));
+        }
+        return new ContestMetadata(contest, contestProblemMap, problemMap, version, checkTime);
+    }
+
+    /**
+     * 与数据库中更新比赛状态的存储过程一致
+     */
+    private Integer getStatus(Contest contest, Date now) {
+        if (now.before(contest.getStartTime())) {
+            return ContestEnum.STATUS_SCHEDULED.getCode();
+        }
+        if (now.before(contest.getEndTime())) {
+            return ContestEnum.STATUS_RUNNING.getCode();
+        }
+        return ContestEnum.STATUS_ENDED.getCode();
+    }
+
+    private static class ContestMetadata {
+
+        private final Contest contest;
+
+        /**
+         * key: 题目在比赛中的展示id
+         */
+        private final Map<String, ContestProblem> contestProblemMap;
+
+        /**
+         * key: 题目id
+         */
+        private final Map<Long, Problem> problemMap;
+
+        private final String version;
+
+        /**
+         * 最近一次确认版本号未变化的时间
+         */
+        private volatile long checkTime;
+
+        ContestMetadata(Contest contest, Map<String, ContestProblem> contestProblemMap, Map<Long, Problem> problemMap,
+                        String version, long checkTime) {
+            this.contest = contest;
+            this.contestProblemMap = contestProblemMap;
+            this.problemMap = problemMap;
+            this.version = version;
+            this.checkTime = checkTime;
+        }
+    }
+
+}
@@ -1,13 +1,12 @@
 package com.simplefanc.voj.backend.judge;
 
-import cn.hutool.core.lang.UUID;
 import com.baomidou.mybatisplus.core.conditions.update.UpdateWrapper;
 import com.simplefanc.voj.backend.common.constants.CallJudgerType;
 import com.simplefanc.voj.backend.common.utils.RestTemplateUtil;
 import com.simplefanc.voj.backend.dao.judge.JudgeEntityService;
-import com.simplefanc.voj.backend.dao.judge.JudgeServerEntityService;
 import com.simplefanc.voj.backend.dao.judge.RemoteJudgeAccountEntityService;
 import com.simplefanc.voj.common.constants.JudgeStatus;
+import com.simplefanc.voj.common.constants.RedisConstant;
 import com.simplefanc.voj.common.constants.RemoteOj;
 import com.simplefanc.voj.common.pojo.dto.CompileDTO;
 import com.simplefanc.voj.common.pojo.dto.ToJudge;
@@ -17,28 +16,95 @@ import com.simplefanc.voj.common.pojo.entity.judge.RemoteJudgeAccount;
 import com.simplefanc.voj.common.result.CommonResult;
 import com.simplefanc.voj.common.result.ResultStatus;
 import lombok.RequiredArgsConstructor;
+import com.simplefanc.voj.common.utils.IpUtil;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
 import org.springframework.stereotype.Component;
 
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
 import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
 import java.util.concurrent.*;
-import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * @Author: chenfan
  * @Date: 2021/4/15 17:29
- * @Description:
+ * @Description: 判题任务分发，等待中的任务由判题机资源变动事件驱动分配，而非定时轮询。
+ * 本地判题采用异步协议：判题机收到任务后立即应答，评测进度与最终结果通过回调接口通知，
+ * 判题机的槽位在收到结束回调时才释放。槽位归属按任务登记在Redis中，后台服务重启后未回调的任务超时由任一实例回收。
+ * 槽位由各后台服务实例共享，释放时通过Redis发布订阅唤醒所有实例的分发线程
  */
 @Component
 @Slf4j(topic = "voj")
 @RequiredArgsConstructor
 public class Dispatcher {
 
-    private final static ScheduledExecutorService SCHEDULER = Executors.newScheduledThreadPool(20);
+    /**
+     * 单个任务等待判题机资源的最长时间
+     */
+    private final static long MAX_WAIT_MILLIS = 600 * 1000L;
+
+    /**
+     * 没有任何事件时，分发线程检查超时任务的间隔
+     */
+    private final static long IDLE_CHECK_SECONDS = 5;
+
+    /**
+     * 单个任务在判题机上评测的最长时间，超过则视为判题机已失联
+     */
+    private final static long MAX_JUDGE_MILLIS = 600 * 1000L;
+
+    /**
+     * 检查评测中任务所在判题机是否仍在线的间隔
+     */
+    private final static long RECOVER_INTERVAL_MILLIS = 10 * 1000L;
+
+    /**
+     * Redis中登记的评测任务不属于本实例时，超过评测截止时间后再等待该时长才回收，留给所属实例先行处理
+     */
+    private final static long ORPHAN_GRACE_MILLIS = 60 * 1000L;
+
+    /**
+     * 比赛提交在等待队列中的优先时长：比赛提交按提前该时长入队排序，
+     * 等待超过该时长的普通提交排在新到的比赛提交之前，不会因比赛提交持续涌入而一直等到超时
+     */
+    private final static long CONTEST_PRIORITY_MILLIS = 60 * 1000L;
+
+    /**
+     * 判题机失联后任务重新入队的最大次数
+     */
+    private final static int MAX_RETRY_TIMES = 2;
+
+    public final static String JUDGE_CALLBACK_PATH = "/api/judge-callback";
+
+    public final static String TEST_CASE_SYNC_PATH = "/api/test-case-sync";
+
+    /**
+     * key: 是否为远程判题，value: 等待分配判题机的任务
+     */
+    private final static Map<Boolean, PriorityBlockingQueue<SubmitTask>> PENDING_TASK_MAP = Map.of(
+            false, new PriorityBlockingQueue<>(), true, new PriorityBlockingQueue<>());
+
+    private final static AtomicLong SEQUENCE = new AtomicLong(0);
+
+    /**
+     * key: submitId，value: 已被判题机接收、等待结束回调的本地评测任务
+     */
+    private final static Map<Long, SubmitTask> RUNNING_TASK_MAP = new ConcurrentHashMap<>();
 
-    private final static Map<String, ScheduledFuture<?>> FUTURE_TASK_MAP = new ConcurrentHashMap<>(20);
+    private final static BlockingQueue<Boolean> WAKE_UP_SIGNAL = new LinkedBlockingQueue<>(1);
 
-    private final JudgeServerEntityService judgeServerEntityService;
+    private final static ExecutorService DISPATCH_LOOP = Executors.newSingleThreadExecutor();
+
+    private final static ExecutorService CALL_JUDGER_EXECUTOR = Executors.newFixedThreadPool(20);
+
+    private final JudgeServerSlotAllocator slotAllocator;
 
     private final JudgeEntityService judgeEntityService;
 
@@ -48,6 +114,26 @@ public class Dispatcher {
 
     private final RestTemplateUtil restTemplateUtil;
 
+    private final SubmissionStatusHub submissionStatusHub;
+
+    private final ProblemCountCache problemCountCache;
+
+    private final StringRedisTemplate stringRedisTemplate;
+
+    private final RedisMessageListenerContainer redisMessageListenerContainer;
+
+    @Value("${voj-backend.ip}")
+    private String backendIp;
+
+    @Value("${voj-backend.port}")
+    private Integer backendPort;
+
+    private String callbackUrl;
+
+    private String testCaseSyncUrl;
+
+    private volatile long lastRecoverTime;
+
     public CommonResult dispatcher(CallJudgerType type, String path, Object data) {
         switch (type) {
             case JUDGE:
@@ -85,17 +171,224 @@ public class Dispatcher {
     }
 
     public void toJudge(String path, ToJudge data, Long submitId, Boolean isRemote) {
+        toJudge(path, data, submitId, isRemote, null, null);
+    }
+
+    /**
+     * @param onSettled 即将调用判题机或任务最终失败时的回调，用于确认消息队列中的任务
+     * @param onBusy    已确认的任务因判题机已满被拒绝时的回调，用于将任务重新放回消息队列，为null时在本地重新排队
+     */
+    public void toJudge(String path, ToJudge data, Long submitId, Boolean isRemote, Runnable onSettled,
+                        Runnable onBusy) {
         String oj = null;
         if (isRemote) {
             oj = data.getRemoteJudgeProblem().split("-")[0];
         }
-        String key = UUID.randomUUID().toString() + submitId;
-        ScheduledFuture<?> scheduledFuture = SCHEDULER.scheduleWithFixedDelay(
-                new SubmitTask(path, data, submitId, isRemote, oj, key), 0, 2, TimeUnit.SECONDS);
-        FUTURE_TASK_MAP.put(key, scheduledFuture);
+        boolean isContest = data.getJudge().getCid() != null && data.getJudge().getCid() != 0;
+        SubmitTask task = new SubmitTask(path, data, submitId, isRemote, oj, isContest, SEQUENCE.getAndIncrement());
+        task.onSettled = onSettled;
+        task.onBusy = onBusy;
+        PENDING_TASK_MAP.get(isRemote).offer(task);
+        wakeUp();
+    }
+
+    public int getPendingTaskCount(boolean isRemote) {
+        return PENDING_TASK_MAP.get(isRemote).size();
+    }
+
+    /**
+     * @param submitId      提交id
+     * @param judgeServerId 回调的判题机id，旧版本判题机不携带时为null
+     * @MethodName finishJudge
+     * @Description 判题机回调评测结束，释放其占用的槽位。任务登记在Redis中，后台服务重启后的回调同样能释放槽位
+     * @Return 是否存在对应的评测中任务
+     * @Since 2022/11/27
+     */
+    public boolean finishJudge(Long submitId, Integer judgeServerId) {
+        SubmitTask task = RUNNING_TASK_MAP.get(submitId);
+        // 任务已因判题机失联被重新分配时，忽略旧判题机迟到的回调
+        if (task != null && judgeServerId != null && !judgeServerId.equals(task.judgeServer.getId())) {
+            return false;
+        }
+        Integer releasedId = slotAllocator.finishTask(submitId, judgeServerId);
+        if (task != null) {
+            RUNNING_TASK_MAP.remove(submitId, task);
+        }
+        if (releasedId == null) {
+            return false;
+        }
+        chooseUtils.clearBusy(releasedId);
+        // 判题机释放了资源，唤醒等待中的任务
+        wakeUpAll();
+        return true;
+    }
+
+    /**
+     * 唤醒本实例的分发线程，在有新任务入队、判题机上下线时调用
+     */
+    public void wakeUp() {
+        WAKE_UP_SIGNAL.offer(Boolean.TRUE);
+    }
+
+    /**
+     * 判题机释放了槽位，唤醒所有后台服务实例的分发线程，其它实例等待中的任务无需等到下一次定期检查
+     */
+    private void wakeUpAll() {
+        wakeUp();
+        try {
+            stringRedisTemplate.convertAndSend(RedisConstant.JUDGE_SLOT_RELEASE_CHANNEL, "");
+        } catch (Exception e) {
+            log.error("广播判题机槽位释放事件发生异常-------------->", e);
+        }
+    }
+
+    @PostConstruct
+    public void startDispatchLoop() {
+        String ip = "-1".equals(backendIp) ? IpUtil.getServiceIp() : backendIp;
+        callbackUrl = "http://" + ip + ":" + backendPort + JUDGE_CALLBACK_PATH;
+        testCaseSyncUrl = "http://" + ip + ":" + backendPort + TEST_CASE_SYNC_PATH;
+        redisMessageListenerContainer.addMessageListener((message, pattern) -> wakeUp(),
+                new ChannelTopic(RedisConstant.JUDGE_SLOT_RELEASE_CHANNEL));
+        chooseUtils.subscribeJudgeServerChange(() -> {
+            // 判题机下线时尽快回收其上的评测任务
+            lastRecoverTime = 0;
+            wakeUp();
+        });
+        DISPATCH_LOOP.execute(() -> {
+            while (!Thread.currentThread().isInterrupted()) {
+                try {
+                    // 兜底：即使没有收到事件，也定期检查一次超时任务
+                    WAKE_UP_SIGNAL.poll(IDLE_CHECK_SECONDS, TimeUnit.SECONDS);
+                    WAKE_UP_SIGNAL.clear();
+                    if (System.currentTimeMillis() - lastRecoverTime > RECOVER_INTERVAL_MILLIS) {
+                        lastRecoverTime = System.currentTimeMillis();
+                        recoverRunningTask();
+                    }
+                    dispatchPendingTask(false);
+                    dispatchPendingTask(true);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                } catch (Exception e) {
+                    log.error("判题任务分发线程发生异常-------------->", e);
+                }
+            }
+        });
+    }
+
+    @PreDestroy
+    public void stopDispatchLoop() {
+        DISPATCH_LOOP.shutdownNow();
+    }
+
+    /**
+     * 按优先级（比赛提交提前CONTEST_PRIORITY_MILLIS排序，其次按入队顺序）为等待中的任务分配判题机，直到没有空闲判题机为止
+     *
+     * @param isRemote 是否为远程判题任务队列
+     */
+    private void dispatchPendingTask(boolean isRemote) {
+        PriorityBlockingQueue<SubmitTask> queue = PENDING_TASK_MAP.get(isRemote);
+        SubmitTask task;
+        while ((task = queue.peek()) != null) {
+            if (task.isExpired()) {
+                if (queue.remove(task)) {
+                    task.handleSubmitFailure();
+                }
+                continue;
+            }
+            // 本地评测任务在占用槽位的同时登记，宕机时已占用的槽位总能由超时回收释放
+            long judgeDeadline = System.currentTimeMillis() + MAX_JUDGE_MILLIS;
+            JudgeServer judgeServer = isRemote ? chooseUtils.chooseJudgeServer(true)
+                    : chooseUtils.chooseJudgeServer(false, task.submitId, judgeDeadline);
+            // 没有空闲的判题机，等待下一次唤醒
+            if (judgeServer == null) {
+                return;
+            }
+            if (!queue.remove(task)) {
+                if (isRemote) {
+                    reduceCurrentTaskNum(judgeServer.getId());
+                } else if (slotAllocator.finishTask(task.submitId, judgeServer.getId()) != null) {
+                    wakeUpAll();
+                }
+                continue;
+            }
+            if (!isRemote) {
+                // 先登记再调用，避免评测很快结束时回调早于登记
+                task.judgeServer = judgeServer;
+                task.judgeDeadline = judgeDeadline;
+                RUNNING_TASK_MAP.put(task.submitId, task);
+            }
+            final SubmitTask submitTask = task;
+            CALL_JUDGER_EXECUTOR.execute(() -> submitTask.handleJudgeProcess(judgeServer));
+        }
+    }
+
+    /**
+     * 判题机重启或失联后不会再回调，回收其上的评测任务：释放槽位并重新入队，超过重试次数则判为提交失败
+     */
+    private void recoverRunningTask() {
+        Set<Integer> aliveJudgeServerIds = chooseUtils.getAliveJudgeServerIds();
+        for (SubmitTask task : RUNNING_TASK_MAP.values()) {
+            boolean isAlive = aliveJudgeServerIds.contains(task.judgeServer.getId());
+            if (isAlive && System.currentTimeMillis() <= task.judgeDeadline) {
+                continue;
+            }
+            if (!RUNNING_TASK_MAP.remove(task.submitId, task) || !finishRunningTask(task)) {
+                continue;
+            }
+            log.error("判题服务器[{}]失联，回收提交id为{}的评测任务", task.judgeServer.getUrl(), task.submitId);
+            if (isAlive || task.retryTimes >= MAX_RETRY_TIMES) {
+                task.handleSubmitFailure();
+            } else {
+                task.retryTimes++;
+                task.deadline = System.currentTimeMillis() + MAX_WAIT_MILLIS;
+                PENDING_TASK_MAP.get(task.isRemote).offer(task);
+            }
+        }
+        recoverOrphanTask();
+    }
+
+    /**
+     * 回收Redis中登记但不在任何实例内存中的评测任务，如后台服务重启前分配且判题机始终未回调的任务。
+     * 任务数据已随重启丢失，无法重新入队，只能判为提交失败
+     */
+    private void recoverOrphanTask() {
+        for (JudgeServerSlotAllocator.RunningTask runningTask : slotAllocator.getRunningTasks()) {
+            if (RUNNING_TASK_MAP.containsKey(runningTask.getSubmitId())
+                    || System.currentTimeMillis() <= runningTask.getJudgeDeadline() + ORPHAN_GRACE_MILLIS) {
+                continue;
+            }
+            if (slotAllocator.finishTask(runningTask.getSubmitId(), runningTask.getJudgeServerId()) == null) {
+                continue;
+            }
+            log.error("回收判题服务器id为{}上未回调的提交id为{}的评测任务", runningTask.getJudgeServerId(),
+                    runningTask.getSubmitId());
+            UpdateWrapper<Judge> judgeUpdateWrapper = new UpdateWrapper<>();
+            judgeUpdateWrapper.set("status", JudgeStatus.STATUS_SUBMITTED_FAILED.getStatus())
+                    .set("error_message", "Failed to connect the JudgeServer. Please resubmit this submission again!")
+                    .eq("submit_id", runningTask.getSubmitId())
+                    .in("status", JudgeStatus.STATUS_PENDING.getStatus(), JudgeStatus.STATUS_COMPILING.getStatus(),
+                            JudgeStatus.STATUS_JUDGING.getStatus());
+            if (judgeEntityService.update(judgeUpdateWrapper)) {
+                submissionStatusHub.publishFinished(runningTask.getSubmitId());
+            }
+            wakeUpAll();
+        }
     }
 
-    class SubmitTask implements Runnable {
+    /**
+     * 删除本地评测任务在Redis中的登记并释放槽位
+     *
+     * @return 是否由本次调用释放，为false说明已被回调或其它实例处理
+     */
+    private boolean finishRunningTask(SubmitTask task) {
+        if (slotAllocator.finishTask(task.submitId, task.judgeServer.getId()) == null) {
+            return false;
+        }
+        wakeUpAll();
+        return true;
+    }
+
+    class SubmitTask implements Comparable<SubmitTask> {
         /**
          * /judge or /remote-judge
          */
@@ -109,38 +402,103 @@ public class Dispatcher {
 
         String oj;
 
-        String key;
+        boolean isContest;
+
+        long sequence;
+
+        /**
+         * 排序用的入队时间，比赛提交提前CONTEST_PRIORITY_MILLIS，重新入队时保持不变
+         */
+        long priorityTime;
+
+        // 最多等待600s
+        long deadline = System.currentTimeMillis() + MAX_WAIT_MILLIS;
+
+        /**
+         * 异步评测时接收该任务的判题机
+         */
+        JudgeServer judgeServer;
+
+        long judgeDeadline;
 
-        // 尝试600s
-        AtomicInteger count = new AtomicInteger(0);
+        int retryTimes;
 
-        public SubmitTask(String path, ToJudge data, Long submitId, Boolean isRemote, String oj, String key) {
+        Runnable onSettled;
+
+        Runnable onBusy;
+
+        public SubmitTask(String path, ToJudge data, Long submitId, Boolean isRemote, String oj, boolean isContest,
+                          long sequence) {
             this.path = path;
             this.data = data;
             this.submitId = submitId;
             this.isRemote = isRemote;
             this.oj = oj;
-            this.key = key;
+            this.isContest = isContest;
+            this.sequence = sequence;
+            this.priorityTime = System.currentTimeMillis() - (isContest ? CONTEST_PRIORITY_MILLIS : 0);
+        }
+
+        boolean isExpired() {
+            return System.currentTimeMillis() > deadline;
         }
 
         @Override
-        public void run() {
-            // 300次失败则判为提交失败
-            if (count.get() > 300) {
-                handleSubmitFailure();
-                return;
-            }
-            count.getAndIncrement();
-            JudgeServer judgeServer = chooseUtils.chooseJudgeServer(isRemote);
-            // 获取到判题机资源
-            if (judgeServer != null) {
-                handleJudgeProcess(judgeServer);
+        public int compareTo(SubmitTask other) {
+            // 比赛的提交优先，但只提前固定时长，排序依据在入队后不变，可以放在优先队列中
+            if (priorityTime != other.priorityTime) {
+                return Long.compare(priorityTime, other.priorityTime);
             }
+            return Long.compare(sequence, other.sequence);
         }
 
         private void handleJudgeProcess(JudgeServer judgeServer) {
             data.setJudgeServerIp(judgeServer.getIp());
             data.setJudgeServerPort(judgeServer.getPort());
+            data.setJudgeServerId(judgeServer.getId());
+            if (isRemote) {
+                handleRemoteJudgeProcess(judgeServer);
+            } else {
+                handleLocalJudgeProcess(judgeServer);
+            }
+        }
+
+        /**
+         * 本地判题：任务已在分配槽位时登记，判题机接收任务后立即应答，槽位在结束回调或回收时释放
+         */
+        private void handleLocalJudgeProcess(JudgeServer judgeServer) {
+            data.setCallbackUrl(callbackUrl);
+            data.setTestCaseSyncUrl(testCaseSyncUrl);
+            // 调用前先确认消息队列中的任务，避免调用期间被其它实例当作失联任务认领而重复分配，
+            // 之后后台服务宕机由评测中任务的登记回收
+            settle();
+            CommonResult result = null;
+            try {
+                result = restTemplateUtil.post(judgeServer.getUrl(), path, data, CommonResult.class);
+            } catch (Exception e) {
+                log.error("调用判题服务器[" + judgeServer.getUrl() + "]发送异常-------------->", e);
+            }
+            if (result != null && Objects.equals(result.getStatus(), ResultStatus.SUCCESS.getStatus())) {
+                return;
+            }
+            // 判题机已满，释放槽位后重新排队，不计入重试次数
+            if (result != null && Objects.equals(result.getStatus(), ResultStatus.BUSY.getStatus())) {
+                if (RUNNING_TASK_MAP.remove(submitId, this) && finishRunningTask(this)) {
+                    chooseUtils.markBusy(judgeServer.getId());
+                    requeueAfterBusy();
+                }
+                return;
+            }
+            // 判题机未接收该任务，若尚未被回调或回收处理，则由此处判为失败并释放槽位
+            if (RUNNING_TASK_MAP.remove(submitId, this) && finishRunningTask(this)) {
+                checkResult(result, submitId);
+                settle();
+            }
+        }
+
+        private void handleRemoteJudgeProcess(JudgeServer judgeServer) {
+            // 远程评测的结果由判题机轮询获得，获得后回调以便后台服务更新排行榜
+            data.setCallbackUrl(callbackUrl);
             CommonResult result = null;
             try {
                 // https://blog.csdn.net/qq_35893120/article/details/118637987
@@ -154,7 +512,6 @@ public class Dispatcher {
                 if (isRemote) {
                     changeRemoteJudgeStatus(oj, data.getUsername());
                 }
-                cancelFutureTask(key);
             }
         }
 
@@ -164,70 +521,67 @@ public class Dispatcher {
                 changeRemoteJudgeStatus(oj, data.getUsername());
             }
             checkResult(null, submitId);
-            cancelFutureTask(key);
+            settle();
+        }
+
+        /**
+         * 消息队列中的任务已确认，重新放回消息队列，后台服务宕机时不会丢失；放回失败或不是来自消息队列时在本地重新排队
+         */
+        private void requeueAfterBusy() {
+            Runnable callback = onBusy;
+            if (callback != null) {
+                try {
+                    callback.run();
+                    return;
+                } catch (Exception e) {
+                    log.error("提交id为" + submitId + "的评测任务重新放回消息队列发生异常-------------->", e);
+                }
+            }
+            PENDING_TASK_MAP.get(isRemote).offer(this);
+            wakeUp();
+        }
+
+        private void settle() {
+            Runnable callback = onSettled;
+            onSettled = null;
+            if (callback != null) {
+                try {
+                    callback.run();
+                } catch (Exception e) {
+                    log.error("确认提交id为" + submitId + "的评测任务发生异常-------------->", e);
+                }
+            }
         }
 
     }
 
     private void checkResult(CommonResult<Void> result, Long submitId) {
         Judge judge = new Judge();
+        judge.setSubmitId(submitId);
         // 调用失败
         if (result == null) {
-            judge.setSubmitId(submitId);
             judge.setStatus(JudgeStatus.STATUS_SUBMITTED_FAILED.getStatus());
             judge.setErrorMessage("Failed to connect the JudgeServer. Please resubmit this submission again!");
             judgeEntityService.updateById(judge);
+            submissionStatusHub.publishFinished(submitId);
         } else {
             // 如果是结果码不是200 说明调用有错误
             if (result.getStatus() != ResultStatus.SUCCESS.getStatus()) {
                 // 判为系统错误
                 judge.setStatus(JudgeStatus.STATUS_SYSTEM_ERROR.getStatus()).setErrorMessage(result.getMsg());
                 judgeEntityService.updateById(judge);
-            }
-        }
-    }
-
-    private void cancelFutureTask(String key) {
-        ScheduledFuture<?> future = FUTURE_TASK_MAP.get(key);
-        if (future != null) {
-            boolean isCanceled = future.cancel(true);
-            if (isCanceled) {
-                FUTURE_TASK_MAP.remove(key);
+                Judge finishedJudge = submissionStatusHub.publishFinished(submitId);
+                if (finishedJudge != null) {
+                    problemCountCache.recordVerdict(finishedJudge);
+                }
             }
         }
     }
 
     public void reduceCurrentTaskNum(Integer id) {
-        UpdateWrapper<JudgeServer> judgeServerUpdateWrapper = new UpdateWrapper<>();
-        judgeServerUpdateWrapper.setSql("task_number = task_number-1").eq("id", id);
-        boolean isOk = judgeServerEntityService.update(judgeServerUpdateWrapper);
-        if (!isOk) {
-            // 重试八次
-            tryAgainUpdateJudgeServer(judgeServerUpdateWrapper);
-        }
-    }
-
-    public void tryAgainUpdateJudgeServer(UpdateWrapper<JudgeServer> updateWrapper) {
-        boolean retryable;
-        int attemptNumber = 0;
-        do {
-            boolean success = judgeServerEntityService.update(updateWrapper);
-            if (success) {
-                return;
-            } else {
-                attemptNumber++;
-                retryable = attemptNumber < 8;
-                if (attemptNumber == 8) {
-                    break;
-                }
-                try {
-                    Thread.sleep(300);
-                } catch (InterruptedException e) {
-                    e.printStackTrace();
-                }
-            }
-        }
-        while (retryable);
+        slotAllocator.release(id);
+        // 判题机释放了资源，唤醒等待中的任务
+        wakeUpAll();
     }
 
     public void changeRemoteJudgeStatus(String remoteOjName, String username) {
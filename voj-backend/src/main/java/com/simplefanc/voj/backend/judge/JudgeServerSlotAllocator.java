@@ -0,0 +1,218 @@
+package com.simplefanc.voj.backend.judge;
+
+import com.simplefanc.voj.backend.dao.judge.JudgeServerEntityService;
+import com.simplefanc.voj.common.constants.RedisConstant;
+import com.simplefanc.voj.common.pojo.entity.judge.JudgeServer;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.stereotype.Component;
+
+import java.util.*;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * @Author: chenfan
+ * @Date: 2022/11/26 10:12
+ * @Description: 判题机资源槽位分配器，使用Redis Lua脚本原子地选择负载最小的判题机并占用槽位，
+ * 替代对judge_server表加排他锁后更新task_number的方式，task_number只由定时对账写回用于展示。
+ * 本地评测任务占用的槽位在分配时同时登记在Redis中，后台服务重启后仍可由结束回调或超时回收释放
+ */
+@Component
+@Slf4j(topic = "voj")
+@RequiredArgsConstructor
+public class JudgeServerSlotAllocator {
+
+    /**
+     * KEYS: 槽位, 评测中任务；ARGV: submitId（为空则不登记）, 评测截止时间, id1, max1, id2, max2 ...
+     * 选出当前占用数最小且未满的判题机，占用一个槽位并同时登记评测中任务后返回其id，无可用时返回-1。
+     * 槽位与任务登记在同一脚本中写入，后台服务在两者之间宕机时不会留下无任务登记、无法回收的槽位
+     */
+    private static final RedisScript<Long> ACQUIRE_SCRIPT = new DefaultRedisScript<>(
+            "local chosen = -1\n" +
+            "local min = -1\n" +
+            "for i = 3, #ARGV, 2 do\n" +
+            "  local cur = tonumber(redis.call('HGET', KEYS[1], ARGV[i]) or '0')\n" +
+            "  local max = tonumber(ARGV[i + 1])\n" +
+            "  if cur < max and (min == -1 or cur < min) then\n" +
+            "    chosen = ARGV[i]\n" +
+            "    min = cur\n" +
+            "  end\n" +
+            "end\n" +
+            "if chosen ~= -1 then\n" +
+            "  redis.call('HINCRBY', KEYS[1], chosen, 1)\n" +
+            "  if ARGV[1] ~= '' then\n" +
+            "    redis.call('HSET', KEYS[2], ARGV[1], chosen .. ':' .. ARGV[2])\n" +
+            "  end\n" +
+            "end\n" +
+            "return tonumber(chosen)", Long.class);
+
+    /**
+     * ARGV: id 释放一个槽位，不会减到负数
+     */
+    private static final RedisScript<Long> RELEASE_SCRIPT = new DefaultRedisScript<>(
+            "local cur = tonumber(redis.call('HGET', KEYS[1], ARGV[1]) or '0')\n" +
+            "if cur > 0 then\n" +
+            "  return redis.call('HINCRBY', KEYS[1], ARGV[1], -1)\n" +
+            "end\n" +
+            "return 0", Long.class);
+
+    /**
+     * KEYS: 评测中任务, 槽位；ARGV: submitId, judgeServerId（为空则不校验）
+     * 删除任务登记并释放其所在判题机的一个槽位，返回判题机id，任务不存在或判题机不符时返回-1
+     */
+    private static final RedisScript<Long> FINISH_TASK_SCRIPT = new DefaultRedisScript<>(
+            "local value = redis.call('HGET', KEYS[1], ARGV[1])\n" +
+            "if not value then\n" +
+            "  return -1\n" +
+            "end\n" +
+            "local id = string.match(value, '^([^:]+)')\n" +
+            "if ARGV[2] ~= '' and ARGV[2] ~= id then\n" +
+            "  return -1\n" +
+            "end\n" +
+            "redis.call('HDEL', KEYS[1], ARGV[1])\n" +
+            "local cur = tonumber(redis.call('HGET', KEYS[2], id) or '0')\n" +
+            "if cur > 0 then\n" +
+            "  redis.call('HINCRBY', KEYS[2], id, -1)\n" +
+            "end\n" +
+            "return tonumber(id)", Long.class);
+
+    private final StringRedisTemplate stringRedisTemplate;
+
+    private final JudgeServerEntityService judgeServerEntityService;
+
+    /**
+     * @param candidates 候选判题机
+     * @MethodName acquire
+     * @Description 在候选判题机中选择负载最小且有空闲槽位的判题机并占用一个槽位
+     * @Return 选中的判题机，无空闲则为null
+     * @Since 2022/11/26
+     */
+    public JudgeServer acquire(List<JudgeServer> candidates) {
+        return acquire(candidates, null, 0);
+    }
+
+    /**
+     * @param candidates    候选判题机
+     * @param submitId      本地评测任务的提交id，不为null时与槽位一同登记为评测中任务
+     * @param judgeDeadline 评测截止时间，超过仍未回调则视为判题机已失联
+     * @MethodName acquire
+     * @Description 占用槽位的同时原子地登记本地评测任务，任务由结束回调或超时回收释放
+     * @Return 选中的判题机，无空闲则为null
+     * @Since 2022/12/9
+     */
+    public JudgeServer acquire(List<JudgeServer> candidates, Long submitId, long judgeDeadline) {
+        if (candidates.isEmpty()) {
+            return null;
+        }
+        List<String> args = new ArrayList<>(candidates.size() * 2 + 2);
+        args.add(submitId == null ? "" : String.valueOf(submitId));
+        args.add(String.valueOf(judgeDeadline));
+        for (JudgeServer judgeServer : candidates) {
+            args.add(String.valueOf(judgeServer.getId()));
+            args.add(String.valueOf(judgeServer.getMaxTaskNumber()));
+        }
+        Long chosenId = stringRedisTemplate.execute(ACQUIRE_SCRIPT,
+                Arrays.asList(RedisConstant.JUDGE_SERVER_SLOT, RedisConstant.JUDGE_RUNNING_TASK), args.toArray());
+        if (chosenId == null || chosenId < 0) {
+            return null;
+        }
+        for (JudgeServer judgeServer : candidates) {
+            if (chosenId.intValue() == judgeServer.getId()) {
+                return judgeServer;
+            }
+        }
+        return null;
+    }
+
+    public void release(Integer judgeServerId) {
+        stringRedisTemplate.execute(RELEASE_SCRIPT, Collections.singletonList(RedisConstant.JUDGE_SERVER_SLOT),
+                String.valueOf(judgeServerId));
+    }
+
+    /**
+     * @param submitId      提交id
+     * @param judgeServerId 回调的判题机id，为null则不校验
+     * @MethodName finishTask
+     * @Description 原子地删除任务登记并释放其占用的槽位，多个调用方并发处理同一任务时只有一个会成功
+     * @Return 释放槽位的判题机id，任务不存在或判题机不符时为null
+     * @Since 2022/11/27
+     */
+    public Integer finishTask(Long submitId, Integer judgeServerId) {
+        Long releasedId = stringRedisTemplate.execute(FINISH_TASK_SCRIPT,
+                Arrays.asList(RedisConstant.JUDGE_RUNNING_TASK, RedisConstant.JUDGE_SERVER_SLOT),
+                String.valueOf(submitId), judgeServerId == null ? "" : String.valueOf(judgeServerId));
+        return releasedId == null || releasedId < 0 ? null : releasedId.intValue();
+    }
+
+    /**
+     * 获取全部已登记的本地评测任务，包括其它后台服务实例及重启前分配的任务
+     */
+    public List<RunningTask> getRunningTasks() {
+        Map<Object, Object> entries = stringRedisTemplate.opsForHash().entries(RedisConstant.JUDGE_RUNNING_TASK);
+        List<RunningTask> runningTasks = new ArrayList<>(entries.size());
+        for (Map.Entry<Object, Object> entry : entries.entrySet()) {
+            String[] value = entry.getValue().toString().split(":");
+            runningTasks.add(new RunningTask(Long.valueOf(entry.getKey().toString()), Integer.valueOf(value[0]),
+                    Long.parseLong(value[1])));
+        }
+        return runningTasks;
+    }
+
+    public int getCurrentTaskNum(Integer judgeServerId) {
+        Object value = stringRedisTemplate.opsForHash().get(RedisConstant.JUDGE_SERVER_SLOT,
+                String.valueOf(judgeServerId));
+        return value == null ? 0 : Integer.parseInt(value.toString());
+    }
+
+    /**
+     * @MethodName reconcile
+     * @Description 与数据库对账：清除已下线判题机的槽位，并将当前占用数写回judge_server.task_number
+     * @Since 2022/11/26
+     */
+    public void reconcile() {
+        Map<String, JudgeServer> judgeServerMap = judgeServerEntityService.list().stream()
+                .collect(Collectors.toMap(judgeServer -> String.valueOf(judgeServer.getId()), Function.identity()));
+        Map<Object, Object> slots = stringRedisTemplate.opsForHash().entries(RedisConstant.JUDGE_SERVER_SLOT);
+        List<Object> staleIds = new LinkedList<>();
+        List<JudgeServer> needUpdateList = new LinkedList<>();
+        for (Map.Entry<Object, Object> entry : slots.entrySet()) {
+            JudgeServer judgeServer = judgeServerMap.get(entry.getKey().toString());
+            if (judgeServer == null) {
+                staleIds.add(entry.getKey());
+                continue;
+            }
+            int taskNum = Integer.parseInt(entry.getValue().toString());
+            if (!Objects.equals(judgeServer.getTaskNumber(), taskNum)) {
+                needUpdateList.add(new JudgeServer().setId(judgeServer.getId()).setTaskNumber(taskNum));
+            }
+        }
+        if (!staleIds.isEmpty()) {
+            stringRedisTemplate.opsForHash().delete(RedisConstant.JUDGE_SERVER_SLOT, staleIds.toArray());
+        }
+        if (!needUpdateList.isEmpty()) {
+            boolean isOk = judgeServerEntityService.updateBatchById(needUpdateList);
+            if (!isOk) {
+                log.error("判题机当前任务数写回数据库失败------------>{}", needUpdateList);
+            }
+        }
+    }
+
+    @Getter
+    @AllArgsConstructor
+    public static class RunningTask {
+
+        private final Long submitId;
+
+        private final Integer judgeServerId;
+
+        private final long judgeDeadline;
+
+    }
+
+}
@@ -0,0 +1,161 @@
+package com.simplefanc.voj.backend.judge;
+
+import cn.hutool.core.bean.BeanUtil;
+import com.simplefanc.voj.backend.common.utils.RedisUtil;
+import com.simplefanc.voj.backend.mapper.JudgeMapper;
+import com.simplefanc.voj.backend.pojo.vo.ProblemCountVO;
+import com.simplefanc.voj.common.constants.JudgeStatus;
+import com.simplefanc.voj.common.constants.RedisConstant;
+import com.simplefanc.voj.common.pojo.entity.judge.Judge;
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.*;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * @Author: chenfan
+ * @Date: 2022/12/5 9:40
+ * @Description: 非比赛提交的题目评测状态统计。每道题的各状态数量保存在Redis的hash中，提交时与评测结束时增量更新，
+ * 重判时撤销原结果；hash不存在时才从judge表统计该题并写入，每天过期一次以修正并发时可能产生的偏差
+ */
+@Component
+@RequiredArgsConstructor
+public class ProblemCountCache {
+
+    private static final long EXPIRE_SECOND = 24 * 3600;
+
+    /**
+     * 评测结束回调最多重试5次，同一次评测的结果在此时间内只计数一次
+     */
+    private static final long VERDICT_LOCK_EXPIRE_SECOND = 3600;
+
+    private static final String TOTAL_FIELD = "total";
+
+    /**
+     * key: 评测状态码，value: 统计中对应的字段
+     */
+    private static final Map<Integer, String> STATUS_FIELD_MAP = Arrays.stream(JudgeStatus.values())
+            .filter(judgeStatus -> judgeStatus.getColumnName() != null)
+            .collect(Collectors.toMap(JudgeStatus::getStatus, JudgeStatus::getColumnName));
+
+    private final RedisUtil redisUtil;
+
+    private final JudgeMapper judgeMapper;
+
+    public ProblemCountVO getProblemCount(Long pid) {
+        return getProblemCountMap(Collections.singletonList(pid)).get(pid);
+    }
+
+    /**
+     * @param pidList 题目id
+     * @MethodName getProblemCountMap
+     * @Description 批量获取题目的评测状态统计，未缓存的题目一次性从judge表统计
+     * @Return key: 题目id，value: 统计结果
+     * @Since 2022/12/5
+     */
+    public Map<Long, ProblemCountVO> getProblemCountMap(List<Long> pidList) {
+        Map<Long, ProblemCountVO> problemCountMap = new HashMap<>();
+        List<Object> hashList = redisUtil.batchHmget(pidList.stream().map(this::getKey).collect(Collectors.toList()));
+        List<Long> missPidList = new ArrayList<>();
+        for (int i = 0; i < pidList.size(); i++) {
+            Map<?, ?> hash = hashList == null ? null : (Map<?, ?>) hashList.get(i);
+            // 缺少总数说明hash不存在，或在过期后被单独的增量写入
+            if (hash == null || !hash.containsKey(TOTAL_FIELD)) {
+                missPidList.add(pidList.get(i));
+            } else {
+                problemCountMap.put(pidList.get(i),
+                        BeanUtil.fillBeanWithMap(hash, new ProblemCountVO().setPid(pidList.get(i)), false));
+            }
+        }
+        if (!missPidList.isEmpty()) {
+            Map<Long, ProblemCountVO> loadedMap = judgeMapper.getProblemListCount(missPidList).stream()
+                    .collect(Collectors.toMap(ProblemCountVO::getPid, Function.identity()));
+            for (Long pid : missPidList) {
+                ProblemCountVO problemCountVO = loadedMap.getOrDefault(pid, new ProblemCountVO().setPid(pid).setTotal(0));
+                Map<String, Object> hash = new HashMap<>();
+                hash.put(TOTAL_FIELD, problemCountVO.getTotal());
+                for (String field : STATUS_FIELD_MAP.values()) {
+                    Object count = BeanUtil.getFieldValue(problemCountVO, field);
+                    hash.put(field, count == null ? 0 : count);
+                }
+                redisUtil.hmset(getKey(pid), hash, EXPIRE_SECOND);
+                problemCountMap.put(pid, BeanUtil.fillBeanWithMap(hash, problemCountVO, false));
+            }
+        }
+        return problemCountMap;
+    }
+
+    /**
+     * 新的非比赛提交写入judge表后调用
+     */
+    public void recordSubmit(Long pid) {
+        increase(pid, TOTAL_FIELD, 1);
+    }
+
+    /**
+     * @param judge 需包含提交id、题目id、比赛id、状态与版本号
+     * @MethodName recordVerdict
+     * @Description 评测结束后计入该提交的结果
+     * @Since 2022/12/5
+     */
+    public void recordVerdict(Judge judge) {
+        String field = getStatusField(judge);
+        if (field == null) {
+            return;
+        }
+        // 重判后版本号改变，会作为新的结果计数
+        String lockKey = RedisConstant.PROBLEM_COUNT_VERDICT_LOCK + judge.getSubmitId() + ":" + judge.getVersion();
+        if (redisUtil.getLock(lockKey, (int) VERDICT_LOCK_EXPIRE_SECOND)) {
+            increase(judge.getPid(), field, 1);
+        }
+    }
+
+    /**
+     * @param judge 重判前的提交，需包含题目id、比赛id与状态
+     * @MethodName revokeVerdict
+     * @Description 重新评测前撤销该提交原有的结果，在事务中时等到事务提交后再撤销，回滚时统计保持不变
+     * @Since 2022/12/5
+     */
+    public void revokeVerdict(Judge judge) {
+        String field = getStatusField(judge);
+        if (field == null) {
+            return;
+        }
+        // 调用方随后会修改judge的状态，先取出需要的字段
+        Long pid = judge.getPid();
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    increase(pid, field, -1);
+                }
+            });
+        } else {
+            increase(pid, field, -1);
+        }
+    }
+
+    private String getStatusField(Judge judge) {
+        if (judge.getCid() == null || judge.getCid() != 0) {
+            return null;
+        }
+        return STATUS_FIELD_MAP.get(judge.getStatus());
+    }
+
+    private void increase(Long pid, String field, long delta) {
+        String key = getKey(pid);
+        // 未缓存时由下次查询从judge表统计
+        if (redisUtil.hasKey(key)) {
+            redisUtil.hincr(key, field, delta);
+        }
+    }
+
+    private String getKey(Long pid) {
+        return RedisConstant.PROBLEM_COUNT + pid;
+    }
+
+}
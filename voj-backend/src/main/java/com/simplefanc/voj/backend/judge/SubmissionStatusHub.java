@@ -0,0 +1,228 @@
+package com.simplefanc.voj.backend.judge;
+
+import com.baomidou.mybatisplus.core.conditions.query.QueryWrapper;
+import com.simplefanc.voj.backend.common.utils.RedisUtil;
+import com.simplefanc.voj.backend.dao.judge.JudgeEntityService;
+import com.simplefanc.voj.backend.pojo.vo.SubmissionStatusVO;
+import com.simplefanc.voj.common.constants.JudgeStatus;
+import com.simplefanc.voj.common.constants.RedisConstant;
+import com.simplefanc.voj.common.pojo.entity.judge.Judge;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.data.redis.serializer.RedisSerializer;
+import org.springframework.stereotype.Component;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import javax.annotation.PostConstruct;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
+/**
+ * @Author: chenfan
+ * @Date: 2022/12/3 10:30
+ * @Description: 提交评测状态的推送。判题机回调的评测进度与结果通过Redis发布订阅广播到每个后台服务，
+ * 各后台服务再推送给订阅了该提交的客户端，客户端无需轮询查询评测结果
+ */
+@Component
+@Slf4j(topic = "voj")
+@RequiredArgsConstructor
+public class SubmissionStatusHub {
+
+    /**
+     * 推送连接的最长保持时间，超时后客户端重新订阅或退回轮询
+     */
+    private static final long EMITTER_TIMEOUT_MILLIS = 5 * 60 * 1000L;
+
+    private static final String STATUS_EVENT_NAME = "status";
+
+    private static final Set<Integer> UNFINISHED_STATUS_SET = Set.of(
+            JudgeStatus.STATUS_PENDING.getStatus(),
+            JudgeStatus.STATUS_SUBMITTING.getStatus(),
+            JudgeStatus.STATUS_COMPILING.getStatus(),
+            JudgeStatus.STATUS_JUDGING.getStatus());
+
+    /**
+     * key: 提交id，value: 订阅了该提交的客户端
+     */
+    private static final Map<Long, Set<Subscriber>> SUBSCRIBER_MAP = new ConcurrentHashMap<>();
+
+    private final RedisUtil redisUtil;
+
+    private final RedisMessageListenerContainer redisMessageListenerContainer;
+
+    private final RedisSerializer<Object> redisValueSerializer;
+
+    private final JudgeEntityService judgeEntityService;
+
+    @PostConstruct
+    public void subscribe() {
+        redisMessageListenerContainer.addMessageListener(
+                (message, pattern) -> handleMessage(message.getBody()),
+                new ChannelTopic(RedisConstant.JUDGE_STATUS_CHANGE_CHANNEL));
+    }
+
+    public static boolean isFinished(Integer status) {
+        return !UNFINISHED_STATUS_SET.contains(status);
+    }
+
+    /**
+     * @param submitId 提交id
+     * @param cid      比赛id
+     * @param uid      提交用户id
+     * @param status   当前评测状态
+     * @MethodName publishProgress
+     * @Description 通知各后台服务该提交进入新的评测阶段
+     * @Since 2022/12/3
+     */
+    public void publishProgress(Long submitId, Long cid, String uid, Integer status) {
+        redisUtil.sendMessage(RedisConstant.JUDGE_STATUS_CHANGE_CHANNEL, new SubmissionStatusVO()
+                .setSubmitId(submitId).setCid(cid).setUid(uid).setStatus(status).setFinished(false));
+    }
+
+    /**
+     * @param submitId 提交id
+     * @MethodName publishFinished
+     * @Description 评测已结束，查询一次评测结果并通知各后台服务
+     * @Return 查询到的评测结果，不含代码，提交不存在时为null
+     * @Since 2022/12/3
+     */
+    public Judge publishFinished(Long submitId) {
+        QueryWrapper<Judge> queryWrapper = new QueryWrapper<>();
+        queryWrapper.select("submit_id", "uid", "pid", "cid", "submit_time", "status", "time", "memory", "score",
+                "length", "version").eq("submit_id", submitId);
+        Judge judge = judgeEntityService.getOne(queryWrapper, false);
+        if (judge == null) {
+            return null;
+        }
+        redisUtil.sendMessage(RedisConstant.JUDGE_STATUS_CHANGE_CHANNEL, new SubmissionStatusVO()
+                .setSubmitId(judge.getSubmitId()).setCid(judge.getCid()).setUid(judge.getUid())
+                .setSubmitTime(judge.getSubmitTime()).setStatus(judge.getStatus()).setTime(judge.getTime())
+                .setMemory(judge.getMemory()).setScore(judge.getScore()).setLength(judge.getLength())
+                .setFinished(isFinished(judge.getStatus())));
+        return judge;
+    }
+
+    /**
+     * @param submitIds           订阅的提交id
+     * @param viewerUid           订阅者的用户id，未登录时为null
+     * @param isHideOthers        是否隐藏其他用户提交的运行时间、内存与代码长度
+     * @param currentStatusLoader 查询各提交的当前状态，即轮询接口的查询结果，不在其中的提交不推送
+     * @MethodName subscribe
+     * @Description 订阅提交的评测状态，先推送一次当前状态，之后每次状态变化推送一次，全部评测结束后关闭连接
+     * @Return
+     * @Since 2022/12/3
+     */
+    public SseEmitter subscribe(Collection<Long> submitIds, String viewerUid, boolean isHideOthers,
+                                Supplier<Map<Long, Object>> currentStatusLoader) {
+        SseEmitter emitter = new SseEmitter(EMITTER_TIMEOUT_MILLIS);
+        Subscriber subscriber = new Subscriber(emitter, viewerUid, isHideOthers);
+        Runnable unsubscribe = () -> unsubscribe(subscriber);
+        emitter.onCompletion(unsubscribe);
+        emitter.onTimeout(unsubscribe);
+        emitter.onError(e -> unsubscribe.run());
+        // 先注册再查询当前状态，并在推送当前状态之前阻塞状态变化的推送，避免遗漏或乱序
+        synchronized (subscriber) {
+            subscriber.submitIdSet.addAll(submitIds);
+            for (Long submitId : submitIds) {
+                SUBSCRIBER_MAP.computeIfAbsent(submitId, key -> ConcurrentHashMap.newKeySet()).add(subscriber);
+            }
+            Map<Long, Object> currentStatusMap = currentStatusLoader.get();
+            for (Long submitId : submitIds) {
+                Object judge = currentStatusMap.get(submitId);
+                if (judge == null || isFinished(((Judge) judge).getStatus())) {
+                    removeSubmitId(subscriber, submitId);
+                }
+            }
+            if (send(subscriber, currentStatusMap) && subscriber.submitIdSet.isEmpty()) {
+                emitter.complete();
+            }
+        }
+        return emitter;
+    }
+
+    private void handleMessage(byte[] body) {
+        try {
+            SubmissionStatusVO statusVO = (SubmissionStatusVO) redisValueSerializer.deserialize(body);
+            if (statusVO == null) {
+                return;
+            }
+            Set<Subscriber> subscriberSet = SUBSCRIBER_MAP.get(statusVO.getSubmitId());
+            if (subscriberSet == null) {
+                return;
+            }
+            for (Subscriber subscriber : subscriberSet) {
+                SubmissionStatusVO pushVO = statusVO;
+                if (subscriber.isHideOthers && !Objects.equals(subscriber.viewerUid, statusVO.getUid())) {
+                    pushVO = new SubmissionStatusVO().setSubmitId(statusVO.getSubmitId()).setUid(statusVO.getUid())
+                            .setCid(statusVO.getCid()).setSubmitTime(statusVO.getSubmitTime())
+                            .setStatus(statusVO.getStatus()).setScore(statusVO.getScore())
+                            .setFinished(statusVO.getFinished());
+                }
+                synchronized (subscriber) {
+                    if (!subscriber.submitIdSet.contains(statusVO.getSubmitId())
+                            || !send(subscriber, Collections.singletonMap(statusVO.getSubmitId(), pushVO))) {
+                        continue;
+                    }
+                    if (Boolean.TRUE.equals(statusVO.getFinished())) {
+                        removeSubmitId(subscriber, statusVO.getSubmitId());
+                        if (subscriber.submitIdSet.isEmpty()) {
+                            subscriber.emitter.complete();
+                        }
+                    }
+                }
+            }
+        } catch (Exception e) {
+            log.error("处理提交评测状态推送消息发生异常-------------->", e);
+        }
+    }
+
+    private boolean send(Subscriber subscriber, Map<Long, ?> statusMap) {
+        try {
+            subscriber.emitter.send(SseEmitter.event().name(STATUS_EVENT_NAME).data(statusMap));
+            return true;
+        } catch (Exception e) {
+            // 客户端已断开
+            unsubscribe(subscriber);
+            subscriber.emitter.completeWithError(e);
+            return false;
+        }
+    }
+
+    private void unsubscribe(Subscriber subscriber) {
+        for (Long submitId : subscriber.submitIdSet) {
+            removeSubmitId(subscriber, submitId);
+        }
+    }
+
+    private void removeSubmitId(Subscriber subscriber, Long submitId) {
+        subscriber.submitIdSet.remove(submitId);
+        SUBSCRIBER_MAP.computeIfPresent(submitId, (key, subscriberSet) -> {
+            subscriberSet.remove(subscriber);
+            return subscriberSet.isEmpty() ? null : subscriberSet;
+        });
+    }
+
+    private static class Subscriber {
+
+        private final SseEmitter emitter;
+
+        private final String viewerUid;
+
+        private final boolean isHideOthers;
+
+        /**
+         * 尚未评测结束的提交
+         */
+        private final Set<Long> submitIdSet = ConcurrentHashMap.newKeySet();
+
+        Subscriber(SseEmitter emitter, String viewerUid, boolean isHideOthers) {
+            this.emitter = emitter;
+            this.viewerUid = viewerUid;
+            this.isHideOthers = isHideOthers;
+        }
+    }
+
+}
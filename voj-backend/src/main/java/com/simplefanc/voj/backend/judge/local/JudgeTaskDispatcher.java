@@ -2,8 +2,6 @@ package com.simplefanc.voj.backend.judge.local;
 
 import cn.hutool.json.JSONObject;
 import cn.hutool.json.JSONUtil;
-import com.simplefanc.voj.backend.common.constants.QueueConstant;
-import com.simplefanc.voj.backend.common.utils.RedisUtil;
 import com.simplefanc.voj.backend.dao.judge.JudgeEntityService;
 import com.simplefanc.voj.common.constants.JudgeStatus;
 import com.simplefanc.voj.common.pojo.entity.judge.Judge;
@@ -24,7 +22,7 @@ import org.springframework.stereotype.Component;
 @RequiredArgsConstructor
 public class JudgeTaskDispatcher {
 
-    private final RedisUtil redisUtil;
+    private final JudgeTaskStream judgeTaskStream;
 
     private final JudgeEntityService judgeEntityService;
 
@@ -39,12 +37,7 @@ public class JudgeTaskDispatcher {
         task.set("token", judgeToken);
         task.set("isContest", isContest);
         try {
-            boolean isOk;
-            if (isContest) {
-                isOk = redisUtil.llPush(QueueConstant.CONTEST_JUDGE_WAITING, JSONUtil.toJsonStr(task));
-            } else {
-                isOk = redisUtil.llPush(QueueConstant.GENERAL_JUDGE_WAITING, JSONUtil.toJsonStr(task));
-            }
+            boolean isOk = judgeTaskStream.add(isContest, JSONUtil.toJsonStr(task)) != null;
             if (!isOk) {
                 judgeEntityService.updateById(new Judge().setSubmitId(judge.getSubmitId())
                         .setStatus(JudgeStatus.STATUS_SUBMITTED_FAILED.getStatus())
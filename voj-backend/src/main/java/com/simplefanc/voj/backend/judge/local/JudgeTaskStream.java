@@ -0,0 +1,169 @@
+package com.simplefanc.voj.backend.judge.local;
+
+import com.simplefanc.voj.backend.common.constants.QueueConstant;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.domain.Range;
+import org.springframework.data.redis.connection.Limit;
+import org.springframework.data.redis.connection.RedisStreamCommands.XClaimOptions;
+import org.springframework.data.redis.connection.stream.*;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * @Author: chenfan
+ * @Date: 2022/11/27 20:15
+ * @Description: 本地评测任务的Redis Stream操作，已确认的任务会同时从stream中删除，
+ * 因此stream长度即为未完成分配的任务数，首条任务的id时间戳即为最久等待的任务入队时间
+ */
+@Component
+@Slf4j(topic = "voj")
+@RequiredArgsConstructor
+public class JudgeTaskStream {
+
+    public static final String TASK_FIELD = "task";
+
+    private final StringRedisTemplate stringRedisTemplate;
+
+    private final MeterRegistry meterRegistry;
+
+    @PostConstruct
+    public void init() {
+        for (String stream : getStreams()) {
+            try {
+                // 不存在stream时会一并创建
+                stringRedisTemplate.opsForStream().createGroup(stream, ReadOffset.from("0"),
+                        QueueConstant.JUDGE_STREAM_GROUP);
+            } catch (Exception e) {
+                // 消费者组已存在 BUSYGROUP
+                log.debug("评测任务stream[{}]的消费者组已存在", stream);
+            }
+            String queue = QueueConstant.CONTEST_JUDGE_STREAM.equals(stream) ? "contest" : "general";
+            Gauge.builder("voj.judge.queue.depth", this, s -> s.getDepth(stream))
+                    .description("等待分配判题机的本地评测任务数").tag("queue", queue).register(meterRegistry);
+            Gauge.builder("voj.judge.queue.age", this, s -> s.getOldestAgeSeconds(stream))
+                    .description("最久等待的本地评测任务已等待的秒数").tag("queue", queue).register(meterRegistry);
+        }
+    }
+
+    public List<String> getStreams() {
+        return List.of(QueueConstant.CONTEST_JUDGE_STREAM, QueueConstant.GENERAL_JUDGE_STREAM);
+    }
+
+    public String getStream(Boolean isContest) {
+        return isContest ? QueueConstant.CONTEST_JUDGE_STREAM : QueueConstant.GENERAL_JUDGE_STREAM;
+    }
+
+    public RecordId add(Boolean isContest, String taskJsonStr) {
+        return stringRedisTemplate.opsForStream().add(
+                StreamRecords.string(Collections.singletonMap(TASK_FIELD, taskJsonStr)).withStreamKey(getStream(isContest)));
+    }
+
+    /**
+     * @param consumer 当前后台服务实例的消费者名字
+     * @param count    两个stream合计最多读取的任务数
+     * @param block    没有新任务时最长阻塞等待时间
+     * @MethodName read
+     * @Description 读取尚未投递给任何消费者的新任务，先读比赛任务，剩余的额度再读普通任务
+     * @Since 2022/11/27
+     */
+    public List<MapRecord<String, Object, Object>> read(String consumer, int count, Duration block) {
+        List<MapRecord<String, Object, Object>> records = readNew(consumer, count);
+        if (records.isEmpty()) {
+            // 对消费者组阻塞读取多个stream时COUNT作用于每个stream，因此只等待新任务而不读取，有新任务后再按额度读取
+            stringRedisTemplate.opsForStream().read(StreamReadOptions.empty().count(1).block(block),
+                    StreamOffset.create(QueueConstant.CONTEST_JUDGE_STREAM, ReadOffset.latest()),
+                    StreamOffset.create(QueueConstant.GENERAL_JUDGE_STREAM, ReadOffset.latest()));
+            records = readNew(consumer, count);
+        }
+        return records;
+    }
+
+    private List<MapRecord<String, Object, Object>> readNew(String consumer, int count) {
+        List<MapRecord<String, Object, Object>> records = new ArrayList<>();
+        for (String stream : getStreams()) {
+            if (records.size() >= count) {
+                break;
+            }
+            List<MapRecord<String, Object, Object>> streamRecords = stringRedisTemplate.opsForStream().read(
+                    Consumer.from(QueueConstant.JUDGE_STREAM_GROUP, consumer),
+                    StreamReadOptions.empty().count(count - records.size()),
+                    StreamOffset.create(stream, ReadOffset.lastConsumed()));
+            if (streamRecords != null) {
+                records.addAll(streamRecords);
+            }
+        }
+        return records;
+    }
+
+    public void ack(String stream, RecordId recordId) {
+        stringRedisTemplate.opsForStream().acknowledge(stream, QueueConstant.JUDGE_STREAM_GROUP, recordId);
+        stringRedisTemplate.opsForStream().delete(stream, recordId);
+    }
+
+    /**
+     * 仍由当前实例持有的任务重新认领给自己，重置其空闲时间，避免被其它实例当作失联任务认领
+     */
+    public void keepAlive(String stream, String consumer, List<RecordId> recordIds) {
+        if (recordIds.isEmpty()) {
+            return;
+        }
+        XClaimOptions options = XClaimOptions.minIdle(Duration.ZERO).ids(recordIds.toArray(new RecordId[0]));
+        stringRedisTemplate.execute((RedisCallback<List<RecordId>>) connection -> connection
+                .xClaimJustId(stream.getBytes(StandardCharsets.UTF_8), QueueConstant.JUDGE_STREAM_GROUP, consumer, options));
+    }
+
+    /**
+     * @MethodName getPending
+     * @Description 获取已投递但尚未确认的任务及其空闲时间、投递次数
+     * @Since 2022/11/27
+     */
+    public PendingMessages getPending(String stream, long count) {
+        return stringRedisTemplate.opsForStream().pending(stream, QueueConstant.JUDGE_STREAM_GROUP, Range.unbounded(),
+                count);
+    }
+
+    /**
+     * 认领失联实例持有的任务，minIdle保证多个实例并发认领同一任务时只有一个会成功
+     */
+    public List<MapRecord<String, Object, Object>> claim(String stream, String consumer, Duration minIdle,
+                                                         List<RecordId> recordIds) {
+        if (recordIds.isEmpty()) {
+            return Collections.emptyList();
+        }
+        return stringRedisTemplate.opsForStream().claim(stream, QueueConstant.JUDGE_STREAM_GROUP, consumer, minIdle,
+                recordIds.toArray(new RecordId[0]));
+    }
+
+    public String getTask(MapRecord<String, Object, Object> record) {
+        Map<Object, Object> value = record.getValue();
+        Object task = value.get(TASK_FIELD);
+        return task == null ? null : task.toString();
+    }
+
+    public long getDepth(String stream) {
+        Long size = stringRedisTemplate.opsForStream().size(stream);
+        return size == null ? 0 : size;
+    }
+
+    public long getOldestAgeSeconds(String stream) {
+        List<MapRecord<String, Object, Object>> records = stringRedisTemplate.opsForStream().range(stream,
+                Range.unbounded(), Limit.limit().count(1));
+        if (records == null || records.isEmpty()) {
+            return 0;
+        }
+        return Math.max(0, (System.currentTimeMillis() - records.get(0).getId().getTimestamp()) / 1000);
+    }
+
+}
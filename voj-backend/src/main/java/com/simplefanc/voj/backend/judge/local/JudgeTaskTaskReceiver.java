@@ -2,59 +2,199 @@ package com.simplefanc.voj.backend.judge.local;
 
 import cn.hutool.json.JSONObject;
 import cn.hutool.json.JSONUtil;
-import com.simplefanc.voj.backend.common.constants.CallJudgerType;
+import com.alibaba.cloud.nacos.NacosDiscoveryProperties;
 import com.simplefanc.voj.backend.common.constants.QueueConstant;
-import com.simplefanc.voj.backend.common.utils.RedisUtil;
-import com.simplefanc.voj.backend.judge.AbstractTaskReceiver;
+import com.simplefanc.voj.backend.dao.judge.JudgeEntityService;
 import com.simplefanc.voj.backend.judge.Dispatcher;
+import com.simplefanc.voj.common.constants.JudgeStatus;
 import com.simplefanc.voj.common.pojo.dto.ToJudge;
 import com.simplefanc.voj.common.pojo.entity.judge.Judge;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
-import org.springframework.scheduling.annotation.Async;
+import org.springframework.data.redis.connection.stream.MapRecord;
+import org.springframework.data.redis.connection.stream.PendingMessage;
+import org.springframework.data.redis.connection.stream.RecordId;
 import org.springframework.stereotype.Component;
 
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.*;
+
 /**
  * @Author: chenfan
  * @Date: 2021/2/5 16:43
- * @Description:
+ * @Description: 以消费者组的方式消费评测任务stream，多个后台服务实例可同时消费。
+ * 任务在调用判题机之前确认，此时任务已与判题机槽位一同登记为评测中任务，之后由评测中任务的回收处理宕机，
+ * 认领失联实例的任务时不会与进行中的调用重复分配。实例宕机时其持有的尚未调用判题机的任务会在数秒后被其它实例认领重新分配
  */
 @Component
 @Slf4j(topic = "voj")
 @RequiredArgsConstructor
-public class JudgeTaskTaskReceiver extends AbstractTaskReceiver {
+public class JudgeTaskTaskReceiver {
+
+    /**
+     * 本地最多缓冲的等待分配判题机的任务数，超过则暂停读取，其余任务留在stream中供其它实例消费
+     */
+    private final static int MAX_LOCAL_PENDING = 20;
+
+    private final static Duration READ_BLOCK = Duration.ofSeconds(2);
+
+    /**
+     * 续期持有任务、检查失联任务的间隔
+     */
+    private final static long MAINTAIN_INTERVAL_MILLIS = 5 * 1000L;
+
+    /**
+     * 未确认任务超过该空闲时间则认为持有它的实例已失联
+     */
+    private final static Duration STALE_IDLE = Duration.ofSeconds(15);
+
+    /**
+     * 任务被投递的最大次数，超过则判为提交失败，避免异常任务反复被认领
+     */
+    private final static long MAX_DELIVERY_TIMES = 5;
+
+    private final static long PENDING_SCAN_COUNT = 100;
+
+    /**
+     * key: 已读取但尚未确认的任务id，value: 所在的stream
+     */
+    private final static Map<RecordId, String> HELD_RECORD_MAP = new ConcurrentHashMap<>();
+
+    private final static BlockingQueue<Boolean> WAKE_UP_SIGNAL = new LinkedBlockingQueue<>(1);
+
+    private final static ExecutorService CONSUME_LOOP = Executors.newSingleThreadExecutor();
 
     private final Dispatcher dispatcher;
 
-    private final RedisUtil redisUtil;
+    private final JudgeTaskStream judgeTaskStream;
+
+    private final JudgeEntityService judgeEntityService;
+
+    private final NacosDiscoveryProperties discoveryProperties;
+
+    private String consumerName;
+
+    private long lastMaintainTime;
 
-    @Async("judgeTaskAsyncPool")
+    /**
+     * 唤醒因本地缓冲已满而暂停读取的消费线程
+     */
     public void processWaitingTask() {
-        // 优先处理比赛的提交
-        // 其次处理普通提交的提交
-        this.handleWaitingTask(QueueConstant.CONTEST_JUDGE_WAITING, QueueConstant.GENERAL_JUDGE_WAITING);
+        WAKE_UP_SIGNAL.offer(Boolean.TRUE);
     }
 
-    @Override
-    public String getTaskFromRedis(String queue) {
-        long size = redisUtil.lGetListSize(queue);
-        if (size > 0) {
-            return (String) redisUtil.lrPop(queue);
-        } else {
-            return null;
-        }
+    @PostConstruct
+    public void startConsumeLoop() {
+        consumerName = discoveryProperties.getIp() + ":" + discoveryProperties.getPort();
+        CONSUME_LOOP.execute(() -> {
+            while (!Thread.currentThread().isInterrupted()) {
+                try {
+                    if (System.currentTimeMillis() - lastMaintainTime > MAINTAIN_INTERVAL_MILLIS) {
+                        lastMaintainTime = System.currentTimeMillis();
+                        keepHeldTaskAlive();
+                        claimStaleTask();
+                    }
+                    int freeSize = MAX_LOCAL_PENDING - dispatcher.getPendingTaskCount(false);
+                    if (freeSize <= 0) {
+                        WAKE_UP_SIGNAL.poll(1, TimeUnit.SECONDS);
+                        continue;
+                    }
+                    for (MapRecord<String, Object, Object> record : judgeTaskStream.read(consumerName, freeSize, READ_BLOCK)) {
+                        handleTask(record);
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                } catch (Exception e) {
+                    log.error("消费评测任务stream发生异常-------------->", e);
+                    try {
+                        TimeUnit.SECONDS.sleep(1);
+                    } catch (InterruptedException ex) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+            }
+        });
+    }
+
+    @PreDestroy
+    public void stopConsumeLoop() {
+        CONSUME_LOOP.shutdownNow();
     }
 
-    @Override
-    public void handleTask(String taskJsonStr) {
+    private void handleTask(MapRecord<String, Object, Object> record) {
+        String stream = record.getStream();
+        RecordId recordId = record.getId();
+        String taskJsonStr = judgeTaskStream.getTask(record);
+        if (taskJsonStr == null) {
+            judgeTaskStream.ack(stream, recordId);
+            return;
+        }
         JSONObject task = JSONUtil.parseObj(taskJsonStr);
         Judge judge = task.get("judge", Judge.class);
         String token = task.getStr("token");
-        // 调用判题服务
-        dispatcher.dispatcher(CallJudgerType.JUDGE, "/judge",
-                new ToJudge().setJudge(judge).setToken(token).setRemoteJudgeProblem(null));
-        // 接着处理任务
-        processWaitingTask();
+        HELD_RECORD_MAP.put(recordId, stream);
+        // 调用判题服务，调用判题机之前或任务最终失败时确认；判题机已满时重新放回stream
+        dispatcher.toJudge("/judge", new ToJudge().setJudge(judge).setToken(token).setRemoteJudgeProblem(null),
+                judge.getSubmitId(), false, () -> {
+                    HELD_RECORD_MAP.remove(recordId);
+                    judgeTaskStream.ack(stream, recordId);
+                }, () -> judgeTaskStream.add(QueueConstant.CONTEST_JUDGE_STREAM.equals(stream), taskJsonStr));
+    }
+
+    private void keepHeldTaskAlive() {
+        for (String stream : judgeTaskStream.getStreams()) {
+            List<RecordId> recordIds = new LinkedList<>();
+            HELD_RECORD_MAP.forEach((recordId, heldStream) -> {
+                if (stream.equals(heldStream)) {
+                    recordIds.add(recordId);
+                }
+            });
+            judgeTaskStream.keepAlive(stream, consumerName, recordIds);
+        }
+    }
+
+    /**
+     * 认领失联实例持有的任务，已被判题机开始评测的任务只确认不再分配
+     */
+    private void claimStaleTask() {
+        for (String stream : judgeTaskStream.getStreams()) {
+            Map<RecordId, Long> deliveryTimesMap = new HashMap<>();
+            for (PendingMessage pendingMessage : judgeTaskStream.getPending(stream, PENDING_SCAN_COUNT)) {
+                if (pendingMessage.getElapsedTimeSinceLastDelivery().compareTo(STALE_IDLE) > 0
+                        && !HELD_RECORD_MAP.containsKey(pendingMessage.getId())) {
+                    deliveryTimesMap.put(pendingMessage.getId(), pendingMessage.getTotalDeliveryCount());
+                }
+            }
+            List<MapRecord<String, Object, Object>> records = judgeTaskStream.claim(stream, consumerName, STALE_IDLE,
+                    new ArrayList<>(deliveryTimesMap.keySet()));
+            for (MapRecord<String, Object, Object> record : records) {
+                // 认领本身也算一次投递
+                handleStaleTask(record, deliveryTimesMap.getOrDefault(record.getId(), 0L) + 1);
+            }
+        }
+    }
+
+    private void handleStaleTask(MapRecord<String, Object, Object> record, long deliveryTimes) {
+        String taskJsonStr = judgeTaskStream.getTask(record);
+        Judge judge = taskJsonStr == null ? null : JSONUtil.parseObj(taskJsonStr).get("judge", Judge.class);
+        Judge current = judge == null ? null : judgeEntityService.getById(judge.getSubmitId());
+        if (current == null || !Objects.equals(current.getStatus(), JudgeStatus.STATUS_PENDING.getStatus())) {
+            judgeTaskStream.ack(record.getStream(), record.getId());
+            return;
+        }
+        if (deliveryTimes > MAX_DELIVERY_TIMES) {
+            log.error("提交id为{}的评测任务已被投递{}次，判为提交失败", judge.getSubmitId(), deliveryTimes);
+            judgeEntityService.updateById(new Judge().setSubmitId(judge.getSubmitId())
+                    .setStatus(JudgeStatus.STATUS_SUBMITTED_FAILED.getStatus())
+                    .setErrorMessage("Please try to submit again!"));
+            judgeTaskStream.ack(record.getStream(), record.getId());
+            return;
+        }
+        log.warn("认领失联实例持有的评测任务，提交id为{}", judge.getSubmitId());
+        handleTask(record);
     }
 
-}
\ No newline at end of file
+}
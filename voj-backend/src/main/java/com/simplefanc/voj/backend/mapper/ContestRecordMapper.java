@@ -22,14 +22,6 @@ public interface ContestRecordMapper extends BaseMapper<ContestRecord> {
 
     List<ContestRecord> getACInfo(@Param("status") Integer status, @Param("cid") Long cid);
 
-    List<ContestRecordVO> getOIContestRecordByRecentSubmission(@Param("cid") Long cid,
-                                                               @Param("isOpenSealRank") Boolean isOpenSealRank,
-                                                               @Param("sealTime") Date sealTime, @Param("startTime") Date startTime, @Param("endTime") Date endTime);
-
-    List<ContestRecordVO> getOIContestRecordByHighestSubmission(@Param("cid") Long cid,
-                                                                @Param("isOpenSealRank") Boolean isOpenSealRank,
-                                                                @Param("sealTime") Date sealTime, @Param("startTime") Date startTime, @Param("endTime") Date endTime);
-
     List<ContestRecordVO> getACMContestRecord(@Param("cid") Long cid, @Param("startTime") Date startTime);
 
 }
@@ -23,10 +23,16 @@ import java.util.List;
 @Mapper
 public interface JudgeMapper extends BaseMapper<Judge> {
 
-    IPage<JudgeVO> getCommonJudgeList(Page<JudgeVO> page, @Param("searchPid") String searchPid,
+    IPage<JudgeVO> getCommonJudgeList(Page<JudgeVO> page, @Param("pid") Long pid, @Param("searchPid") String searchPid,
                                       @Param("status") Integer status, @Param("username") String username, @Param("uid") String uid,
                                       @Param("completeProblemId") Boolean completeProblemId);
 
+    List<JudgeVO> getCommonJudgeListBefore(@Param("limit") Integer limit, @Param("beforeSubmitTime") Date beforeSubmitTime,
+                                           @Param("beforeSubmitId") Long beforeSubmitId, @Param("pid") Long pid,
+                                           @Param("searchPid") String searchPid, @Param("status") Integer status,
+                                           @Param("username") String username, @Param("uid") String uid,
+                                           @Param("completeProblemId") Boolean completeProblemId);
+
     // TODO 参数过多
     IPage<JudgeVO> getContestJudgeList(Page<JudgeVO> page, @Param("displayId") String displayId, @Param("cid") Long cid,
                                        @Param("status") Integer status, @Param("username") String username, @Param("uid") String uid,
@@ -40,8 +46,6 @@ public interface JudgeMapper extends BaseMapper<Judge> {
                                           @Param("startTime") Date startTime, @Param("sealRankTime") Date sealRankTime,
                                           @Param("adminList") List<String> adminList);
 
-    ProblemCountVO getProblemCount(@Param("pid") Long pid);
-
     List<ProblemCountVO> getProblemListCount(@Param("pidList") List<Long> pidList);
 
 }
@@ -5,6 +5,7 @@ import com.baomidou.mybatisplus.extension.plugins.pagination.Page;
 import com.simplefanc.voj.backend.pojo.vo.ACMRankVO;
 import com.simplefanc.voj.backend.pojo.vo.OIRankVO;
 import com.simplefanc.voj.backend.pojo.vo.UserHomeVO;
+import com.simplefanc.voj.common.pojo.entity.user.UserRecord;
 import org.apache.ibatis.annotations.Mapper;
 import org.apache.ibatis.annotations.Param;
 
@@ -23,10 +24,22 @@ public interface UserRecordMapper {
 
     IPage<ACMRankVO> getACMRankList(Page<ACMRankVO> page, @Param("uidList") List<String> uidList);
 
+    List<ACMRankVO> getACMRankListByUidList(@Param("uidList") List<String> uidList);
+
     List<ACMRankVO> getRecent7ACRank();
 
     IPage<OIRankVO> getOIRankList(Page<OIRankVO> page, @Param("uidList") List<String> uidList);
 
+    List<OIRankVO> getOIRankListByUidList(@Param("uidList") List<String> uidList);
+
     UserHomeVO getUserHomeInfo(@Param("uid") String uid, @Param("username") String username);
 
+    int updateUserRecord(@Param("uid") String uid);
+
+    int insertUserRecordIfAbsent(@Param("uid") String uid);
+
+    int initUserRecord();
+
+    List<UserRecord> getRankUserRecordList(@Param("uid") String uid);
+
 }
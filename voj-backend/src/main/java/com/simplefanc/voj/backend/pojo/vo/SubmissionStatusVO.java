@@ -0,0 +1,50 @@
+package com.simplefanc.voj.backend.pojo.vo;
+
+import io.swagger.annotations.ApiModel;
+import io.swagger.annotations.ApiModelProperty;
+import lombok.Data;
+import lombok.experimental.Accessors;
+
+import java.util.Date;
+
+/**
+ * @Author: chenfan
+ * @Date: 2022/12/3 10:12
+ * @Description:
+ */
+@Data
+@Accessors(chain = true)
+@ApiModel(value = "推送的提交评测状态", description = "")
+public class SubmissionStatusVO {
+
+    @ApiModelProperty(value = "提交id")
+    private Long submitId;
+
+    @ApiModelProperty(value = "用户id")
+    private String uid;
+
+    @ApiModelProperty(value = "比赛id，非比赛题目默认为0")
+    private Long cid;
+
+    @ApiModelProperty(value = "提交的时间")
+    private Date submitTime;
+
+    @ApiModelProperty(value = "结果码具体参考文档")
+    private Integer status;
+
+    @ApiModelProperty(value = "运行时间(ms)")
+    private Integer time;
+
+    @ApiModelProperty(value = "运行内存（b）")
+    private Integer memory;
+
+    @ApiModelProperty(value = "题目得分，ACM题目默认为null")
+    private Integer score;
+
+    @ApiModelProperty(value = "代码长度")
+    private Integer length;
+
+    @ApiModelProperty(value = "评测是否已结束")
+    private Boolean finished;
+
+}
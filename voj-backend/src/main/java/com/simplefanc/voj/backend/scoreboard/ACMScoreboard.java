@@ -0,0 +1,218 @@
+package com.simplefanc.voj.backend.scoreboard;
+
+import cn.hutool.core.date.DateUtil;
+import com.simplefanc.voj.backend.pojo.vo.ACMContestRankVO;
+import com.simplefanc.voj.common.constants.ContestEnum;
+import com.simplefanc.voj.common.pojo.entity.contest.Contest;
+
+import java.util.*;
+
+/**
+ * @Author: chenfan
+ * @Date: 2022/12/1 11:02
+ * @Description: 单场ACM比赛的排行榜，额外维护各题的AC时间索引，first AC变化时重新计算受影响的用户
+ */
+class ACMScoreboard extends ContestScoreboard<ACMContestRankVO> {
+
+    /**
+     * 先以总ac数降序，再以总耗时升序
+     */
+    private static final Comparator<ACMContestRankVO> SCORE_COMPARATOR = Comparator
+            .comparing(ACMContestRankVO::getAc, Comparator.reverseOrder())
+            .thenComparing(ACMContestRankVO::getTotalTime);
+
+    /**
+     * 成绩相同时按用户id保证顺序稳定
+     */
+    private static final Comparator<ACMContestRankVO> RANK_COMPARATOR = SCORE_COMPARATOR
+            .thenComparing(ACMContestRankVO::getUid);
+
+    private static final Comparator<RecordItem> RECORD_COMPARATOR = Comparator
+            .comparing((RecordItem item) -> item.time)
+            .thenComparing(item -> item.id);
+
+    /**
+     * key: 题目展示id，value: 该题各个AC时间对应的用户，最早的即为first AC
+     */
+    private final Map<String, TreeMap<Long, Set<String>>> acTimeIndex = new HashMap<>();
+
+    /**
+     * key: 用户id，value: 该用户各题首次AC的时间
+     */
+    private final Map<String, Map<String, Long>> userAcTimeMap = new HashMap<>();
+
+    ACMScoreboard(Contest contest, boolean isOpenSealRank, Set<String> excludedUidSet) {
+        super(contest, isOpenSealRank, excludedUidSet, SCORE_COMPARATOR, RANK_COMPARATOR);
+    }
+
+    @Override
+    protected boolean isInRankTime(Date submitTime) {
+        // 封榜时段内的提交也参与统计，只计入尝试次数
+        return true;
+    }
+
+    @Override
+    protected void onInit() {
+        for (BoardUser<ACMContestRankVO> user : userMap.values()) {
+            updateAcTimeIndex(user);
+        }
+    }
+
+    @Override
+    protected Set<String> onUserChanged(BoardUser<ACMContestRankVO> user) {
+        return updateAcTimeIndex(user);
+    }
+
+    @Override
+    protected ACMContestRankVO render(BoardUser<ACMContestRankVO> user) {
+        Map<String, List<RecordItem>> problemRecordMap = new HashMap<>();
+        for (RecordItem item : user.recordMap.values()) {
+            problemRecordMap.computeIfAbsent(item.displayId, key -> new ArrayList<>()).add(item);
+        }
+
+        int ac = 0;
+        int total = 0;
+        long totalTime = 0L;
+        HashMap<String, HashMap<String, Object>> submissionInfo = new HashMap<>();
+        for (Map.Entry<String, List<RecordItem>> entry : problemRecordMap.entrySet()) {
+            String displayId = entry.getKey();
+            List<RecordItem> itemList = entry.getValue();
+            // 记录按题目提交耗时time升序
+            itemList.sort(RECORD_COMPARATOR);
+            HashMap<String, Object> problemSubmissionInfo = new HashMap<>();
+            problemSubmissionInfo.put("errorNum", 0);
+            for (RecordItem item : itemList) {
+                total++;
+                // 如果是当前是开启封榜的时段和同时该提交是处于封榜时段 尝试次数+1
+                if (isInSealTimeSubmission(item)) {
+                    int tryNum = (int) problemSubmissionInfo.getOrDefault("tryNum", 0);
+                    problemSubmissionInfo.put("tryNum", tryNum + 1);
+                    continue;
+                }
+                // 如果该题目已经AC过了，其它都不记录了
+                if ((Boolean) problemSubmissionInfo.getOrDefault("isAC", false)) {
+                    continue;
+                }
+                int errorNumber = (int) problemSubmissionInfo.get("errorNum");
+                if (item.status.intValue() == ContestEnum.RECORD_AC.getCode()) {
+                    ac++;
+                    // 相同提交时间也是first AC
+                    TreeMap<Long, Set<String>> acTimeUsers = acTimeIndex.get(displayId);
+                    boolean isFirstAc = acTimeUsers != null && acTimeUsers.firstKey().longValue() == item.time;
+                    problemSubmissionInfo.put("isAC", true);
+                    problemSubmissionInfo.put("isFirstAC", isFirstAc);
+                    problemSubmissionInfo.put("ACTime", item.time);
+                    // 所谓“罚时”指的是做出题目所用的总时间，加上提交错误所付出的代价，每提交错误一次，会罚时20分钟。
+                    totalTime += errorNumber * 20 * 60 + item.time;
+                } else if (item.status.intValue() == ContestEnum.RECORD_NOT_AC_PENALTY.getCode()) {
+                    // 未通过同时需要记录罚时次数
+                    problemSubmissionInfo.put("errorNum", errorNumber + 1);
+                }
+            }
+            submissionInfo.put(displayId, problemSubmissionInfo);
+        }
+
+        return new ACMContestRankVO()
+                .setUid(user.userInfo.getUuid())
+                .setUsername(user.userInfo.getUsername())
+                .setRealname(user.userInfo.getRealname())
+                .setNickname(user.userInfo.getNickname())
+                .setSchool(user.userInfo.getSchool())
+                .setGender(user.userInfo.getGender())
+                .setAvatar(user.userInfo.getAvatar())
+                .setAc(ac)
+                .setTotal(total)
+                .setTotalTime(totalTime)
+                .setSubmissionInfo(submissionInfo);
+    }
+
+    @Override
+    protected ACMContestRankVO copy(ACMContestRankVO rankVO) {
+        return new ACMContestRankVO()
+                .setUid(rankVO.getUid())
+                .setUsername(rankVO.getUsername())
+                .setRealname(rankVO.getRealname())
+                .setNickname(rankVO.getNickname())
+                .setSchool(rankVO.getSchool())
+                .setGender(rankVO.getGender())
+                .setAvatar(rankVO.getAvatar())
+                .setAc(rankVO.getAc())
+                .setTotalTime(rankVO.getTotalTime())
+                .setTotal(rankVO.getTotal())
+                // 每次重新计算都会生成新的提交详情，已生成的不会再被修改
+                .setSubmissionInfo(rankVO.getSubmissionInfo());
+    }
+
+    @Override
+    protected void setRankNo(ACMContestRankVO rankVO, int seq, int rank) {
+        rankVO.setSeq(seq).setRank(rank);
+    }
+
+    /**
+     * 重新计算该用户每道题首次AC的时间并更新各题的AC时间索引，封榜时段内的提交不计入
+     *
+     * @return first AC发生变化，需要重新计算的其它用户
+     */
+    private Set<String> updateAcTimeIndex(BoardUser<ACMContestRankVO> user) {
+        Map<String, RecordItem> firstAcItemMap = new HashMap<>();
+        for (RecordItem item : user.recordMap.values()) {
+            if (item.status.intValue() != ContestEnum.RECORD_AC.getCode() || isInSealTimeSubmission(item)) {
+                continue;
+            }
+            RecordItem firstAcItem = firstAcItemMap.get(item.displayId);
+            if (firstAcItem == null || RECORD_COMPARATOR.compare(item, firstAcItem) < 0) {
+                firstAcItemMap.put(item.displayId, item);
+            }
+        }
+        Map<String, Long> newAcTimeMap = new HashMap<>();
+        firstAcItemMap.forEach((displayId, item) -> newAcTimeMap.put(displayId, item.time));
+
+        String uid = user.userInfo.getUuid();
+        Map<String, Long> oldAcTimeMap = userAcTimeMap.getOrDefault(uid, Collections.emptyMap());
+        Set<String> displayIdSet = new HashSet<>(oldAcTimeMap.keySet());
+        displayIdSet.addAll(newAcTimeMap.keySet());
+        Set<String> affectedUidSet = new HashSet<>();
+        for (String displayId : displayIdSet) {
+            Long oldAcTime = oldAcTimeMap.get(displayId);
+            Long newAcTime = newAcTimeMap.get(displayId);
+            if (Objects.equals(oldAcTime, newAcTime)) {
+                continue;
+            }
+            TreeMap<Long, Set<String>> acTimeUsers = acTimeIndex.computeIfAbsent(displayId, key -> new TreeMap<>());
+            Map.Entry<Long, Set<String>> oldFirst = acTimeUsers.firstEntry();
+            Set<String> oldFirstUidSet = oldFirst == null ? Collections.emptySet() : new HashSet<>(oldFirst.getValue());
+            if (oldAcTime != null) {
+                Set<String> uidSet = acTimeUsers.get(oldAcTime);
+                uidSet.remove(uid);
+                if (uidSet.isEmpty()) {
+                    acTimeUsers.remove(oldAcTime);
+                }
+            }
+            if (newAcTime != null) {
+                acTimeUsers.computeIfAbsent(newAcTime, key -> new HashSet<>()).add(uid);
+            }
+            Map.Entry<Long, Set<String>> newFirst = acTimeUsers.firstEntry();
+            if (!Objects.equals(oldFirst == null ? null : oldFirst.getKey(),
+                    newFirst == null ? null : newFirst.getKey())) {
+                affectedUidSet.addAll(oldFirstUidSet);
+                if (newFirst != null) {
+                    affectedUidSet.addAll(newFirst.getValue());
+                }
+            }
+            if (acTimeUsers.isEmpty()) {
+                acTimeIndex.remove(displayId);
+            }
+        }
+        if (newAcTimeMap.isEmpty()) {
+            userAcTimeMap.remove(uid);
+        } else {
+            userAcTimeMap.put(uid, newAcTimeMap);
+        }
+        return affectedUidSet;
+    }
+
+    private boolean isInSealTimeSubmission(RecordItem item) {
+        return isOpenSealRank && DateUtil.isIn(item.submitTime, sealRankTime, endTime);
+    }
+
+}
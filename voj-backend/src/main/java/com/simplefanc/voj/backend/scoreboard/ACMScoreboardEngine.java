@@ -0,0 +1,30 @@
+package com.simplefanc.voj.backend.scoreboard;
+
+import com.simplefanc.voj.backend.dao.contest.ContestRecordEntityService;
+import com.simplefanc.voj.backend.dao.user.UserInfoEntityService;
+import com.simplefanc.voj.backend.pojo.vo.ACMContestRankVO;
+import com.simplefanc.voj.common.pojo.entity.contest.Contest;
+import org.springframework.stereotype.Component;
+
+import java.util.Set;
+
+/**
+ * @Author: chenfan
+ * @Date: 2022/12/1 14:15
+ * @Description: ACM比赛排行榜的增量计算
+ */
+@Component
+public class ACMScoreboardEngine extends AbstractScoreboardEngine<ACMContestRankVO, ACMScoreboard> {
+
+    public ACMScoreboardEngine(ContestRecordEntityService contestRecordEntityService,
+                               UserInfoEntityService userInfoEntityService,
+                               ContestRecordEventBus contestRecordEventBus) {
+        super(contestRecordEntityService, userInfoEntityService, contestRecordEventBus);
+    }
+
+    @Override
+    protected ACMScoreboard createScoreboard(Contest contest, boolean isOpenSealRank, Set<String> excludedUidSet) {
+        return new ACMScoreboard(contest, isOpenSealRank, excludedUidSet);
+    }
+
+}
@@ -0,0 +1,244 @@
+package com.simplefanc.voj.backend.scoreboard;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.simplefanc.voj.backend.dao.contest.ContestRecordEntityService;
+import com.simplefanc.voj.backend.dao.user.UserInfoEntityService;
+import com.simplefanc.voj.backend.pojo.vo.ContestRecordVO;
+import com.simplefanc.voj.common.pojo.entity.contest.Contest;
+import com.simplefanc.voj.common.pojo.entity.contest.ContestRecord;
+import com.simplefanc.voj.common.pojo.entity.user.UserInfo;
+import lombok.extern.slf4j.Slf4j;
+
+import javax.annotation.PostConstruct;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @Author: chenfan
+ * @Date: 2022/12/1 14:15
+ * @Description: 比赛排行榜的增量计算。每场比赛的排行榜在首次访问时从数据库构建并保存在内存中，
+ * 之后根据比赛记录的变更事件增量更新，重判等批量修改比赛记录时再重新构建
+ *
+ * @param <V> 排名数据的类型
+ * @param <S> 排行榜的类型
+ */
+@Slf4j(topic = "voj")
+abstract class AbstractScoreboardEngine<V, S extends ContestScoreboard<V>> implements ContestRecordListener {
+
+    /**
+     * 排行榜的最大存活时间，超过后重新构建，用于兜底丢失的变更事件
+     */
+    private static final long MAX_ALIVE_MILLIS = 5 * 60 * 1000L;
+
+    /**
+     * 构建期间到达的变更事件可能未包含在查询结果中，构建完成后重新应用
+     */
+    private static final long BUILD_REPLAY_MILLIS = 1000L;
+
+    /**
+     * key: 比赛id，value: 正在进行的构建，同一场比赛同时只有一个线程构建，其他线程等待其完成
+     */
+    private final ConcurrentMap<Long, CompletableFuture<Void>> buildingMap = new ConcurrentHashMap<>();
+
+    /**
+     * key: 比赛id-是否封榜，封榜榜单与实时榜单分别维护，互不影响
+     */
+    private final Cache<String, S> scoreboardCache = Caffeine.newBuilder()
+            .maximumSize(64)
+            .expireAfterAccess(30, TimeUnit.MINUTES)
+            .build();
+
+    private final ContestRecordEntityService contestRecordEntityService;
+
+    private final UserInfoEntityService userInfoEntityService;
+
+    private final ContestRecordEventBus contestRecordEventBus;
+
+    AbstractScoreboardEngine(ContestRecordEntityService contestRecordEntityService,
+                             UserInfoEntityService userInfoEntityService,
+                             ContestRecordEventBus contestRecordEventBus) {
+        this.contestRecordEntityService = contestRecordEntityService;
+        this.userInfoEntityService = userInfoEntityService;
+        this.contestRecordEventBus = contestRecordEventBus;
+    }
+
+    /**
+     * 创建空的排行榜
+     */
+    protected abstract S createScoreboard(Contest contest, boolean isOpenSealRank, Set<String> excludedUidSet);
+
+    @PostConstruct
+    public void register() {
+        contestRecordEventBus.register(this);
+    }
+
+    /**
+     * @param contest        比赛实体信息
+     * @param isOpenSealRank 是否是查询封榜后的数据
+     * @MethodName getOrderedRank
+     * @Description 获取已排好序的排名数据，返回的是副本，排名序号等字段需由调用方设置
+     * @Return
+     * @Since 2022/12/1
+     */
+    public List<V> getOrderedRank(Contest contest, boolean isOpenSealRank) {
+        return getScoreboard(contest, isOpenSealRank).snapshot();
+    }
+
+    /**
+     * @param contest         比赛实体信息
+     * @param isOpenSealRank  是否是查询封榜后的数据
+     * @param starUsernameSet 打星用户的用户名
+     * @param removeStar      是否移除打星用户
+     * @param topUidSet       需要置顶的当前用户与关注用户的id
+     * @param offset          当前页第一条数据的下标
+     * @param limit           每页条数
+     * @MethodName getRankPage
+     * @Description 分页获取已设置序号与排名的排名数据，只复制当前页与置顶的数据
+     * @Return
+     * @Since 2022/12/6
+     */
+    public RankPage<V> getRankPage(Contest contest, boolean isOpenSealRank, Set<String> starUsernameSet,
+                                   boolean removeStar, Set<String> topUidSet, int offset, int limit) {
+        return getScoreboard(contest, isOpenSealRank).getPage(starUsernameSet, removeStar, topUidSet, offset, limit);
+    }
+
+    /**
+     * @param cid            比赛id
+     * @param isOpenSealRank 是否是查询封榜后的数据
+     * @MethodName getVersion
+     * @Description 获取排行榜当前的版本号，排名数据变化或重新构建后版本号改变，排行榜不存在时返回-1
+     * @Return
+     * @Since 2022/12/4
+     */
+    public long getVersion(Long cid, boolean isOpenSealRank) {
+        S scoreboard = scoreboardCache.getIfPresent(getKey(cid, isOpenSealRank));
+        return scoreboard == null ? -1 : scoreboard.getVersion();
+    }
+
+    @Override
+    public boolean isWatching(Long cid) {
+        return scoreboardCache.asMap().containsKey(getKey(cid, true))
+                || scoreboardCache.asMap().containsKey(getKey(cid, false));
+    }
+
+    @Override
+    public void onRecordChanged(ContestRecord contestRecord) {
+        for (boolean isOpenSealRank : new boolean[]{true, false}) {
+            S scoreboard = scoreboardCache.asMap().get(getKey(contestRecord.getCid(), isOpenSealRank));
+            if (scoreboard != null) {
+                apply(scoreboard, contestRecord);
+            }
+        }
+    }
+
+    @Override
+    public void onContestInvalidated(Long cid) {
+        scoreboardCache.invalidate(getKey(cid, true));
+        scoreboardCache.invalidate(getKey(cid, false));
+    }
+
+    private S getScoreboard(Contest contest, boolean isOpenSealRank) {
+        S scoreboard = scoreboardCache.getIfPresent(getKey(contest.getId(), isOpenSealRank));
+        if (scoreboard == null || scoreboard.isExpired(contest, MAX_ALIVE_MILLIS)) {
+            scoreboard = rebuild(contest, isOpenSealRank);
+        }
+        return scoreboard;
+    }
+
+    /**
+     * 同一场比赛同时只允许一个线程构建，不同比赛的构建互不阻塞。
+     * 等待的线程在构建完成后重新读取，所需的榜单仍不存在时（例如未封榜的比赛只构建了另一个榜单）再自行构建
+     */
+    private S rebuild(Contest contest, boolean isOpenSealRank) {
+        String key = getKey(contest.getId(), isOpenSealRank);
+        while (true) {
+            S scoreboard = scoreboardCache.getIfPresent(key);
+            if (scoreboard != null && !scoreboard.isExpired(contest, MAX_ALIVE_MILLIS)) {
+                return scoreboard;
+            }
+            CompletableFuture<Void> future = new CompletableFuture<>();
+            CompletableFuture<Void> buildingFuture = buildingMap.putIfAbsent(contest.getId(), future);
+            if (buildingFuture != null) {
+                // 构建失败时由当前线程重新构建
+                buildingFuture.handle((result, e) -> null).join();
+                continue;
+            }
+            try {
+                scoreboard = doRebuild(contest, isOpenSealRank, key);
+                future.complete(null);
+                return scoreboard;
+            } catch (RuntimeException | Error e) {
+                // 等待的线程不能一直阻塞
+                future.completeExceptionally(e);
+                throw e;
+            } finally {
+                buildingMap.remove(contest.getId(), future);
+            }
+        }
+    }
+
+    /**
+     * 开启封榜的比赛封榜榜单与实时榜单共用一次查询，
+     * 避免管理员的实时榜单与选手的封榜榜单交替访问时各自重复构建
+     */
+    private S doRebuild(Contest contest, boolean isOpenSealRank, String key) {
+        S scoreboard = scoreboardCache.getIfPresent(key);
+        if (scoreboard != null && !scoreboard.isExpired(contest, MAX_ALIVE_MILLIS)) {
+            return scoreboard;
+        }
+        long buildStartTime = System.currentTimeMillis();
+        Set<String> excludedUidSet = new HashSet<>();
+        if (!contest.getContestAdminRank()) {
+            excludedUidSet.addAll(userInfoEntityService.getSuperAdminUidList());
+            excludedUidSet.add(contest.getUid());
+        }
+        // 提交时间的上限由排行榜自行过滤
+        List<ContestRecordVO> contestRecordList = contestRecordEntityService.getACMContestRecord(contest.getId(),
+                contest.getStartTime());
+        List<ContestRecord> recentRecordList = contestRecordEventBus.getRecentChangedRecords(contest.getId(),
+                buildStartTime - BUILD_REPLAY_MILLIS);
+
+        scoreboard = build(contest, isOpenSealRank, excludedUidSet, contestRecordList, recentRecordList);
+        scoreboardCache.put(key, scoreboard);
+        if (contest.getSealRank() && contest.getSealRankTime() != null) {
+            String otherKey = getKey(contest.getId(), !isOpenSealRank);
+            S otherScoreboard = scoreboardCache.getIfPresent(otherKey);
+            if (otherScoreboard == null || otherScoreboard.isExpired(contest, MAX_ALIVE_MILLIS)) {
+                scoreboardCache.put(otherKey, build(contest, !isOpenSealRank, excludedUidSet,
+                        contestRecordList, recentRecordList));
+            }
+        }
+        log.info("比赛{}的排行榜构建完成，耗时{}ms", contest.getId(), System.currentTimeMillis() - buildStartTime);
+        return scoreboard;
+    }
+
+    private S build(Contest contest, boolean isOpenSealRank, Set<String> excludedUidSet,
+                    List<ContestRecordVO> contestRecordList, List<ContestRecord> recentRecordList) {
+        S scoreboard = createScoreboard(contest, isOpenSealRank, excludedUidSet);
+        scoreboard.init(contestRecordList);
+        for (ContestRecord contestRecord : recentRecordList) {
+            apply(scoreboard, contestRecord);
+        }
+        return scoreboard;
+    }
+
+    private void apply(S scoreboard, ContestRecord contestRecord) {
+        UserInfo userInfo = null;
+        // 排行榜中还没有该用户时需要其用户信息
+        if (!scoreboard.containsUser(contestRecord.getUid())) {
+            userInfo = userInfoEntityService.getById(contestRecord.getUid());
+        }
+        scoreboard.apply(contestRecord, userInfo);
+    }
+
+    private String getKey(Long cid, boolean isOpenSealRank) {
+        return cid + "-" + isOpenSealRank;
+    }
+
+}
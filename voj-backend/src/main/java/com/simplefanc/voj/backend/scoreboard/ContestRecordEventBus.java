@@ -0,0 +1,161 @@
+package com.simplefanc.voj.backend.scoreboard;
+
+import com.baomidou.mybatisplus.core.conditions.query.QueryWrapper;
+import com.simplefanc.voj.backend.dao.contest.ContestRecordEntityService;
+import com.simplefanc.voj.common.constants.RedisConstant;
+import com.simplefanc.voj.common.pojo.entity.contest.ContestRecord;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import javax.annotation.PostConstruct;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.stream.Collectors;
+
+/**
+ * @Author: chenfan
+ * @Date: 2022/12/1 10:26
+ * @Description: 比赛记录变更事件的发布与分发。事件通过Redis发布订阅广播到每个后台服务，
+ * 各后台服务加载变更后的比赛记录并交给本地的监听者增量更新
+ */
+@Component
+@Slf4j(topic = "voj")
+@RequiredArgsConstructor
+public class ContestRecordEventBus {
+
+    private static final String RECORD_EVENT_PREFIX = "record:";
+
+    private static final String INVALIDATE_EVENT_PREFIX = "invalidate:";
+
+    /**
+     * 最近变更的比赛记录保留的时间，用于补偿重新构建期间到达的变更
+     */
+    private static final long RECENT_RECORD_KEEP_MILLIS = 60 * 1000L;
+
+    /**
+     * key: 提交id，value: 收到变更事件的时间
+     */
+    private static final Map<Long, Long> RECENT_RECORD_MAP = new ConcurrentHashMap<>();
+
+    private static final List<ContestRecordListener> LISTENERS = new CopyOnWriteArrayList<>();
+
+    private final StringRedisTemplate stringRedisTemplate;
+
+    private final RedisMessageListenerContainer redisMessageListenerContainer;
+
+    private final ContestRecordEntityService contestRecordEntityService;
+
+    @PostConstruct
+    public void subscribe() {
+        redisMessageListenerContainer.addMessageListener(
+                (message, pattern) -> handleMessage(new String(message.getBody(), StandardCharsets.UTF_8)),
+                new ChannelTopic(RedisConstant.CONTEST_RECORD_CHANGE_CHANNEL));
+    }
+
+    public void register(ContestRecordListener listener) {
+        LISTENERS.add(listener);
+    }
+
+    /**
+     * @param cid      比赛id
+     * @param submitId 提交id
+     * @MethodName publishRecordChanged
+     * @Description 通知各后台服务该提交对应的比赛记录已变更
+     * @Since 2022/12/1
+     */
+    public void publishRecordChanged(Long cid, Long submitId) {
+        publish(RECORD_EVENT_PREFIX + cid + ":" + submitId);
+    }
+
+    /**
+     * @param cid 比赛id
+     * @MethodName publishContestInvalidated
+     * @Description 通知各后台服务该比赛的记录已被批量修改
+     * @Since 2022/12/1
+     */
+    public void publishContestInvalidated(Long cid) {
+        publish(INVALIDATE_EVENT_PREFIX + cid);
+    }
+
+    /**
+     * 在事务中时等到事务提交后再发布，避免其它后台服务读到修改前的比赛记录
+     */
+    private void publish(String message) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    stringRedisTemplate.convertAndSend(RedisConstant.CONTEST_RECORD_CHANGE_CHANNEL, message);
+                }
+            });
+        } else {
+            stringRedisTemplate.convertAndSend(RedisConstant.CONTEST_RECORD_CHANGE_CHANNEL, message);
+        }
+    }
+
+    /**
+     * @param cid   比赛id
+     * @param since 起始时间
+     * @MethodName getRecentChangedRecords
+     * @Description 获取该比赛自起始时间后收到变更事件的比赛记录
+     * @Return
+     * @Since 2022/12/1
+     */
+    public List<ContestRecord> getRecentChangedRecords(Long cid, long since) {
+        List<Long> submitIdList = RECENT_RECORD_MAP.entrySet().stream()
+                .filter(entry -> entry.getValue() >= since)
+                .map(Map.Entry::getKey)
+                .collect(Collectors.toList());
+        if (submitIdList.isEmpty()) {
+            return Collections.emptyList();
+        }
+        QueryWrapper<ContestRecord> queryWrapper = new QueryWrapper<>();
+        queryWrapper.eq("cid", cid).in("submit_id", submitIdList);
+        return contestRecordEntityService.list(queryWrapper);
+    }
+
+    private void handleMessage(String message) {
+        try {
+            if (message.startsWith(RECORD_EVENT_PREFIX)) {
+                String[] ids = message.substring(RECORD_EVENT_PREFIX.length()).split(":");
+                Long cid = Long.valueOf(ids[0]);
+                Long submitId = Long.valueOf(ids[1]);
+                long now = System.currentTimeMillis();
+                RECENT_RECORD_MAP.put(submitId, now);
+                RECENT_RECORD_MAP.values().removeIf(time -> now - time > RECENT_RECORD_KEEP_MILLIS);
+                if (LISTENERS.stream().noneMatch(listener -> listener.isWatching(cid))) {
+                    return;
+                }
+                QueryWrapper<ContestRecord> queryWrapper = new QueryWrapper<>();
+                queryWrapper.eq("submit_id", submitId);
+                ContestRecord contestRecord = contestRecordEntityService.getOne(queryWrapper, false);
+                if (contestRecord == null) {
+                    return;
+                }
+                for (ContestRecordListener listener : LISTENERS) {
+                    if (listener.isWatching(cid)) {
+                        listener.onRecordChanged(contestRecord);
+                    }
+                }
+            } else if (message.startsWith(INVALIDATE_EVENT_PREFIX)) {
+                Long cid = Long.valueOf(message.substring(INVALIDATE_EVENT_PREFIX.length()));
+                for (ContestRecordListener listener : LISTENERS) {
+                    listener.onContestInvalidated(cid);
+                }
+            }
+        } catch (Exception e) {
+            log.error("处理比赛记录变更事件[" + message + "]发生异常-------------->", e);
+        }
+    }
+
+}
@@ -0,0 +1,34 @@
+package com.simplefanc.voj.backend.scoreboard;
+
+import com.simplefanc.voj.common.pojo.entity.contest.ContestRecord;
+
+/**
+ * @Author: chenfan
+ * @Date: 2022/12/1 10:20
+ * @Description: 比赛记录变更的监听者，由ContestRecordEventBus在收到变更事件后回调
+ */
+public interface ContestRecordListener {
+
+    /**
+     * 是否维护了该比赛的数据，未维护时不会为其加载变更的比赛记录
+     *
+     * @param cid 比赛id
+     * @return
+     */
+    boolean isWatching(Long cid);
+
+    /**
+     * 比赛记录的评测结果发生变更，包括评测结束、重判时被重置等
+     *
+     * @param contestRecord 变更后的比赛记录
+     */
+    void onRecordChanged(ContestRecord contestRecord);
+
+    /**
+     * 比赛记录被批量修改，需要从数据库重新构建该比赛的数据
+     *
+     * @param cid 比赛id
+     */
+    void onContestInvalidated(Long cid);
+
+}
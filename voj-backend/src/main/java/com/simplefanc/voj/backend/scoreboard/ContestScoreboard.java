@@ -0,0 +1,382 @@
+package com.simplefanc.voj.backend.scoreboard;
+
+import com.simplefanc.voj.backend.pojo.vo.ContestRecordVO;
+import com.simplefanc.voj.common.pojo.entity.contest.Contest;
+import com.simplefanc.voj.common.pojo.entity.contest.ContestRecord;
+import com.simplefanc.voj.common.pojo.entity.user.UserInfo;
+
+import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * @Author: chenfan
+ * @Date: 2022/12/2 09:40
+ * @Description: 单场比赛的排行榜。保存每个用户参与排名的比赛记录，用户的排名数据只在其比赛记录变更时重新计算，
+ * 已排好序的排名数据保存在可按下标访问的有序树中，更新时移除旧数据再插入新数据，查询下标与按下标获取均为O(log n)，
+ * 分页查询只复制当前页的数据
+ *
+ * @param <V> 排名数据的类型
+ */
+abstract class ContestScoreboard<V> {
+
+    protected final boolean isOpenSealRank;
+
+    protected final Date startTime;
+
+    protected final Date sealRankTime;
+
+    protected final Date endTime;
+
+    private final Date contestGmtModified;
+
+    /**
+     * 不参与排名的用户，即超级管理员和比赛创建者
+     */
+    private final Set<String> excludedUidSet;
+
+    private final long buildTime = System.currentTimeMillis();
+
+    /**
+     * 所有排行榜共用的版本序号，重新构建的排行榜版本号也不会与之前的重复
+     */
+    private static final AtomicLong VERSION_SEQUENCE = new AtomicLong(0);
+
+    /**
+     * 排名数据每次变化后更新
+     */
+    private volatile long version = VERSION_SEQUENCE.incrementAndGet();
+
+    /**
+     * key: 用户id
+     */
+    protected final Map<String, BoardUser<V>> userMap = new HashMap<>();
+
+    /**
+     * key: 用户名，value: 用户id，用于查找打星用户
+     */
+    private final Map<String, String> usernameUidMap = new HashMap<>();
+
+    /**
+     * 排好序的排名数据，成绩相同时按用户id保证顺序稳定
+     */
+    private final RankTree<V> rankTree;
+
+    /**
+     * 比较成绩，成绩相同的用户排名相同
+     */
+    private final Comparator<V> scoreComparator;
+
+    ContestScoreboard(Contest contest, boolean isOpenSealRank, Set<String> excludedUidSet,
+                      Comparator<V> scoreComparator, Comparator<V> rankComparator) {
+        this.isOpenSealRank = isOpenSealRank;
+        this.startTime = contest.getStartTime();
+        this.sealRankTime = contest.getSealRankTime();
+        this.endTime = contest.getEndTime();
+        this.contestGmtModified = contest.getGmtModified();
+        this.excludedUidSet = excludedUidSet;
+        this.scoreComparator = scoreComparator;
+        this.rankTree = new RankTree<>(rankComparator);
+    }
+
+    /**
+     * 根据用户参与排名的比赛记录生成其排名数据
+     *
+     * @return 排名数据，用户不参与排名时为null
+     */
+    protected abstract V render(BoardUser<V> user);
+
+    /**
+     * 复制排名数据，调用方可以修改副本的排名序号等字段
+     */
+    protected abstract V copy(V rankVO);
+
+    /**
+     * 设置排名数据副本的序号与排名
+     */
+    protected abstract void setRankNo(V rankVO, int seq, int rank);
+
+    /**
+     * 提交时间是否在该排行榜统计的范围内
+     */
+    protected abstract boolean isInRankTime(Date submitTime);
+
+    /**
+     * 全部用户的比赛记录加载完成，生成排名数据之前调用
+     */
+    protected void onInit() {
+    }
+
+    /**
+     * 用户的比赛记录变更后、重新生成其排名数据之前调用
+     *
+     * @return 同时需要重新生成排名数据的其它用户
+     */
+    protected Set<String> onUserChanged(BoardUser<V> user) {
+        return Collections.emptySet();
+    }
+
+    /**
+     * 比赛信息被修改过或距离构建已超过最大时长时需要重新构建，后者用于兜底丢失的变更事件
+     */
+    boolean isExpired(Contest contest, long maxAliveMillis) {
+        return !Objects.equals(contestGmtModified, contest.getGmtModified())
+                || System.currentTimeMillis() - buildTime > maxAliveMillis;
+    }
+
+    synchronized boolean containsUser(String uid) {
+        return userMap.containsKey(uid);
+    }
+
+    /**
+     * 使用该比赛全部的比赛记录初始化排行榜
+     */
+    synchronized void init(List<ContestRecordVO> contestRecordList) {
+        for (ContestRecordVO contestRecord : contestRecordList) {
+            if (!isValid(contestRecord.getUid(), contestRecord.getStatus(), contestRecord.getSubmitTime())) {
+                continue;
+            }
+            BoardUser<V> user = userMap.computeIfAbsent(contestRecord.getUid(), uid -> newUser(
+                    new UserInfo()
+                            .setUuid(contestRecord.getUid())
+                            .setUsername(contestRecord.getUsername())
+                            .setRealname(contestRecord.getRealname())
+                            .setNickname(contestRecord.getNickname())
+                            .setSchool(contestRecord.getSchool())
+                            .setGender(contestRecord.getGender())
+                            .setAvatar(contestRecord.getAvatar())));
+            user.recordMap.put(contestRecord.getId(), new RecordItem(contestRecord.getId(),
+                    contestRecord.getDisplayId(), contestRecord.getStatus(), contestRecord.getTime(),
+                    contestRecord.getSubmitTime(), contestRecord.getScore(), contestRecord.getUseTime()));
+        }
+        onInit();
+        for (BoardUser<V> user : userMap.values()) {
+            user.rankVO = render(user);
+            if (user.rankVO != null) {
+                rankTree.add(user.rankVO);
+            }
+        }
+    }
+
+    /**
+     * @param contestRecord 变更后的比赛记录
+     * @param userInfo      排行榜中还没有该用户时使用的用户信息
+     * @MethodName apply
+     * @Description 应用一条比赛记录的变更，只重新计算该用户以及受其影响的用户
+     * @Since 2022/12/2
+     */
+    synchronized void apply(ContestRecord contestRecord, UserInfo userInfo) {
+        boolean isValid = isValid(contestRecord.getUid(), contestRecord.getStatus(), contestRecord.getSubmitTime());
+        BoardUser<V> user = userMap.get(contestRecord.getUid());
+        if (user == null) {
+            if (!isValid || userInfo == null) {
+                return;
+            }
+            user = newUser(userInfo);
+            userMap.put(contestRecord.getUid(), user);
+        }
+
+        if (isValid) {
+            user.recordMap.put(contestRecord.getId(), new RecordItem(contestRecord.getId(),
+                    contestRecord.getDisplayId(), contestRecord.getStatus(), contestRecord.getTime(),
+                    contestRecord.getSubmitTime(), contestRecord.getScore(), contestRecord.getUseTime()));
+        } else if (user.recordMap.remove(contestRecord.getId()) == null) {
+            // 不参与统计的记录，例如封榜后的OI提交，排行榜保持不变
+            return;
+        }
+
+        Set<String> affectedUidSet = onUserChanged(user);
+        if (user.recordMap.isEmpty()) {
+            // 没有比赛记录的用户不在排行榜中
+            userMap.remove(contestRecord.getUid());
+            usernameUidMap.remove(user.userInfo.getUsername(), contestRecord.getUid());
+            if (user.rankVO != null) {
+                rankTree.remove(user.rankVO);
+            }
+        } else {
+            refresh(user);
+        }
+        for (String uid : affectedUidSet) {
+            BoardUser<V> affectedUser = userMap.get(uid);
+            if (affectedUser != null && affectedUser != user) {
+                refresh(affectedUser);
+            }
+        }
+        version = VERSION_SEQUENCE.incrementAndGet();
+    }
+
+    long getVersion() {
+        return version;
+    }
+
+    /**
+     * 按排名顺序返回排名数据的副本
+     */
+    synchronized List<V> snapshot() {
+        List<V> result = new ArrayList<>(rankTree.size());
+        rankTree.forEach(rankVO -> result.add(copy(rankVO)));
+        return result;
+    }
+
+    /**
+     * @param starUsernameSet 打星用户的用户名
+     * @param removeStar      是否移除打星用户
+     * @param topUidSet       需要置顶的当前用户与关注用户的id
+     * @param offset          当前页第一条数据在置顶数据与排名数据拼接后的下标
+     * @param limit           每页条数
+     * @MethodName getPage
+     * @Description 按外榜规则分页获取排名数据：置顶的用户排在最前，打星用户排名为-1，成绩相同的用户排名相同。
+     * 只在有序树中查找并复制当前页与置顶的数据，不再复制整个排行榜
+     * @Return 当前页的排名数据副本与拼接后的总条数
+     * @Since 2022/12/6
+     */
+    synchronized RankPage<V> getPage(Set<String> starUsernameSet, boolean removeStar, Set<String> topUidSet,
+                                     int offset, int limit) {
+        // 打星用户在有序树中的下标，升序
+        List<Integer> starIndexList = new ArrayList<>();
+        for (String username : starUsernameSet) {
+            String uid = usernameUidMap.get(username);
+            BoardUser<V> user = uid == null ? null : userMap.get(uid);
+            if (user != null && user.rankVO != null) {
+                starIndexList.add(rankTree.indexOf(user.rankVO));
+            }
+        }
+        Collections.sort(starIndexList);
+
+        List<Integer> topIndexList = new ArrayList<>();
+        for (String uid : topUidSet) {
+            BoardUser<V> user = userMap.get(uid);
+            if (user == null || user.rankVO == null) {
+                continue;
+            }
+            int index = rankTree.indexOf(user.rankVO);
+            if (!removeStar || Collections.binarySearch(starIndexList, index) < 0) {
+                topIndexList.add(index);
+            }
+        }
+        Collections.sort(topIndexList);
+
+        int size = removeStar ? rankTree.size() - starIndexList.size() : rankTree.size();
+        List<V> records = new ArrayList<>();
+        for (int i = Math.max(offset, 0); i < offset + limit && i < topIndexList.size() + size; i++) {
+            int index = i < topIndexList.size() ? topIndexList.get(i)
+                    : toRawIndex(i - topIndexList.size(), removeStar, starIndexList);
+            records.add(copyWithRankNo(index, removeStar, starIndexList));
+        }
+        return new RankPage<>(records, topIndexList.size() + size);
+    }
+
+    /**
+     * 与构建时查询比赛记录的条件一致
+     */
+    private boolean isValid(String uid, Integer status, Date submitTime) {
+        return status != null && !submitTime.before(startTime) && isInRankTime(submitTime)
+                && !excludedUidSet.contains(uid);
+    }
+
+    /**
+     * 重新生成用户的排名数据，并替换有序树中的旧数据
+     */
+    private void refresh(BoardUser<V> user) {
+        V newRankVO = render(user);
+        if (user.rankVO != null) {
+            rankTree.remove(user.rankVO);
+        }
+        if (newRankVO != null) {
+            rankTree.add(newRankVO);
+        }
+        user.rankVO = newRankVO;
+    }
+
+    private BoardUser<V> newUser(UserInfo userInfo) {
+        usernameUidMap.put(userInfo.getUsername(), userInfo.getUuid());
+        return new BoardUser<>(userInfo);
+    }
+
+    /**
+     * 移除打星用户后的下标转换为有序树中的下标
+     */
+    private int toRawIndex(int index, boolean removeStar, List<Integer> starIndexList) {
+        if (removeStar) {
+            for (int starIndex : starIndexList) {
+                if (starIndex > index) {
+                    break;
+                }
+                index++;
+            }
+        }
+        return index;
+    }
+
+    /**
+     * 有序树中在该下标之前的打星用户数
+     */
+    private int countStarBefore(int index, List<Integer> starIndexList) {
+        int position = Collections.binarySearch(starIndexList, index);
+        return position >= 0 ? position : -position - 1;
+    }
+
+    /**
+     * 复制排名数据并设置序号与排名，排名为成绩更好的非打星用户数加一
+     */
+    private V copyWithRankNo(int index, boolean removeStar, List<Integer> starIndexList) {
+        V rankVO = copy(rankTree.get(index));
+        int starBefore = countStarBefore(index, starIndexList);
+        int seq = removeStar ? index - starBefore + 1 : index + 1;
+        if (!removeStar && Collections.binarySearch(starIndexList, index) >= 0) {
+            setRankNo(rankVO, seq, -1);
+            return rankVO;
+        }
+        // 成绩相同的第一个用户的下标
+        int low = rankTree.lowerBound(rankVO, scoreComparator);
+        setRankNo(rankVO, seq, low - countStarBefore(low, starIndexList) + 1);
+        return rankVO;
+    }
+
+    protected static class BoardUser<V> {
+
+        protected final UserInfo userInfo;
+
+        /**
+         * key: 比赛记录id
+         */
+        protected final Map<Long, RecordItem> recordMap = new HashMap<>();
+
+        /**
+         * 当前在有序树中的排名数据，已生成的排名数据不会再被修改
+         */
+        private V rankVO;
+
+        BoardUser(UserInfo userInfo) {
+            this.userInfo = userInfo;
+        }
+    }
+
+    protected static class RecordItem {
+
+        protected final Long id;
+
+        protected final String displayId;
+
+        protected final Integer status;
+
+        protected final Long time;
+
+        protected final Date submitTime;
+
+        protected final Integer score;
+
+        protected final Integer useTime;
+
+        RecordItem(Long id, String displayId, Integer status, Long time, Date submitTime, Integer score,
+                   Integer useTime) {
+            this.id = id;
+            this.displayId = displayId;
+            this.status = status;
+            this.time = time;
+            this.submitTime = submitTime;
+            this.score = score;
+            this.useTime = useTime;
+        }
+    }
+
+}
@@ -0,0 +1,154 @@
+package com.simplefanc.voj.backend.scoreboard;
+
+import com.simplefanc.voj.backend.pojo.vo.OIContestRankVO;
+import com.simplefanc.voj.common.constants.ContestConstant;
+import com.simplefanc.voj.common.constants.ContestEnum;
+import com.simplefanc.voj.common.pojo.entity.contest.Contest;
+
+import java.util.*;
+
+/**
+ * @Author: chenfan
+ * @Date: 2022/12/2 10:35
+ * @Description: 单场OI比赛的排行榜，每道题按比赛设置取最高分或最近一次提交的得分，
+ * 满分提交中的最优耗时计入总耗时
+ */
+class OIScoreboard extends ContestScoreboard<OIContestRankVO> {
+
+    /**
+     * 先以总得分降序，再以总耗时升序
+     */
+    private static final Comparator<OIContestRankVO> SCORE_COMPARATOR = Comparator
+            .comparing(OIContestRankVO::getTotalScore, Comparator.reverseOrder())
+            .thenComparing(OIContestRankVO::getTotalTime);
+
+    /**
+     * 成绩相同时按用户id保证顺序稳定
+     */
+    private static final Comparator<OIContestRankVO> RANK_COMPARATOR = SCORE_COMPARATOR
+            .thenComparing(OIContestRankVO::getUid);
+
+    private final boolean isHighestRankScore;
+
+    OIScoreboard(Contest contest, boolean isOpenSealRank, Set<String> excludedUidSet) {
+        super(contest, isOpenSealRank, excludedUidSet, SCORE_COMPARATOR, RANK_COMPARATOR);
+        this.isHighestRankScore = ContestConstant.OI_RANK_HIGHEST_SCORE.equals(contest.getOiRankScoreType());
+    }
+
+    @Override
+    protected boolean isInRankTime(Date submitTime) {
+        // 封榜时只统计封榜前的提交
+        return !submitTime.after(isOpenSealRank ? sealRankTime : endTime);
+    }
+
+    @Override
+    protected OIContestRankVO render(BoardUser<OIContestRankVO> user) {
+        Map<String, List<RecordItem>> problemRecordMap = new HashMap<>();
+        for (RecordItem item : user.recordMap.values()) {
+            problemRecordMap.computeIfAbsent(item.displayId, key -> new ArrayList<>()).add(item);
+        }
+
+        int totalScore = 0;
+        int totalTime = 0;
+        Map<String, Integer> submissionInfo = new HashMap<>();
+        Map<String, Integer> timeInfo = new HashMap<>();
+        for (Map.Entry<String, List<RecordItem>> entry : problemRecordMap.entrySet()) {
+            String displayId = entry.getKey();
+            List<RecordItem> selectedList = isHighestRankScore ? selectHighest(entry.getValue())
+                    : selectRecent(entry.getValue());
+            if (selectedList.isEmpty()) {
+                continue;
+            }
+            // 最近一次提交取最后提交的一条，最高分的各条得分相同
+            Integer score = selectedList.stream().max(Comparator.comparing(item -> item.id)).get().score;
+            submissionInfo.put(displayId, score);
+            if (score != null) {
+                totalScore += score;
+            }
+            // 相同分数，不同时间，取满分提交中的最优耗时
+            selectedList.stream()
+                    .filter(item -> Objects.equals(item.status, ContestEnum.RECORD_AC.getCode()) && item.useTime != null)
+                    .mapToInt(item -> item.useTime)
+                    .min()
+                    .ifPresent(useTime -> timeInfo.put(displayId, useTime));
+        }
+        if (submissionInfo.isEmpty()) {
+            return null;
+        }
+        for (Integer useTime : timeInfo.values()) {
+            totalTime += useTime;
+        }
+
+        return new OIContestRankVO()
+                .setUid(user.userInfo.getUuid())
+                .setUsername(user.userInfo.getUsername())
+                .setRealname(user.userInfo.getRealname())
+                .setNickname(user.userInfo.getNickname())
+                .setSchool(user.userInfo.getSchool())
+                .setGender(user.userInfo.getGender())
+                .setAvatar(user.userInfo.getAvatar())
+                .setTotalScore(totalScore)
+                .setTotalTime(totalTime)
+                .setSubmissionInfo(submissionInfo)
+                .setTimeInfo(timeInfo.isEmpty() ? null : timeInfo);
+    }
+
+    @Override
+    protected OIContestRankVO copy(OIContestRankVO rankVO) {
+        return new OIContestRankVO()
+                .setUid(rankVO.getUid())
+                .setUsername(rankVO.getUsername())
+                .setRealname(rankVO.getRealname())
+                .setNickname(rankVO.getNickname())
+                .setSchool(rankVO.getSchool())
+                .setGender(rankVO.getGender())
+                .setAvatar(rankVO.getAvatar())
+                .setTotalScore(rankVO.getTotalScore())
+                .setTotalTime(rankVO.getTotalTime())
+                // 每次重新计算都会生成新的得分与耗时详情，已生成的不会再被修改
+                .setSubmissionInfo(rankVO.getSubmissionInfo())
+                .setTimeInfo(rankVO.getTimeInfo());
+    }
+
+    @Override
+    protected void setRankNo(OIContestRankVO rankVO, int seq, int rank) {
+        rankVO.setSeq(seq).setRank(rank);
+    }
+
+    /**
+     * 得分最高的提交，没有得分的提交不参与
+     */
+    private List<RecordItem> selectHighest(List<RecordItem> itemList) {
+        Integer highestScore = null;
+        for (RecordItem item : itemList) {
+            if (item.score != null && (highestScore == null || item.score > highestScore)) {
+                highestScore = item.score;
+            }
+        }
+        if (highestScore == null) {
+            return Collections.emptyList();
+        }
+        List<RecordItem> selectedList = new ArrayList<>();
+        for (RecordItem item : itemList) {
+            if (highestScore.equals(item.score)) {
+                selectedList.add(item);
+            }
+        }
+        return selectedList;
+    }
+
+    /**
+     * 提交时间最晚的提交
+     */
+    private List<RecordItem> selectRecent(List<RecordItem> itemList) {
+        long recentTime = itemList.stream().mapToLong(item -> item.time).max().getAsLong();
+        List<RecordItem> selectedList = new ArrayList<>();
+        for (RecordItem item : itemList) {
+            if (item.time == recentTime) {
+                selectedList.add(item);
+            }
+        }
+        return selectedList;
+    }
+
+}
@@ -0,0 +1,29 @@
+package com.simplefanc.voj.backend.scoreboard;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+import java.util.List;
+
+/**
+ * @Author: chenfan
+ * @Date: 2022/12/6 10:12
+ * @Description: 排行榜的一页排名数据
+ *
+ * @param <V> 排名数据的类型
+ */
+@Getter
+@AllArgsConstructor
+public class RankPage<V> {
+
+    /**
+     * 当前页的排名数据，已设置序号与排名
+     */
+    private final List<V> records;
+
+    /**
+     * 置顶数据与排名数据拼接后的总条数
+     */
+    private final int total;
+
+}
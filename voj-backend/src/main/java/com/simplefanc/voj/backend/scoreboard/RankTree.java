@@ -0,0 +1,220 @@
+package com.simplefanc.voj.backend.scoreboard;
+
+import java.util.Comparator;
+import java.util.Random;
+import java.util.function.Consumer;
+
+/**
+ * @Author: chenfan
+ * @Date: 2022/12/9 15:20
+ * @Description: 按比较器排好序、可按下标访问的集合，使用记录子树大小的Treap实现，
+ * 插入、删除、按下标获取与查询下标的期望时间复杂度均为O(log n)。非线程安全，由排行榜加锁访问
+ *
+ * @param <V> 元素类型，比较器不能将两个不同的元素视为相等
+ */
+class RankTree<V> {
+
+    private final Comparator<V> comparator;
+
+    private final Random random = new Random();
+
+    private Node<V> root;
+
+    RankTree(Comparator<V> comparator) {
+        this.comparator = comparator;
+    }
+
+    int size() {
+        return size(root);
+    }
+
+    void add(V value) {
+        root = insert(root, new Node<>(value, random.nextInt()));
+    }
+
+    /**
+     * @return 是否存在并移除了该元素
+     */
+    boolean remove(V value) {
+        int size = size();
+        root = delete(root, value);
+        return size() != size;
+    }
+
+    /**
+     * @param index 下标，从0开始
+     */
+    V get(int index) {
+        if (index < 0 || index >= size()) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size());
+        }
+        Node<V> node = root;
+        while (true) {
+            int leftSize = size(node.left);
+            if (index < leftSize) {
+                node = node.left;
+            } else if (index == leftSize) {
+                return node.value;
+            } else {
+                index -= leftSize + 1;
+                node = node.right;
+            }
+        }
+    }
+
+    /**
+     * @return 元素的下标，不存在时为-1
+     */
+    int indexOf(V value) {
+        int index = 0;
+        Node<V> node = root;
+        while (node != null) {
+            int cmp = comparator.compare(value, node.value);
+            if (cmp < 0) {
+                node = node.left;
+            } else if (cmp > 0) {
+                index += size(node.left) + 1;
+                node = node.right;
+            } else {
+                return index + size(node.left);
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * @param value           比较的元素
+     * @param scoreComparator 与排序比较器顺序一致的较粗粒度比较器，如只比较成绩
+     * @return 按scoreComparator小于该元素的元素个数，即与其相等的第一个元素的下标
+     */
+    int lowerBound(V value, Comparator<V> scoreComparator) {
+        int count = 0;
+        Node<V> node = root;
+        while (node != null) {
+            if (scoreComparator.compare(node.value, value) < 0) {
+                count += size(node.left) + 1;
+                node = node.right;
+            } else {
+                node = node.left;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * 按顺序遍历全部元素
+     */
+    void forEach(Consumer<V> action) {
+        forEach(root, action);
+    }
+
+    private void forEach(Node<V> node, Consumer<V> action) {
+        if (node == null) {
+            return;
+        }
+        forEach(node.left, action);
+        action.accept(node.value);
+        forEach(node.right, action);
+    }
+
+    private Node<V> insert(Node<V> node, Node<V> newNode) {
+        if (node == null) {
+            return newNode;
+        }
+        if (comparator.compare(newNode.value, node.value) < 0) {
+            node.left = insert(node.left, newNode);
+            if (node.left.priority > node.priority) {
+                node = rotateRight(node);
+            }
+        } else {
+            node.right = insert(node.right, newNode);
+            if (node.right.priority > node.priority) {
+                node = rotateLeft(node);
+            }
+        }
+        node.update();
+        return node;
+    }
+
+    private Node<V> delete(Node<V> node, V value) {
+        if (node == null) {
+            return null;
+        }
+        int cmp = comparator.compare(value, node.value);
+        if (cmp < 0) {
+            node.left = delete(node.left, value);
+        } else if (cmp > 0) {
+            node.right = delete(node.right, value);
+        } else {
+            return merge(node.left, node.right);
+        }
+        node.update();
+        return node;
+    }
+
+    /**
+     * 合并两棵树，left中的元素都小于right中的元素
+     */
+    private Node<V> merge(Node<V> left, Node<V> right) {
+        if (left == null) {
+            return right;
+        }
+        if (right == null) {
+            return left;
+        }
+        if (left.priority > right.priority) {
+            left.right = merge(left.right, right);
+            left.update();
+            return left;
+        }
+        right.left = merge(left, right.left);
+        right.update();
+        return right;
+    }
+
+    private Node<V> rotateRight(Node<V> node) {
+        Node<V> left = node.left;
+        node.left = left.right;
+        left.right = node;
+        node.update();
+        return left;
+    }
+
+    private Node<V> rotateLeft(Node<V> node) {
+        Node<V> right = node.right;
+        node.right = right.left;
+        right.left = node;
+        node.update();
+        return right;
+    }
+
+    private static int size(Node<?> node) {
+        return node == null ? 0 : node.size;
+    }
+
+    private static class Node<V> {
+
+        private final V value;
+
+        private final int priority;
+
+        /**
+         * 以该节点为根的子树中的元素个数
+         */
+        private int size = 1;
+
+        private Node<V> left;
+
+        private Node<V> right;
+
+        Node(V value, int priority) {
+            this.value = value;
+            this.priority = priority;
+        }
+
+        void update() {
+            size = size(left) + size(right) + 1;
+        }
+    }
+
+}
@@ -0,0 +1,650 @@
+package com.simplefanc.voj.backend.scoreboard;
+
+import cn.hutool.core.bean.BeanUtil;
+import cn.hutool.core.util.StrUtil;
+import cn.hutool.json.JSONUtil;
+import com.simplefanc.voj.backend.dao.contest.ContestEntityService;
+import com.simplefanc.voj.backend.validator.ContestValidator;
+import com.simplefanc.voj.common.constants.ContestEnum;
+import com.simplefanc.voj.common.pojo.entity.contest.Contest;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * @Author: chenfan
+ * @Date: 2022/12/4 10:20
+ * @Description: 比赛排行榜的实时推送。同一场比赛的同一种榜单（封榜或实时）共用一个频道，
+ * 排行榜变化后每个频道只重新获取一次排名数据，订阅者只接收其正在查看的一页与置顶用户的数据，
+ * 相同视图的订阅者共用一次计算与序列化的结果。
+ * 各频道的计算在线程池中并行进行，推送先放入订阅者各自的队列再异步发送，慢速的订阅者不会阻塞频道
+ */
+@Component
+@Slf4j(topic = "voj")
+@RequiredArgsConstructor
+public class ScoreboardStreamHub {
+
+    private static final long EMITTER_TIMEOUT_MILLIS = 30 * 60 * 1000L;
+
+    /**
+     * 推送变化的间隔，同一间隔内的多次变化合并推送
+     */
+    private static final long FLUSH_INTERVAL_MILLIS = 1000L;
+
+    /**
+     * 排行榜没有变化时也定期重新获取，使排行榜的过期重建能够生效
+     */
+    private static final long REFRESH_INTERVAL_MILLIS = 60 * 1000L;
+
+    private static final long HEARTBEAT_INTERVAL_MILLIS = 30 * 1000L;
+
+    private static final String INIT_EVENT_NAME = "init";
+
+    private static final String DELTA_EVENT_NAME = "delta";
+
+    /**
+     * 封榜状态变化，订阅者需要重新订阅
+     */
+    private static final String RELOAD_EVENT_NAME = "reload";
+
+    /**
+     * 单次发送超过该时长仍未完成，或积压的事件超过上限，视为订阅者已无法正常接收并断开
+     */
+    private static final long SEND_TIMEOUT_MILLIS = 10 * 1000L;
+
+    private static final int MAX_PENDING_EVENTS = 32;
+
+    /**
+     * 只负责定时触发，各频道的计算交给DIFF_EXECUTOR
+     */
+    private static final ScheduledExecutorService FLUSH_SCHEDULER = Executors.newSingleThreadScheduledExecutor();
+
+    private static final ExecutorService DIFF_EXECUTOR = Executors.newFixedThreadPool(4);
+
+    private static final ExecutorService SEND_EXECUTOR = Executors.newFixedThreadPool(16);
+
+    /**
+     * key: 比赛id-是否封榜
+     */
+    private static final Map<String, Channel> CHANNEL_MAP = new ConcurrentHashMap<>();
+
+    private final ACMScoreboardEngine acmScoreboardEngine;
+
+    private final OIScoreboardEngine oiScoreboardEngine;
+
+    private final ContestEntityService contestEntityService;
+
+    private final ContestValidator contestValidator;
+
+    @PostConstruct
+    public void start() {
+        FLUSH_SCHEDULER.scheduleWithFixedDelay(this::flushAll, FLUSH_INTERVAL_MILLIS, FLUSH_INTERVAL_MILLIS,
+                TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    public void stop() {
+        FLUSH_SCHEDULER.shutdownNow();
+        DIFF_EXECUTOR.shutdownNow();
+        SEND_EXECUTOR.shutdownNow();
+    }
+
+    /**
+     * @param contest        比赛实体信息
+     * @param isOpenSealRank 是否是查询封榜后的数据
+     * @param forceRefresh   是否为管理员强制查看的实时榜单，封榜状态变化时不需要重新订阅
+     * @param removeStar     是否移除打星用户
+     * @param topUidSet      需要置顶的当前用户与关注用户的id
+     * @param currentPage    订阅者正在查看的页码
+     * @param limit          每页条数
+     * @MethodName subscribe
+     * @Description 订阅比赛排行榜的一页，先推送该页与置顶用户的排名数据，之后只推送该视图中变化的用户、题目与排名，
+     * 与分页查询排行榜返回的数据一致。切换页码时需要重新订阅
+     * @Return
+     * @Since 2022/12/4
+     */
+    public SseEmitter subscribe(Contest contest, boolean isOpenSealRank, boolean forceRefresh, boolean removeStar,
+                                Set<String> topUidSet, int currentPage, int limit) {
+        String key = getKey(contest.getId(), isOpenSealRank);
+        SseEmitter emitter = new SseEmitter(EMITTER_TIMEOUT_MILLIS);
+        View view = new View(removeStar, topUidSet, (currentPage - 1) * limit, limit);
+        Subscriber subscriber = new Subscriber(emitter, forceRefresh, view);
+        while (true) {
+            Channel channel = CHANNEL_MAP.computeIfAbsent(key, k -> new Channel(contest, isOpenSealRank));
+            synchronized (channel) {
+                // 频道刚因没有订阅者被关闭
+                if (channel.closed) {
+                    continue;
+                }
+                if (channel.board == null) {
+                    refresh(channel);
+                }
+                channel.subscriberSet.add(subscriber);
+                Runnable unsubscribe = () -> {
+                    subscriber.dropped = true;
+                    channel.subscriberSet.remove(subscriber);
+                };
+                emitter.onCompletion(unsubscribe);
+                emitter.onTimeout(unsubscribe);
+                emitter.onError(e -> unsubscribe.run());
+                ViewPage page = channel.board.getPage(view);
+                List<Map<String, Object>> rows = new ArrayList<>(page.uidList.size());
+                for (String uid : page.uidList) {
+                    rows.add(channel.board.rowMap.get(uid));
+                }
+                Map<String, Object> payload = new HashMap<>();
+                payload.put("version", channel.version);
+                payload.put("total", page.total);
+                payload.put("rows", rows);
+                send(channel, subscriber, INIT_EVENT_NAME, JSONUtil.toJsonStr(payload));
+                return emitter;
+            }
+        }
+    }
+
+    /**
+     * 每个频道同一时刻只有一个计算任务，上一次尚未完成时跳过本次
+     */
+    private void flushAll() {
+        for (Map.Entry<String, Channel> entry : CHANNEL_MAP.entrySet()) {
+            Channel channel = entry.getValue();
+            if (!channel.flushing.compareAndSet(false, true)) {
+                continue;
+            }
+            try {
+                DIFF_EXECUTOR.execute(() -> flushChannel(entry.getKey(), channel));
+            } catch (RejectedExecutionException e) {
+                channel.flushing.set(false);
+            }
+        }
+    }
+
+    private void flushChannel(String key, Channel channel) {
+        try {
+            synchronized (channel) {
+                dropTimeoutSubscriber(channel);
+                if (channel.subscriberSet.isEmpty()) {
+                    channel.closed = true;
+                    CHANNEL_MAP.remove(key, channel);
+                    return;
+                }
+                flush(channel);
+            }
+        } catch (Exception e) {
+            log.error("推送比赛" + channel.contest.getId() + "的排行榜变化发生异常-------------->", e);
+        } finally {
+            channel.flushing.set(false);
+        }
+    }
+
+    private void flush(Channel channel) {
+        long now = System.currentTimeMillis();
+        if (now - channel.refreshTime > REFRESH_INTERVAL_MILLIS) {
+            Contest contest = contestEntityService.getById(channel.contest.getId());
+            if (contest == null) {
+                for (Subscriber subscriber : channel.subscriberSet) {
+                    completeAfterSent(channel, subscriber);
+                }
+                return;
+            }
+            channel.contest = contest;
+        }
+
+        // 封榜开始或解除后，普通用户看到的榜单随之变化
+        if (contestValidator.isOpenSealRank(channel.contest, false) != channel.isOpenSealRank) {
+            for (Subscriber subscriber : channel.subscriberSet) {
+                if (!subscriber.forceRefresh) {
+                    send(channel, subscriber, RELOAD_EVENT_NAME, "");
+                    completeAfterSent(channel, subscriber);
+                }
+            }
+        }
+
+        long version = getEngine(channel.contest).getVersion(channel.contest.getId(), channel.isOpenSealRank);
+        if (version != channel.version || now - channel.refreshTime > REFRESH_INTERVAL_MILLIS) {
+            Board oldBoard = channel.board;
+            refresh(channel);
+            // 相同视图的订阅者只计算与序列化一次，各用户的变化也只计算一次
+            Map<String, Map<String, Object>> rowDeltaCache = new HashMap<>();
+            Map<View, String> dataCache = new HashMap<>();
+            for (Subscriber subscriber : channel.subscriberSet) {
+                String data = dataCache.computeIfAbsent(subscriber.view,
+                        view -> diff(channel, oldBoard, view, rowDeltaCache));
+                if (!data.isEmpty()) {
+                    send(channel, subscriber, DELTA_EVENT_NAME, data);
+                }
+            }
+        }
+
+        for (Subscriber subscriber : channel.subscriberSet) {
+            if (now - subscriber.sendTime > HEARTBEAT_INTERVAL_MILLIS) {
+                send(channel, subscriber, null, null);
+            }
+        }
+    }
+
+    /**
+     * 重新获取已排好序的排名数据，并按外榜的规则计算排名：打星用户排名为-1，成绩相同的用户排名相同
+     */
+    private void refresh(Channel channel) {
+        Contest contest = channel.contest;
+        AbstractScoreboardEngine<?, ?> engine = getEngine(contest);
+        // 先取版本号，期间的变化留到下一次推送
+        channel.version = engine.getVersion(contest.getId(), channel.isOpenSealRank);
+        List<?> rankList = engine.getOrderedRank(contest, channel.isOpenSealRank);
+        if (channel.version == -1) {
+            channel.version = engine.getVersion(contest.getId(), channel.isOpenSealRank);
+        }
+        channel.refreshTime = System.currentTimeMillis();
+
+        boolean isACM = contest.getType().intValue() == ContestEnum.TYPE_ACM.getCode();
+        Set<String> starUsernameSet = getStarUsernameSet(contest.getStarAccount());
+        Board board = new Board(rankList.size());
+        int rankNum = 1;
+        Map<String, Object> preRow = null;
+        for (Object rankVO : rankList) {
+            Map<String, Object> row = BeanUtil.beanToMap(rankVO);
+            row.remove("seq");
+            String uid = (String) row.get("uid");
+            if (starUsernameSet.contains((String) row.get("username"))) {
+                row.put("rank", -1);
+            } else {
+                boolean isTie = preRow != null && (isACM
+                        ? Objects.equals(preRow.get("ac"), row.get("ac"))
+                        : Objects.equals(preRow.get("totalScore"), row.get("totalScore")))
+                        && Objects.equals(preRow.get("totalTime"), row.get("totalTime"));
+                row.put("rank", isTie ? preRow.get("rank") : rankNum);
+                preRow = row;
+                rankNum++;
+                board.noStarUidList.add(uid);
+            }
+            board.positionMap.put(uid, board.uidList.size());
+            board.uidList.add(uid);
+            board.rowMap.put(uid, row);
+        }
+        channel.board = board;
+    }
+
+    /**
+     * 计算订阅者视图的变化：新进入视图的用户推送全部数据，已有的用户只推送变化的字段，提交详情只推送变化的题目，
+     * 离开视图的用户标记removed，视图中的用户顺序变化时推送新的顺序order
+     *
+     * @return 序列化后的变化，视图没有变化时为空串
+     */
+    private String diff(Channel channel, Board oldBoard, View view,
+                        Map<String, Map<String, Object>> rowDeltaCache) {
+        ViewPage oldPage = oldBoard.getPage(view);
+        ViewPage newPage = channel.board.getPage(view);
+        Set<String> oldUidSet = new HashSet<>(oldPage.uidList);
+        List<Map<String, Object>> deltaList = new ArrayList<>();
+        for (String uid : newPage.uidList) {
+            Map<String, Object> newRow = channel.board.rowMap.get(uid);
+            if (!oldUidSet.contains(uid)) {
+                deltaList.add(newRow);
+                continue;
+            }
+            Map<String, Object> delta = rowDeltaCache.computeIfAbsent(uid, k -> {
+                Map<String, Object> rowDelta = diffMap(oldBoard.rowMap.get(k), newRow);
+                if (!rowDelta.isEmpty()) {
+                    rowDelta.put("uid", k);
+                }
+                return rowDelta;
+            });
+            if (!delta.isEmpty()) {
+                deltaList.add(delta);
+            }
+        }
+        Set<String> newUidSet = new HashSet<>(newPage.uidList);
+        for (String uid : oldPage.uidList) {
+            if (!newUidSet.contains(uid)) {
+                Map<String, Object> delta = new HashMap<>();
+                delta.put("uid", uid);
+                delta.put("removed", true);
+                deltaList.add(delta);
+            }
+        }
+        boolean isOrderChanged = !oldPage.uidList.equals(newPage.uidList);
+        if (deltaList.isEmpty() && !isOrderChanged && oldPage.total == newPage.total) {
+            return "";
+        }
+        Map<String, Object> payload = new HashMap<>();
+        payload.put("version", channel.version);
+        payload.put("total", newPage.total);
+        payload.put("rows", deltaList);
+        if (isOrderChanged) {
+            payload.put("order", newPage.uidList);
+        }
+        return JSONUtil.toJsonStr(payload);
+    }
+
+    private Map<String, Object> diffMap(Map<?, ?> oldMap, Map<?, ?> newMap) {
+        Map<String, Object> delta = new HashMap<>();
+        for (Map.Entry<?, ?> entry : newMap.entrySet()) {
+            Object oldValue = oldMap.get(entry.getKey());
+            Object newValue = entry.getValue();
+            if (oldValue instanceof Map && newValue instanceof Map) {
+                Map<String, Object> subDelta = diffMap((Map<?, ?>) oldValue, (Map<?, ?>) newValue);
+                if (!subDelta.isEmpty()) {
+                    delta.put(String.valueOf(entry.getKey()), subDelta);
+                }
+            } else if (!Objects.equals(oldValue, newValue)) {
+                delta.put(String.valueOf(entry.getKey()), newValue);
+            }
+        }
+        for (Object key : oldMap.keySet()) {
+            if (!newMap.containsKey(key)) {
+                delta.put(String.valueOf(key), null);
+            }
+        }
+        return delta;
+    }
+
+    /**
+     * 事件放入订阅者的队列后异步发送，不在频道锁内等待网络写入
+     *
+     * @param eventName 事件名，为null时发送心跳注释
+     */
+    private void send(Channel channel, Subscriber subscriber, String eventName, String data) {
+        if (subscriber.dropped) {
+            return;
+        }
+        if (subscriber.eventQueue.size() >= MAX_PENDING_EVENTS) {
+            log.warn("比赛{}排行榜的订阅者积压的事件过多，断开该订阅者", channel.contest.getId());
+            drop(channel, subscriber);
+            return;
+        }
+        subscriber.eventQueue.offer(eventName == null ? SseEmitter.event().comment("heartbeat")
+                : SseEmitter.event().name(eventName).data(data));
+        subscriber.sendTime = System.currentTimeMillis();
+        scheduleDrain(channel, subscriber);
+    }
+
+    /**
+     * 已入队的事件发送完后结束该订阅者的连接
+     */
+    private void completeAfterSent(Channel channel, Subscriber subscriber) {
+        subscriber.completing = true;
+        channel.subscriberSet.remove(subscriber);
+        scheduleDrain(channel, subscriber);
+    }
+
+    private void dropTimeoutSubscriber(Channel channel) {
+        long now = System.currentTimeMillis();
+        for (Subscriber subscriber : channel.subscriberSet) {
+            long sendStartTime = subscriber.sendStartTime;
+            if (sendStartTime != 0 && now - sendStartTime > SEND_TIMEOUT_MILLIS) {
+                log.warn("比赛{}排行榜的订阅者发送超时，断开该订阅者", channel.contest.getId());
+                drop(channel, subscriber);
+            }
+        }
+    }
+
+    /**
+     * 发送阻塞时emitter的其它方法也会被阻塞，因此只做标记，由发送线程在写入返回或失败后结束连接
+     */
+    private void drop(Channel channel, Subscriber subscriber) {
+        subscriber.dropped = true;
+        channel.subscriberSet.remove(subscriber);
+        subscriber.eventQueue.clear();
+        scheduleDrain(channel, subscriber);
+    }
+
+    /**
+     * 每个订阅者同一时刻最多一个发送任务，保证事件按入队顺序发送
+     */
+    private void scheduleDrain(Channel channel, Subscriber subscriber) {
+        if (!subscriber.sending.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            SEND_EXECUTOR.execute(() -> drain(channel, subscriber));
+        } catch (RejectedExecutionException e) {
+            subscriber.sending.set(false);
+        }
+    }
+
+    private void drain(Channel channel, Subscriber subscriber) {
+        try {
+            SseEmitter.SseEventBuilder event;
+            while (!subscriber.dropped && (event = subscriber.eventQueue.poll()) != null) {
+                subscriber.sendStartTime = System.currentTimeMillis();
+                subscriber.emitter.send(event);
+                subscriber.sendStartTime = 0;
+            }
+            if (subscriber.dropped || (subscriber.completing && subscriber.eventQueue.isEmpty())) {
+                channel.subscriberSet.remove(subscriber);
+                subscriber.complete(null);
+                return;
+            }
+        } catch (Exception e) {
+            // 客户端已断开
+            channel.subscriberSet.remove(subscriber);
+            subscriber.complete(e);
+            return;
+        } finally {
+            subscriber.sendStartTime = 0;
+            subscriber.sending.set(false);
+        }
+        // 释放发送标记前可能有新事件入队
+        if (!subscriber.eventQueue.isEmpty()) {
+            scheduleDrain(channel, subscriber);
+        }
+    }
+
+    private AbstractScoreboardEngine<?, ?> getEngine(Contest contest) {
+        if (contest.getType().intValue() == ContestEnum.TYPE_ACM.getCode()) {
+            return acmScoreboardEngine;
+        }
+        return oiScoreboardEngine;
+    }
+
+    private Set<String> getStarUsernameSet(String starAccountStr) {
+        if (StrUtil.isEmpty(starAccountStr)) {
+            return Collections.emptySet();
+        }
+        List<String> starAccountList = JSONUtil.parseObj(starAccountStr).get("star_account", List.class);
+        Set<String> starUsernameSet = new HashSet<>();
+        if (starAccountList != null) {
+            for (String username : starAccountList) {
+                if (!StrUtil.isEmpty(username)) {
+                    starUsernameSet.add(username);
+                }
+            }
+        }
+        return starUsernameSet;
+    }
+
+    private String getKey(Long cid, boolean isOpenSealRank) {
+        return cid + "-" + isOpenSealRank;
+    }
+
+    private static class Channel {
+
+        private Contest contest;
+
+        private final boolean isOpenSealRank;
+
+        private final Set<Subscriber> subscriberSet = ConcurrentHashMap.newKeySet();
+
+        /**
+         * 最近一次推送的排名数据
+         */
+        private Board board;
+
+        private long version = -1;
+
+        private long refreshTime;
+
+        private boolean closed;
+
+        private final AtomicBoolean flushing = new AtomicBoolean();
+
+        Channel(Contest contest, boolean isOpenSealRank) {
+            this.contest = contest;
+            this.isOpenSealRank = isOpenSealRank;
+        }
+    }
+
+    /**
+     * 一次获取的全部排名数据，各订阅者的视图由此截取
+     */
+    private static class Board {
+
+        /**
+         * key: 用户id，已计算排名的排名数据
+         */
+        private final Map<String, Map<String, Object>> rowMap;
+
+        /**
+         * 按排名顺序的用户id
+         */
+        private final List<String> uidList;
+
+        /**
+         * 按排名顺序的非打星用户id
+         */
+        private final List<String> noStarUidList;
+
+        /**
+         * key: 用户id，value: 在uidList中的下标
+         */
+        private final Map<String, Integer> positionMap;
+
+        Board(int size) {
+            rowMap = new HashMap<>(size * 2);
+            uidList = new ArrayList<>(size);
+            noStarUidList = new ArrayList<>(size);
+            positionMap = new HashMap<>(size * 2);
+        }
+
+        /**
+         * 与分页查询排行榜一致：置顶的用户按排名顺序排在最前，之后是按排名顺序的用户，移除打星用户时两者都不含打星用户
+         */
+        ViewPage getPage(View view) {
+            List<String> rankUidList = view.removeStar ? noStarUidList : uidList;
+            List<String> topUidList = new ArrayList<>();
+            for (String uid : view.topUidSet) {
+                Map<String, Object> row = rowMap.get(uid);
+                if (row != null && !(view.removeStar && Objects.equals(row.get("rank"), -1))) {
+                    topUidList.add(uid);
+                }
+            }
+            topUidList.sort(Comparator.comparing(positionMap::get));
+            int total = topUidList.size() + rankUidList.size();
+            List<String> pageUidList = new ArrayList<>();
+            for (int i = Math.max(view.offset, 0); i < view.offset + view.limit && i < total; i++) {
+                pageUidList.add(i < topUidList.size() ? topUidList.get(i)
+                        : rankUidList.get(i - topUidList.size()));
+            }
+            return new ViewPage(pageUidList, total);
+        }
+    }
+
+    /**
+     * 订阅者正在查看的一页
+     */
+    private static class View {
+
+        private final boolean removeStar;
+
+        private final Set<String> topUidSet;
+
+        private final int offset;
+
+        private final int limit;
+
+        View(boolean removeStar, Set<String> topUidSet, int offset, int limit) {
+            this.removeStar = removeStar;
+            this.topUidSet = topUidSet;
+            this.offset = offset;
+            this.limit = limit;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof View)) {
+                return false;
+            }
+            View view = (View) o;
+            return removeStar == view.removeStar && offset == view.offset && limit == view.limit
+                    && topUidSet.equals(view.topUidSet);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(removeStar, topUidSet, offset, limit);
+        }
+    }
+
+    private static class ViewPage {
+
+        private final List<String> uidList;
+
+        private final int total;
+
+        ViewPage(List<String> uidList, int total) {
+            this.uidList = uidList;
+            this.total = total;
+        }
+    }
+
+    private static class Subscriber {
+
+        private final SseEmitter emitter;
+
+        private final boolean forceRefresh;
+
+        private final View view;
+
+        private volatile long sendTime = System.currentTimeMillis();
+
+        private final Queue<SseEmitter.SseEventBuilder> eventQueue = new ConcurrentLinkedQueue<>();
+
+        private final AtomicBoolean sending = new AtomicBoolean();
+
+        private final AtomicBoolean completed = new AtomicBoolean();
+
+        /**
+         * 当前发送的开始时间，没有进行中的发送时为0
+         */
+        private volatile long sendStartTime;
+
+        private volatile boolean completing;
+
+        private volatile boolean dropped;
+
+        Subscriber(SseEmitter emitter, boolean forceRefresh, View view) {
+            this.emitter = emitter;
+            this.forceRefresh = forceRefresh;
+            this.view = view;
+        }
+
+        void complete(Throwable error) {
+            dropped = true;
+            eventQueue.clear();
+            if (!completed.compareAndSet(false, true)) {
+                return;
+            }
+            try {
+                if (error == null) {
+                    emitter.complete();
+                } else {
+                    emitter.completeWithError(error);
+                }
+            } catch (Exception ignored) {
+                // 连接已结束
+            }
+        }
+    }
+
+}
@@ -13,6 +13,7 @@ import com.simplefanc.voj.backend.config.property.FilePathProperties;
 import com.simplefanc.voj.backend.dao.contest.ContestProblemEntityService;
 import com.simplefanc.voj.backend.dao.judge.JudgeEntityService;
 import com.simplefanc.voj.backend.dao.problem.ProblemEntityService;
+import com.simplefanc.voj.backend.judge.ContestMetadataCache;
 import com.simplefanc.voj.backend.judge.remote.crawler.AbstractProblemCrawler;
 import com.simplefanc.voj.backend.pojo.dto.ContestProblemDTO;
 import com.simplefanc.voj.backend.pojo.dto.ProblemDTO;
@@ -54,6 +55,8 @@ public class AdminContestProblemServiceImpl implements AdminContestProblemServic
 
     private final FilePathProperties filePathProps;
 
+    private final ContestMetadataCache contestMetadataCache;
+
     @Override
     @Transactional(rollbackFor = Exception.class)
     public Map<String, Object> getProblemList(Integer limit, Integer currentPage, String keyword, Long cid,
@@ -166,7 +169,10 @@ public class AdminContestProblemServiceImpl implements AdminContestProblemServic
             UpdateWrapper<Judge> judgeUpdateWrapper = new UpdateWrapper<>();
             judgeUpdateWrapper.eq("cid", cid).eq("pid", pid);
             judgeEntityService.remove(judgeUpdateWrapper);
+            contestMetadataCache.invalidate(cid);
         } else {
+            // 删除题目会一并删除比赛题目，需要在删除前找出包含该题目的比赛
+            contestMetadataCache.invalidateByPid(pid);
             // problem的id为其他表的外键的表中的对应数据都会被一起删除！
             problemEntityService.removeById(pid);
         }
@@ -228,6 +234,7 @@ public class AdminContestProblemServiceImpl implements AdminContestProblemServic
         if (!isOk) {
             throw new StatusFailException("修改失败");
         }
+        contestMetadataCache.invalidateByPid(problemDTO.getProblem().getId());
     }
 
     @Override
@@ -247,6 +254,7 @@ public class AdminContestProblemServiceImpl implements AdminContestProblemServic
         if (isOk) {
             contestProblemEntityService.syncContestRecord(contestProblem.getPid(), contestProblem.getCid(),
                     contestProblem.getDisplayId());
+            contestMetadataCache.invalidate(contestProblem.getCid());
             return contestProblem;
         } else {
             throw new StatusFailException("更新失败");
@@ -280,6 +288,7 @@ public class AdminContestProblemServiceImpl implements AdminContestProblemServic
         if (!isOk || !updateProblem) {
             throw new StatusFailException("添加失败");
         }
+        contestMetadataCache.invalidate(cid);
     }
 
 
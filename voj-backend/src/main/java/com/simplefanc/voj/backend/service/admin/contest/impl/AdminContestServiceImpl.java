@@ -13,6 +13,7 @@ import com.simplefanc.voj.backend.common.exception.StatusForbiddenException;
 import com.simplefanc.voj.backend.common.exception.StatusSystemErrorException;
 import com.simplefanc.voj.backend.dao.contest.ContestEntityService;
 import com.simplefanc.voj.backend.dao.contest.ContestRegisterEntityService;
+import com.simplefanc.voj.backend.judge.ContestMetadataCache;
 import com.simplefanc.voj.backend.pojo.vo.AdminContestVO;
 import com.simplefanc.voj.backend.pojo.vo.UserRolesVO;
 import com.simplefanc.voj.backend.service.admin.contest.AdminContestService;
@@ -44,6 +45,8 @@ public class AdminContestServiceImpl implements AdminContestService {
 
     private final ContestValidator contestValidator;
 
+    private final ContestMetadataCache contestMetadataCache;
+
     @Override
     public IPage<Contest> getContestList(Integer limit, Integer currentPage, String keyword) {
 
@@ -97,6 +100,7 @@ public class AdminContestServiceImpl implements AdminContestService {
         if (!isOk) {
             throw new StatusFailException("删除失败");
         }
+        contestMetadataCache.invalidate(cid);
     }
 
     @Override
@@ -135,6 +139,7 @@ public class AdminContestServiceImpl implements AdminContestService {
                     contestRegisterEntityService.remove(updateWrapper);
                 }
             }
+            contestMetadataCache.invalidate(contest.getId());
         } else {
             throw new StatusFailException("修改失败");
         }
@@ -154,6 +159,7 @@ public class AdminContestServiceImpl implements AdminContestService {
         if (!isOK) {
             throw new StatusFailException("修改失败");
         }
+        contestMetadataCache.invalidate(cid);
     }
 
     @Override
@@ -12,6 +12,7 @@ import com.simplefanc.voj.backend.common.exception.StatusForbiddenException;
 import com.simplefanc.voj.backend.dao.judge.JudgeEntityService;
 import com.simplefanc.voj.backend.dao.problem.ProblemCaseEntityService;
 import com.simplefanc.voj.backend.dao.problem.ProblemEntityService;
+import com.simplefanc.voj.backend.judge.ContestMetadataCache;
 import com.simplefanc.voj.backend.judge.Dispatcher;
 import com.simplefanc.voj.backend.judge.remote.crawler.AbstractProblemCrawler;
 import com.simplefanc.voj.backend.config.property.FilePathProperties;
@@ -55,6 +56,8 @@ public class AdminProblemServiceImpl implements AdminProblemService {
 
     private final Dispatcher dispatcher;
 
+    private final ContestMetadataCache contestMetadataCache;
+
     @Value("${voj.judge.token}")
     private String judgeToken;
 
@@ -123,7 +126,10 @@ public class AdminProblemServiceImpl implements AdminProblemService {
     }
 
     @Override
+    @Transactional(rollbackFor = Exception.class)
     public void deleteProblem(Long pid) {
+        // 删除题目会一并删除比赛题目，需要在删除前找出包含该题目的比赛
+        contestMetadataCache.invalidateByPid(pid);
         boolean isOk = problemEntityService.removeById(pid);
         // problem的id为其他表的外键的表中的对应数据都会被一起删除！
         // 删除成功
@@ -184,7 +190,7 @@ public class AdminProblemServiceImpl implements AdminProblemService {
                 judgeUpdateWrapper.eq("pid", problemDTO.getProblem().getId()).set("display_pid", problemId);
                 judgeEntityService.update(judgeUpdateWrapper);
             }
-
+            contestMetadataCache.invalidateByPid(problemDTO.getProblem().getId());
         } else {
             throw new StatusFailException("修改失败");
         }
@@ -260,6 +266,7 @@ public class AdminProblemServiceImpl implements AdminProblemService {
         if (!isOk) {
             throw new StatusFailException("修改失败");
         }
+        contestMetadataCache.invalidateByPid(problem.getId());
     }
 
 }
\ No newline at end of file
@@ -8,8 +8,10 @@ import com.simplefanc.voj.backend.dao.judge.JudgeCaseEntityService;
 import com.simplefanc.voj.backend.dao.judge.JudgeEntityService;
 import com.simplefanc.voj.backend.dao.problem.ProblemEntityService;
 import com.simplefanc.voj.backend.dao.user.UserAcproblemEntityService;
+import com.simplefanc.voj.backend.judge.ProblemCountCache;
 import com.simplefanc.voj.backend.judge.local.JudgeTaskDispatcher;
 import com.simplefanc.voj.backend.judge.remote.RemoteJudgeTaskDispatcher;
+import com.simplefanc.voj.backend.scoreboard.ContestRecordEventBus;
 import com.simplefanc.voj.backend.service.admin.rejudge.RejudgeService;
 import com.simplefanc.voj.common.constants.JudgeStatus;
 import com.simplefanc.voj.common.pojo.entity.contest.ContestRecord;
@@ -48,6 +50,10 @@ public class RejudgeServiceImpl implements RejudgeService {
 
     private final RemoteJudgeTaskDispatcher remoteJudgeTaskDispatcher;
 
+    private final ContestRecordEventBus contestRecordEventBus;
+
+    private final ProblemCountCache problemCountCache;
+
     @Override
     @Transactional(rollbackFor = Exception.class)
     public Judge rejudge(Long submitId) {
@@ -65,11 +71,14 @@ public class RejudgeServiceImpl implements RejudgeService {
                 userAcproblemQueryWrapper.eq("submit_id", judge.getSubmitId());
                 userAcproblemEntityService.remove(userAcproblemQueryWrapper);
             }
+            // 撤销题目统计中原有的评测结果
+            problemCountCache.revokeVerdict(judge);
         } else {
             // 将对应比赛记录设置成默认值
             UpdateWrapper<ContestRecord> updateWrapper = new UpdateWrapper<>();
             updateWrapper.eq("submit_id", submitId).setSql("status=null,score=null");
             resetContestRecordResult = contestRecordEntityService.update(updateWrapper);
+            contestRecordEventBus.publishRecordChanged(judge.getCid(), submitId);
         }
 
         // 清除该提交对应的测试点结果
@@ -131,6 +140,8 @@ public class RejudgeServiceImpl implements RejudgeService {
         UpdateWrapper<ContestRecord> updateWrapper = new UpdateWrapper<>();
         updateWrapper.in("submit_id", submitIdList).setSql("status=null,score=null");
         boolean resetContestRecordResult = contestRecordEntityService.update(updateWrapper);
+        // 批量重置了比赛记录，排行榜需要重新构建
+        contestRecordEventBus.publishContestInvalidated(cid);
 
         if (resetContestRecordResult && resetJudgeResult) {
             // 调用重判服务
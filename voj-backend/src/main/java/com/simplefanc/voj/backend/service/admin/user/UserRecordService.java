@@ -5,6 +5,7 @@ import com.baomidou.mybatisplus.extension.plugins.pagination.Page;
 import com.simplefanc.voj.backend.pojo.vo.ACMRankVO;
 import com.simplefanc.voj.backend.pojo.vo.OIRankVO;
 import com.simplefanc.voj.backend.pojo.vo.UserHomeVO;
+import com.simplefanc.voj.common.pojo.entity.user.UserRecord;
 
 import java.util.List;
 
@@ -26,4 +27,17 @@ public interface UserRecordService {
 
     IPage<ACMRankVO> getACMRankList(Page<ACMRankVO> page, List<String> uidList);
 
+    List<OIRankVO> getOIRankListByUidList(List<String> uidList);
+
+    List<ACMRankVO> getACMRankListByUidList(List<String> uidList);
+
+    void refreshUserRecord(String uid);
+
+    void initUserRecord();
+
+    /**
+     * 获取参与排行的用户做题记录，uid为null时获取全部，被禁用的用户不参与排行
+     */
+    List<UserRecord> getRankUserRecordList(String uid);
+
 }
@@ -20,8 +20,8 @@ import com.simplefanc.voj.backend.pojo.vo.ExcelUserVO;
 import com.simplefanc.voj.backend.pojo.vo.UserRolesVO;
 import com.simplefanc.voj.backend.service.admin.user.AdminUserService;
 import com.simplefanc.voj.backend.service.msg.AdminNoticeService;
+import com.simplefanc.voj.backend.service.oj.RankService;
 import com.simplefanc.voj.backend.shiro.UserSessionUtil;
-import com.simplefanc.voj.common.constants.RedisConstant;
 import com.simplefanc.voj.common.pojo.entity.user.UserInfo;
 import com.simplefanc.voj.common.pojo.entity.user.UserRole;
 import lombok.RequiredArgsConstructor;
@@ -48,6 +48,8 @@ public class AdminUserServiceImpl implements AdminUserService {
 
     private final AdminNoticeService adminNoticeService;
 
+    private final RankService rankService;
+
     private final RedisUtil redisUtil;
 
     @Override
@@ -91,13 +93,14 @@ public class AdminUserServiceImpl implements AdminUserService {
             addUserRole = userRoleEntityService.updateById(userRole);
             if (type == RoleEnum.ROOT.getId() || oldType == RoleEnum.ROOT.getId()) {
                 // 新增或者去除超级管理员需要删除缓存
-                String cacheKey = RedisConstant.SUPER_ADMIN_UID_LIST_CACHE;
-                redisUtil.del(cacheKey);
+                userInfoEntityService.evictSuperAdminUidList();
             }
         }
         if (addUserInfo) {
             // 需要重新登录
             userRoleEntityService.deleteCache(uid, true);
+            // 用户状态可能变化，更新其是否参与排行
+            rankService.refreshUserRank(uid);
         } else if (addUserRole) {
             // 需要重新授权
             userRoleEntityService.deleteCache(uid, false);
@@ -119,6 +122,7 @@ public class AdminUserServiceImpl implements AdminUserService {
         if (!isOk) {
             throw new StatusFailException("删除失败！");
         }
+        rankService.removeUserRank(deleteUserIdList);
     }
 
     @Override
@@ -130,6 +134,7 @@ public class AdminUserServiceImpl implements AdminUserService {
         if (!isOk) {
             throw new StatusFailException("封禁失败！");
         }
+        rankService.removeUserRank(userIdList);
     }
 
     @Override
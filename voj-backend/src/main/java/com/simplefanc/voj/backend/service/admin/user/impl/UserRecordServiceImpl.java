@@ -7,6 +7,7 @@ import com.simplefanc.voj.backend.mapper.UserRecordMapper;
 import com.simplefanc.voj.backend.pojo.vo.ACMRankVO;
 import com.simplefanc.voj.backend.pojo.vo.OIRankVO;
 import com.simplefanc.voj.backend.pojo.vo.UserHomeVO;
+import com.simplefanc.voj.common.pojo.entity.user.UserRecord;
 import lombok.RequiredArgsConstructor;
 import org.springframework.stereotype.Service;
 
@@ -46,4 +47,32 @@ public class UserRecordServiceImpl implements UserRecordService {
         return userRecordMapper.getACMRankList(page, uidList);
     }
 
+    @Override
+    public List<OIRankVO> getOIRankListByUidList(List<String> uidList) {
+        return userRecordMapper.getOIRankListByUidList(uidList);
+    }
+
+    @Override
+    public List<ACMRankVO> getACMRankListByUidList(List<String> uidList) {
+        return userRecordMapper.getACMRankListByUidList(uidList);
+    }
+
+    @Override
+    public void refreshUserRecord(String uid) {
+        // 绝大多数用户已有记录，先更新，没有匹配的行时再插入
+        if (userRecordMapper.updateUserRecord(uid) == 0) {
+            userRecordMapper.insertUserRecordIfAbsent(uid);
+        }
+    }
+
+    @Override
+    public void initUserRecord() {
+        userRecordMapper.initUserRecord();
+    }
+
+    @Override
+    public List<UserRecord> getRankUserRecordList(String uid) {
+        return userRecordMapper.getRankUserRecordList(uid);
+    }
+
 }
@@ -0,0 +1,26 @@
+package com.simplefanc.voj.backend.service.file;
+
+import org.springframework.core.io.Resource;
+
+/**
+ * @Author: chenfan
+ * @Date: 2022/11/30 10:26
+ * @Description:
+ */
+public interface TestCaseSyncService {
+
+    /**
+     * @MethodName getManifest
+     * @Description 获取题目测试数据的描述文件，包含各测试数据文件的内容摘要
+     * @Since 2022/11/30
+     */
+    Resource getManifest(Long pid, String token);
+
+    /**
+     * @MethodName getBlob
+     * @Description 根据内容摘要获取题目的测试数据文件
+     * @Since 2022/11/30
+     */
+    Resource getBlob(Long pid, String hash, String token);
+
+}
@@ -165,13 +165,13 @@ public class ContestFileServiceImpl implements ContestFileService {
         // ACM比赛
         if (contest.getType().intValue() == ContestEnum.TYPE_ACM.getCode()) {
             List<ACMContestRankVO> acmContestRankVOList = contestACMRankService.calculateACMRank(isOpenSealRank, removeStar, contest,
-                    null, null, false, null);
+                    null, null);
             head = getContestRankExcelHead(contestProblemDisplayIdList, true);
             data = changeACMContestRankToExcelRowList(acmContestRankVOList,
                             contestProblemDisplayIdList, contest.getRankShowName());
         } else {
             List<OIContestRankVO> oiContestRankVOList = contestOIRankService.calculateOIRank(isOpenSealRank,
-                    removeStar, contest, null, null, false, null);
+                    removeStar, contest, null, null);
             head = getContestRankExcelHead(contestProblemDisplayIdList, false);
             data = changeOIContestRankToExcelRowList(oiContestRankVOList, contestProblemDisplayIdList, contest.getRankShowName());
         }
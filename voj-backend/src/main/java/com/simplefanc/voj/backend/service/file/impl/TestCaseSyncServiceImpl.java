@@ -0,0 +1,82 @@
+package com.simplefanc.voj.backend.service.file.impl;
+
+import cn.hutool.core.io.FileUtil;
+import cn.hutool.core.io.file.FileReader;
+import cn.hutool.core.util.CharsetUtil;
+import cn.hutool.json.JSONArray;
+import cn.hutool.json.JSONObject;
+import cn.hutool.json.JSONUtil;
+import com.simplefanc.voj.backend.common.exception.StatusAccessDeniedException;
+import com.simplefanc.voj.backend.common.exception.StatusNotFoundException;
+import com.simplefanc.voj.backend.config.ConfigVO;
+import com.simplefanc.voj.backend.config.property.FilePathProperties;
+import com.simplefanc.voj.backend.service.file.TestCaseSyncService;
+import lombok.RequiredArgsConstructor;
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.core.io.Resource;
+import org.springframework.stereotype.Service;
+
+import java.io.File;
+
+/**
+ * @Author: chenfan
+ * @Date: 2022/11/30 10:26
+ * @Description: 向判题机提供测试数据，测试数据文件以内容摘要标识，判题机按需拉取本地缺失的文件
+ */
+@Service
+@RequiredArgsConstructor
+public class TestCaseSyncServiceImpl implements TestCaseSyncService {
+
+    private final ConfigVO configVO;
+
+    private final FilePathProperties filePathProps;
+
+    @Override
+    public Resource getManifest(Long pid, String token) {
+        checkJudgeToken(token);
+        File infoFile = new File(getTestCasesDir(pid) + File.separator + "info");
+        if (!infoFile.exists()) {
+            throw new StatusNotFoundException("该题目的测试数据不存在！");
+        }
+        return new FileSystemResource(infoFile);
+    }
+
+    @Override
+    public Resource getBlob(Long pid, String hash, String token) {
+        checkJudgeToken(token);
+        String testCasesDir = getTestCasesDir(pid);
+        File infoFile = new File(testCasesDir + File.separator + "info");
+        if (!infoFile.exists()) {
+            throw new StatusNotFoundException("该题目的测试数据不存在！");
+        }
+        JSONObject testCaseInfo = JSONUtil.parseObj(new FileReader(infoFile, CharsetUtil.UTF_8).readString());
+        JSONArray testCases = testCaseInfo.getJSONArray("testCases");
+        for (int index = 0; index < testCases.size(); index++) {
+            JSONObject testCase = testCases.getJSONObject(index);
+            String fileName = null;
+            if (hash.equals(testCase.getStr("inputHash"))) {
+                fileName = testCase.getStr("inputName");
+            } else if (hash.equals(testCase.getStr("outputHash"))) {
+                fileName = testCase.getStr("outputName");
+            }
+            if (fileName != null) {
+                File file = new File(testCasesDir + File.separator + fileName);
+                if (FileUtil.isFile(file)) {
+                    return new FileSystemResource(file);
+                }
+            }
+        }
+        throw new StatusNotFoundException("该测试数据文件不存在！");
+    }
+
+    private void checkJudgeToken(String token) {
+        if (!configVO.getJudgeToken().equals(token)) {
+            throw new StatusAccessDeniedException("对不起！您使用的判题服务调用凭证不正确！访问受限！");
+        }
+    }
+
+    private String getTestCasesDir(Long pid) {
+        return filePathProps.getTestcaseBaseFolder() + File.separator + "problem_" + pid;
+    }
+
+}
@@ -7,14 +7,13 @@ import com.simplefanc.voj.backend.common.constants.TrainingEnum;
 import com.simplefanc.voj.backend.common.exception.StatusFailException;
 import com.simplefanc.voj.backend.common.exception.StatusForbiddenException;
 import com.simplefanc.voj.backend.common.exception.StatusNotFoundException;
-import com.simplefanc.voj.backend.dao.contest.ContestEntityService;
-import com.simplefanc.voj.backend.dao.contest.ContestProblemEntityService;
 import com.simplefanc.voj.backend.dao.contest.ContestRecordEntityService;
 import com.simplefanc.voj.backend.dao.judge.JudgeEntityService;
 import com.simplefanc.voj.backend.dao.problem.ProblemEntityService;
 import com.simplefanc.voj.backend.dao.training.TrainingEntityService;
 import com.simplefanc.voj.backend.dao.training.TrainingProblemEntityService;
 import com.simplefanc.voj.backend.dao.training.TrainingRecordEntityService;
+import com.simplefanc.voj.backend.judge.ContestMetadataCache;
 import com.simplefanc.voj.backend.pojo.vo.UserRolesVO;
 import com.simplefanc.voj.backend.shiro.UserSessionUtil;
 import com.simplefanc.voj.backend.validator.ContestValidator;
@@ -42,12 +41,8 @@ import org.springframework.transaction.annotation.Transactional;
 @RequiredArgsConstructor
 public class BeforeDispatchInitService {
 
-    private final ContestEntityService contestEntityService;
-
     private final ContestRecordEntityService contestRecordEntityService;
 
-    private final ContestProblemEntityService contestProblemEntityService;
-
     private final JudgeEntityService judgeEntityService;
 
     private final ProblemEntityService problemEntityService;
@@ -62,6 +57,8 @@ public class BeforeDispatchInitService {
 
     private final ContestValidator contestValidator;
 
+    private final ContestMetadataCache contestMetadataCache;
+
     public void initCommonSubmission(String problemId, Judge judge) {
 
         QueryWrapper<Problem> problemQueryWrapper = new QueryWrapper<>();
@@ -81,7 +78,7 @@ public class BeforeDispatchInitService {
     @Transactional(rollbackFor = Exception.class)
     public void initContestSubmission(Long cid, String displayId, Judge judge) {
         // 首先判断一下比赛的状态是否是正在进行，结束状态都不能提交，比赛前比赛管理员可以提交
-        Contest contest = contestEntityService.getById(cid);
+        Contest contest = contestMetadataCache.getContest(cid);
 
         if (contest == null) {
             throw new StatusNotFoundException("对不起，该比赛不存在！");
@@ -108,12 +105,16 @@ public class BeforeDispatchInitService {
         }
 
         // 查询获取对应的pid和cpid
-        QueryWrapper<ContestProblem> contestProblemQueryWrapper = new QueryWrapper<>();
-        contestProblemQueryWrapper.eq("cid", cid).eq("display_id", displayId);
-        ContestProblem contestProblem = contestProblemEntityService.getOne(contestProblemQueryWrapper, false);
+        ContestProblem contestProblem = contestMetadataCache.getContestProblem(cid, displayId);
+        if (contestProblem == null) {
+            throw new StatusNotFoundException("对不起，该比赛题目不存在！");
+        }
         judge.setCpid(contestProblem.getId()).setPid(contestProblem.getPid());
 
-        Problem problem = problemEntityService.getById(contestProblem.getPid());
+        Problem problem = contestMetadataCache.getProblem(cid, contestProblem.getPid());
+        if (problem == null) {
+            throw new StatusNotFoundException("对不起，该比赛题目不存在！");
+        }
         if (problem.getAuth().equals(ProblemEnum.AUTH_PRIVATE.getCode())) {
             throw new StatusForbiddenException("错误！当前题目不可提交！");
         }
@@ -1,27 +1,23 @@
 package com.simplefanc.voj.backend.service.oj;
 
 import cn.hutool.core.collection.CollUtil;
-import cn.hutool.core.date.DateUtil;
 import cn.hutool.core.util.ReUtil;
 import cn.hutool.core.util.StrUtil;
 import cn.hutool.json.JSONObject;
 import cn.hutool.json.JSONUtil;
 import com.baomidou.mybatisplus.core.metadata.IPage;
 import com.baomidou.mybatisplus.extension.plugins.pagination.Page;
-import com.simplefanc.voj.backend.dao.contest.ContestRecordEntityService;
 import com.simplefanc.voj.backend.dao.contest.ContestRegisterEntityService;
 import com.simplefanc.voj.backend.dao.user.UserInfoEntityService;
 import com.simplefanc.voj.backend.pojo.vo.ACMContestRankVO;
-import com.simplefanc.voj.backend.pojo.vo.ContestRecordVO;
 import com.simplefanc.voj.backend.pojo.vo.UserRolesVO;
+import com.simplefanc.voj.backend.scoreboard.ACMScoreboardEngine;
+import com.simplefanc.voj.backend.scoreboard.RankPage;
 import com.simplefanc.voj.backend.shiro.UserSessionUtil;
 import com.simplefanc.voj.backend.validator.ContestValidator;
-import com.simplefanc.voj.common.constants.ContestEnum;
-import com.simplefanc.voj.common.constants.RedisConstant;
 import com.simplefanc.voj.common.pojo.entity.contest.Contest;
 import com.simplefanc.voj.common.pojo.entity.user.UserInfo;
 import lombok.RequiredArgsConstructor;
-import org.springframework.cache.annotation.Cacheable;
 import org.springframework.stereotype.Component;
 import org.springframework.util.CollectionUtils;
 
@@ -39,7 +35,7 @@ public class ContestACMRankService {
 
     private final UserInfoEntityService userInfoEntityService;
 
-    private final ContestRecordEntityService contestRecordEntityService;
+    private final ACMScoreboardEngine acmScoreboardEngine;
 
     private final ContestRegisterEntityService contestRegisterEntityService;
 
@@ -56,14 +52,40 @@ public class ContestACMRankService {
      */
     public IPage<ACMContestRankVO> getContestACMRankPage(Contest contest, Boolean isOpenSealRank, Boolean removeStar,
                                                          List<String> concernedList, String keyword,
-                                                         Boolean useCache, Long cacheTime,
                                                          int currentPage, int limit) {
+        // 没有关键字搜索且无需追加无提交用户时，只复制当前页的数据
+        if (StrUtil.isEmpty(keyword) && !contestValidator.isContestAdmin(contest)) {
+            int currId = currentPage > 1 ? (currentPage - 1) * limit : 0;
+            RankPage<ACMContestRankVO> rankPage = acmScoreboardEngine.getRankPage(contest, isOpenSealRank,
+                    starAccountToMap(contest.getStarAccount()).keySet(), removeStar, getTopUidSet(concernedList),
+                    currId, limit);
+            Page<ACMContestRankVO> page = new Page<>(currentPage, limit);
+            page.setTotal(rankPage.getTotal());
+            page.setRecords(rankPage.getRecords());
+            return page;
+        }
         List<ACMContestRankVO> orderResultList = this.calculateACMRank(isOpenSealRank, removeStar, contest,
-                concernedList, keyword, useCache, cacheTime);
+                concernedList, keyword);
 
         return getACMContestRankVOPage(orderResultList, currentPage, limit);
     }
 
+    /**
+     * 当前用户与关注列表中的用户，排名数据置顶
+     */
+    private Set<String> getTopUidSet(List<String> concernedList) {
+        Set<String> topUidSet = new HashSet<>();
+        final UserRolesVO userInfo = UserSessionUtil.getUserInfo();
+        // 外榜：可能未登录
+        if (userInfo != null) {
+            topUidSet.add(userInfo.getUid());
+        }
+        if (!CollectionUtils.isEmpty(concernedList)) {
+            topUidSet.addAll(concernedList);
+        }
+        return topUidSet;
+    }
+
     private Page<ACMContestRankVO> getACMContestRankVOPage(List<ACMContestRankVO> orderResultList, int currentPage, int limit) {
         // 计算好排行榜，然后进行分页
         Page<ACMContestRankVO> page = new Page<>(currentPage, limit);
@@ -87,26 +109,14 @@ public class ContestACMRankService {
      * @param removeStar     是否需要移除打星队伍
      * @param contest        比赛实体信息
      * @param concernedList  关注的用户（uuid）列表
-     * @param useCache       是否对初始排序计算的结果进行缓存
-     * @param cacheTime      缓存的时间 单位秒
      * @MethodName calcACMRank
      * @Description
      * @Return
      * @Since 2021/12/10
      */
     public List<ACMContestRankVO> calculateACMRank(boolean isOpenSealRank, boolean removeStar, Contest contest,
-                                                   List<String> concernedList, String keyword, boolean useCache, Long cacheTime) {
-        List<ACMContestRankVO> orderResultList = getACMOrderRank(contest, isOpenSealRank, useCache);
-//        if (useCache) {
-//            String key = ContestConstant.CONTEST_RANK_CAL_RESULT_CACHE + "_" + contest.getId();
-//            orderResultList = (List<ACMContestRankVO>) redisUtil.get(key);
-//            if (orderResultList == null) {
-//                orderResultList = getACMOrderRank(contest, isOpenSealRank, useCache);
-//                redisUtil.set(key, orderResultList, cacheTime);
-//            }
-//        } else {
-//            orderResultList = getACMOrderRank(contest, isOpenSealRank, useCache);
-//        }
+                                                   List<String> concernedList, String keyword) {
+        List<ACMContestRankVO> orderResultList = getACMOrderRank(contest, isOpenSealRank);
         // 记录当前用户排名数据和关注列表的用户排名数据
         List<ACMContestRankVO> topACMRankVOList = new ArrayList<>();
         computeACMRankNo(removeStar, contest, concernedList, orderResultList, topACMRankVOList);
@@ -143,105 +153,23 @@ public class ContestACMRankService {
 
     /**
      * ACM机制的比赛排名规则：先按AC的题目数量排名，若AC的题目数量一样，则按罚时排名。
+     * 排名数据由ACMScoreboardEngine根据比赛记录的变更增量维护，此处不再查询全部比赛记录重新计算
      * @param contest
      * @param isOpenSealRank
      * @return
      */
-    @Cacheable(value = RedisConstant.CONTEST_RANK_CAL_RESULT_CACHE, key = "#contest.id", condition="#useCache")
-    public List<ACMContestRankVO> getACMOrderRank(Contest contest, Boolean isOpenSealRank, boolean useCache) {
-        List<String> superAdminUidList = userInfoEntityService.getSuperAdminUidList();
-        List<String> contestAdminUidList = new ArrayList<>(superAdminUidList);
-        contestAdminUidList.add(contest.getUid());
-
-        List<ContestRecordVO> contestRecordList = contestRecordEntityService.getACMContestRecord(contest.getId(), contest.getStartTime())
-                .stream()
-                .filter(contestRecord ->
-                        contest.getContestAdminRank() || !contestAdminUidList.contains(contestRecord.getUid())
-                )
-                .collect(Collectors.toList());
-        Set<String> hasRecordUserNameSet = contestRecordList.stream()
-                .map(ContestRecordVO::getUsername)
-                .collect(Collectors.toSet());
-        Map<String, ACMContestRankVO> uidContestRankVOMap = initACMContestRankVO(hasRecordUserNameSet);
-        List<ACMContestRankVO> result = new ArrayList<>(uidContestRankVOMap.values());
-
-        HashMap<String, Long> firstAcMap = new HashMap<>();
-        for (ContestRecordVO contestRecord : contestRecordList) {
-            ACMContestRankVO acmContestRankVO = uidContestRankVOMap.get(contestRecord.getUid());
-            HashMap<String, Object> problemSubmissionInfo = acmContestRankVO.getSubmissionInfo()
-                    .get(contestRecord.getDisplayId());
-
-            if (problemSubmissionInfo == null) {
-                problemSubmissionInfo = new HashMap<>();
-                problemSubmissionInfo.put("errorNum", 0);
-            }
-
-            acmContestRankVO.setTotal(acmContestRankVO.getTotal() + 1);
-
-            // 如果是当前是开启封榜的时段和同时该提交是处于封榜时段 尝试次数+1
-            if (isOpenSealRank && isInSealTimeSubmission(contest, contestRecord.getSubmitTime())) {
-                int tryNum = (int) problemSubmissionInfo.getOrDefault("tryNum", 0);
-                problemSubmissionInfo.put("tryNum", tryNum + 1);
-            } else {
-                // 如果该题目已经AC过了，其它都不记录了
-                if ((Boolean) problemSubmissionInfo.getOrDefault("isAC", false)) {
-                    continue;
-                }
-                processContestRecordVO(contestRecord, firstAcMap, acmContestRankVO, problemSubmissionInfo);
-            }
-            acmContestRankVO.getSubmissionInfo().put(contestRecord.getDisplayId(), problemSubmissionInfo);
-        }
-
-        // 先以总ac数降序，再以总耗时升序
-        result = result.stream()
-                .sorted(Comparator.comparing(ACMContestRankVO::getAc, Comparator.reverseOrder())
-                        .thenComparing(ACMContestRankVO::getTotalTime))
-                .collect(Collectors.toList());
+    public List<ACMContestRankVO> getACMOrderRank(Contest contest, Boolean isOpenSealRank) {
+        List<ACMContestRankVO> result = acmScoreboardEngine.getOrderedRank(contest, isOpenSealRank);
 
         if (contestValidator.isContestAdmin(contest)) {
+            Set<String> hasRecordUserNameSet = result.stream()
+                    .map(ACMContestRankVO::getUsername)
+                    .collect(Collectors.toSet());
             result.addAll(getNoRecordUserACMContestRankVOs(contest, hasRecordUserNameSet));
         }
         return result;
     }
 
-    private void processContestRecordVO(ContestRecordVO contestRecord, HashMap<String, Long> firstAcMap, ACMContestRankVO acmContestRankVO, HashMap<String, Object> problemSubmissionInfo) {
-        int errorNumber = (int) problemSubmissionInfo.getOrDefault("errorNum", 0);
-        // 记录已经按题目提交耗时time升序了
-        // 通过的话
-        if (contestRecord.getStatus().intValue() == ContestEnum.RECORD_AC.getCode()) {
-            // 总解决题目次数ac+1
-            acmContestRankVO.setAc(acmContestRankVO.getAc() + 1);
-
-            // 判断是不是first AC
-            boolean isFirstAc = false;
-            Long time = firstAcMap.getOrDefault(contestRecord.getDisplayId(), null);
-            if (time == null) {
-                isFirstAc = true;
-                firstAcMap.put(contestRecord.getDisplayId(), contestRecord.getTime());
-            } else {
-                // 相同提交时间也是first AC
-                if (time.longValue() == contestRecord.getTime().longValue()) {
-                    isFirstAc = true;
-                }
-            }
-
-            problemSubmissionInfo.put("isAC", true);
-            problemSubmissionInfo.put("isFirstAC", isFirstAc);
-            problemSubmissionInfo.put("ACTime", contestRecord.getTime());
-            problemSubmissionInfo.put("errorNum", errorNumber);
-
-            // 所谓“罚时”指的是做出题目所用的总时间，加上提交错误所付出的代价，每提交错误一次，会罚时20分钟。
-            // 同时计算总耗时，总耗时加上 题目AC耗时+该题目未AC前的错误次数*20*60
-            acmContestRankVO.setTotalTime(
-                    acmContestRankVO.getTotalTime() + errorNumber * 20 * 60 + contestRecord.getTime());
-        } else if (contestRecord.getStatus().intValue() == ContestEnum.RECORD_NOT_AC_PENALTY.getCode()) {
-            // 未通过同时需要记录罚时次数
-            problemSubmissionInfo.put("errorNum", errorNumber + 1);
-        } else {
-            problemSubmissionInfo.put("errorNum", errorNumber);
-        }
-    }
-
     private void computeACMRankNo(boolean removeStar, Contest contest, List<String> concernedList, List<ACMContestRankVO> orderResultList, List<ACMContestRankVO> topACMRankVOList) {
         // 需要打星的用户名列表
         HashMap<String, Boolean> starAccountMap = starAccountToMap(contest.getStarAccount());
@@ -326,19 +254,6 @@ public class ContestACMRankService {
                 .collect(Collectors.toList());
     }
 
-    private Map<String, ACMContestRankVO> initACMContestRankVO(Set<String> userNameSet) {
-        if (CollUtil.isEmpty(userNameSet)) {
-            return new HashMap<>();
-        }
-
-        return userInfoEntityService.lambdaQuery()
-                .in(UserInfo::getUsername, userNameSet)
-                .list()
-                .stream()
-                .map(this::initACMContestRankVO)
-                .collect(Collectors.toMap(ACMContestRankVO::getUid, o -> o));
-    }
-
     private ACMContestRankVO initACMContestRankVO(UserInfo userInfo) {
         return new ACMContestRankVO()
                 .setRealname(userInfo.getRealname())
@@ -354,10 +269,6 @@ public class ContestACMRankService {
                 .setSubmissionInfo(new HashMap<>());
     }
 
-    private boolean isInSealTimeSubmission(Contest contest, Date submissionDate) {
-        return DateUtil.isIn(submissionDate, contest.getSealRankTime(), contest.getEndTime());
-    }
-
     private HashMap<String, Boolean> starAccountToMap(String starAccountStr) {
         if (StrUtil.isEmpty(starAccountStr)) {
             return new HashMap<>();
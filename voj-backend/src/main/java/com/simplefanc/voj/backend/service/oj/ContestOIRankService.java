@@ -1,28 +1,23 @@
 package com.simplefanc.voj.backend.service.oj;
 
 import cn.hutool.core.collection.CollUtil;
-import cn.hutool.core.map.MapUtil;
 import cn.hutool.core.util.ReUtil;
 import cn.hutool.core.util.StrUtil;
 import cn.hutool.json.JSONObject;
 import cn.hutool.json.JSONUtil;
 import com.baomidou.mybatisplus.core.metadata.IPage;
 import com.baomidou.mybatisplus.extension.plugins.pagination.Page;
-import com.simplefanc.voj.backend.dao.contest.ContestRecordEntityService;
 import com.simplefanc.voj.backend.dao.contest.ContestRegisterEntityService;
 import com.simplefanc.voj.backend.dao.user.UserInfoEntityService;
-import com.simplefanc.voj.backend.pojo.vo.ContestRecordVO;
 import com.simplefanc.voj.backend.pojo.vo.OIContestRankVO;
 import com.simplefanc.voj.backend.pojo.vo.UserRolesVO;
+import com.simplefanc.voj.backend.scoreboard.OIScoreboardEngine;
+import com.simplefanc.voj.backend.scoreboard.RankPage;
 import com.simplefanc.voj.backend.shiro.UserSessionUtil;
 import com.simplefanc.voj.backend.validator.ContestValidator;
-import com.simplefanc.voj.common.constants.ContestConstant;
-import com.simplefanc.voj.common.constants.ContestEnum;
-import com.simplefanc.voj.common.constants.RedisConstant;
 import com.simplefanc.voj.common.pojo.entity.contest.Contest;
 import com.simplefanc.voj.common.pojo.entity.user.UserInfo;
 import lombok.RequiredArgsConstructor;
-import org.springframework.cache.annotation.Cacheable;
 import org.springframework.stereotype.Component;
 import org.springframework.util.CollectionUtils;
 
@@ -40,7 +35,7 @@ public class ContestOIRankService {
 
     private final UserInfoEntityService userInfoEntityService;
 
-    private final ContestRecordEntityService contestRecordEntityService;
+    private final OIScoreboardEngine oiScoreboardEngine;
 
     private final ContestRegisterEntityService contestRegisterEntityService;
 
@@ -57,15 +52,40 @@ public class ContestOIRankService {
      */
     public IPage<OIContestRankVO> getContestOIRankPage(Contest contest, Boolean isOpenSealRank, Boolean removeStarUser,
                                                        List<String> concernedList, String keyword,
-                                                       Boolean useCache, Long cacheTime,
                                                        int currentPage, int limit) {
-
+        // 没有关键字搜索且无需追加无提交用户时，只复制当前页的数据
+        if (StrUtil.isEmpty(keyword) && !contestValidator.isContestAdmin(contest)) {
+            int currId = currentPage > 1 ? (currentPage - 1) * limit : 0;
+            RankPage<OIContestRankVO> rankPage = oiScoreboardEngine.getRankPage(contest, isOpenSealRank,
+                    starAccountToMap(contest.getStarAccount()).keySet(), removeStarUser, getTopUidSet(concernedList),
+                    currId, limit);
+            Page<OIContestRankVO> page = new Page<>(currentPage, limit);
+            page.setTotal(rankPage.getTotal());
+            page.setRecords(rankPage.getRecords());
+            return page;
+        }
         List<OIContestRankVO> orderResultList = this.calculateOIRank(isOpenSealRank, removeStarUser,
-                contest, concernedList, keyword, useCache, cacheTime);
+                contest, concernedList, keyword);
 
         return getOiContestRankVOPage(currentPage, limit, orderResultList);
     }
 
+    /**
+     * 当前用户与关注列表中的用户，排名数据置顶
+     */
+    private Set<String> getTopUidSet(List<String> concernedList) {
+        Set<String> topUidSet = new HashSet<>();
+        final UserRolesVO userInfo = UserSessionUtil.getUserInfo();
+        // 外榜：可能未登录
+        if (userInfo != null) {
+            topUidSet.add(userInfo.getUid());
+        }
+        if (!CollectionUtils.isEmpty(concernedList)) {
+            topUidSet.addAll(concernedList);
+        }
+        return topUidSet;
+    }
+
     private Page<OIContestRankVO> getOiContestRankVOPage(int currentPage, int limit, List<OIContestRankVO> orderResultList) {
         // 计算好排行榜，然后进行分页
         Page<OIContestRankVO> page = new Page<>(currentPage, limit);
@@ -88,26 +108,14 @@ public class ContestOIRankService {
      * @param removeStar     是否需要移除打星队伍
      * @param contest        比赛实体信息
      * @param concernedList  关注的用户（uuid）列表
-     * @param useCache       是否对初始排序计算的结果进行缓存
-     * @param cacheTime      缓存的时间 单位秒
      * @MethodName calcOIRank
      * @Description
      * @Return
      * @Since 2021/12/10
      */
     public List<OIContestRankVO> calculateOIRank(boolean isOpenSealRank, boolean removeStar, Contest contest,
-                                                 List<String> concernedList, String keyword, boolean useCache, Long cacheTime) {
-        List<OIContestRankVO> orderResultList = getOiOrderRank(contest, isOpenSealRank, useCache);
-//        if (useCache) {
-//            String key = ContestConstant.CONTEST_RANK_CAL_RESULT_CACHE + "_" + contest.getId();
-//            orderResultList = (List<OIContestRankVO>) redisUtil.get(key);
-//            if (orderResultList == null) {
-//                orderResultList = getOiOrderRank(contest, isOpenSealRank);
-//                redisUtil.set(key, orderResultList, cacheTime);
-//            }
-//        } else {
-//            orderResultList = getOiOrderRank(contest, isOpenSealRank);
-//        }
+                                                 List<String> concernedList, String keyword) {
+        List<OIContestRankVO> orderResultList = getOiOrderRank(contest, isOpenSealRank);
         // 记录当前用户排名数据和关注列表的用户排名数据
         List<OIContestRankVO> topOIRankVOList = new ArrayList<>();
         // 设置 rank 和 添加置顶
@@ -143,38 +151,20 @@ public class ContestOIRankService {
         return false;
     }
 
-    @Cacheable(value = RedisConstant.CONTEST_RANK_CAL_RESULT_CACHE, key = "#contest.id", condition="#useCache")
-    public List<OIContestRankVO> getOiOrderRank(Contest contest, Boolean isOpenSealRank, boolean useCache) {
-        List<String> superAdminUidList = userInfoEntityService.getSuperAdminUidList();
-        List<String> contestAdminUidList = new ArrayList<>(superAdminUidList);
-        contestAdminUidList.add(contest.getUid());
-
-        final List<ContestRecordVO> oiContestRecordList = contestRecordEntityService.getOIContestRecord(contest, isOpenSealRank)
-                .stream()
-                .filter(contestRecord -> contest.getContestAdminRank() || !contestAdminUidList.contains(contestRecord.getUid()))
-                .collect(Collectors.toList());
-        Set<String> hasRecordUserNameSet = oiContestRecordList.stream()
-                .map(ContestRecordVO::getUsername)
-                .collect(Collectors.toSet());
-
-        Map<String, OIContestRankVO> uidContestRankVOMap = initOiContestRankVO(hasRecordUserNameSet);
-
-        List<OIContestRankVO> result = new ArrayList<>(uidContestRankVOMap.values());
-
-        boolean isHighestRankScore = ContestConstant.OI_RANK_HIGHEST_SCORE.equals(contest.getOiRankScoreType());
-        oiContestRecordList.forEach(contestRecord ->
-                setSubmissionInfo(contestRecord, uidContestRankVOMap.get(contestRecord.getUid()), isHighestRankScore));
-
-        HashMap<String, Map<String, Integer>> uidTimeInfoMap = getUidTimeInfoMap(oiContestRecordList);
-        setTimeInfoToResult(result, uidTimeInfoMap);
-
-        // 根据总得分进行降序，再根据总时耗升序排序
-        result = result.stream()
-                .sorted(Comparator.comparing(OIContestRankVO::getTotalScore, Comparator.reverseOrder())
-                        .thenComparing(OIContestRankVO::getTotalTime, Comparator.naturalOrder()))
-                .collect(Collectors.toList());
+    /**
+     * OI机制的比赛排名规则：先按总得分排名，若总得分一样，则按满分提交的总耗时排名。
+     * 排名数据由OIScoreboardEngine根据比赛记录的变更增量维护，此处不再查询比赛记录重新计算
+     * @param contest
+     * @param isOpenSealRank
+     * @return
+     */
+    public List<OIContestRankVO> getOiOrderRank(Contest contest, Boolean isOpenSealRank) {
+        List<OIContestRankVO> result = oiScoreboardEngine.getOrderedRank(contest, isOpenSealRank);
 
         if (contestValidator.isContestAdmin(contest)) {
+            Set<String> hasRecordUserNameSet = result.stream()
+                    .map(OIContestRankVO::getUsername)
+                    .collect(Collectors.toSet());
             result.addAll(getNoRecordUserOiContestRankVOs(contest, hasRecordUserNameSet));
         }
         return result;
@@ -268,19 +258,6 @@ public class ContestOIRankService {
                 .collect(Collectors.toList());
     }
 
-    private Map<String, OIContestRankVO> initOiContestRankVO(Set<String> userNameSet) {
-        if (CollUtil.isEmpty(userNameSet)) {
-            return new HashMap<>();
-        }
-
-        return userInfoEntityService.lambdaQuery()
-                .in(UserInfo::getUsername, userNameSet)
-                .list()
-                .stream()
-                .map(this::initOiContestRankVO)
-                .collect(Collectors.toMap(OIContestRankVO::getUid, o -> o));
-    }
-
     private OIContestRankVO initOiContestRankVO(UserInfo userInfo) {
         return new OIContestRankVO()
                 .setRealname(userInfo.getRealname())
@@ -295,102 +272,6 @@ public class ContestOIRankService {
                 .setSubmissionInfo(new HashMap<>());
     }
 
-    /**
-     * "totalScore": 400,
-     * "submissionInfo": {
-     * "1": 100,
-     * "2": 100,
-     * "3": 100,
-     * "4": 100
-     * }
-     */
-    private void setSubmissionInfo(ContestRecordVO contestRecord, OIContestRankVO oiContestRankVO, boolean isHighestRankScore) {
-        Map<String, Integer> submissionInfo = oiContestRankVO.getSubmissionInfo();
-        Integer score = submissionInfo.get(contestRecord.getDisplayId());
-        if (isHighestRankScore) {
-            if (score == null) {
-                oiContestRankVO.setTotalScore(oiContestRankVO.getTotalScore() + contestRecord.getScore());
-                submissionInfo.put(contestRecord.getDisplayId(), contestRecord.getScore());
-            }
-        } else {
-            if (contestRecord.getScore() != null) {
-                // 为了避免同个提交时间的重复计算
-                if (score != null) {
-                    oiContestRankVO.setTotalScore(oiContestRankVO.getTotalScore() - score + contestRecord.getScore());
-                } else {
-                    oiContestRankVO.setTotalScore(oiContestRankVO.getTotalScore() + contestRecord.getScore());
-                }
-            }
-            submissionInfo.put(contestRecord.getDisplayId(), contestRecord.getScore());
-        }
-    }
-
-    /**
-     * uid -> timeInfo
-     *
-     * @param oiContestRecord
-     * @return
-     */
-    private HashMap<String, Map<String, Integer>> getUidTimeInfoMap(List<ContestRecordVO> oiContestRecord) {
-        HashMap<String, Map<String, Integer>> uidTimeInfoMap = new HashMap<>();
-        oiContestRecord.stream()
-                .filter(contestRecord -> Objects.equals(contestRecord.getStatus(), ContestEnum.RECORD_AC.getCode()))
-                .forEach(contestRecord -> computeUidTimeInfoMap(uidTimeInfoMap, contestRecord));
-
-        return uidTimeInfoMap;
-    }
-
-    /**
-     * uid,pid,cpid,MAX(score)
-     * 相同分数，不同时间，e.g.
-     * 1,7772,311,100,6
-     * 1,7772,311,100,10
-     *
-     * @param uidTimeInfoMap
-     * @param contestRecord
-     */
-    private void computeUidTimeInfoMap(HashMap<String, Map<String, Integer>> uidTimeInfoMap, ContestRecordVO contestRecord) {
-        Map<String, Integer> pidTimeMap = uidTimeInfoMap.get(contestRecord.getUid());
-        if (pidTimeMap != null) {
-            Integer useTime = pidTimeMap.get(contestRecord.getDisplayId());
-            if (useTime != null) {
-                // 如果时间消耗比原来的少
-                if (useTime > contestRecord.getUseTime()) {
-                    pidTimeMap.put(contestRecord.getDisplayId(), contestRecord.getUseTime());
-                }
-            } else {
-                pidTimeMap.put(contestRecord.getDisplayId(), contestRecord.getUseTime());
-            }
-        } else {
-            uidTimeInfoMap.put(contestRecord.getUid(),
-                    MapUtil.builder(new HashMap<String, Integer>())
-                            .put(contestRecord.getDisplayId(), contestRecord.getUseTime()).build());
-        }
-    }
-
-    /**
-     * "totalTime": 11,
-     * "timeInfo": {
-     * "1": 3,
-     * "2": 3,
-     * "3": 3,
-     * "4": 2
-     * }
-     *
-     * @param result
-     * @param uidMapTime
-     */
-    private void setTimeInfoToResult(List<OIContestRankVO> result, HashMap<String, Map<String, Integer>> uidMapTime) {
-        result.forEach(oiContestRankVO -> {
-            Map<String, Integer> pidMapTime = uidMapTime.get(oiContestRankVO.getUid());
-            int sumTime = Optional.ofNullable(pidMapTime)
-                    .map(val -> val.values().stream().reduce(0, Integer::sum))
-                    .orElse(0);
-            oiContestRankVO.setTotalTime(sumTime);
-            oiContestRankVO.setTimeInfo(pidMapTime);
-        });
-    }
-
     private HashMap<String, Boolean> starAccountToMap(String starAccountStr) {
         if (StrUtil.isEmpty(starAccountStr)) {
             return new HashMap<>();
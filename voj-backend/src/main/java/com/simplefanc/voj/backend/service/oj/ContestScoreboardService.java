@@ -3,6 +3,7 @@ package com.simplefanc.voj.backend.service.oj;
 import com.baomidou.mybatisplus.core.metadata.IPage;
 import com.simplefanc.voj.backend.pojo.dto.ContestRankDTO;
 import com.simplefanc.voj.backend.pojo.vo.ContestOutsideInfo;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
 import java.util.List;
 
@@ -18,4 +19,6 @@ public interface ContestScoreboardService {
 
     IPage getContestOutsideScoreboard(ContestRankDTO contestRankDTO);
 
+    SseEmitter subscribeContestOutsideScoreboard(ContestRankDTO contestRankDTO);
+
 }
\ No newline at end of file
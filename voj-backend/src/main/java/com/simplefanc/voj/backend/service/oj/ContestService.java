@@ -8,6 +8,7 @@ import com.simplefanc.voj.backend.pojo.dto.UserReadContestAnnouncementDTO;
 import com.simplefanc.voj.backend.pojo.vo.*;
 import com.simplefanc.voj.common.pojo.entity.common.Announcement;
 import com.simplefanc.voj.common.pojo.entity.contest.Contest;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
 import java.util.List;
 import java.util.Set;
@@ -38,6 +39,8 @@ public interface ContestService {
 
     IPage getContestRank(ContestRankDTO contestRankDTO);
 
+    SseEmitter subscribeContestRank(ContestRankDTO contestRankDTO);
+
     Set<String> getContestAdminUidList(Contest contest);
 
     IPage<AnnouncementVO> getContestAnnouncement(Long cid, Integer limit, Integer currentPage);
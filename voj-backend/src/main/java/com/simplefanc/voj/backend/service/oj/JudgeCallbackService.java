@@ -0,0 +1,19 @@
+package com.simplefanc.voj.backend.service.oj;
+
+import com.simplefanc.voj.common.pojo.dto.JudgeCallbackDTO;
+
+/**
+ * @Author: chenfan
+ * @Date: 2022/11/27 15:02
+ * @Description:
+ */
+public interface JudgeCallbackService {
+
+    /**
+     * @MethodName handleJudgeCallback
+     * @Description 处理判题机回调的评测进度与结果
+     * @Since 2022/11/27
+     */
+    void handleJudgeCallback(JudgeCallbackDTO judgeCallbackDTO);
+
+}
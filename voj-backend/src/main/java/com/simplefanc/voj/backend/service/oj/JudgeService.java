@@ -7,6 +7,7 @@ import com.simplefanc.voj.backend.pojo.vo.JudgeVO;
 import com.simplefanc.voj.backend.pojo.vo.SubmissionInfoVO;
 import com.simplefanc.voj.common.pojo.entity.judge.Judge;
 import com.simplefanc.voj.common.pojo.entity.judge.JudgeCase;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
 import java.util.HashMap;
 import java.util.List;
@@ -49,11 +50,12 @@ public interface JudgeService {
 
     /**
      * @MethodName getJudgeList
-     * @Description 通用查询判题记录列表
+     * @Description 通用查询判题记录列表，beforeSubmitId不为空时按游标查询该提交之后的一页，不统计总数
      * @Since 2021/10/29
      */
-    IPage<JudgeVO> getJudgeList(Integer limit, Integer currentPage, Boolean onlyMine, String searchPid,
-                                Integer searchStatus, String searchUsername, Boolean completeProblemId);
+    IPage<JudgeVO> getJudgeList(Integer limit, Integer currentPage, Long beforeSubmitId, Boolean onlyMine,
+                                String searchPid, Integer searchStatus, String searchUsername,
+                                Boolean completeProblemId);
 
     /**
      * @MethodName checkJudgeResult
@@ -69,6 +71,20 @@ public interface JudgeService {
      */
     HashMap<Long, Object> checkContestJudgeResult(SubmitIdListDTO submitIdListDTO);
 
+    /**
+     * @MethodName subscribeCommonJudgeResult
+     * @Description 订阅提交列表的评测状态，状态变化时推送，代替轮询checkCommonJudgeResult
+     * @Since 2022/12/3
+     */
+    SseEmitter subscribeCommonJudgeResult(SubmitIdListDTO submitIdListDTO);
+
+    /**
+     * @MethodName subscribeContestJudgeResult
+     * @Description 订阅比赛提交列表的评测状态，可见范围与checkContestJudgeResult一致
+     * @Since 2022/12/3
+     */
+    SseEmitter subscribeContestJudgeResult(SubmitIdListDTO submitIdListDTO);
+
     /**
      * @MethodName getJudgeCase
      * @Description 获得指定提交id的测试样例结果，暂不支持查看测试数据，只可看测试点结果，时间，空间，或者IO得分
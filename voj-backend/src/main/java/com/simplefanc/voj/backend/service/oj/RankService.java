@@ -2,6 +2,8 @@ package com.simplefanc.voj.backend.service.oj;
 
 import com.baomidou.mybatisplus.core.metadata.IPage;
 
+import java.util.Collection;
+
 /**
  * @Author: chenfan
  * @Date: 2022/3/10 20:47
@@ -19,4 +21,20 @@ public interface RankService {
      */
     IPage getRankList(Integer limit, Integer currentPage, String searchUser, Integer type);
 
-}
\ No newline at end of file
+    /**
+     * @param uid 用户id
+     * @MethodName refreshUserRank
+     * @Description 重新统计用户的做题记录并更新其在排行榜中的位置，用户被禁用时移出排行榜
+     * @Since 2022/12/4
+     */
+    void refreshUserRank(String uid);
+
+    /**
+     * @param uidList 用户id
+     * @MethodName removeUserRank
+     * @Description 将被禁用或删除的用户移出排行榜
+     * @Since 2022/12/4
+     */
+    void removeUserRank(Collection<String> uidList);
+
+}
@@ -10,18 +10,24 @@ import com.simplefanc.voj.backend.dao.contest.ContestProblemEntityService;
 import com.simplefanc.voj.backend.pojo.dto.ContestRankDTO;
 import com.simplefanc.voj.backend.pojo.vo.ContestOutsideInfo;
 import com.simplefanc.voj.backend.pojo.vo.ContestVO;
+import com.simplefanc.voj.backend.pojo.vo.UserRolesVO;
+import com.simplefanc.voj.backend.scoreboard.ScoreboardStreamHub;
 import com.simplefanc.voj.backend.service.oj.ContestACMRankService;
 import com.simplefanc.voj.backend.service.oj.ContestOIRankService;
 import com.simplefanc.voj.backend.service.oj.ContestScoreboardService;
+import com.simplefanc.voj.backend.shiro.UserSessionUtil;
 import com.simplefanc.voj.backend.validator.ContestValidator;
 import com.simplefanc.voj.common.constants.ContestEnum;
 import com.simplefanc.voj.common.pojo.entity.contest.Contest;
 import com.simplefanc.voj.common.pojo.entity.contest.ContestProblem;
 import lombok.RequiredArgsConstructor;
 import org.springframework.stereotype.Service;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
 import java.util.Date;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
 
 /**
  * @Author: chenfan
@@ -42,6 +48,8 @@ public class ContestScoreboardServiceImpl implements ContestScoreboardService {
 
     private final ContestOIRankService contestOIRankService;
 
+    private final ScoreboardStreamHub scoreboardStreamHub;
+
     @Override
     public ContestOutsideInfo getContestOutsideInfo(Long cid) {
 
@@ -99,19 +107,7 @@ public class ContestScoreboardServiceImpl implements ContestScoreboardService {
         }
 
         // 获取本场比赛的状态
-        Contest contest = contestEntityService.getById(cid);
-
-        if (contest == null) {
-            throw new StatusFailException("访问错误：该比赛不存在！");
-        }
-
-        if (!contest.getOpenRank()) {
-            throw new StatusForbiddenException("本场比赛未开启外榜，禁止访问外榜！");
-        }
-
-        if (contest.getStatus().equals(ContestEnum.STATUS_SCHEDULED.getCode())) {
-            throw new StatusForbiddenException("本场比赛正在筹备中，禁止访问外榜！");
-        }
+        Contest contest = getOutsideContest(cid);
 
         // 不是比赛创建者或者超管无权限开启强制实时榜单
         if (!contestValidator.isContestAdmin(contest)) {
@@ -123,17 +119,63 @@ public class ContestScoreboardServiceImpl implements ContestScoreboardService {
         if (contest.getType().intValue() == ContestEnum.TYPE_ACM.getCode()) {
             // 获取ACM比赛排行榜外榜
             return contestACMRankService.getContestACMRankPage(contest, isOpenSealRank, removeStar, concernedList, contestRankDTO.getKeyword(),
-                    !forceRefresh,
-                    // 默认15s缓存
-                    15L, currentPage, limit);
+                    currentPage, limit);
 
         } else {
             // 获取OI比赛排行榜外榜
             return contestOIRankService.getContestOIRankPage(contest, isOpenSealRank, removeStar, concernedList, contestRankDTO.getKeyword(),
-                    !forceRefresh,
-                    // 默认15s缓存
-                    15L, currentPage, limit);
+                    currentPage, limit);
+        }
+    }
+
+    @Override
+    public SseEmitter subscribeContestOutsideScoreboard(ContestRankDTO contestRankDTO) {
+        Long cid = contestRankDTO.getCid();
+        if (cid == null) {
+            throw new StatusFailException("错误：比赛id不能为空");
+        }
+        Integer currentPage = contestRankDTO.getCurrentPage();
+        Integer limit = contestRankDTO.getLimit();
+        // 页数，每页题数若为空，设置默认值
+        if (currentPage == null || currentPage < 1) {
+            currentPage = 1;
+        }
+        if (limit == null || limit < 1) {
+            limit = 30;
+        }
+        // 当前用户与关注列表中的用户置顶，与分页查询排行榜一致
+        Set<String> topUidSet = new HashSet<>();
+        final UserRolesVO userInfo = UserSessionUtil.getUserInfo();
+        if (userInfo != null) {
+            topUidSet.add(userInfo.getUid());
+        }
+        if (contestRankDTO.getConcernedList() != null) {
+            topUidSet.addAll(contestRankDTO.getConcernedList());
+        }
+        Contest contest = getOutsideContest(cid);
+        // 不是比赛创建者或者超管无权限开启强制实时榜单
+        boolean isForceRefresh = Boolean.TRUE.equals(contestRankDTO.getForceRefresh())
+                && contestValidator.isContestAdmin(contest);
+        boolean isOpenSealRank = contestValidator.isOpenSealRank(contest, isForceRefresh);
+        return scoreboardStreamHub.subscribe(contest, isOpenSealRank, isForceRefresh,
+                Boolean.TRUE.equals(contestRankDTO.getRemoveStar()), topUidSet, currentPage, limit);
+    }
+
+    private Contest getOutsideContest(Long cid) {
+        Contest contest = contestEntityService.getById(cid);
+
+        if (contest == null) {
+            throw new StatusFailException("访问错误：该比赛不存在！");
+        }
+
+        if (!contest.getOpenRank()) {
+            throw new StatusForbiddenException("本场比赛未开启外榜，禁止访问外榜！");
+        }
+
+        if (contest.getStatus().equals(ContestEnum.STATUS_SCHEDULED.getCode())) {
+            throw new StatusForbiddenException("本场比赛正在筹备中，禁止访问外榜！");
         }
+        return contest;
     }
 
-}
\ No newline at end of file
+}
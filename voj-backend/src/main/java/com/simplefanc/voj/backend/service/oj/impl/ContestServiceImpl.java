@@ -16,6 +16,7 @@ import com.simplefanc.voj.backend.pojo.dto.ContestRankDTO;
 import com.simplefanc.voj.backend.pojo.dto.RegisterContestDTO;
 import com.simplefanc.voj.backend.pojo.dto.UserReadContestAnnouncementDTO;
 import com.simplefanc.voj.backend.pojo.vo.*;
+import com.simplefanc.voj.backend.scoreboard.ScoreboardStreamHub;
 import com.simplefanc.voj.backend.service.oj.ContestACMRankService;
 import com.simplefanc.voj.backend.service.oj.ContestOIRankService;
 import com.simplefanc.voj.backend.service.oj.ContestService;
@@ -29,6 +30,7 @@ import com.simplefanc.voj.common.pojo.entity.contest.*;
 import com.simplefanc.voj.common.pojo.entity.problem.*;
 import lombok.RequiredArgsConstructor;
 import org.springframework.stereotype.Service;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
 import java.util.*;
 import java.util.stream.Collectors;
@@ -78,6 +80,8 @@ public class ContestServiceImpl implements ContestService {
 
     private final ContestOIRankService contestOIRankService;
 
+    private final ScoreboardStreamHub scoreboardStreamHub;
+
     @Override
     public IPage<ContestVO> getContestList(Integer limit, Integer currentPage, Integer status, Integer type,
                                            String keyword) {
@@ -274,7 +278,7 @@ public class ContestServiceImpl implements ContestService {
         }
 
         // 筛去 比赛管理员和超级管理员的提交
-        List<String> superAdminUidList = userInfoEntityService.getSuperAdminUidList();
+        List<String> superAdminUidList = new ArrayList<>(userInfoEntityService.getSuperAdminUidList());
         superAdminUidList.add(contest.getUid());
 
         // 获取题目的提交记录
@@ -395,20 +399,54 @@ public class ContestServiceImpl implements ContestService {
             // ACM比赛
             // 进行排行榜计算以及排名分页
             return contestACMRankService.getContestACMRankPage(contest, isOpenSealRank, removeStarUser,
-                    concernedList, keyword, false, null, currentPage, limit);
+                    concernedList, keyword, currentPage, limit);
 
         } else {
             // OI比赛
             return contestOIRankService.getContestOIRankPage(contest, isOpenSealRank, removeStarUser,
-                    concernedList, keyword, false, null, currentPage, limit);
+                    concernedList, keyword, currentPage, limit);
         }
     }
 
+    @Override
+    public SseEmitter subscribeContestRank(ContestRankDTO contestRankDTO) {
+        Long cid = contestRankDTO.getCid();
+        if (cid == null) {
+            throw new StatusFailException("错误：cid不能为空");
+        }
+        Integer currentPage = contestRankDTO.getCurrentPage();
+        Integer limit = contestRankDTO.getLimit();
+        // 页数，每页题数若为空，设置默认值
+        if (currentPage == null || currentPage < 1) {
+            currentPage = 1;
+        }
+        if (limit == null || limit < 1) {
+            limit = 30;
+        }
+        // 当前用户与关注列表中的用户置顶，与分页查询排行榜一致
+        Set<String> topUidSet = new HashSet<>();
+        final UserRolesVO userInfo = UserSessionUtil.getUserInfo();
+        if (userInfo != null) {
+            topUidSet.add(userInfo.getUid());
+        }
+        if (contestRankDTO.getConcernedList() != null) {
+            topUidSet.addAll(contestRankDTO.getConcernedList());
+        }
+        Contest contest = contestEntityService.getById(cid);
+        contestValidator.validateContestAuth(contest);
+        // 超级管理员和比赛创建者可以订阅实际榜单
+        boolean isForceRefresh = Boolean.TRUE.equals(contestRankDTO.getForceRefresh())
+                && contestValidator.isContestAdmin(contest);
+        boolean isOpenSealRank = contestValidator.isOpenSealRank(contest, isForceRefresh);
+        return scoreboardStreamHub.subscribe(contest, isOpenSealRank, isForceRefresh,
+                Boolean.TRUE.equals(contestRankDTO.getRemoveStar()), topUidSet, currentPage, limit);
+    }
+
     @Override
     public Set<String> getContestAdminUidList(Contest contest) {
-        List<String> contestAdminUidList = userInfoEntityService.getSuperAdminUidList();
-        contestAdminUidList.add(contest.getUid());
-        return new HashSet<>(contestAdminUidList);
+        Set<String> contestAdminUidSet = new HashSet<>(userInfoEntityService.getSuperAdminUidList());
+        contestAdminUidSet.add(contest.getUid());
+        return contestAdminUidSet;
     }
 
     @Override
@@ -0,0 +1,74 @@
+package com.simplefanc.voj.backend.service.oj.impl;
+
+import com.simplefanc.voj.backend.common.exception.StatusAccessDeniedException;
+import com.simplefanc.voj.backend.common.exception.StatusFailException;
+import com.simplefanc.voj.backend.config.ConfigVO;
+import com.simplefanc.voj.backend.judge.Dispatcher;
+import com.simplefanc.voj.backend.judge.ProblemCountCache;
+import com.simplefanc.voj.backend.judge.SubmissionStatusHub;
+import com.simplefanc.voj.backend.scoreboard.ContestRecordEventBus;
+import com.simplefanc.voj.backend.service.oj.JudgeCallbackService;
+import com.simplefanc.voj.backend.service.oj.RankService;
+import com.simplefanc.voj.common.pojo.dto.JudgeCallbackDTO;
+import com.simplefanc.voj.common.pojo.entity.judge.Judge;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+
+/**
+ * @Author: chenfan
+ * @Date: 2022/11/27 15:02
+ * @Description: 判题机回调处理，评测结果已由判题机写入数据库，此处只负责释放判题机资源、推送评测状态、通知排行榜更新等后续处理
+ */
+@Service
+@Slf4j(topic = "voj")
+@RequiredArgsConstructor
+public class JudgeCallbackServiceImpl implements JudgeCallbackService {
+
+    private final ConfigVO configVO;
+
+    private final Dispatcher dispatcher;
+
+    private final ContestRecordEventBus contestRecordEventBus;
+
+    private final SubmissionStatusHub submissionStatusHub;
+
+    private final RankService rankService;
+
+    private final ProblemCountCache problemCountCache;
+
+    @Override
+    public void handleJudgeCallback(JudgeCallbackDTO judgeCallbackDTO) {
+        if (!configVO.getJudgeToken().equals(judgeCallbackDTO.getToken())) {
+            throw new StatusAccessDeniedException("对不起！您使用的判题服务调用凭证不正确！访问受限！");
+        }
+        if (judgeCallbackDTO.getSubmitId() == null) {
+            throw new StatusFailException("调用参数错误！请检查您的调用参数！");
+        }
+        if (Boolean.TRUE.equals(judgeCallbackDTO.getFinished())) {
+            if (!Boolean.TRUE.equals(judgeCallbackDTO.getRemote())) {
+                boolean isRunning = dispatcher.finishJudge(judgeCallbackDTO.getSubmitId(),
+                        judgeCallbackDTO.getJudgeServerId());
+                if (!isRunning) {
+                    log.warn("判题服务器[{}]回调的提交id为{}的评测任务不存在或已被回收", judgeCallbackDTO.getJudger(),
+                            judgeCallbackDTO.getSubmitId());
+                }
+            }
+            Judge judge = submissionStatusHub.publishFinished(judgeCallbackDTO.getSubmitId());
+            if (judge != null) {
+                problemCountCache.recordVerdict(judge);
+            }
+            // 比赛记录已由判题机更新，通知各后台服务增量更新排行榜
+            if (judgeCallbackDTO.getCid() != null && judgeCallbackDTO.getCid() != 0) {
+                contestRecordEventBus.publishRecordChanged(judgeCallbackDTO.getCid(), judgeCallbackDTO.getSubmitId());
+            } else if (judgeCallbackDTO.getUid() != null) {
+                // 非比赛提交的结果已写入，重新统计该用户的做题记录与排名
+                rankService.refreshUserRank(judgeCallbackDTO.getUid());
+            }
+        } else {
+            submissionStatusHub.publishProgress(judgeCallbackDTO.getSubmitId(), judgeCallbackDTO.getCid(),
+                    judgeCallbackDTO.getUid(), judgeCallbackDTO.getStatus());
+        }
+    }
+
+}
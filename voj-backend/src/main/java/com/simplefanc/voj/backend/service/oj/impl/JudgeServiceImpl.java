@@ -1,19 +1,23 @@
 package com.simplefanc.voj.backend.service.oj.impl;
 
+import cn.hutool.core.util.StrUtil;
 import com.baomidou.mybatisplus.core.conditions.query.QueryWrapper;
 import com.baomidou.mybatisplus.core.conditions.update.UpdateWrapper;
 import com.baomidou.mybatisplus.core.metadata.IPage;
+import com.baomidou.mybatisplus.extension.plugins.pagination.Page;
 import com.simplefanc.voj.backend.common.exception.StatusAccessDeniedException;
 import com.simplefanc.voj.backend.common.exception.StatusFailException;
 import com.simplefanc.voj.backend.common.exception.StatusForbiddenException;
 import com.simplefanc.voj.backend.common.exception.StatusNotFoundException;
 import com.simplefanc.voj.backend.common.utils.RedisUtil;
-import com.simplefanc.voj.backend.dao.contest.ContestEntityService;
 import com.simplefanc.voj.backend.dao.contest.ContestRecordEntityService;
 import com.simplefanc.voj.backend.dao.judge.JudgeCaseEntityService;
 import com.simplefanc.voj.backend.dao.judge.JudgeEntityService;
 import com.simplefanc.voj.backend.dao.problem.ProblemEntityService;
 import com.simplefanc.voj.backend.dao.user.UserAcproblemEntityService;
+import com.simplefanc.voj.backend.judge.ContestMetadataCache;
+import com.simplefanc.voj.backend.judge.ProblemCountCache;
+import com.simplefanc.voj.backend.judge.SubmissionStatusHub;
 import com.simplefanc.voj.backend.judge.local.JudgeTaskDispatcher;
 import com.simplefanc.voj.backend.judge.remote.RemoteJudgeTaskDispatcher;
 import com.simplefanc.voj.backend.pojo.dto.SubmitIdListDTO;
@@ -22,6 +26,7 @@ import com.simplefanc.voj.backend.config.ConfigVO;
 import com.simplefanc.voj.backend.pojo.vo.JudgeVO;
 import com.simplefanc.voj.backend.pojo.vo.SubmissionInfoVO;
 import com.simplefanc.voj.backend.pojo.vo.UserRolesVO;
+import com.simplefanc.voj.backend.scoreboard.ContestRecordEventBus;
 import com.simplefanc.voj.backend.service.oj.BeforeDispatchInitService;
 import com.simplefanc.voj.backend.service.oj.JudgeService;
 import com.simplefanc.voj.backend.shiro.UserSessionUtil;
@@ -29,6 +34,7 @@ import com.simplefanc.voj.backend.validator.ContestValidator;
 import com.simplefanc.voj.backend.validator.JudgeValidator;
 import com.simplefanc.voj.common.constants.ContestEnum;
 import com.simplefanc.voj.common.constants.JudgeStatus;
+import com.simplefanc.voj.common.constants.ProblemEnum;
 import com.simplefanc.voj.common.constants.RedisConstant;
 import com.simplefanc.voj.common.pojo.entity.contest.Contest;
 import com.simplefanc.voj.common.pojo.entity.contest.ContestRecord;
@@ -43,6 +49,7 @@ import org.springframework.transaction.annotation.Transactional;
 import org.springframework.util.CollectionUtils;
 import org.springframework.web.context.request.RequestContextHolder;
 import org.springframework.web.context.request.ServletRequestAttributes;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
 import javax.servlet.http.HttpServletRequest;
 import java.util.Date;
@@ -64,7 +71,7 @@ public class JudgeServiceImpl implements JudgeService {
 
     private final ProblemEntityService problemEntityService;
 
-    private final ContestEntityService contestEntityService;
+    private final ContestMetadataCache contestMetadataCache;
 
     private final ContestRecordEntityService contestRecordEntityService;
 
@@ -84,6 +91,12 @@ public class JudgeServiceImpl implements JudgeService {
 
     private final ConfigVO configVO;
 
+    private final ContestRecordEventBus contestRecordEventBus;
+
+    private final SubmissionStatusHub submissionStatusHub;
+
+    private final ProblemCountCache problemCountCache;
+
     /**
      * @MethodName submitProblemJudge
      * @Description 核心方法
@@ -131,6 +144,9 @@ public class JudgeServiceImpl implements JudgeService {
         } else { // 如果不是比赛提交和训练提交
             beforeDispatchInitService.initCommonSubmission(judgeDTO.getPid(), judge);
         }
+        if (!isContestSubmission) {
+            problemCountCache.recordSubmit(judge.getPid());
+        }
 
         // 将提交加入任务队列
         if (judgeDTO.getIsRemote()) {
@@ -169,12 +185,14 @@ public class JudgeServiceImpl implements JudgeService {
                 userAcproblemQueryWrapper.eq("submit_id", judge.getSubmitId());
                 userAcproblemEntityService.remove(userAcproblemQueryWrapper);
             }
+            problemCountCache.revokeVerdict(judge);
         } else {
             if (problem.getIsRemote()) {
                 // 将对应比赛记录设置成默认值
                 UpdateWrapper<ContestRecord> updateWrapper = new UpdateWrapper<>();
                 updateWrapper.eq("submit_id", submitId).setSql("status=null,score=null");
                 contestRecordEntityService.update(updateWrapper);
+                contestRecordEventBus.publishRecordChanged(judge.getCid(), submitId);
             } else {
                 throw new StatusNotFoundException("错误！非vJudge题目在比赛过程无权限重新提交");
             }
@@ -254,7 +272,7 @@ public class JudgeServiceImpl implements JudgeService {
     }
 
     private boolean extracted(Judge judge, UserRolesVO userRolesVO) {
-        Contest contest = contestEntityService.getById(judge.getCid());
+        Contest contest = contestMetadataCache.getContest(judge.getCid());
         if (!contestValidator.isContestAdmin(contest)) {
             // 如果是比赛,那么还需要判断是否为封榜,比赛管理员和超级管理员可以有权限查看(ACM题目除外)
             if (contest.getType().intValue() == ContestEnum.TYPE_OI.getCode()
@@ -319,8 +337,9 @@ public class JudgeServiceImpl implements JudgeService {
      * @Since 2021/10/29
      */
     @Override
-    public IPage<JudgeVO> getJudgeList(Integer limit, Integer currentPage, Boolean onlyMine, String searchPid,
-                                       Integer searchStatus, String searchUsername, Boolean completeProblemId) {
+    public IPage<JudgeVO> getJudgeList(Integer limit, Integer currentPage, Long beforeSubmitId, Boolean onlyMine,
+                                       String searchPid, Integer searchStatus, String searchUsername,
+                                       Boolean completeProblemId) {
         // 页数，每页题数若为空，设置默认值
         if (currentPage == null || currentPage < 1) {
             currentPage = 1;
@@ -346,8 +365,34 @@ public class JudgeServiceImpl implements JudgeService {
             searchUsername = searchUsername.trim();
         }
 
-        return judgeEntityService.getCommonJudgeList(limit, currentPage, searchPid, searchStatus, searchUsername, uid,
-                completeProblemId);
+        Long pid = null;
+        // 精确查询题目时先查出题目的主键，提交记录可直接按pid索引查询
+        if (Boolean.TRUE.equals(completeProblemId) && !StrUtil.isEmpty(searchPid)) {
+            QueryWrapper<Problem> problemQueryWrapper = new QueryWrapper<>();
+            problemQueryWrapper.select("id").eq("problem_id", searchPid)
+                    .eq("auth", ProblemEnum.AUTH_PUBLIC.getCode());
+            Problem problem = problemEntityService.getOne(problemQueryWrapper, false);
+            if (problem == null) {
+                return new Page<>(currentPage, limit, 0);
+            }
+            pid = problem.getId();
+        }
+
+        if (beforeSubmitId == null) {
+            return judgeEntityService.getCommonJudgeList(limit, currentPage, pid, searchPid, searchStatus,
+                    searchUsername, uid, completeProblemId);
+        }
+
+        // 游标为上一页最后一条提交，按(提交时间, 提交id)继续向后查询
+        QueryWrapper<Judge> judgeQueryWrapper = new QueryWrapper<>();
+        judgeQueryWrapper.select("submit_id", "submit_time").eq("submit_id", beforeSubmitId);
+        Judge beforeJudge = judgeEntityService.getOne(judgeQueryWrapper, false);
+        if (beforeJudge == null) {
+            throw new StatusNotFoundException("分页游标对应的提交不存在！");
+        }
+        List<JudgeVO> judgeList = judgeEntityService.getCommonJudgeListBefore(limit, beforeJudge, pid, searchPid,
+                searchStatus, searchUsername, uid, completeProblemId);
+        return new Page<JudgeVO>(1, limit, false).setRecords(judgeList);
     }
 
     /**
@@ -398,7 +443,7 @@ public class JudgeServiceImpl implements JudgeService {
 
         UserRolesVO userRolesVO = UserSessionUtil.getUserInfo();
 
-        Contest contest = contestEntityService.getById(submitIdListDTO.getCid());
+        Contest contest = contestMetadataCache.getContest(submitIdListDTO.getCid());
 
         boolean isSealRank = contestValidator.isOpenSealRank(contest, true);
 
@@ -426,6 +471,45 @@ public class JudgeServiceImpl implements JudgeService {
         return result;
     }
 
+    /**
+     * @MethodName subscribeCommonJudgeResult
+     * @Description 订阅提交列表的评测状态，状态变化时推送，代替轮询checkCommonJudgeResult
+     * @Since 2022/12/3
+     */
+    @Override
+    public SseEmitter subscribeCommonJudgeResult(SubmitIdListDTO submitIdListDTO) {
+        List<Long> submitIds = submitIdListDTO.getSubmitIds();
+        if (CollectionUtils.isEmpty(submitIds)) {
+            throw new StatusFailException("订阅的提交id列表不能为空");
+        }
+        UserRolesVO userRolesVO = UserSessionUtil.getUserInfo();
+        return submissionStatusHub.subscribe(submitIds, userRolesVO == null ? null : userRolesVO.getUid(), false,
+                () -> checkCommonJudgeResult(submitIdListDTO));
+    }
+
+    /**
+     * @MethodName subscribeContestJudgeResult
+     * @Description 订阅比赛提交列表的评测状态，可见范围与checkContestJudgeResult一致
+     * @Since 2022/12/3
+     */
+    @Override
+    public SseEmitter subscribeContestJudgeResult(SubmitIdListDTO submitIdListDTO) {
+        if (submitIdListDTO.getCid() == null) {
+            throw new StatusNotFoundException("查询比赛id不能为空");
+        }
+        if (CollectionUtils.isEmpty(submitIdListDTO.getSubmitIds())) {
+            throw new StatusFailException("订阅的提交id列表不能为空");
+        }
+        Contest contest = contestMetadataCache.getContest(submitIdListDTO.getCid());
+        if (contest == null) {
+            throw new StatusNotFoundException("该比赛不存在");
+        }
+        UserRolesVO userRolesVO = UserSessionUtil.getUserInfo();
+        // 封榜期间不可见的提交不会出现在当前状态中，也就不会被推送
+        return submissionStatusHub.subscribe(submitIdListDTO.getSubmitIds(), userRolesVO.getUid(),
+                !contestValidator.isContestAdmin(contest), () -> checkContestJudgeResult(submitIdListDTO));
+    }
+
     /**
      * @MethodName getJudgeCase
      * @Description 获得指定提交id的测试样例结果，暂不支持查看测试数据，只可看测试点结果，时间，空间，或者IO得分
@@ -451,7 +535,7 @@ public class JudgeServiceImpl implements JudgeService {
         boolean isRoot = UserSessionUtil.isRoot();
 
         if (judge.getCid() != 0) {
-            Contest contest = contestEntityService.getById(judge.getCid());
+            Contest contest = contestMetadataCache.getContest(judge.getCid());
             if (!contestValidator.isContestAdmin(contest)) {
                 // 当前是比赛期间 比赛封榜不能看
                 if (contest.getSealRank() && contest.getStatus().intValue() == ContestEnum.STATUS_RUNNING.getCode()
@@ -9,6 +9,7 @@ import com.simplefanc.voj.backend.common.exception.StatusNotFoundException;
 import com.simplefanc.voj.backend.dao.contest.ContestEntityService;
 import com.simplefanc.voj.backend.dao.judge.JudgeEntityService;
 import com.simplefanc.voj.backend.dao.problem.*;
+import com.simplefanc.voj.backend.judge.ProblemCountCache;
 import com.simplefanc.voj.backend.pojo.dto.PidListDTO;
 import com.simplefanc.voj.backend.pojo.vo.*;
 import com.simplefanc.voj.backend.service.oj.ProblemService;
@@ -54,6 +55,8 @@ public class ProblemServiceImpl implements ProblemService {
 
     private final ContestValidator contestValidator;
 
+    private final ProblemCountCache problemCountCache;
+
     /**
      * @MethodName getProblemList
      * @Params * @param null
@@ -251,7 +254,7 @@ public class ProblemServiceImpl implements ProblemService {
         });
 
         // 获取题目的提交记录
-        ProblemCountVO problemCount = judgeEntityService.getProblemCount(problem.getId());
+        ProblemCountVO problemCount = problemCountCache.getProblemCount(problem.getId());
 
         // 获取题目的代码模板
         QueryWrapper<CodeTemplate> codeTemplateQueryWrapper = new QueryWrapper<>();
@@ -1,5 +1,6 @@
 package com.simplefanc.voj.backend.service.oj.impl;
 
+import cn.hutool.core.util.IdUtil;
 import cn.hutool.core.util.StrUtil;
 import com.baomidou.mybatisplus.core.conditions.query.QueryWrapper;
 import com.baomidou.mybatisplus.core.metadata.IPage;
@@ -14,24 +15,47 @@ import com.simplefanc.voj.backend.service.oj.RankService;
 import com.simplefanc.voj.common.constants.ContestEnum;
 import com.simplefanc.voj.common.constants.RedisConstant;
 import com.simplefanc.voj.common.pojo.entity.user.UserInfo;
+import com.simplefanc.voj.common.pojo.entity.user.UserRecord;
 import lombok.RequiredArgsConstructor;
-import org.springframework.cache.annotation.Cacheable;
 import org.springframework.stereotype.Service;
 
-import java.util.List;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Function;
 import java.util.stream.Collectors;
 
 /**
  * @Author: chenfan
  * @Date: 2022/3/10 20:47
- * @Description:
+ * @Description: 排行榜以个人做题记录表为准，并在Redis有序集合中维护排名，分页只需查询当页用户
  */
 @Service
 @RequiredArgsConstructor
 public class RankServiceImpl implements RankService {
 
-    // 排行榜缓存时间 60s
-    private static final long CACHE_RANK_SECOND = 60;
+    /**
+     * 排名有序集合每天重建一次，修正与重建并发的刷新可能留下的旧分数
+     */
+    private static final long RANK_ZSET_EXPIRE_SECOND = 24 * 3600;
+
+    /**
+     * ACM排名先比较通过数，再比较提交数，提交数不会超过该值
+     */
+    private static final double ACM_AC_WEIGHT = 1e9;
+
+    /**
+     * OI排名先比较总得分，再比较通过数，通过数不会超过该值
+     */
+    private static final double OI_SCORE_WEIGHT = 1e7;
+
+    /**
+     * 两次重建的最小间隔，避免有序集合缺失时每次查询都全表重建
+     */
+    private static final long REBUILD_INTERVAL_MILLIS = 60 * 1000;
+
+    private final AtomicBoolean rebuilding = new AtomicBoolean();
+
+    private volatile long lastRebuildTime;
 
     private final UserRecordService userRecordService;
 
@@ -81,49 +105,155 @@ public class RankServiceImpl implements RankService {
         return rankList;
     }
 
-    @Cacheable(value = RedisConstant.ACM_RANK_CACHE, key = "#limit+'-'+#currentPage", condition="#uidList == null")
-    public IPage<ACMRankVO> getACMRankList(int limit, int currentPage, List<String> uidList) {
-        IPage<ACMRankVO> data = null;
+    private IPage<ACMRankVO> getACMRankList(int limit, int currentPage, List<String> uidList) {
+        Page<ACMRankVO> page = new Page<>(currentPage, limit);
         if (uidList != null) {
-            Page<ACMRankVO> page = new Page<>(currentPage, limit);
-            if (uidList.size() > 0) {
-                data = userRecordService.getACMRankList(page, uidList);
-            } else {
-                data = page;
-            }
-        } else {
-//            String key = AccountConstant.ACM_RANK_CACHE + "_" + limit + "_" + currentPage;
-//            data = (IPage<ACMRankVO>) redisUtil.get(key);
-//            if (data == null) {
-                Page<ACMRankVO> page = new Page<>(currentPage, limit);
-                data = userRecordService.getACMRankList(page, null);
-//                redisUtil.set(key, data, cacheRankSecond);
-//            }
+            return uidList.isEmpty() ? page : userRecordService.getACMRankList(page, uidList);
         }
-
-        return data;
+        List<String> pageUidList = getPageUidList(RedisConstant.ACM_RANK_ZSET, page);
+        if (pageUidList == null) {
+            // Redis不可用时直接查询做题记录表
+            return userRecordService.getACMRankList(page, null);
+        }
+        if (!pageUidList.isEmpty()) {
+            page.setRecords(sortByUidList(pageUidList, userRecordService.getACMRankListByUidList(pageUidList),
+                    ACMRankVO::getUid));
+        }
+        return page;
     }
 
-    @Cacheable(value = RedisConstant.OI_RANK_CACHE, key = "#limit+'-'+#currentPage", condition="#uidList == null")
-    public IPage<OIRankVO> getOIRankList(int limit, int currentPage, List<String> uidList) {
-        IPage<OIRankVO> data = null;
+    private IPage<OIRankVO> getOIRankList(int limit, int currentPage, List<String> uidList) {
+        Page<OIRankVO> page = new Page<>(currentPage, limit);
         if (uidList != null) {
-            Page<OIRankVO> page = new Page<>(currentPage, limit);
-            if (uidList.size() > 0) {
-                data = userRecordService.getOIRankList(page, uidList);
-            } else {
-                data = page;
+            return uidList.isEmpty() ? page : userRecordService.getOIRankList(page, uidList);
+        }
+        List<String> pageUidList = getPageUidList(RedisConstant.OI_RANK_ZSET, page);
+        if (pageUidList == null) {
+            return userRecordService.getOIRankList(page, null);
+        }
+        if (!pageUidList.isEmpty()) {
+            page.setRecords(sortByUidList(pageUidList, userRecordService.getOIRankListByUidList(pageUidList),
+                    OIRankVO::getUid));
+        }
+        return page;
+    }
+
+    @Override
+    public void refreshUserRank(String uid) {
+        userRecordService.refreshUserRecord(uid);
+        List<UserRecord> userRecordList = userRecordService.getRankUserRecordList(uid);
+        if (userRecordList.isEmpty()) {
+            removeUserRank(Collections.singletonList(uid));
+            return;
+        }
+        UserRecord userRecord = userRecordList.get(0);
+        // 有序集合不存在时由下次查询整体重建，此时单独写入会让重建被跳过
+        if (redisUtil.hasKey(RedisConstant.ACM_RANK_ZSET)) {
+            redisUtil.zAdd(RedisConstant.ACM_RANK_ZSET, uid, getACMRankScore(userRecord));
+        }
+        if (redisUtil.hasKey(RedisConstant.OI_RANK_ZSET)) {
+            redisUtil.zAdd(RedisConstant.OI_RANK_ZSET, uid, getOIRankScore(userRecord));
+        }
+    }
+
+    @Override
+    public void removeUserRank(Collection<String> uidList) {
+        if (uidList.isEmpty()) {
+            return;
+        }
+        Object[] values = uidList.toArray();
+        redisUtil.zRemove(RedisConstant.ACM_RANK_ZSET, values);
+        redisUtil.zRemove(RedisConstant.OI_RANK_ZSET, values);
+    }
+
+    /**
+     * 查询当页用户id，Redis不可用或排名有序集合尚未建好时返回null，由调用方直接分页查询做题记录表
+     */
+    private List<String> getPageUidList(String key, Page<?> page) {
+        Long total = redisUtil.zSize(key);
+        if (total == null) {
+            return null;
+        }
+        if (total == 0) {
+            // 有序集合缺失，只由一个请求重建，且限制重建频率，其余请求直接查询做题记录表
+            if (!tryRebuildRankZSet()) {
+                return null;
             }
+            total = redisUtil.zSize(key);
+            if (total == null || total == 0) {
+                return null;
+            }
+        }
+        page.setTotal(total);
+        long start = page.offset();
+        Set<Object> uidSet = redisUtil.zReverseRange(key, start, start + page.getSize() - 1);
+        if (uidSet == null) {
+            return null;
+        }
+        return uidSet.stream().map(String::valueOf).collect(Collectors.toList());
+    }
+
+    /**
+     * 距上次重建超过间隔且没有其他请求正在重建时才重建
+     *
+     * @return 是否进行了重建
+     */
+    private boolean tryRebuildRankZSet() {
+        if (System.currentTimeMillis() - lastRebuildTime < REBUILD_INTERVAL_MILLIS
+                || !rebuilding.compareAndSet(false, true)) {
+            return false;
+        }
+        try {
+            lastRebuildTime = System.currentTimeMillis();
+            rebuildRankZSet();
+            return true;
+        } finally {
+            rebuilding.set(false);
+        }
+    }
+
+    /**
+     * 由做题记录表重建两个排名有序集合，先写入临时键再整体替换，避免查询到重建一半的排名
+     */
+    private void rebuildRankZSet() {
+        userRecordService.initUserRecord();
+        List<UserRecord> userRecordList = userRecordService.getRankUserRecordList(null);
+        if (userRecordList.isEmpty()) {
+            return;
+        }
+        Map<Object, Double> acmScoreMap = new HashMap<>();
+        Map<Object, Double> oiScoreMap = new HashMap<>();
+        for (UserRecord userRecord : userRecordList) {
+            acmScoreMap.put(userRecord.getUid(), getACMRankScore(userRecord));
+            oiScoreMap.put(userRecord.getUid(), getOIRankScore(userRecord));
+        }
+        replaceRankZSet(RedisConstant.ACM_RANK_ZSET, acmScoreMap);
+        replaceRankZSet(RedisConstant.OI_RANK_ZSET, oiScoreMap);
+    }
+
+    private void replaceRankZSet(String key, Map<Object, Double> scoreMap) {
+        String tmpKey = key + ":" + IdUtil.fastSimpleUUID();
+        redisUtil.zAddAll(tmpKey, scoreMap);
+        if (redisUtil.rename(tmpKey, key)) {
+            redisUtil.expire(key, RANK_ZSET_EXPIRE_SECOND);
         } else {
-//            String key = AccountConstant.OI_RANK_CACHE + "_" + limit + "_" + currentPage;
-//            data = (IPage<OIRankVO>) redisUtil.get(key);
-//            if (data == null) {
-                Page<OIRankVO> page = new Page<>(currentPage, limit);
-                data = userRecordService.getOIRankList(page, null);
-//                redisUtil.set(key, data, cacheRankSecond);
-//            }
-        }
-        return data;
+            redisUtil.del(tmpKey);
+        }
+    }
+
+    private double getACMRankScore(UserRecord userRecord) {
+        return userRecord.getAc() * ACM_AC_WEIGHT - userRecord.getTotal();
+    }
+
+    private double getOIRankScore(UserRecord userRecord) {
+        return userRecord.getOiScore() * OI_SCORE_WEIGHT + userRecord.getAc();
+    }
+
+    private <T> List<T> sortByUidList(List<String> uidList, List<T> rankList, Function<T, String> uidGetter) {
+        // 同一用户可能有多条做题记录，保留第一条
+        Map<String, T> rankMap = rankList.stream()
+                .collect(Collectors.toMap(uidGetter, Function.identity(), (first, second) -> first));
+        return uidList.stream().map(rankMap::get).filter(Objects::nonNull).collect(Collectors.toList());
     }
 
-}
\ No newline at end of file
+}
@@ -12,6 +12,7 @@ import com.simplefanc.voj.backend.dao.msg.AdminSysNoticeEntityService;
 import com.simplefanc.voj.backend.dao.msg.UserSysNoticeEntityService;
 import com.simplefanc.voj.backend.dao.user.SessionEntityService;
 import com.simplefanc.voj.backend.dao.user.UserInfoEntityService;
+import com.simplefanc.voj.backend.judge.JudgeServerSlotAllocator;
 import com.simplefanc.voj.backend.service.admin.user.UserRecordService;
 import com.simplefanc.voj.backend.config.property.FilePathProperties;
 import com.simplefanc.voj.backend.service.admin.rejudge.RejudgeService;
@@ -67,6 +68,8 @@ public class ScheduleService {
 
     private final FilePathProperties filePathProps;
 
+    private final JudgeServerSlotAllocator judgeServerSlotAllocator;
+
     /**
      * @MethodName deleteAvatar
      * @Params * @param null
@@ -233,4 +236,15 @@ public class ScheduleService {
         }
     }
 
+    /**
+     * @MethodName reconcileJudgeServerSlot
+     * @Description 每30秒将判题机槽位占用数与数据库对账
+     * @Return
+     * @Since 2022/11/26
+     */
+    @Scheduled(cron = "0/30 * * * * ?")
+    public void reconcileJudgeServerSlot() {
+        judgeServerSlotAllocator.reconcile();
+    }
+
 }
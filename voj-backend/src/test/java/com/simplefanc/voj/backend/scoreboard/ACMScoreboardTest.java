@@ -0,0 +1,379 @@
+package com.simplefanc.voj.backend.scoreboard;
+
+import com.simplefanc.voj.backend.pojo.vo.ACMContestRankVO;
+import com.simplefanc.voj.backend.pojo.vo.ContestRecordVO;
+import com.simplefanc.voj.common.constants.ContestEnum;
+import com.simplefanc.voj.common.pojo.entity.contest.Contest;
+import com.simplefanc.voj.common.pojo.entity.contest.ContestRecord;
+import com.simplefanc.voj.common.pojo.entity.user.UserInfo;
+import org.junit.jupiter.api.Test;
+
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * @Author: chenfan
+ * @Date: 2022/12/6 14:30
+ * @Description: 增量维护的ACM排行榜与原先每次查询全部比赛记录重新计算的结果一致
+ */
+public class ACMScoreboardTest {
+
+    private static final long START = 1669852800000L;
+
+    private static final long SEAL_RANK = START + 4 * 3600 * 1000L;
+
+    private static final long END = START + 5 * 3600 * 1000L;
+
+    private static final int AC = ContestEnum.RECORD_AC.getCode();
+
+    private static final int PENALTY = ContestEnum.RECORD_NOT_AC_PENALTY.getCode();
+
+    private static final int NOT_PENALTY = ContestEnum.RECORD_NOT_AC_NOT_PENALTY.getCode();
+
+    @Test
+    public void penaltyCountsOnlyWrongSubmissionsBeforeAc() {
+        List<ContestRecordVO> recordList = Arrays.asList(
+                record(1, "u1", "A", PENALTY, 600),
+                record(2, "u1", "A", NOT_PENALTY, 900),
+                record(3, "u1", "A", AC, 1200),
+                record(4, "u1", "A", PENALTY, 1500),
+                record(5, "u2", "A", PENALTY, 300),
+                record(6, "u2", "B", AC, 2400));
+        List<ACMContestRankVO> rankList = build(false, recordList).snapshot();
+
+        assertEquals(Arrays.asList("u1", "u2"), uidList(rankList));
+        ACMContestRankVO first = rankList.get(0);
+        assertEquals(1, first.getAc());
+        assertEquals(4, first.getTotal());
+        // 一次罚时20分钟，不罚时的提交与AC后的提交不计
+        assertEquals(1200L + 20 * 60, first.getTotalTime());
+        assertEquals(1, first.getSubmissionInfo().get("A").get("errorNum"));
+        ACMContestRankVO second = rankList.get(1);
+        assertEquals(2400L, second.getTotalTime());
+        assertEquals(1, second.getSubmissionInfo().get("A").get("errorNum"));
+        assertEquals(false, second.getSubmissionInfo().get("A").getOrDefault("isAC", false));
+        assertOldEquivalent(recordList);
+    }
+
+    @Test
+    public void firstAcIncludesTiesAndMovesWhenRecordChanges() {
+        List<ContestRecordVO> recordList = Arrays.asList(
+                record(1, "u1", "A", AC, 600),
+                record(2, "u2", "A", AC, 600),
+                record(3, "u3", "A", AC, 900));
+        ACMScoreboard scoreboard = build(false, recordList);
+        Map<String, ACMContestRankVO> rankMap = toMap(scoreboard.snapshot());
+        assertEquals(true, rankMap.get("u1").getSubmissionInfo().get("A").get("isFirstAC"));
+        assertEquals(true, rankMap.get("u2").getSubmissionInfo().get("A").get("isFirstAC"));
+        assertEquals(false, rankMap.get("u3").getSubmissionInfo().get("A").get("isFirstAC"));
+        assertOldEquivalent(recordList);
+
+        // 重判后前两个AC都不再通过，first AC转移给第三个用户
+        scoreboard.apply(toEntity(record(1, "u1", "A", PENALTY, 600)), null);
+        scoreboard.apply(toEntity(record(2, "u2", "A", PENALTY, 600)), null);
+        rankMap = toMap(scoreboard.snapshot());
+        assertEquals(true, rankMap.get("u3").getSubmissionInfo().get("A").get("isFirstAC"));
+        assertEquals(oldOrderRank(Arrays.asList(
+                record(1, "u1", "A", PENALTY, 600),
+                record(2, "u2", "A", PENALTY, 600),
+                record(3, "u3", "A", AC, 900)), false), scoreboard.snapshot());
+    }
+
+    @Test
+    public void sealPeriodSubmissionsOnlyCountAsTries() {
+        long sealSeconds = (SEAL_RANK - START) / 1000;
+        List<ContestRecordVO> recordList = Arrays.asList(
+                record(1, "u1", "A", AC, 600),
+                record(2, "u2", "A", PENALTY, sealSeconds + 60),
+                record(3, "u2", "A", AC, sealSeconds + 120),
+                record(4, "u2", "B", AC, 1200));
+
+        Map<String, ACMContestRankVO> sealedMap = toMap(build(true, recordList).snapshot());
+        assertEquals(1, sealedMap.get("u2").getAc());
+        assertEquals(2, sealedMap.get("u2").getSubmissionInfo().get("A").get("tryNum"));
+        assertEquals(0, sealedMap.get("u2").getSubmissionInfo().get("A").get("errorNum"));
+
+        Map<String, ACMContestRankVO> liveMap = toMap(build(false, recordList).snapshot());
+        assertEquals(2, liveMap.get("u2").getAc());
+        assertEquals(1, liveMap.get("u2").getSubmissionInfo().get("A").get("errorNum"));
+        assertOldEquivalent(recordList);
+    }
+
+    @Test
+    public void excludedUsersAndRecordsBeforeStartAreIgnored() {
+        Contest contest = contest();
+        ACMScoreboard scoreboard = new ACMScoreboard(contest, false, Collections.singleton("admin"));
+        ContestRecordVO early = record(1, "u1", "A", AC, 0);
+        early.setSubmitTime(new Date(START - 1000));
+        scoreboard.init(Arrays.asList(early, record(2, "admin", "A", AC, 60), record(3, "u2", "A", AC, 120)));
+        assertEquals(Collections.singletonList("u2"), uidList(scoreboard.snapshot()));
+    }
+
+    @Test
+    public void randomRecordsMatchOldOrderRank() {
+        Random random = new Random(20221206L);
+        for (int round = 0; round < 300; round++) {
+            List<ContestRecordVO> recordList = randomRecords(random, 1 + random.nextInt(30), 1 + random.nextInt(120));
+            assertOldEquivalent(recordList);
+        }
+    }
+
+    @Test
+    public void incrementalChangesMatchOldOrderRank() {
+        Random random = new Random(20221207L);
+        for (int round = 0; round < 200; round++) {
+            boolean isOpenSealRank = random.nextBoolean();
+            List<ContestRecordVO> recordList = randomRecords(random, 1 + random.nextInt(20), 1 + random.nextInt(80));
+            int initSize = random.nextInt(recordList.size() + 1);
+            ACMScoreboard scoreboard = build(isOpenSealRank, recordList.subList(0, initSize));
+            Map<Long, ContestRecordVO> currentMap = new LinkedHashMap<>();
+            recordList.subList(0, initSize).forEach(record -> currentMap.put(record.getId(), record));
+
+            List<ContestRecordVO> changeList = new ArrayList<>(recordList.subList(initSize, recordList.size()));
+            // 重判与删除已有的记录
+            for (ContestRecordVO record : recordList) {
+                if (random.nextInt(5) == 0) {
+                    ContestRecordVO changed = copy(record);
+                    changed.setStatus(random.nextInt(4) == 0 ? null : randomStatus(random));
+                    changeList.add(changed);
+                }
+            }
+            Collections.shuffle(changeList, random);
+            for (ContestRecordVO record : changeList) {
+                if (record.getStatus() == null) {
+                    currentMap.remove(record.getId());
+                } else {
+                    currentMap.put(record.getId(), record);
+                }
+                scoreboard.apply(toEntity(record), new UserInfo().setUuid(record.getUid())
+                        .setUsername(record.getUsername()));
+                assertEquals(oldOrderRank(new ArrayList<>(currentMap.values()), isOpenSealRank),
+                        scoreboard.snapshot());
+            }
+        }
+    }
+
+    @Test
+    public void pageMatchesOldRankNumbering() {
+        Random random = new Random(20221208L);
+        for (int round = 0; round < 300; round++) {
+            List<ContestRecordVO> recordList = randomRecords(random, 1 + random.nextInt(30), 1 + random.nextInt(60));
+            boolean isOpenSealRank = random.nextBoolean();
+            ACMScoreboard scoreboard = build(isOpenSealRank, recordList);
+            Set<String> starUsernameSet = new HashSet<>();
+            Set<String> topUidSet = new HashSet<>();
+            for (int i = 0; i < 30; i++) {
+                if (random.nextInt(6) == 0) {
+                    starUsernameSet.add("user" + i);
+                }
+                if (random.nextInt(8) == 0) {
+                    topUidSet.add("u" + i);
+                }
+            }
+            boolean removeStar = random.nextBoolean();
+            List<ACMContestRankVO> oldList = oldRankList(oldOrderRank(recordList, isOpenSealRank), starUsernameSet,
+                    removeStar, topUidSet);
+            int limit = 1 + random.nextInt(10);
+            for (int offset = 0; offset <= oldList.size() + limit; offset += limit) {
+                RankPage<ACMContestRankVO> page = scoreboard.getPage(starUsernameSet, removeStar, topUidSet, offset,
+                        limit);
+                assertEquals(oldList.size(), page.getTotal());
+                assertEquals(oldList.subList(Math.min(offset, oldList.size()),
+                        Math.min(offset + limit, oldList.size())), page.getRecords());
+            }
+        }
+    }
+
+    @Test
+    public void pageRanksTiesAndSkipsStarUsers() {
+        List<ContestRecordVO> recordList = Arrays.asList(
+                record(1, "u1", "A", AC, 600),
+                record(2, "u2", "A", AC, 600),
+                record(3, "u3", "A", AC, 300),
+                record(4, "u4", "A", AC, 900));
+        ACMScoreboard scoreboard = build(false, recordList);
+        List<ACMContestRankVO> records = scoreboard.getPage(Collections.singleton("user3"), false,
+                Collections.emptySet(), 0, 10).getRecords();
+        assertEquals(Arrays.asList("u3", "u1", "u2", "u4"), uidList(records));
+        assertEquals(Arrays.asList(-1, 1, 1, 3), rankNoList(records));
+
+        records = scoreboard.getPage(Collections.singleton("user3"), true, Collections.singleton("u4"), 0, 10)
+                .getRecords();
+        assertEquals(Arrays.asList("u4", "u1", "u2", "u4"), uidList(records));
+        assertEquals(Arrays.asList(3, 1, 1, 3), rankNoList(records));
+        assertTrue(records.stream().allMatch(rankVO -> rankVO.getSeq() != null));
+    }
+
+    private static void assertOldEquivalent(List<ContestRecordVO> recordList) {
+        for (boolean isOpenSealRank : new boolean[]{false, true}) {
+            assertEquals(oldOrderRank(recordList, isOpenSealRank), build(isOpenSealRank, recordList).snapshot());
+        }
+    }
+
+    private static ACMScoreboard build(boolean isOpenSealRank, List<ContestRecordVO> recordList) {
+        ACMScoreboard scoreboard = new ACMScoreboard(contest(), isOpenSealRank, Collections.emptySet());
+        scoreboard.init(recordList);
+        return scoreboard;
+    }
+
+    private static Contest contest() {
+        return new Contest().setId(1L).setStartTime(new Date(START)).setSealRankTime(new Date(SEAL_RANK))
+                .setEndTime(new Date(END)).setSealRank(true).setContestAdminRank(true);
+    }
+
+    /**
+     * 原ContestACMRankService.getACMOrderRank的计算方式，成绩相同时按用户id排序
+     */
+    private static List<ACMContestRankVO> oldOrderRank(List<ContestRecordVO> recordList, boolean isOpenSealRank) {
+        List<ContestRecordVO> sortedList = new ArrayList<>(recordList);
+        sortedList.removeIf(record -> record.getSubmitTime().getTime() < START);
+        // 查询结果按提交耗时time升序
+        sortedList.sort(Comparator.comparing(ContestRecordVO::getTime).thenComparing(ContestRecordVO::getId));
+        Map<String, ACMContestRankVO> uidContestRankVOMap = new HashMap<>();
+        for (ContestRecordVO record : sortedList) {
+            uidContestRankVOMap.computeIfAbsent(record.getUid(), uid -> new ACMContestRankVO()
+                    .setUid(uid).setUsername(record.getUsername()).setAc(0).setTotalTime(0L).setTotal(0)
+                    .setSubmissionInfo(new HashMap<>()));
+        }
+
+        HashMap<String, Long> firstAcMap = new HashMap<>();
+        for (ContestRecordVO record : sortedList) {
+            ACMContestRankVO rankVO = uidContestRankVOMap.get(record.getUid());
+            HashMap<String, Object> problemSubmissionInfo = rankVO.getSubmissionInfo().get(record.getDisplayId());
+            if (problemSubmissionInfo == null) {
+                problemSubmissionInfo = new HashMap<>();
+                problemSubmissionInfo.put("errorNum", 0);
+            }
+            rankVO.setTotal(rankVO.getTotal() + 1);
+            long submitTime = record.getSubmitTime().getTime();
+            if (isOpenSealRank && submitTime >= SEAL_RANK && submitTime <= END) {
+                int tryNum = (int) problemSubmissionInfo.getOrDefault("tryNum", 0);
+                problemSubmissionInfo.put("tryNum", tryNum + 1);
+            } else {
+                if ((Boolean) problemSubmissionInfo.getOrDefault("isAC", false)) {
+                    continue;
+                }
+                int errorNumber = (int) problemSubmissionInfo.getOrDefault("errorNum", 0);
+                if (record.getStatus() == AC) {
+                    rankVO.setAc(rankVO.getAc() + 1);
+                    Long time = firstAcMap.get(record.getDisplayId());
+                    boolean isFirstAc = time == null || time.longValue() == record.getTime().longValue();
+                    if (time == null) {
+                        firstAcMap.put(record.getDisplayId(), record.getTime());
+                    }
+                    problemSubmissionInfo.put("isAC", true);
+                    problemSubmissionInfo.put("isFirstAC", isFirstAc);
+                    problemSubmissionInfo.put("ACTime", record.getTime());
+                    problemSubmissionInfo.put("errorNum", errorNumber);
+                    rankVO.setTotalTime(rankVO.getTotalTime() + errorNumber * 20 * 60 + record.getTime());
+                } else if (record.getStatus() == PENALTY) {
+                    problemSubmissionInfo.put("errorNum", errorNumber + 1);
+                } else {
+                    problemSubmissionInfo.put("errorNum", errorNumber);
+                }
+            }
+            rankVO.getSubmissionInfo().put(record.getDisplayId(), problemSubmissionInfo);
+        }
+
+        List<ACMContestRankVO> result = new ArrayList<>(uidContestRankVOMap.values());
+        result.sort(Comparator.comparing(ACMContestRankVO::getAc, Comparator.reverseOrder())
+                .thenComparing(ACMContestRankVO::getTotalTime)
+                .thenComparing(ACMContestRankVO::getUid));
+        return result;
+    }
+
+    /**
+     * 原ContestACMRankService.computeACMRankNo的排名方式，置顶数据拼接在最前
+     */
+    private static List<ACMContestRankVO> oldRankList(List<ACMContestRankVO> orderResultList,
+                                                      Set<String> starUsernameSet, boolean removeStar,
+                                                      Set<String> topUidSet) {
+        if (removeStar) {
+            orderResultList.removeIf(rankVO -> starUsernameSet.contains(rankVO.getUsername()));
+        }
+        List<ACMContestRankVO> topList = new ArrayList<>();
+        int rankNum = 1;
+        ACMContestRankVO preRankVO = null;
+        for (int i = 0; i < orderResultList.size(); i++) {
+            ACMContestRankVO rankVO = orderResultList.get(i);
+            rankVO.setSeq(i + 1);
+            if (starUsernameSet.contains(rankVO.getUsername())) {
+                rankVO.setRank(-1);
+            } else {
+                if (rankNum != 1 && preRankVO.getAc().equals(rankVO.getAc())
+                        && preRankVO.getTotalTime().equals(rankVO.getTotalTime())) {
+                    rankVO.setRank(preRankVO.getRank());
+                } else {
+                    rankVO.setRank(rankNum);
+                }
+                preRankVO = rankVO;
+                rankNum++;
+            }
+            if (topUidSet.contains(rankVO.getUid())) {
+                topList.add(rankVO);
+            }
+        }
+        topList.addAll(orderResultList);
+        return topList;
+    }
+
+    private static List<ContestRecordVO> randomRecords(Random random, int userNum, int recordNum) {
+        List<ContestRecordVO> recordList = new ArrayList<>();
+        for (int i = 1; i <= recordNum; i++) {
+            // 时间取整到6分钟，制造相同的AC时间与罚时
+            long time = random.nextInt(55) * 360L;
+            recordList.add(record(i, "u" + random.nextInt(userNum), String.valueOf((char) ('A' + random.nextInt(4))),
+                    randomStatus(random), time));
+        }
+        return recordList;
+    }
+
+    private static int randomStatus(Random random) {
+        int value = random.nextInt(5);
+        return value < 2 ? AC : value < 4 ? PENALTY : NOT_PENALTY;
+    }
+
+    private static ContestRecordVO record(long id, String uid, String displayId, int status, long time) {
+        ContestRecordVO record = new ContestRecordVO();
+        record.setId(id);
+        record.setCid(1L);
+        record.setUid(uid);
+        record.setUsername("user" + uid.substring(1));
+        record.setDisplayId(displayId);
+        record.setStatus(status);
+        record.setTime(time);
+        record.setSubmitTime(new Date(START + time * 1000));
+        return record;
+    }
+
+    private static ContestRecordVO copy(ContestRecordVO record) {
+        return record(record.getId(), record.getUid(), record.getDisplayId(), record.getStatus(), record.getTime());
+    }
+
+    private static ContestRecord toEntity(ContestRecordVO record) {
+        return new ContestRecord().setId(record.getId()).setCid(record.getCid()).setUid(record.getUid())
+                .setUsername(record.getUsername()).setDisplayId(record.getDisplayId()).setStatus(record.getStatus())
+                .setTime(record.getTime()).setSubmitTime(record.getSubmitTime());
+    }
+
+    private static List<String> uidList(List<ACMContestRankVO> rankList) {
+        List<String> uidList = new ArrayList<>();
+        rankList.forEach(rankVO -> uidList.add(rankVO.getUid()));
+        return uidList;
+    }
+
+    private static List<Integer> rankNoList(List<ACMContestRankVO> rankList) {
+        List<Integer> rankNoList = new ArrayList<>();
+        rankList.forEach(rankVO -> rankNoList.add(rankVO.getRank()));
+        return rankNoList;
+    }
+
+    private static Map<String, ACMContestRankVO> toMap(List<ACMContestRankVO> rankList) {
+        Map<String, ACMContestRankVO> rankMap = new HashMap<>();
+        rankList.forEach(rankVO -> rankMap.put(rankVO.getUid(), rankVO));
+        return rankMap;
+    }
+
+}
@@ -0,0 +1,343 @@
+package com.simplefanc.voj.backend.scoreboard;
+
+import com.simplefanc.voj.backend.pojo.vo.ContestRecordVO;
+import com.simplefanc.voj.backend.pojo.vo.OIContestRankVO;
+import com.simplefanc.voj.common.constants.ContestConstant;
+import com.simplefanc.voj.common.constants.ContestEnum;
+import com.simplefanc.voj.common.pojo.entity.contest.Contest;
+import com.simplefanc.voj.common.pojo.entity.contest.ContestRecord;
+import com.simplefanc.voj.common.pojo.entity.user.UserInfo;
+import org.junit.jupiter.api.Test;
+
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+/**
+ * @Author: chenfan
+ * @Date: 2022/12/6 16:20
+ * @Description: 增量维护的OI排行榜在取最高分与取最近一次提交两种模式下与原先查询比赛记录重新计算的结果一致
+ */
+public class OIScoreboardTest {
+
+    private static final long START = 1669852800000L;
+
+    private static final long SEAL_RANK = START + 4 * 3600 * 1000L;
+
+    private static final long END = START + 5 * 3600 * 1000L;
+
+    private static final int AC = ContestEnum.RECORD_AC.getCode();
+
+    private static final int PENALTY = ContestEnum.RECORD_NOT_AC_PENALTY.getCode();
+
+    @Test
+    public void highestModeTakesBestScoreAndBestFullScoreTime() {
+        List<ContestRecordVO> recordList = Arrays.asList(
+                record(1, "u1", "A", PENALTY, 40, 100, 600),
+                record(2, "u1", "A", AC, 100, 300, 900),
+                record(3, "u1", "A", AC, 100, 200, 1200),
+                record(4, "u1", "A", PENALTY, 60, 50, 1500),
+                record(5, "u1", "B", PENALTY, 30, 10, 1800),
+                record(6, "u2", "A", AC, 100, 150, 2400),
+                record(7, "u2", "B", PENALTY, 20, 10, 2700));
+        List<OIContestRankVO> rankList = build(ContestConstant.OI_RANK_HIGHEST_SCORE, false, recordList).snapshot();
+
+        OIContestRankVO first = rankList.get(0);
+        assertEquals("u1", first.getUid());
+        assertEquals(130, first.getTotalScore());
+        assertEquals(100, first.getSubmissionInfo().get("A"));
+        // 满分提交中的最优耗时，非满分的题目不计耗时
+        assertEquals(200, first.getTotalTime());
+        assertEquals(Collections.singletonMap("A", 200), first.getTimeInfo());
+        OIContestRankVO second = rankList.get(1);
+        assertEquals(120, second.getTotalScore());
+        assertEquals(150, second.getTotalTime());
+        assertOldEquivalent(ContestConstant.OI_RANK_HIGHEST_SCORE, recordList);
+    }
+
+    @Test
+    public void recentModeTakesLatestSubmission() {
+        List<ContestRecordVO> recordList = Arrays.asList(
+                record(1, "u1", "A", AC, 100, 200, 600),
+                record(2, "u1", "A", PENALTY, 40, 100, 900),
+                record(3, "u2", "A", PENALTY, 40, 100, 600),
+                record(4, "u2", "A", AC, 100, 300, 900));
+        Map<String, OIContestRankVO> rankMap = toMap(build(ContestConstant.OI_RANK_RECENT_SCORE, false, recordList)
+                .snapshot());
+
+        assertEquals(40, rankMap.get("u1").getTotalScore());
+        assertEquals(0, rankMap.get("u1").getTotalTime());
+        assertNull(rankMap.get("u1").getTimeInfo());
+        assertEquals(100, rankMap.get("u2").getTotalScore());
+        assertEquals(300, rankMap.get("u2").getTotalTime());
+        assertOldEquivalent(ContestConstant.OI_RANK_RECENT_SCORE, recordList);
+    }
+
+    @Test
+    public void sealedBoardIgnoresSubmissionsAfterSeal() {
+        long sealSeconds = (SEAL_RANK - START) / 1000;
+        List<ContestRecordVO> recordList = Arrays.asList(
+                record(1, "u1", "A", PENALTY, 40, 100, 600),
+                record(2, "u1", "A", AC, 100, 200, sealSeconds + 60),
+                record(3, "u2", "A", AC, 100, 200, sealSeconds + 120));
+        for (String scoreType : new String[]{ContestConstant.OI_RANK_HIGHEST_SCORE,
+                ContestConstant.OI_RANK_RECENT_SCORE}) {
+            Map<String, OIContestRankVO> sealedMap = toMap(build(scoreType, true, recordList).snapshot());
+            assertEquals(40, sealedMap.get("u1").getTotalScore());
+            // 只有封榜后提交的用户不在封榜榜单中
+            assertNull(sealedMap.get("u2"));
+            Map<String, OIContestRankVO> liveMap = toMap(build(scoreType, false, recordList).snapshot());
+            assertEquals(100, liveMap.get("u1").getTotalScore());
+            assertOldEquivalent(scoreType, recordList);
+        }
+    }
+
+    @Test
+    public void randomRecordsMatchOldOrderRank() {
+        Random random = new Random(20221209L);
+        for (int round = 0; round < 300; round++) {
+            List<ContestRecordVO> recordList = randomRecords(random, 1 + random.nextInt(30), 1 + random.nextInt(120));
+            assertOldEquivalent(ContestConstant.OI_RANK_HIGHEST_SCORE, recordList);
+            assertOldEquivalent(ContestConstant.OI_RANK_RECENT_SCORE, recordList);
+        }
+    }
+
+    @Test
+    public void incrementalChangesMatchOldOrderRank() {
+        Random random = new Random(20221210L);
+        for (int round = 0; round < 200; round++) {
+            String scoreType = random.nextBoolean() ? ContestConstant.OI_RANK_HIGHEST_SCORE
+                    : ContestConstant.OI_RANK_RECENT_SCORE;
+            boolean isOpenSealRank = random.nextBoolean();
+            List<ContestRecordVO> recordList = randomRecords(random, 1 + random.nextInt(20), 1 + random.nextInt(80));
+            int initSize = random.nextInt(recordList.size() + 1);
+            OIScoreboard scoreboard = build(scoreType, isOpenSealRank, recordList.subList(0, initSize));
+            Map<Long, ContestRecordVO> currentMap = new LinkedHashMap<>();
+            recordList.subList(0, initSize).forEach(record -> currentMap.put(record.getId(), record));
+
+            List<ContestRecordVO> changeList = new ArrayList<>(recordList.subList(initSize, recordList.size()));
+            // 重判与删除已有的记录
+            for (ContestRecordVO record : recordList) {
+                if (random.nextInt(5) == 0) {
+                    ContestRecordVO changed = copy(record);
+                    int score = random.nextInt(11) * 10;
+                    changed.setStatus(random.nextInt(4) == 0 ? null : score == 100 ? AC : PENALTY);
+                    changed.setScore(score);
+                    changeList.add(changed);
+                }
+            }
+            Collections.shuffle(changeList, random);
+            for (ContestRecordVO record : changeList) {
+                if (record.getStatus() == null) {
+                    currentMap.remove(record.getId());
+                } else {
+                    currentMap.put(record.getId(), record);
+                }
+                scoreboard.apply(toEntity(record), new UserInfo().setUuid(record.getUid())
+                        .setUsername(record.getUsername()));
+                assertEquals(oldOrderRank(scoreType, new ArrayList<>(currentMap.values()), isOpenSealRank),
+                        scoreboard.snapshot());
+            }
+        }
+    }
+
+    @Test
+    public void pageMatchesOldRankNumbering() {
+        Random random = new Random(20221211L);
+        for (int round = 0; round < 300; round++) {
+            String scoreType = random.nextBoolean() ? ContestConstant.OI_RANK_HIGHEST_SCORE
+                    : ContestConstant.OI_RANK_RECENT_SCORE;
+            boolean isOpenSealRank = random.nextBoolean();
+            List<ContestRecordVO> recordList = randomRecords(random, 1 + random.nextInt(30), 1 + random.nextInt(60));
+            OIScoreboard scoreboard = build(scoreType, isOpenSealRank, recordList);
+            Set<String> starUsernameSet = new HashSet<>();
+            Set<String> topUidSet = new HashSet<>();
+            for (int i = 0; i < 30; i++) {
+                if (random.nextInt(6) == 0) {
+                    starUsernameSet.add("user" + i);
+                }
+                if (random.nextInt(8) == 0) {
+                    topUidSet.add("u" + i);
+                }
+            }
+            boolean removeStar = random.nextBoolean();
+            List<OIContestRankVO> oldList = oldRankList(oldOrderRank(scoreType, recordList, isOpenSealRank),
+                    starUsernameSet, removeStar, topUidSet);
+            int limit = 1 + random.nextInt(10);
+            for (int offset = 0; offset <= oldList.size() + limit; offset += limit) {
+                RankPage<OIContestRankVO> page = scoreboard.getPage(starUsernameSet, removeStar, topUidSet, offset,
+                        limit);
+                assertEquals(oldList.size(), page.getTotal());
+                assertEquals(oldList.subList(Math.min(offset, oldList.size()),
+                        Math.min(offset + limit, oldList.size())), page.getRecords());
+            }
+        }
+    }
+
+    private static void assertOldEquivalent(String scoreType, List<ContestRecordVO> recordList) {
+        for (boolean isOpenSealRank : new boolean[]{false, true}) {
+            assertEquals(oldOrderRank(scoreType, recordList, isOpenSealRank),
+                    build(scoreType, isOpenSealRank, recordList).snapshot());
+        }
+    }
+
+    private static OIScoreboard build(String scoreType, boolean isOpenSealRank, List<ContestRecordVO> recordList) {
+        OIScoreboard scoreboard = new OIScoreboard(contest(scoreType), isOpenSealRank, Collections.emptySet());
+        scoreboard.init(recordList);
+        return scoreboard;
+    }
+
+    private static Contest contest(String scoreType) {
+        return new Contest().setId(1L).setStartTime(new Date(START)).setSealRankTime(new Date(SEAL_RANK))
+                .setEndTime(new Date(END)).setSealRank(true).setContestAdminRank(true).setOiRankScoreType(scoreType);
+    }
+
+    /**
+     * 原ContestOIRankService.getOiOrderRank的计算方式：每个用户每道题先按getOIContestRecordByHighestSubmission
+     * 或getOIContestRecordByRecentSubmission选出记录，再累加得分与满分提交的最优耗时，成绩相同时按用户id排序。
+     * 原查询外层关联时没有再按提交时间过滤，此处选出的记录都在统计时段内
+     */
+    private static List<OIContestRankVO> oldOrderRank(String scoreType, List<ContestRecordVO> recordList,
+                                                      boolean isOpenSealRank) {
+        long rankEnd = isOpenSealRank ? SEAL_RANK : END;
+        Map<String, List<ContestRecordVO>> groupMap = new TreeMap<>();
+        for (ContestRecordVO record : recordList) {
+            long submitTime = record.getSubmitTime().getTime();
+            if (record.getStatus() != null && submitTime >= START && submitTime <= rankEnd) {
+                groupMap.computeIfAbsent(record.getUid() + "#" + record.getDisplayId(), key -> new ArrayList<>())
+                        .add(record);
+            }
+        }
+        boolean isHighestRankScore = ContestConstant.OI_RANK_HIGHEST_SCORE.equals(scoreType);
+        List<ContestRecordVO> selectedList = new ArrayList<>();
+        for (List<ContestRecordVO> groupList : groupMap.values()) {
+            if (isHighestRankScore) {
+                int maxScore = groupList.stream().mapToInt(ContestRecordVO::getScore).max().getAsInt();
+                groupList.stream().filter(record -> record.getScore() == maxScore).forEach(selectedList::add);
+            } else {
+                long maxTime = groupList.stream().mapToLong(ContestRecordVO::getTime).max().getAsLong();
+                groupList.stream().filter(record -> record.getTime() == maxTime).forEach(selectedList::add);
+            }
+        }
+        selectedList.sort(Comparator.comparing(ContestRecordVO::getId));
+
+        Map<String, OIContestRankVO> uidContestRankVOMap = new HashMap<>();
+        for (ContestRecordVO record : selectedList) {
+            OIContestRankVO rankVO = uidContestRankVOMap.computeIfAbsent(record.getUid(), uid -> new OIContestRankVO()
+                    .setUid(uid).setUsername(record.getUsername()).setTotalScore(0).setTotalTime(0)
+                    .setSubmissionInfo(new HashMap<>()));
+            Map<String, Integer> submissionInfo = rankVO.getSubmissionInfo();
+            Integer score = submissionInfo.get(record.getDisplayId());
+            if (isHighestRankScore) {
+                if (score == null) {
+                    rankVO.setTotalScore(rankVO.getTotalScore() + record.getScore());
+                    submissionInfo.put(record.getDisplayId(), record.getScore());
+                }
+            } else {
+                rankVO.setTotalScore(rankVO.getTotalScore() - (score == null ? 0 : score) + record.getScore());
+                submissionInfo.put(record.getDisplayId(), record.getScore());
+            }
+        }
+
+        Map<String, Map<String, Integer>> uidTimeInfoMap = new HashMap<>();
+        for (ContestRecordVO record : selectedList) {
+            if (record.getStatus() == AC) {
+                uidTimeInfoMap.computeIfAbsent(record.getUid(), uid -> new HashMap<>())
+                        .merge(record.getDisplayId(), record.getUseTime(), Math::min);
+            }
+        }
+        List<OIContestRankVO> result = new ArrayList<>(uidContestRankVOMap.values());
+        for (OIContestRankVO rankVO : result) {
+            Map<String, Integer> timeInfo = uidTimeInfoMap.get(rankVO.getUid());
+            rankVO.setTotalTime(timeInfo == null ? 0 : timeInfo.values().stream().reduce(0, Integer::sum));
+            rankVO.setTimeInfo(timeInfo);
+        }
+        result.sort(Comparator.comparing(OIContestRankVO::getTotalScore, Comparator.reverseOrder())
+                .thenComparing(OIContestRankVO::getTotalTime)
+                .thenComparing(OIContestRankVO::getUid));
+        return result;
+    }
+
+    /**
+     * 原ContestOIRankService.computeOIRankNo的排名方式，置顶数据拼接在最前
+     */
+    private static List<OIContestRankVO> oldRankList(List<OIContestRankVO> orderResultList,
+                                                     Set<String> starUsernameSet, boolean removeStar,
+                                                     Set<String> topUidSet) {
+        if (removeStar) {
+            orderResultList.removeIf(rankVO -> starUsernameSet.contains(rankVO.getUsername()));
+        }
+        List<OIContestRankVO> topList = new ArrayList<>();
+        int rankNum = 1;
+        OIContestRankVO preRankVO = null;
+        for (int i = 0; i < orderResultList.size(); i++) {
+            OIContestRankVO rankVO = orderResultList.get(i);
+            rankVO.setSeq(i + 1);
+            if (starUsernameSet.contains(rankVO.getUsername())) {
+                rankVO.setRank(-1);
+            } else {
+                if (rankNum != 1 && preRankVO.getTotalScore().equals(rankVO.getTotalScore())
+                        && preRankVO.getTotalTime().equals(rankVO.getTotalTime())) {
+                    rankVO.setRank(preRankVO.getRank());
+                } else {
+                    rankVO.setRank(rankNum);
+                }
+                preRankVO = rankVO;
+                rankNum++;
+            }
+            if (topUidSet.contains(rankVO.getUid())) {
+                topList.add(rankVO);
+            }
+        }
+        topList.addAll(orderResultList);
+        return topList;
+    }
+
+    private static List<ContestRecordVO> randomRecords(Random random, int userNum, int recordNum) {
+        List<ContestRecordVO> recordList = new ArrayList<>();
+        for (int i = 1; i <= recordNum; i++) {
+            // 时间取整到6分钟，制造相同的提交时间、得分与耗时
+            long time = random.nextInt(55) * 360L;
+            int score = random.nextInt(11) * 10;
+            recordList.add(record(i, "u" + random.nextInt(userNum), String.valueOf((char) ('A' + random.nextInt(4))),
+                    score == 100 ? AC : PENALTY, score, random.nextInt(5) * 100, time));
+        }
+        return recordList;
+    }
+
+    private static ContestRecordVO record(long id, String uid, String displayId, int status, int score, int useTime,
+                                          long time) {
+        ContestRecordVO record = new ContestRecordVO();
+        record.setId(id);
+        record.setCid(1L);
+        record.setUid(uid);
+        record.setUsername("user" + uid.substring(1));
+        record.setDisplayId(displayId);
+        record.setStatus(status);
+        record.setScore(score);
+        record.setUseTime(useTime);
+        record.setTime(time);
+        record.setSubmitTime(new Date(START + time * 1000));
+        return record;
+    }
+
+    private static ContestRecordVO copy(ContestRecordVO record) {
+        return record(record.getId(), record.getUid(), record.getDisplayId(), record.getStatus(), record.getScore(),
+                record.getUseTime(), record.getTime());
+    }
+
+    private static ContestRecord toEntity(ContestRecordVO record) {
+        return new ContestRecord().setId(record.getId()).setCid(record.getCid()).setUid(record.getUid())
+                .setUsername(record.getUsername()).setDisplayId(record.getDisplayId()).setStatus(record.getStatus())
+                .setScore(record.getScore()).setUseTime(record.getUseTime()).setTime(record.getTime())
+                .setSubmitTime(record.getSubmitTime());
+    }
+
+    private static Map<String, OIContestRankVO> toMap(List<OIContestRankVO> rankList) {
+        Map<String, OIContestRankVO> rankMap = new HashMap<>();
+        rankList.forEach(rankVO -> rankMap.put(rankVO.getUid(), rankVO));
+        return rankMap;
+    }
+
+}
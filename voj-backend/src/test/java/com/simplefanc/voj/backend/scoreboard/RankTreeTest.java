@@ -0,0 +1,74 @@
+package com.simplefanc.voj.backend.scoreboard;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * @Author: chenfan
+ * @Date: 2022/12/9 16:05
+ * @Description: 有序树的插入、删除与下标查询与有序列表的结果一致
+ */
+public class RankTreeTest {
+
+    /**
+     * 先按成绩降序，成绩相同按id升序
+     */
+    private static final Comparator<int[]> SCORE_COMPARATOR = Comparator.comparingInt((int[] item) -> -item[0]);
+
+    private static final Comparator<int[]> RANK_COMPARATOR = SCORE_COMPARATOR.thenComparingInt(item -> item[1]);
+
+    @Test
+    public void emptyTree() {
+        RankTree<int[]> rankTree = new RankTree<>(RANK_COMPARATOR);
+        assertEquals(0, rankTree.size());
+        assertEquals(-1, rankTree.indexOf(new int[]{1, 1}));
+        assertEquals(false, rankTree.remove(new int[]{1, 1}));
+        assertEquals(0, rankTree.lowerBound(new int[]{1, 1}, SCORE_COMPARATOR));
+    }
+
+    @Test
+    public void randomOperationsMatchSortedList() {
+        Random random = new Random(20221209L);
+        for (int round = 0; round < 50; round++) {
+            RankTree<int[]> rankTree = new RankTree<>(RANK_COMPARATOR);
+            List<int[]> sortedList = new ArrayList<>();
+            // key: id，value: 当前的数据
+            Map<Integer, int[]> currentMap = new HashMap<>();
+            for (int step = 0; step < 2000; step++) {
+                int id = random.nextInt(300);
+                int[] old = currentMap.remove(id);
+                if (old != null) {
+                    assertEquals(true, rankTree.remove(old));
+                    sortedList.remove(old);
+                }
+                if (random.nextInt(4) != 0) {
+                    int[] item = {random.nextInt(20), id};
+                    currentMap.put(id, item);
+                    rankTree.add(item);
+                    sortedList.add(item);
+                    sortedList.sort(RANK_COMPARATOR);
+                }
+                assertEquals(sortedList.size(), rankTree.size());
+                if (sortedList.isEmpty()) {
+                    continue;
+                }
+                int index = random.nextInt(sortedList.size());
+                int[] expected = sortedList.get(index);
+                assertEquals(expected, rankTree.get(index));
+                assertEquals(index, rankTree.indexOf(expected));
+                int lowerBound = 0;
+                while (SCORE_COMPARATOR.compare(sortedList.get(lowerBound), expected) < 0) {
+                    lowerBound++;
+                }
+                assertEquals(lowerBound, rankTree.lowerBound(expected, SCORE_COMPARATOR));
+            }
+            List<int[]> traversed = new ArrayList<>();
+            rankTree.forEach(traversed::add);
+            assertEquals(sortedList, traversed);
+        }
+    }
+
+}
@@ -1,13 +1,15 @@
 package com.simplefanc.voj.common.constants;
 
 public interface RedisConstant {
-    String OI_CONTEST_RANK_CACHE = "oi_contest_rank_cache";
+    String ACM_RANK_ZSET = "acm_rank_zset";
 
-    String CONTEST_RANK_CAL_RESULT_CACHE = "contest_rank_cal_result_cache";
+    String OI_RANK_ZSET = "oi_rank_zset";
 
-    String ACM_RANK_CACHE = "acm_rank_cache";
+    String PROBLEM_COUNT = "problem_count:";
 
-    String OI_RANK_CACHE = "oi_rank_cache";
+    String PROBLEM_COUNT_VERDICT_LOCK = "problem_count_verdict_lock:";
+
+    String CONTEST_METADATA_VERSION = "contest_metadata_version:";
 
     String SUPER_ADMIN_UID_LIST_CACHE = "super_admin_uid_list_cache";
 
@@ -30,4 +32,16 @@ public interface RedisConstant {
     String DISCUSSION_ADD_NUM_LOCK = "discussion_add_num_lock:";
 
     String CONTEST_ADD_PRINT_LOCK = "contest_add_print_lock:";
+
+    String JUDGE_SERVER_SLOT = "judge_server_slot";
+
+    String JUDGE_RUNNING_TASK = "judge_running_task";
+
+    String JUDGE_SLOT_RELEASE_CHANNEL = "judge_slot_release";
+
+    String CONTEST_RECORD_CHANGE_CHANNEL = "contest_record_change";
+
+    String JUDGE_STATUS_CHANGE_CHANNEL = "judge_status_change";
+
+    String DOUBLE_CACHE_INVALIDATE_CHANNEL = "double_cache_invalidate";
 }
\ No newline at end of file
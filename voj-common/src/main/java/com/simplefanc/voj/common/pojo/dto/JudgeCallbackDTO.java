@@ -0,0 +1,54 @@
+package com.simplefanc.voj.common.pojo.dto;
+
+import io.swagger.annotations.ApiModel;
+import io.swagger.annotations.ApiModelProperty;
+import lombok.Data;
+import lombok.EqualsAndHashCode;
+import lombok.experimental.Accessors;
+
+import java.io.Serializable;
+
+/**
+ * @Author: chenfan
+ * @Date: 2022/11/27 14:20
+ * @Description:
+ */
+@Data
+@EqualsAndHashCode(callSuper = false)
+@Accessors(chain = true)
+@ApiModel(value = "com.simplefanc.voj.common.pojo.dto.JudgeCallbackDTO", description = "判题机回调后台服务的评测进度与结果")
+public class JudgeCallbackDTO implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    @ApiModelProperty("验证的token")
+    private String token;
+
+    @ApiModelProperty("提交id")
+    private Long submitId;
+
+    @ApiModelProperty("提交用户id")
+    private String uid;
+
+    @ApiModelProperty("题目id")
+    private Long pid;
+
+    @ApiModelProperty("比赛id，非比赛提交为0")
+    private Long cid;
+
+    @ApiModelProperty("当前评测状态")
+    private Integer status;
+
+    @ApiModelProperty("评测是否已结束，为false时表示仅为阶段进度")
+    private Boolean finished;
+
+    @ApiModelProperty("回调的判题机名字")
+    private String judger;
+
+    @ApiModelProperty("分配该任务时的判题机id，由后台服务下发并原样带回")
+    private Integer judgeServerId;
+
+    @ApiModelProperty("是否为远程评测，远程评测的判题机资源在提交后已释放")
+    private Boolean remote;
+
+}
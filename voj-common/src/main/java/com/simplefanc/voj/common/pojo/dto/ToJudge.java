@@ -44,6 +44,15 @@ public class ToJudge implements Serializable {
     @ApiModelProperty("调用判题机的port")
     private Integer judgeServerPort;
 
+    @ApiModelProperty("调用判题机的id，评测结束回调时原样带回")
+    private Integer judgeServerId;
+
+    @ApiModelProperty("评测进度与结果的回调地址，为空则不回调")
+    private String callbackUrl;
+
+    @ApiModelProperty("判题机拉取测试数据的地址，为空则只使用本地测试数据")
+    private String testCaseSyncUrl;
+
     /**
      * VJ判題辅助选择判题机序号使用
      */
@@ -0,0 +1,53 @@
+package com.simplefanc.voj.common.pojo.entity.user;
+
+import com.baomidou.mybatisplus.annotation.FieldFill;
+import com.baomidou.mybatisplus.annotation.IdType;
+import com.baomidou.mybatisplus.annotation.TableField;
+import com.baomidou.mybatisplus.annotation.TableId;
+import io.swagger.annotations.ApiModel;
+import io.swagger.annotations.ApiModelProperty;
+import lombok.Data;
+import lombok.EqualsAndHashCode;
+import lombok.experimental.Accessors;
+
+import java.io.Serializable;
+import java.util.Date;
+
+/**
+ * <p>
+ * 个人做题记录，保存排行榜所需的统计值，每次非比赛提交评测结束后刷新
+ * </p>
+ *
+ * @Author: chenfan
+ * @since 2022-12-04
+ */
+@Data
+@EqualsAndHashCode(callSuper = false)
+@Accessors(chain = true)
+@ApiModel(value = "UserRecord对象", description = "")
+public class UserRecord implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    @TableId(value = "id", type = IdType.AUTO)
+    private Long id;
+
+    @ApiModelProperty(value = "用户id")
+    private String uid;
+
+    @ApiModelProperty(value = "通过的题目数")
+    private Integer ac;
+
+    @ApiModelProperty(value = "非比赛提交总数")
+    private Integer total;
+
+    @ApiModelProperty(value = "各题最高OI得分之和")
+    private Integer oiScore;
+
+    @TableField(fill = FieldFill.INSERT)
+    private Date gmtCreate;
+
+    @TableField(fill = FieldFill.INSERT_UPDATE)
+    private Date gmtModified;
+
+}
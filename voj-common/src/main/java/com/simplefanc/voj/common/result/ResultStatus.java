@@ -22,7 +22,9 @@ public enum ResultStatus {
 
     NOT_FOUND(404, "数据不存在"),
 
-    SYSTEM_ERROR(500, "系统错误");
+    SYSTEM_ERROR(500, "系统错误"),
+
+    BUSY(503, "服务繁忙");
 
     private int status;
 
@@ -10,6 +10,8 @@ public interface JudgeDir {
 
     String TEST_CASE_DIR = "/judge/testcase";
 
+    String TEST_CASE_BLOB_DIR = "/judge/testcase-blob";
+
     String SPJ_WORKPLACE_DIR = "/judge/spj";
 
     String INTERACTIVE_WORKPLACE_DIR = "/judge/interactive";
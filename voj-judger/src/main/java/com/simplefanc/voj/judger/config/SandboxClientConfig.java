@@ -0,0 +1,111 @@
+package com.simplefanc.voj.judger.config;
+
+import com.baomidou.mybatisplus.core.conditions.update.UpdateWrapper;
+import com.simplefanc.voj.common.pojo.entity.judge.JudgeServer;
+import com.simplefanc.voj.common.utils.IpUtil;
+import com.simplefanc.voj.judger.dao.JudgeServerEntityService;
+import com.simplefanc.voj.judger.judge.local.SandboxClient;
+import com.simplefanc.voj.judger.judge.local.SandboxRun;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Configuration;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @Author: chenfan
+ * @Date: 2022/12/10 10:05
+ * @Description: 按配置创建安全沙箱客户端，沙箱全部熔断时将判题机标记为不可用（judge_server.status=1），
+ * 后台服务不再向其分发评测任务，沙箱恢复后重新标记为可用
+ */
+@Configuration
+@Slf4j(topic = "voj")
+@RequiredArgsConstructor
+public class SandboxClientConfig {
+
+    /**
+     * 对熔断的沙箱发起试探调用的间隔
+     */
+    private static final long PROBE_INTERVAL_SECONDS = 5;
+
+    @Value("${voj-judge-server.sandbox.urls:http://localhost:5050}")
+    private List<String> urls;
+
+    @Value("${voj-judge-server.sandbox.max-connection-num:64}")
+    private Integer maxConnectionNum;
+
+    @Value("${voj-judge-server.sandbox.connect-timeout:3000}")
+    private Integer connectTimeout;
+
+    @Value("${voj-judge-server.sandbox.compile-timeout:60000}")
+    private Integer compileTimeout;
+
+    @Value("${voj-judge-server.sandbox.run-timeout:180000}")
+    private Integer runTimeout;
+
+    @Value("${voj-judge-server.sandbox.file-timeout:30000}")
+    private Integer fileTimeout;
+
+    @Value("${voj-judge-server.sandbox.failure-threshold:5}")
+    private Integer failureThreshold;
+
+    @Value("${voj-judge-server.sandbox.open-millis:10000}")
+    private Long openMillis;
+
+    @Value("${voj-judge-server.ip}")
+    private String ip;
+
+    @Value("${voj-judge-server.port}")
+    private Integer port;
+
+    private final JudgeServerEntityService judgeServerEntityService;
+
+    private ScheduledExecutorService probeExecutor;
+
+    @PostConstruct
+    public void init() {
+        SandboxClient sandboxClient = new SandboxClient(urls, maxConnectionNum, connectTimeout, compileTimeout,
+                runTimeout, fileTimeout, failureThreshold, openMillis);
+        sandboxClient.setAvailabilityListener(this::updateJudgeServerStatus);
+        SandboxRun.setClient(sandboxClient);
+        log.info("Sandbox urls of the current judge server:{}", sandboxClient.getBaseUrls());
+
+        probeExecutor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "sandbox-probe");
+            thread.setDaemon(true);
+            return thread;
+        });
+        probeExecutor.scheduleWithFixedDelay(() -> {
+            try {
+                SandboxRun.getClient().probe();
+            } catch (Exception e) {
+                log.error("试探安全沙箱是否恢复发生异常-------------->", e);
+            }
+        }, PROBE_INTERVAL_SECONDS, PROBE_INTERVAL_SECONDS, TimeUnit.SECONDS);
+    }
+
+    @PreDestroy
+    public void destroy() {
+        probeExecutor.shutdownNow();
+    }
+
+    private void updateJudgeServerStatus(boolean available) {
+        String judgeServerIp = "-1".equals(ip) ? IpUtil.getLocalIpv4Address() : ip;
+        UpdateWrapper<JudgeServer> updateWrapper = new UpdateWrapper<>();
+        updateWrapper.set("status", available ? 0 : 1)
+                .eq("ip", judgeServerIp).eq("port", port).eq("is_remote", false);
+        try {
+            judgeServerEntityService.update(updateWrapper);
+            log.warn("安全沙箱{}，判题机已标记为{}", available ? "已恢复" : "全部不可用", available ? "可用" : "不可用");
+        } catch (Exception e) {
+            log.error("更新判题机可用状态发生异常-------------->", e);
+        }
+    }
+
+}
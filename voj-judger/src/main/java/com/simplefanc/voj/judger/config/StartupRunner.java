@@ -4,6 +4,8 @@ import com.baomidou.mybatisplus.core.conditions.update.UpdateWrapper;
 import com.simplefanc.voj.common.pojo.entity.judge.JudgeServer;
 import com.simplefanc.voj.common.utils.IpUtil;
 import com.simplefanc.voj.judger.dao.JudgeServerEntityService;
+import com.simplefanc.voj.judger.judge.local.CaseScheduler;
+import com.simplefanc.voj.judger.judge.local.SandboxRun;
 import com.simplefanc.voj.judger.service.SystemConfigService;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
@@ -26,9 +28,6 @@ public class StartupRunner implements CommandLineRunner {
 
     private static final int CPU_NUM = Runtime.getRuntime().availableProcessors();
 
-    @Value("${voj-judge-server.max-task-num}")
-    private Integer maxTaskNum;
-
     @Value("${voj-judge-server.remote-judge.max-task-num}")
     private Integer maxRemoteTaskNum;
 
@@ -48,6 +47,8 @@ public class StartupRunner implements CommandLineRunner {
 
     private final SystemConfigService systemConfigService;
 
+    private final CaseScheduler caseScheduler;
+
     @Override
     @Transactional(rollbackFor = Exception.class)
     public void run(String... args) {
@@ -55,9 +56,6 @@ public class StartupRunner implements CommandLineRunner {
         log.info("IP of the current judge server:" + ip);
         log.info("Port of the current judge server:" + port);
 
-        if (maxTaskNum == -1) {
-            maxTaskNum = CPU_NUM + 1;
-        }
         if ("-1".equals(ip)) {
             ip = IpUtil.getLocalIpv4Address();
         }
@@ -66,14 +64,16 @@ public class StartupRunner implements CommandLineRunner {
         judgeServerEntityService.remove(judgeServerQueryWrapper);
 
         final JudgeServer entity = new JudgeServer().setCpuCore(CPU_NUM).setIp(ip).setPort(port).setUrl(ip + ":" + port).setName(judgeServerName)
-                .setMaxTaskNumber(maxTaskNum).setIsRemote(false);
+                .setMaxTaskNumber(caseScheduler.getCapacity()).setIsRemote(false)
+                .setStatus(SandboxRun.isAvailable() ? 0 : 1);
         boolean isOk1 = judgeServerEntityService.save(entity);
         boolean isOk2 = true;
         if (openRemoteJudge) {
             if (maxRemoteTaskNum == -1) {
                 maxRemoteTaskNum = CPU_NUM * 2 + 1;
             }
-            entity.setMaxTaskNumber(maxRemoteTaskNum).setIsRemote(true);
+            // 远程虚拟判题不使用安全沙箱
+            entity.setMaxTaskNumber(maxRemoteTaskNum).setIsRemote(true).setStatus(0);
             isOk2 = judgeServerEntityService.save(entity);
         }
 
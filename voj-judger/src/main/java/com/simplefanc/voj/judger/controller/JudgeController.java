@@ -6,6 +6,8 @@ import com.simplefanc.voj.common.pojo.entity.judge.Judge;
 import com.simplefanc.voj.common.result.CommonResult;
 import com.simplefanc.voj.common.result.ResultStatus;
 import com.simplefanc.voj.judger.common.exception.SystemException;
+import com.simplefanc.voj.judger.judge.local.CaseScheduler;
+import com.simplefanc.voj.judger.judge.local.SandboxRun;
 import com.simplefanc.voj.judger.service.JudgeService;
 import lombok.RequiredArgsConstructor;
 import org.springframework.beans.factory.annotation.Value;
@@ -26,6 +28,8 @@ public class JudgeController {
 
     private final JudgeService judgeService;
 
+    private final CaseScheduler caseScheduler;
+
     @Value("${voj.judge.token}")
     private String judgeToken;
 
@@ -45,9 +49,19 @@ public class JudgeController {
             return CommonResult.errorResponse("调用参数错误！请检查您的调用参数！");
         }
 
-        judgeService.judge(judge);
+        // 安全沙箱全部不可用或已达最大任务数，拒绝接收，后台服务会释放槽位并稍后重新分发
+        if (!SandboxRun.isAvailable() || !caseScheduler.tryAdmit()) {
+            return CommonResult.errorResponse("判题机繁忙，请稍后重新分发！", ResultStatus.BUSY);
+        }
+        // 异步评测，评测进度与结果通过回调通知后台服务，评测结束时释放
+        try {
+            judgeService.judge(toJudge);
+        } catch (RuntimeException e) {
+            caseScheduler.release();
+            throw e;
+        }
 
-        return CommonResult.successResponse("判题机评测完成！");
+        return CommonResult.successResponse("判题机已接收评测任务！");
     }
 
     @PostMapping(value = "/compile-spj")
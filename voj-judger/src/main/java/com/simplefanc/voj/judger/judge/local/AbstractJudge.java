@@ -2,7 +2,6 @@ package com.simplefanc.voj.judger.judge.local;
 
 import cn.hutool.core.util.ReUtil;
 import cn.hutool.core.util.StrUtil;
-import cn.hutool.json.JSONArray;
 import cn.hutool.json.JSONObject;
 import com.simplefanc.voj.judger.common.constants.JudgeDir;
 import com.simplefanc.voj.judger.common.constants.RunConfig;
@@ -11,6 +10,8 @@ import com.simplefanc.voj.judger.common.utils.JudgeUtil;
 import com.simplefanc.voj.judger.judge.local.pojo.JudgeDTO;
 import com.simplefanc.voj.judger.judge.local.pojo.JudgeGlobalDTO;
 import com.simplefanc.voj.judger.judge.local.pojo.SandBoxRes;
+import com.simplefanc.voj.judger.judge.local.pojo.SandboxCmd;
+import com.simplefanc.voj.judger.judge.local.pojo.SandboxResult;
 
 import java.io.File;
 import java.text.MessageFormat;
@@ -35,7 +36,7 @@ public abstract class AbstractJudge {
 
     public JSONObject judge(JudgeDTO judgeDTO, JudgeGlobalDTO judgeGlobalDTO) throws SystemException {
         // 判题
-        JSONArray judgeResultList = judgeCase(judgeDTO, judgeGlobalDTO);
+        List<SandboxResult> judgeResultList = judgeCase(judgeDTO, judgeGlobalDTO);
 
         // 处理判题结果
         switch (judgeGlobalDTO.getJudgeMode()) {
@@ -50,7 +51,7 @@ public abstract class AbstractJudge {
 
     }
 
-    public abstract JSONArray judgeCase(JudgeDTO judgeDTO, JudgeGlobalDTO judgeGlobalDTO) throws SystemException;
+    public abstract List<SandboxResult> judgeCase(JudgeDTO judgeDTO, JudgeGlobalDTO judgeGlobalDTO) throws SystemException;
 
     public abstract JSONObject processResult(SandBoxRes sandBoxRes, JudgeDTO judgeDTO, JudgeGlobalDTO judgeGlobalDTO)
             throws SystemException;
@@ -59,35 +60,54 @@ public abstract class AbstractJudge {
                                                      JudgeDTO judgeDTO, JudgeGlobalDTO judgeGlobalDTO);
 
 
-    private SandBoxRes wrapToSandBoxRes(JSONObject judgeResult) {
+    private SandBoxRes wrapToSandBoxRes(SandboxResult judgeResult) {
         return SandBoxRes.builder()
                 // 普通评测：如果沙盒运行程序不是 Accepted 可以不获取 stdout
-                .stdout(((JSONObject) judgeResult.get("files")).getStr("stdout"))
-                .stderr(((JSONObject) judgeResult.get("files")).getStr("stderr"))
+                .stdout(judgeResult.getFile("stdout"))
+                .stderr(judgeResult.getFile("stderr"))
+                .stdoutFileId(judgeResult.getFileId("stdout"))
                 // ns->ms
-                .time(judgeResult.getLong("time") / 1_000_000)
+                .time(judgeResult.getTime() / 1_000_000)
                 // b-->kb
-                .memory(judgeResult.getLong("memory") / 1024)
-                .exitCode(judgeResult.getInt("exitStatus"))
-                .status(judgeResult.getInt("status"))
+                .memory(judgeResult.getMemory() / 1024)
+                .exitCode(judgeResult.getExitStatus())
+                .status(judgeResult.getJudgeStatus())
                 .build();
     }
 
-    private JSONObject handle(JudgeDTO judgeDTO, JudgeGlobalDTO judgeGlobalDTO, JSONArray judgeResultList)
+    private JSONObject handle(JudgeDTO judgeDTO, JudgeGlobalDTO judgeGlobalDTO, List<SandboxResult> judgeResultList)
             throws SystemException {
-        SandBoxRes sandBoxRes = wrapToSandBoxRes((JSONObject) judgeResultList.get(0));
+        SandBoxRes sandBoxRes = wrapToSandBoxRes(judgeResultList.get(0));
         return processResult(sandBoxRes, judgeDTO, judgeGlobalDTO);
     }
 
-    private JSONObject handleMultiple(JudgeDTO judgeDTO, JudgeGlobalDTO judgeGlobalDTO, JSONArray judgeResultList) {
-        JSONObject userJudgeResult = (JSONObject) judgeResultList.get(0);
-        SandBoxRes userSandBoxRes = wrapToSandBoxRes(userJudgeResult);
-
-        JSONObject interactiveJudgeResult = (JSONObject) judgeResultList.get(1);
-        SandBoxRes interactiveSandBoxRes = wrapToSandBoxRes(interactiveJudgeResult);
+    private JSONObject handleMultiple(JudgeDTO judgeDTO, JudgeGlobalDTO judgeGlobalDTO,
+                                      List<SandboxResult> judgeResultList) {
+        SandBoxRes userSandBoxRes = wrapToSandBoxRes(judgeResultList.get(0));
+        SandBoxRes interactiveSandBoxRes = wrapToSandBoxRes(judgeResultList.get(1));
         return processMultipleResult(userSandBoxRes, interactiveSandBoxRes, judgeDTO, judgeGlobalDTO);
     }
 
+    /**
+     * 获取同一提交各测试点共用的运行命令模板，不存在时生成，并发生成的结果相同
+     *
+     * @param judgeGlobalDTO
+     * @return
+     */
+    protected SandboxCmd getRunCmdTemplate(JudgeGlobalDTO judgeGlobalDTO) {
+        SandboxCmd runCmdTemplate = judgeGlobalDTO.getRunCmdTemplate();
+        if (runCmdTemplate == null) {
+            RunConfig runConfig = judgeGlobalDTO.getRunConfig();
+            // 标准输出缓存在沙箱中，只有运行通过需要比对时才获取
+            runCmdTemplate = SandboxRun.buildTestCaseCmdTemplate(parseRunCommand(runConfig, null, null, null),
+                    runConfig.getEnvs(), judgeGlobalDTO.getTestTime(), judgeGlobalDTO.getMaxMemory(),
+                    judgeGlobalDTO.getMaxStack(), runConfig.getExeName(), judgeGlobalDTO.getUserFileId(),
+                    judgeGlobalDTO.getUserFileSrc(), true);
+            judgeGlobalDTO.setRunCmdTemplate(runCmdTemplate);
+        }
+        return runCmdTemplate;
+    }
+
     protected List<String> parseRunCommand(RunConfig runConfig, String testCaseInputName,
                                            String userOutputName, String testCaseOutputName) {
         String command = runConfig.getCommand();
@@ -0,0 +1,113 @@
+package com.simplefanc.voj.judger.judge.local;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * @Author: chenfan
+ * @Date: 2022/12/8 9:40
+ * @Description: 记录各题目测试点的历史评测次数与非AC次数，用于让更容易出错的测试点先评测
+ */
+@Component
+public class CaseFailureStatistics {
+
+    /**
+     * 统计的题目数量上限
+     */
+    private static final int MAX_PROBLEM_NUM = 1000;
+
+    /**
+     * key:题目id，测试数据版本变化后重新统计
+     */
+    private final Cache<Long, ProblemStatistics> statisticsCache = Caffeine.newBuilder()
+            .maximumSize(MAX_PROBLEM_NUM)
+            .expireAfterAccess(Duration.ofHours(12))
+            .build();
+
+    /**
+     * @param pid           题目id
+     * @param caseVersion   测试数据版本
+     * @param caseNameList  按原顺序排列的测试点输入文件名
+     * @MethodName getOrder
+     * @Description 按历史非AC比例从高到低给出测试点的评测顺序，比例相同或没有记录时保持原顺序
+     * @Return 测试点下标
+     * @Since 2022/12/8
+     */
+    public List<Integer> getOrder(Long pid, String caseVersion, List<String> caseNameList) {
+        List<Integer> order = new ArrayList<>(caseNameList.size());
+        for (int i = 0; i < caseNameList.size(); i++) {
+            order.add(i);
+        }
+        ProblemStatistics statistics = statisticsCache.getIfPresent(pid);
+        if (statistics == null || !Objects.equals(statistics.caseVersion, caseVersion)) {
+            return order;
+        }
+        double[] failureRate = new double[caseNameList.size()];
+        for (int i = 0; i < caseNameList.size(); i++) {
+            CaseCounter counter = statistics.counterMap.get(caseNameList.get(i));
+            failureRate[i] = counter == null ? CaseCounter.getFailureRate(0, 0)
+                    : CaseCounter.getFailureRate(counter.failureNum.sum(), counter.runNum.sum());
+        }
+        // List.sort是稳定排序
+        order.sort(Comparator.comparingDouble((Integer index) -> failureRate[index]).reversed());
+        return order;
+    }
+
+    /**
+     * @param pid         题目id
+     * @param caseVersion 测试数据版本
+     * @param caseName    测试点输入文件名
+     * @param accepted    该测试点是否AC
+     * @MethodName record
+     * @Description 记录一个已评测完成的测试点，被跳过的测试点不记录
+     * @Since 2022/12/8
+     */
+    public void record(Long pid, String caseVersion, String caseName, boolean accepted) {
+        ProblemStatistics statistics = statisticsCache.asMap().compute(pid, (key, old) ->
+                old == null || !Objects.equals(old.caseVersion, caseVersion) ? new ProblemStatistics(caseVersion) : old);
+        CaseCounter counter = statistics.counterMap.computeIfAbsent(caseName, key -> new CaseCounter());
+        counter.runNum.increment();
+        if (!accepted) {
+            counter.failureNum.increment();
+        }
+    }
+
+    private static class ProblemStatistics {
+
+        private final String caseVersion;
+
+        /**
+         * key:测试点输入文件名
+         */
+        private final ConcurrentMap<String, CaseCounter> counterMap = new ConcurrentHashMap<>();
+
+        ProblemStatistics(String caseVersion) {
+            this.caseVersion = caseVersion;
+        }
+    }
+
+    private static class CaseCounter {
+
+        private final LongAdder runNum = new LongAdder();
+
+        private final LongAdder failureNum = new LongAdder();
+
+        /**
+         * 加一平滑，评测次数很少的测试点不会因为一两次结果排到最前，没有记录的测试点按1/2计
+         */
+        static double getFailureRate(long failureNum, long runNum) {
+            return (failureNum + 1.0) / (runNum + 2.0);
+        }
+    }
+
+}
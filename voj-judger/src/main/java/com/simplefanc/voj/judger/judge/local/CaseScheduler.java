@@ -0,0 +1,160 @@
+package com.simplefanc.voj.judger.judge.local;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * @Author: chenfan
+ * @Date: 2022/12/7 10:15
+ * @Description: 测试点评测调度器。按判题机的最大任务数接收提交，超出时拒绝并由后台服务稍后重新分发；
+ * 已接收提交的测试点由固定数量（CPU核数）的工作线程执行，各提交的测试点轮流取用，
+ * 测试点很多的提交不会让其他提交一直等待，也不会有测试点被丢弃
+ */
+@Component
+@Slf4j(topic = "voj")
+public class CaseScheduler {
+
+    private static final int CPU_NUM = Runtime.getRuntime().availableProcessors();
+
+    @Value("${voj-judge-server.max-task-num}")
+    private Integer maxTaskNum;
+
+    private Semaphore admission;
+
+    /**
+     * 还有测试点未执行的提交，工作线程每次从队头取出一个提交执行其一个测试点，还有剩余时放回队尾
+     */
+    private final BlockingQueue<CaseGroup> readyGroups = new LinkedBlockingQueue<>();
+
+    private final AtomicInteger runningCaseNum = new AtomicInteger(0);
+
+    private ExecutorService workers;
+
+    @PostConstruct
+    public void init() {
+        if (maxTaskNum == -1) {
+            maxTaskNum = CPU_NUM + 1;
+        }
+        admission = new Semaphore(maxTaskNum);
+        AtomicInteger threadIndex = new AtomicInteger(0);
+        workers = Executors.newFixedThreadPool(CPU_NUM, runnable -> {
+            Thread thread = new Thread(runnable, "judge-case-" + threadIndex.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        for (int i = 0; i < CPU_NUM; i++) {
+            workers.execute(this::workLoop);
+        }
+    }
+
+    @PreDestroy
+    public void destroy() {
+        workers.shutdownNow();
+    }
+
+    /**
+     * 判题机可同时评测的提交数，注册到judge_server.max_task_number供后台服务分配
+     */
+    public int getCapacity() {
+        return maxTaskNum;
+    }
+
+    /**
+     * @MethodName tryAdmit
+     * @Description 尝试接收一个提交，评测结束后需调用release
+     * @Return 已达最大任务数时返回false
+     * @Since 2022/12/7
+     */
+    public boolean tryAdmit() {
+        return admission.tryAcquire();
+    }
+
+    public void release() {
+        admission.release();
+    }
+
+    /**
+     * @param tasks 同一个提交的测试点
+     * @MethodName submitAll
+     * @Description 提交一组测试点，与其他提交的测试点轮流执行
+     * @Return 与tasks一一对应的结果
+     * @Since 2022/12/7
+     */
+    public <T> List<CompletableFuture<T>> submitAll(List<? extends Callable<T>> tasks) {
+        List<CompletableFuture<T>> futures = new ArrayList<>(tasks.size());
+        if (tasks.isEmpty()) {
+            return futures;
+        }
+        CaseGroup group = new CaseGroup();
+        for (Callable<T> task : tasks) {
+            CompletableFuture<T> future = new CompletableFuture<>();
+            group.cases.add(() -> {
+                try {
+                    future.complete(task.call());
+                } catch (Throwable e) {
+                    future.completeExceptionally(e);
+                }
+            });
+            futures.add(future);
+        }
+        readyGroups.offer(group);
+        return futures;
+    }
+
+    public <T> CompletableFuture<T> submit(Callable<T> task) {
+        return submitAll(List.of(task)).get(0);
+    }
+
+    public HashMap<String, Object> getStatistics() {
+        HashMap<String, Object> statistics = new HashMap<>();
+        statistics.put("admittedTaskNum", maxTaskNum - admission.availablePermits());
+        statistics.put("runningCaseNum", runningCaseNum.get());
+        statistics.put("waitingSubmissionNum", readyGroups.size());
+        return statistics;
+    }
+
+    private void workLoop() {
+        while (!Thread.currentThread().isInterrupted()) {
+            CaseGroup group;
+            try {
+                group = readyGroups.take();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+            // 同一个提交同时只在队列中出现一次，只有取出它的线程会放回，因此不会重复执行
+            Runnable caseTask = group.cases.poll();
+            if (!group.cases.isEmpty()) {
+                readyGroups.offer(group);
+            }
+            if (caseTask == null) {
+                continue;
+            }
+            runningCaseNum.incrementAndGet();
+            try {
+                caseTask.run();
+            } catch (Throwable e) {
+                log.error("执行测试点评测任务发生异常-------------->", e);
+            } finally {
+                runningCaseNum.decrementAndGet();
+            }
+        }
+    }
+
+    private static class CaseGroup {
+
+        private final Queue<Runnable> cases = new ConcurrentLinkedQueue<>();
+
+    }
+
+}
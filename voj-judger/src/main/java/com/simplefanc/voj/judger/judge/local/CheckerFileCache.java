@@ -0,0 +1,165 @@
+package com.simplefanc.voj.judger.judge.local;
+
+import com.simplefanc.voj.judger.common.exception.SystemException;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.File;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * @Author: chenfan
+ * @Date: 2022/11/30 16:40
+ * @Description: 特判程序与交互程序在沙箱文件缓存中的文件id，每个题目每个版本只上传一次，
+ * 评测各测试点时通过文件id引用，避免沙箱每次都重新读取复制可执行文件。
+ * 文件id只在上传时使用的沙箱中有效，沙箱切换或从熔断中恢复后重新上传，旧文件到原沙箱中删除
+ */
+@Slf4j(topic = "voj")
+public class CheckerFileCache {
+
+    /**
+     * 校验缓存的文件是否仍在沙箱中的最小间隔，沙箱重启后文件会丢失
+     */
+    private static final long VERIFY_INTERVAL_MILLIS = 10 * 1000L;
+
+    /**
+     * 旧版本的文件可能仍被正在评测的任务引用，延迟删除
+     */
+    private static final long RETIRED_FILE_KEEP_MILLIS = 10 * 60 * 1000L;
+
+    /**
+     * key: 程序所在文件夹/题目id，value: 沙箱中的文件
+     */
+    private static final Map<String, CheckerFile> CHECKER_FILE_MAP = new ConcurrentHashMap<>();
+
+    /**
+     * key: 已被替换的文件，value: 被替换的时间
+     */
+    private static final Map<CheckerFile, Long> RETIRED_FILE_MAP = new ConcurrentHashMap<>();
+
+    private static volatile long lastVerifyTime = System.currentTimeMillis();
+
+    private CheckerFileCache() {
+    }
+
+    /**
+     * @param workplaceDir 特判程序或交互程序所在的文件夹
+     * @param problemId    题目id
+     * @param version      题目的caseVersion，特判程序与交互程序随之重新编译
+     * @param exeName      可执行文件的名字
+     * @MethodName getFileId
+     * @Description 获取特判程序或交互程序在沙箱中的文件id，没有或版本不一致时上传
+     * @Return String
+     * @Since 2022/11/30
+     */
+    public static String getFileId(String workplaceDir, Long problemId, String version, String exeName)
+            throws SystemException {
+        verifyIfNecessary();
+        String key = workplaceDir + File.separator + problemId;
+        CheckerFile checkerFile = CHECKER_FILE_MAP.get(key);
+        if (checkerFile != null && checkerFile.isValid(version)) {
+            return checkerFile.fileId;
+        }
+        synchronized (CHECKER_FILE_MAP) {
+            checkerFile = CHECKER_FILE_MAP.get(key);
+            if (checkerFile != null && checkerFile.isValid(version)) {
+                return checkerFile.fileId;
+            }
+            SandboxClient.ActiveEndpoint sandboxEndpoint = SandboxRun.getActiveEndpoint();
+            String fileId = SandboxRun.uploadFile(new File(key + File.separator + exeName));
+            CHECKER_FILE_MAP.put(key, new CheckerFile(version, fileId, sandboxEndpoint));
+            if (checkerFile != null) {
+                RETIRED_FILE_MAP.put(checkerFile, System.currentTimeMillis());
+            }
+            return fileId;
+        }
+    }
+
+    /**
+     * @param workplaceDir 特判程序或交互程序所在的文件夹
+     * @param problemId    题目id
+     * @MethodName invalidate
+     * @Description 特判程序或交互程序重新编译后，下次使用时重新上传
+     * @Since 2022/11/30
+     */
+    public static void invalidate(String workplaceDir, Long problemId) {
+        CheckerFile checkerFile = CHECKER_FILE_MAP.remove(workplaceDir + File.separator + problemId);
+        if (checkerFile != null) {
+            RETIRED_FILE_MAP.put(checkerFile, System.currentTimeMillis());
+        }
+    }
+
+    /**
+     * 定期检查缓存的文件是否仍在沙箱中，沙箱重启后丢失的文件在下次使用时重新上传
+     */
+    private static void verifyIfNecessary() {
+        long now = System.currentTimeMillis();
+        if (now - lastVerifyTime < VERIFY_INTERVAL_MILLIS) {
+            return;
+        }
+        synchronized (CHECKER_FILE_MAP) {
+            if (now - lastVerifyTime < VERIFY_INTERVAL_MILLIS) {
+                return;
+            }
+            lastVerifyTime = now;
+            if (CHECKER_FILE_MAP.isEmpty() && RETIRED_FILE_MAP.isEmpty()) {
+                return;
+            }
+            SandboxClient.ActiveEndpoint sandboxEndpoint = SandboxRun.getActiveEndpoint();
+            Set<String> fileIds;
+            try {
+                fileIds = SandboxRun.listFileIds();
+            } catch (SystemException e) {
+                log.error("获取沙箱文件缓存列表失败-------------->{}", e.getMessage());
+                return;
+            }
+            // 列出文件期间沙箱发生切换，列表不属于sandboxEndpoint，留到下次校验
+            if (SandboxRun.getActiveEndpoint() != sandboxEndpoint) {
+                return;
+            }
+            CHECKER_FILE_MAP.values().removeIf(checkerFile -> {
+                if (checkerFile.sandboxEndpoint != sandboxEndpoint) {
+                    // 其它沙箱中的文件可能仍被正在评测的任务引用，延迟删除
+                    RETIRED_FILE_MAP.put(checkerFile, now);
+                    return true;
+                }
+                return !fileIds.contains(checkerFile.fileId);
+            });
+            RETIRED_FILE_MAP.entrySet().removeIf(entry -> {
+                CheckerFile checkerFile = entry.getKey();
+                if (checkerFile.sandboxEndpoint == sandboxEndpoint && !fileIds.contains(checkerFile.fileId)) {
+                    return true;
+                }
+                if (now - entry.getValue() > RETIRED_FILE_KEEP_MILLIS) {
+                    SandboxRun.delFile(checkerFile.fileId, checkerFile.sandboxEndpoint);
+                    return true;
+                }
+                return false;
+            });
+        }
+    }
+
+    private static class CheckerFile {
+
+        private final String version;
+
+        private final String fileId;
+
+        /**
+         * 上传时使用的沙箱
+         */
+        private final SandboxClient.ActiveEndpoint sandboxEndpoint;
+
+        CheckerFile(String version, String fileId, SandboxClient.ActiveEndpoint sandboxEndpoint) {
+            this.version = version;
+            this.fileId = fileId;
+            this.sandboxEndpoint = sandboxEndpoint;
+        }
+
+        boolean isValid(String version) {
+            return this.version.equals(version) && sandboxEndpoint == SandboxRun.getActiveEndpoint();
+        }
+    }
+
+}
@@ -0,0 +1,301 @@
+package com.simplefanc.voj.judger.judge.local;
+
+import cn.hutool.crypto.digest.DigestUtil;
+import com.simplefanc.voj.judger.common.constants.CompileConfig;
+import com.simplefanc.voj.judger.common.exception.CompileException;
+import com.simplefanc.voj.judger.common.exception.SubmitException;
+import com.simplefanc.voj.judger.common.exception.SystemException;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * @Author: chenfan
+ * @Date: 2022/12/9 10:20
+ * @Description: 用户程序编译结果的缓存。相同语言、相同代码与相同额外文件的提交（重判、重复提交）直接复用沙箱中已编译好的可执行文件，
+ * 文件按引用计数管理，最近最少使用的文件被淘汰后等最后一个引用释放时才从沙箱中删除。
+ * 文件id只在编译时使用的沙箱中有效，缓存按沙箱区分，沙箱切换或从熔断中恢复后旧的文件不再使用，并到原沙箱中删除。
+ * 沙箱按--file-timeout清理文件，只有剩余有效时间足够完成本次评测的文件才会被复用
+ */
+@Component
+@Slf4j(topic = "voj")
+public class CompiledFileCache {
+
+    /**
+     * 校验缓存的文件是否仍在沙箱中的最小间隔，沙箱重启后文件会丢失
+     */
+    private static final long VERIFY_INTERVAL_MILLIS = 10 * 1000L;
+
+    /**
+     * 缓存的可执行文件数量上限，0表示不缓存
+     */
+    @Value("${voj-judge-server.compiled-cache.max-size:256}")
+    private Integer maxSize;
+
+    /**
+     * 判断剩余有效时间时额外预留的时间，覆盖评测前的准备与各测试点之间的调度
+     */
+    private static final long LIFETIME_MARGIN_MILLIS = 30 * 1000L;
+
+    /**
+     * 沙箱启动参数--file-timeout，文件在沙箱中生成后超过该时间会被清理
+     */
+    @Value("${voj-judge-server.compiled-cache.file-timeout-minutes:10}")
+    private Integer fileTimeoutMinutes;
+
+    /**
+     * key: 沙箱、语言、编译配置、代码与额外文件的摘要，按访问顺序排列，由this保护
+     */
+    private final LinkedHashMap<String, CompiledFile> compiledFileMap = new LinkedHashMap<>(16, 0.75f, true);
+
+    /**
+     * key: 文件id，包含已被淘汰但仍被引用的文件，由this保护
+     */
+    private final Map<String, CompiledFile> fileIdMap = new HashMap<>();
+
+    /**
+     * 正在编译的代码，相同代码同时只编译一次
+     */
+    private final ConcurrentMap<String, CompletableFuture<String>> compilingMap = new ConcurrentHashMap<>();
+
+    private volatile long lastVerifyTime = System.currentTimeMillis();
+
+    /**
+     * @param compileConfig  编译配置
+     * @param code           用户代码
+     * @param language       语言
+     * @param extraFiles     编译所需的额外文件
+     * @param requiredMillis 本次评测最长耗时，缓存的文件剩余有效时间不足时重新编译
+     * @MethodName acquire
+     * @Description 获取编译好的可执行文件，没有缓存时编译，使用结束后必须调用release
+     * @Return 沙箱中的文件id
+     * @Since 2022/12/9
+     */
+    public String acquire(CompileConfig compileConfig, String code, String language, HashMap<String, String> extraFiles,
+                          long requiredMillis) throws SystemException, CompileException, SubmitException {
+        if (maxSize <= 0) {
+            return Compiler.compile(compileConfig, code, language, extraFiles);
+        }
+        verifyIfNecessary();
+        String codeKey = getKey(compileConfig, code, language, extraFiles);
+        List<CompiledFile> deleteFiles = new ArrayList<>();
+        while (true) {
+            // 先取当前沙箱再编译，编译期间发生切换时该文件在下次校验时被丢弃
+            SandboxClient.ActiveEndpoint sandboxEndpoint = SandboxRun.getActiveEndpoint();
+            String key = sandboxEndpoint.getBaseUrl() + "#" + sandboxEndpoint.getGeneration() + "|" + codeKey;
+            synchronized (this) {
+                CompiledFile compiledFile = compiledFileMap.get(key);
+                if (compiledFile != null
+                        && getRemainingMillis(compiledFile, System.currentTimeMillis()) < requiredMillis) {
+                    // 剩余有效时间不足的文件仍可能被正在评测的任务引用，等引用释放后删除
+                    compiledFileMap.remove(key);
+                    evict(compiledFile, deleteFiles);
+                    compiledFile = null;
+                }
+                if (compiledFile != null) {
+                    compiledFile.refCount++;
+                    return compiledFile.fileId;
+                }
+            }
+            deleteFiles.forEach(CompiledFileCache::delete);
+            deleteFiles.clear();
+            CompletableFuture<String> future = new CompletableFuture<>();
+            CompletableFuture<String> compiling = compilingMap.putIfAbsent(key, future);
+            if (compiling != null) {
+                // 等待相同代码编译结束后重新从缓存中获取
+                awaitCompiling(compiling);
+                continue;
+            }
+            try {
+                String fileId = Compiler.compile(compileConfig, code, language, extraFiles);
+                put(key, fileId, sandboxEndpoint);
+                future.complete(fileId);
+                return fileId;
+            } catch (SystemException | CompileException | SubmitException | RuntimeException e) {
+                future.completeExceptionally(e);
+                throw e;
+            } finally {
+                compilingMap.remove(key, future);
+            }
+        }
+    }
+
+    /**
+     * @param fileId acquire返回的文件id
+     * @MethodName release
+     * @Description 释放一个引用，已被淘汰或未缓存的文件在没有引用后从沙箱中删除
+     * @Since 2022/12/9
+     */
+    public void release(String fileId) {
+        CompiledFile compiledFile;
+        synchronized (this) {
+            compiledFile = fileIdMap.get(fileId);
+            if (compiledFile != null) {
+                compiledFile.refCount--;
+                if (!compiledFile.evicted || compiledFile.refCount > 0) {
+                    return;
+                }
+                fileIdMap.remove(fileId);
+            }
+        }
+        if (compiledFile != null) {
+            delete(compiledFile);
+        } else {
+            SandboxRun.delFile(fileId);
+        }
+    }
+
+    public synchronized HashMap<String, Object> getStatistics() {
+        HashMap<String, Object> statistics = new HashMap<>();
+        statistics.put("cachedFileNum", compiledFileMap.size());
+        statistics.put("referencedFileNum", fileIdMap.values().stream().filter(file -> file.refCount > 0).count());
+        return statistics;
+    }
+
+    private void put(String key, String fileId, SandboxClient.ActiveEndpoint sandboxEndpoint) {
+        List<CompiledFile> deleteFiles = new ArrayList<>();
+        synchronized (this) {
+            CompiledFile compiledFile = new CompiledFile(fileId, sandboxEndpoint);
+            compiledFile.refCount = 1;
+            compiledFileMap.put(key, compiledFile);
+            fileIdMap.put(fileId, compiledFile);
+            Iterator<CompiledFile> iterator = compiledFileMap.values().iterator();
+            while (compiledFileMap.size() > maxSize && iterator.hasNext()) {
+                CompiledFile eldest = iterator.next();
+                iterator.remove();
+                evict(eldest, deleteFiles);
+            }
+        }
+        deleteFiles.forEach(CompiledFileCache::delete);
+    }
+
+    /**
+     * 从缓存中移除，没有引用时直接删除，否则等最后一个引用释放时删除，需持有this
+     */
+    private void evict(CompiledFile compiledFile, List<CompiledFile> deleteFiles) {
+        compiledFile.evicted = true;
+        if (compiledFile.refCount <= 0) {
+            fileIdMap.remove(compiledFile.fileId);
+            deleteFiles.add(compiledFile);
+        }
+    }
+
+    private static void delete(CompiledFile compiledFile) {
+        SandboxRun.delFile(compiledFile.fileId, compiledFile.sandboxEndpoint);
+    }
+
+    private void awaitCompiling(CompletableFuture<String> compiling)
+            throws SystemException, CompileException, SubmitException {
+        try {
+            compiling.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SystemException("Interrupted while waiting for the compilation.", null, e.getMessage());
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof CompileException) {
+                throw (CompileException) cause;
+            } else if (cause instanceof SubmitException) {
+                throw (SubmitException) cause;
+            } else if (cause instanceof SystemException) {
+                throw (SystemException) cause;
+            } else if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new SystemException("Compile Error.", null, String.valueOf(cause));
+        }
+    }
+
+    /**
+     * 文件被沙箱清理前的剩余时间，已扣除预留时间
+     */
+    private long getRemainingMillis(CompiledFile compiledFile, long now) {
+        return compiledFile.createTime + fileTimeoutMinutes * 60 * 1000L - LIFETIME_MARGIN_MILLIS - now;
+    }
+
+    /**
+     * 定期移除沙箱中已丢失的文件、过期的文件与其它沙箱中的文件
+     */
+    private void verifyIfNecessary() {
+        long now = System.currentTimeMillis();
+        synchronized (this) {
+            if (now - lastVerifyTime < VERIFY_INTERVAL_MILLIS) {
+                return;
+            }
+            lastVerifyTime = now;
+            if (fileIdMap.isEmpty()) {
+                return;
+            }
+        }
+        SandboxClient.ActiveEndpoint sandboxEndpoint = SandboxRun.getActiveEndpoint();
+        Set<String> fileIds;
+        try {
+            fileIds = SandboxRun.listFileIds();
+        } catch (SystemException e) {
+            log.error("获取沙箱文件缓存列表失败-------------->{}", e.getMessage());
+            return;
+        }
+        // 列出文件期间沙箱发生切换，列表不属于sandboxEndpoint，只按沙箱与过期时间淘汰
+        boolean listed = SandboxRun.getActiveEndpoint() == sandboxEndpoint;
+        List<CompiledFile> deleteFiles = new ArrayList<>();
+        synchronized (this) {
+            Iterator<CompiledFile> iterator = compiledFileMap.values().iterator();
+            while (iterator.hasNext()) {
+                CompiledFile compiledFile = iterator.next();
+                // 列出文件之后才编译的文件不在列表中
+                boolean lost = listed && compiledFile.createTime < now && !fileIds.contains(compiledFile.fileId);
+                if (lost || compiledFile.sandboxEndpoint != sandboxEndpoint
+                        || getRemainingMillis(compiledFile, now) <= 0) {
+                    iterator.remove();
+                    evict(compiledFile, deleteFiles);
+                }
+            }
+        }
+        deleteFiles.forEach(CompiledFileCache::delete);
+    }
+
+    private static String getKey(CompileConfig compileConfig, String code, String language,
+                                 HashMap<String, String> extraFiles) {
+        StringBuilder extraFilesDigest = new StringBuilder();
+        if (extraFiles != null) {
+            // 按文件名排序，与额外文件的顺序无关
+            for (Map.Entry<String, String> entry : new TreeMap<>(extraFiles).entrySet()) {
+                extraFilesDigest.append(entry.getKey()).append(':')
+                        .append(DigestUtil.sha256Hex(entry.getValue() == null ? "" : entry.getValue())).append(';');
+            }
+        }
+        return language + "|" + compileConfig.name() + "|" + DigestUtil.sha256Hex(code) + "|"
+                + DigestUtil.sha256Hex(extraFilesDigest.toString());
+    }
+
+    private static class CompiledFile {
+
+        private final String fileId;
+
+        /**
+         * 编译时使用的沙箱
+         */
+        private final SandboxClient.ActiveEndpoint sandboxEndpoint;
+
+        private final long createTime = System.currentTimeMillis();
+
+        private int refCount;
+
+        /**
+         * 已从缓存中移除，最后一个引用释放时从沙箱中删除
+         */
+        private boolean evicted;
+
+        CompiledFile(String fileId, SandboxClient.ActiveEndpoint sandboxEndpoint) {
+            this.fileId = fileId;
+            this.sandboxEndpoint = sandboxEndpoint;
+        }
+    }
+
+}
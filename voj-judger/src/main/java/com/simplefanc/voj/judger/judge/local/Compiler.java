@@ -1,8 +1,6 @@
 package com.simplefanc.voj.judger.judge.local;
 
 import cn.hutool.core.util.StrUtil;
-import cn.hutool.json.JSONArray;
-import cn.hutool.json.JSONObject;
 import com.simplefanc.voj.common.constants.JudgeStatus;
 import com.simplefanc.voj.judger.common.constants.CompileConfig;
 import com.simplefanc.voj.judger.common.constants.JudgeDir;
@@ -10,11 +8,13 @@ import com.simplefanc.voj.judger.common.exception.CompileException;
 import com.simplefanc.voj.judger.common.exception.SubmitException;
 import com.simplefanc.voj.judger.common.exception.SystemException;
 import com.simplefanc.voj.judger.common.utils.JudgeUtil;
+import com.simplefanc.voj.judger.judge.local.pojo.SandboxResult;
 
 import java.io.File;
 import java.text.MessageFormat;
 import java.util.HashMap;
 import java.util.List;
+import java.util.Objects;
 
 /**
  * @Author: chenfan
@@ -31,21 +31,20 @@ public class Compiler {
         }
 
         // 调用安全沙箱进行编译
-        JSONArray result = SandboxRun.compile(compileConfig.getMaxCpuTime(), compileConfig.getMaxRealTime(),
+        SandboxResult compileResult = SandboxRun.compile(compileConfig.getMaxCpuTime(), compileConfig.getMaxRealTime(),
                 compileConfig.getMaxMemory(), 256 * 1024 * 1024L, compileConfig.getSrcName(),
                 compileConfig.getExeName(), parseCompileCommand(compileConfig.getCommand(), compileConfig),
                 compileConfig.getEnvs(), code, extraFiles, true, false, null);
-        JSONObject compileResult = (JSONObject) result.get(0);
-        if (compileResult.getInt("status").intValue() != JudgeStatus.STATUS_ACCEPTED.getStatus()) {
-            throw new CompileException("Compile Error.", ((JSONObject) compileResult.get("files")).getStr("stdout"),
-                    ((JSONObject) compileResult.get("files")).getStr("stderr"));
+        if (!Objects.equals(compileResult.getJudgeStatus(), JudgeStatus.STATUS_ACCEPTED.getStatus())) {
+            throw new CompileException("Compile Error.", compileResult.getFile("stdout"),
+                    compileResult.getFile("stderr"));
         }
 
-        String fileId = ((JSONObject) compileResult.get("fileIds")).getStr(compileConfig.getExeName());
+        String fileId = compileResult.getFileId(compileConfig.getExeName());
         if (StrUtil.isEmpty(fileId)) {
             throw new SubmitException("Executable file not found.",
-                    ((JSONObject) compileResult.get("files")).getStr("stdout"),
-                    ((JSONObject) compileResult.get("files")).getStr("stderr"));
+                    compileResult.getFile("stdout"),
+                    compileResult.getFile("stderr"));
         }
         return fileId;
     }
@@ -65,15 +64,17 @@ public class Compiler {
         }
 
         // 调用安全沙箱对特别判题程序进行编译
-        JSONArray res = SandboxRun.compile(spjCompiler.getMaxCpuTime(), spjCompiler.getMaxRealTime(),
+        SandboxResult compileResult = SandboxRun.compile(spjCompiler.getMaxCpuTime(), spjCompiler.getMaxRealTime(),
                 spjCompiler.getMaxMemory(), 256 * 1024 * 1024L, spjCompiler.getSrcName(), spjCompiler.getExeName(),
                 parseCompileCommand(spjCompiler.getCommand(), spjCompiler), spjCompiler.getEnvs(), code, extraFiles,
                 false, copyOutExe, JudgeDir.SPJ_WORKPLACE_DIR + File.separator + pid);
-        JSONObject compileResult = (JSONObject) res.get(0);
-        if (compileResult.getInt("status").intValue() != JudgeStatus.STATUS_ACCEPTED.getStatus()) {
+        if (!Objects.equals(compileResult.getJudgeStatus(), JudgeStatus.STATUS_ACCEPTED.getStatus())) {
             throw new SystemException("Special Judge Code Compile Error.",
-                    ((JSONObject) compileResult.get("files")).getStr("stdout"),
-                    ((JSONObject) compileResult.get("files")).getStr("stderr"));
+                    compileResult.getFile("stdout"),
+                    compileResult.getFile("stderr"));
+        }
+        if (copyOutExe) {
+            CheckerFileCache.invalidate(JudgeDir.SPJ_WORKPLACE_DIR, pid);
         }
         return true;
     }
@@ -90,17 +91,19 @@ public class Compiler {
         boolean copyOutExe = pid != null;
 
         // 调用安全沙箱对特别判题程序进行编译
-        JSONArray res = SandboxRun.compile(interactiveCompiler.getMaxCpuTime(), interactiveCompiler.getMaxRealTime(),
+        SandboxResult compileResult = SandboxRun.compile(interactiveCompiler.getMaxCpuTime(), interactiveCompiler.getMaxRealTime(),
                 interactiveCompiler.getMaxMemory(), 256 * 1024 * 1024L, interactiveCompiler.getSrcName(),
                 interactiveCompiler.getExeName(),
                 parseCompileCommand(interactiveCompiler.getCommand(), interactiveCompiler),
                 interactiveCompiler.getEnvs(), code, extraFiles, false, copyOutExe,
                 JudgeDir.INTERACTIVE_WORKPLACE_DIR + File.separator + pid);
-        JSONObject compileResult = (JSONObject) res.get(0);
-        if (compileResult.getInt("status").intValue() != JudgeStatus.STATUS_ACCEPTED.getStatus()) {
+        if (!Objects.equals(compileResult.getJudgeStatus(), JudgeStatus.STATUS_ACCEPTED.getStatus())) {
             throw new SystemException("Interactive Judge Code Compile Error.",
-                    ((JSONObject) compileResult.get("files")).getStr("stdout"),
-                    ((JSONObject) compileResult.get("files")).getStr("stderr"));
+                    compileResult.getFile("stdout"),
+                    compileResult.getFile("stderr"));
+        }
+        if (copyOutExe) {
+            CheckerFileCache.invalidate(JudgeDir.INTERACTIVE_WORKPLACE_DIR, pid);
         }
         return true;
     }
@@ -0,0 +1,126 @@
+package com.simplefanc.voj.judger.judge.local;
+
+import cn.hutool.core.util.StrUtil;
+import com.simplefanc.voj.common.pojo.dto.JudgeCallbackDTO;
+import com.simplefanc.voj.common.pojo.entity.judge.Judge;
+import com.simplefanc.voj.common.result.CommonResult;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.client.SimpleClientHttpRequestFactory;
+import org.springframework.stereotype.Component;
+import org.springframework.web.client.RestTemplate;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * @Author: chenfan
+ * @Date: 2022/11/27 14:36
+ * @Description: 向后台服务回调评测进度与结果，阶段进度只尝试一次，评测结束的回调会重试，
+ * 全部失败时由后台服务在超时后回收该任务
+ */
+@Slf4j(topic = "voj")
+@Component
+public class JudgeCallback {
+
+    private static final int MAX_RETRY_TIMES = 5;
+
+    private static final long RETRY_INTERVAL_MILLIS = 1000;
+
+    private static final RestTemplate REST_TEMPLATE;
+
+    /**
+     * key: submitId，value: 后台服务的回调地址及分配该任务时的判题机id
+     */
+    private static final Map<Long, CallbackTarget> CALLBACK_TARGET_MAP = new ConcurrentHashMap<>();
+
+    static {
+        SimpleClientHttpRequestFactory requestFactory = new SimpleClientHttpRequestFactory();
+        requestFactory.setConnectTimeout(3000);
+        requestFactory.setReadTimeout(5000);
+        REST_TEMPLATE = new RestTemplate(requestFactory);
+    }
+
+    @Value("${voj.judge.token}")
+    private String judgeToken;
+
+    @Value("${voj-judge-server.name}")
+    private String judgeServerName;
+
+    /**
+     * @param judgeServerId 后台服务分配任务时的判题机id，回调时原样带回，后台服务据此校验回调来源
+     */
+    public void register(Long submitId, String callbackUrl, Integer judgeServerId) {
+        if (!StrUtil.isEmpty(callbackUrl)) {
+            CALLBACK_TARGET_MAP.put(submitId, new CallbackTarget(callbackUrl, judgeServerId));
+        }
+    }
+
+    public void reportProgress(Judge judge) {
+        CallbackTarget target = CALLBACK_TARGET_MAP.get(judge.getSubmitId());
+        if (target != null) {
+            send(target.callbackUrl, buildCallback(judge, false, target));
+        }
+    }
+
+    public void reportFinished(Judge judge) {
+        reportFinished(judge, false);
+    }
+
+    /**
+     * 远程评测轮询到最终结果后回调，后台服务据此更新排行榜
+     */
+    public void reportRemoteFinished(Judge judge) {
+        reportFinished(judge, true);
+    }
+
+    private void reportFinished(Judge judge, boolean remote) {
+        CallbackTarget target = CALLBACK_TARGET_MAP.remove(judge.getSubmitId());
+        if (target == null) {
+            return;
+        }
+        JudgeCallbackDTO callbackDTO = buildCallback(judge, true, target).setRemote(remote);
+        for (int i = 0; i < MAX_RETRY_TIMES; i++) {
+            if (send(target.callbackUrl, callbackDTO)) {
+                return;
+            }
+            try {
+                Thread.sleep(RETRY_INTERVAL_MILLIS * (i + 1));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+        log.error("提交id为{}的评测结束回调[{}]失败，已达最大重试次数", judge.getSubmitId(), target.callbackUrl);
+    }
+
+    private JudgeCallbackDTO buildCallback(Judge judge, boolean finished, CallbackTarget target) {
+        return new JudgeCallbackDTO().setToken(judgeToken).setSubmitId(judge.getSubmitId()).setUid(judge.getUid())
+                .setPid(judge.getPid()).setCid(judge.getCid()).setStatus(judge.getStatus()).setFinished(finished)
+                .setJudger(judgeServerName).setJudgeServerId(target.judgeServerId);
+    }
+
+    private boolean send(String callbackUrl, JudgeCallbackDTO callbackDTO) {
+        try {
+            CommonResult<?> result = REST_TEMPLATE.postForObject(callbackUrl, callbackDTO, CommonResult.class);
+            return result != null;
+        } catch (Exception e) {
+            log.error("回调后台服务[" + callbackUrl + "]发生异常-------------->", e);
+            return false;
+        }
+    }
+
+    private static class CallbackTarget {
+
+        private final String callbackUrl;
+
+        private final Integer judgeServerId;
+
+        private CallbackTarget(String callbackUrl, Integer judgeServerId) {
+            this.callbackUrl = callbackUrl;
+            this.judgeServerId = judgeServerId;
+        }
+
+    }
+
+}
@@ -21,7 +21,7 @@ public class JudgeContext {
 
     private final JudgeProcess judgeProcess;
 
-    public Judge judge(Problem problem, Judge judge) {
+    public Judge judge(Problem problem, Judge judge, String testCaseSyncUrl) {
         // c和c++为一倍时间和空间，其它语言为2倍时间和空间
         if (!JudgeLanguage.CPP.getLanguage().equals(judge.getLanguage()) &&
                 !JudgeLanguage.C.getLanguage().equals(judge.getLanguage()) &&
@@ -31,7 +31,7 @@ public class JudgeContext {
             problem.setMemoryLimit(problem.getMemoryLimit() * 2);
         }
 
-        HashMap<String, Object> judgeResult = judgeProcess.execute(problem, judge);
+        HashMap<String, Object> judgeResult = judgeProcess.execute(problem, judge, testCaseSyncUrl);
 
         return wrapJudgeResult(problem, judge, judgeResult);
     }
@@ -18,6 +18,7 @@ import com.simplefanc.voj.judger.common.exception.SystemException;
 import com.simplefanc.voj.judger.common.utils.JudgeUtil;
 import com.simplefanc.voj.judger.dao.JudgeCaseEntityService;
 import com.simplefanc.voj.judger.dao.JudgeEntityService;
+import com.simplefanc.voj.judger.judge.local.pojo.TestCaseInfo;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Value;
@@ -42,10 +43,16 @@ public class JudgeProcess {
 
     private final JudgeRun judgeRun;
 
+    private final JudgeCallback judgeCallback;
+
+    private final CompiledFileCache compiledFileCache;
+
+    private final ProblemTestCaseUtils problemTestCaseUtils;
+
     @Value("${voj-judge-server.name}")
     private String judgeServerName;
 
-    public HashMap<String, Object> execute(Problem problem, Judge judge) {
+    public HashMap<String, Object> execute(Problem problem, Judge judge, String testCaseSyncUrl) {
         HashMap<String, Object> result = new HashMap<>();
         // 编译好的临时代码文件id
         String userFileId = null;
@@ -54,14 +61,20 @@ public class JudgeProcess {
         judge.setJudger(judgeServerName);
         judge.setStatus(JudgeStatus.STATUS_COMPILING.getStatus());
         judgeEntityService.updateById(judge);
+        judgeCallback.reportProgress(judge);
 
-        // 对用户源代码进行编译 获取tmpfs中的fileId
+        // 对用户源代码进行编译 获取tmpfs中的fileId，相同代码已编译过时直接复用
         CompileConfig compileConfig = CompileConfig.getCompilerByLanguage(judge.getLanguage());
+        TestCaseInfo testCaseInfo = null;
         try {
+            // 评测期间持有该题目测试数据的读锁，避免测试数据文件夹被其它提交重新同步或被淘汰。
+            // 先于编译获取，以便按测试点数量估计评测耗时，复用的可执行文件须在评测结束前一直有效
+            testCaseInfo = problemTestCaseUtils.acquireTestCase(problem, testCaseSyncUrl);
             // 有的语言可能不支持编译
             if (compileConfig != null) {
-                userFileId = Compiler.compile(compileConfig, judge.getCode(), judge.getLanguage(),
-                        JudgeUtil.getProblemExtraFileMap(problem, "user"));
+                userFileId = compiledFileCache.acquire(compileConfig, judge.getCode(), judge.getLanguage(),
+                        JudgeUtil.getProblemExtraFileMap(problem, "user"),
+                        judgeRun.getMaxJudgeMillis(problem, testCaseInfo));
             } else {
                 // 目前只有js、php不支持编译，需要提供源代码文件的绝对路径
                 userFileSrc = JudgeDir.RUN_WORKPLACE_DIR + File.separator + problem.getId() + File.separator
@@ -80,8 +93,10 @@ public class JudgeProcess {
             // 更新状态为评测数据中
             judge.setStatus(JudgeStatus.STATUS_JUDGING.getStatus());
             judgeEntityService.updateById(judge);
+            judgeCallback.reportProgress(judge);
             // 开始测试每个测试点
-            List<JSONObject> allCaseResultList = judgeRun.judgeAllCase(judge, problem, userFileId, userFileSrc, false);
+            List<JSONObject> allCaseResultList = judgeRun.judgeAllCase(judge, problem, userFileId, userFileSrc, false,
+                    testCaseInfo);
 
             // 对全部测试点结果进行评判，获取最终评判结果
             return getJudgeInfo(allCaseResultList, problem, judge);
@@ -97,9 +112,12 @@ public class JudgeProcess {
             handleJudgeError(result, JudgeStatus.STATUS_SYSTEM_ERROR, "Oops, something has gone wrong with the judgeServer. Please report this to administrator.");
             log.error("题号为：" + problem.getId() + "的题目，提交id为" + judge.getSubmitId() + "在评测过程中发生Exception异常-------------------->", e);
         } finally {
-            // 删除tmpfs内存中的用户代码可执行文件
+            // 释放tmpfs内存中的用户代码可执行文件，不再缓存时删除
             if (!StrUtil.isEmpty(userFileId)) {
-                SandboxRun.delFile(userFileId);
+                compiledFileCache.release(userFileId);
+            }
+            if (testCaseInfo != null) {
+                problemTestCaseUtils.releaseTestCase(problem.getId());
             }
         }
         return result;
@@ -1,31 +1,34 @@
 package com.simplefanc.voj.judger.judge.local;
 
-import cn.hutool.json.JSONArray;
 import cn.hutool.json.JSONObject;
+import com.simplefanc.voj.common.constants.ContestEnum;
 import com.simplefanc.voj.common.constants.JudgeCaseMode;
 import com.simplefanc.voj.common.constants.JudgeMode;
 import com.simplefanc.voj.common.constants.JudgeStatus;
+import com.simplefanc.voj.common.pojo.entity.contest.Contest;
 import com.simplefanc.voj.common.pojo.entity.judge.Judge;
 import com.simplefanc.voj.common.pojo.entity.problem.Problem;
 import com.simplefanc.voj.judger.common.constants.JudgeDir;
 import com.simplefanc.voj.judger.common.constants.RunConfig;
 import com.simplefanc.voj.judger.common.exception.SystemException;
 import com.simplefanc.voj.judger.common.utils.JudgeUtil;
-import com.simplefanc.voj.judger.common.utils.ThreadPoolUtil;
+import com.simplefanc.voj.judger.dao.ContestEntityService;
 import com.simplefanc.voj.judger.judge.local.pojo.JudgeDTO;
 import com.simplefanc.voj.judger.judge.local.pojo.JudgeGlobalDTO;
+import com.simplefanc.voj.judger.judge.local.pojo.TestCaseInfo;
 import com.simplefanc.voj.judger.judge.local.strategy.DefaultJudge;
 import com.simplefanc.voj.judger.judge.local.strategy.InteractiveJudge;
 import com.simplefanc.voj.judger.judge.local.strategy.SpecialJudge;
 import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 
 import java.io.File;
 import java.io.UnsupportedEncodingException;
 import java.util.ArrayList;
-import java.util.LinkedList;
 import java.util.List;
 import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * @Author: chenfan
@@ -42,83 +45,193 @@ public class JudgeRun {
 
     private final InteractiveJudge interactiveJudge;
 
-    private final ProblemTestCaseUtils problemTestCaseUtils;
+    private final CaseScheduler caseScheduler;
 
-    public List<JSONObject> judgeAllCase(Judge judge, Problem problem, String userFileId, String userFileSrc, Boolean getUserOutput)
-            throws SystemException, ExecutionException, InterruptedException, UnsupportedEncodingException {
+    private final CaseFailureStatistics caseFailureStatistics;
+
+    private final ContestEntityService contestEntityService;
+
+    /**
+     * 遇错即停时每一轮并行评测的测试点数，-1表示cpu核心数
+     */
+    @Value("${voj-judge-server.judge-case.wave-size:-1}")
+    private Integer waveSize;
 
-        JudgeGlobalDTO judgeGlobalDTO = getJudgeGlobalDTO(judge, problem, userFileId, userFileSrc, getUserOutput);
+    /**
+     * ACM题目评测出第一个非AC测试点后是否跳过其后的测试点。开启后非AC提交的得分（score、oi_rank_score）
+     * 只计第一个非AC测试点之前的测试点，会影响OI排行榜，因此默认关闭，OI赛制比赛中的提交始终不跳过
+     */
+    @Value("${voj-judge-server.judge-case.acm-early-abort:false}")
+    private Boolean acmEarlyAbort;
+
+    /**
+     * 遇错即停时是否让历史非AC比例高的测试点先评测
+     */
+    @Value("${voj-judge-server.judge-case.order-by-failure-rate:true}")
+    private Boolean orderByFailureRate;
+
+    /**
+     * @param testCaseInfo 通过ProblemTestCaseUtils.acquireTestCase获取，评测期间由调用方持有该题目测试数据的读锁
+     */
+    public List<JSONObject> judgeAllCase(Judge judge, Problem problem, String userFileId, String userFileSrc,
+                                         Boolean getUserOutput, TestCaseInfo testCaseInfo)
+            throws SystemException, ExecutionException, InterruptedException, UnsupportedEncodingException {
+        JudgeGlobalDTO judgeGlobalDTO = getJudgeGlobalDTO(judge, problem, userFileId, userFileSrc, getUserOutput,
+                testCaseInfo);
 
         List<JudgeTask> judgeTasks = getJudgeTasks(judgeGlobalDTO);
-        if (JudgeCaseMode.ITERATE_UNTIL_WRONG.getMode().equals(problem.getJudgeCaseMode())) {
-            // 顺序评测测试点，遇到非AC就停止！
-            return iterateJudgeAllCase(judgeTasks);
+        boolean isIterateUntilWrong = JudgeCaseMode.ITERATE_UNTIL_WRONG.getMode().equals(problem.getJudgeCaseMode());
+        if (isIterateUntilWrong || isACMEarlyAbort(judge, problem)) {
+            // 遇到非AC就停止！ACM题目的结果只取决于第一个非AC的测试点，其后的测试点不影响结果
+            return judgeUntilWrong(judgeTasks, judgeGlobalDTO);
         } else {
             return defaultJudgeAllCase(judgeTasks);
         }
     }
 
-    private List<JSONObject> iterateJudgeAllCase(List<JudgeTask> judgeTasks) throws ExecutionException, InterruptedException {
-        List<JSONObject> result = new LinkedList<>();
-        for (JudgeTask judgeTask : judgeTasks) {
-            // 提交到线程池进行执行
-            FutureTask<JSONObject> futureTask = new FutureTask<>(judgeTask);
-            ThreadPoolUtil.getInstance().getThreadPool().submit(futureTask);
-            final JSONObject judgeRes = futureTask.get();
-            result.add(judgeRes);
-            Integer status = judgeRes.getInt("status");
-            if (!JudgeStatus.STATUS_ACCEPTED.getStatus().equals(status)) {
+    /**
+     * @param problem      评测的题目
+     * @param testCaseInfo 题目的测试数据
+     * @MethodName getMaxJudgeMillis
+     * @Description 按各测试点依次运行到时间上限估计的评测最长耗时，复用的可执行文件在此期间不能被沙箱清理
+     * @Return 毫秒数
+     * @Since 2022/12/9
+     */
+    public long getMaxJudgeMillis(Problem problem, TestCaseInfo testCaseInfo) {
+        JudgeMode judgeMode = JudgeMode.getJudgeMode(problem.getJudgeMode());
+        long caseMillis = SandboxRun.getMaxCaseMillis(getTestTime(problem),
+                judgeMode == null ? JudgeMode.DEFAULT : judgeMode);
+        int caseNum = testCaseInfo == null || testCaseInfo.getTestCasesSize() == null ? 0
+                : testCaseInfo.getTestCasesSize();
+        return caseMillis * caseNum;
+    }
+
+    private long getTestTime(Problem problem) {
+        // 默认给题目限制时间+200ms用来测评
+        return (long) problem.getTimeLimit() + 200;
+    }
+
+    /**
+     * ACM题目的结果只取决于第一个非AC的测试点，但各测试点得分仍会计入提交得分，
+     * OI赛制比赛按提交得分排名，即使题目是ACM类型也要评测全部测试点
+     */
+    private boolean isACMEarlyAbort(Judge judge, Problem problem) {
+        if (!Boolean.TRUE.equals(acmEarlyAbort)) {
+            return false;
+        }
+        if (problem.getType() == null || problem.getType().intValue() != ContestEnum.TYPE_ACM.getCode()) {
+            return false;
+        }
+        if (judge.getCid() == null || judge.getCid() == 0) {
+            return true;
+        }
+        Contest contest = contestEntityService.getById(judge.getCid());
+        return contest != null && contest.getType() != null
+                && contest.getType().intValue() == ContestEnum.TYPE_ACM.getCode();
+    }
+
+    /**
+     * @param judgeTasks     按测试点顺序排列的评测任务
+     * @param judgeGlobalDTO 本次评测的全局信息
+     * @MethodName judgeUntilWrong
+     * @Description 分轮并行评测测试点，每轮最多waveSize个。评测出非AC的测试点后，尚未开始的、下标在其之后的测试点直接跳过，
+     * 返回第一个非AC测试点及之前的所有测试点结果，与逐个顺序评测的结果一致
+     * @Return 按测试点顺序排列的结果
+     * @Since 2022/12/8
+     */
+    private List<JSONObject> judgeUntilWrong(List<JudgeTask> judgeTasks, JudgeGlobalDTO judgeGlobalDTO)
+            throws ExecutionException, InterruptedException {
+        int caseNum = judgeTasks.size();
+        List<Integer> order;
+        if (Boolean.TRUE.equals(orderByFailureRate)) {
+            List<String> caseNameList = new ArrayList<>(caseNum);
+            for (JudgeTask judgeTask : judgeTasks) {
+                caseNameList.add(judgeTask.judgeDTO.getTestCaseInputFileName());
+            }
+            order = caseFailureStatistics.getOrder(judgeGlobalDTO.getProblemId(), judgeGlobalDTO.getCaseVersion(), caseNameList);
+        } else {
+            order = new ArrayList<>(caseNum);
+            for (int i = 0; i < caseNum; i++) {
+                order.add(i);
+            }
+        }
+        int maxWaveSize = waveSize == null || waveSize <= 0 ? Runtime.getRuntime().availableProcessors() : waveSize;
+
+        JSONObject[] results = new JSONObject[caseNum];
+        // 已知的第一个非AC测试点的下标，没有时为caseNum
+        AtomicInteger firstWrong = new AtomicInteger(caseNum);
+        int next = 0;
+        while (next < caseNum) {
+            List<Integer> wave = new ArrayList<>(maxWaveSize);
+            while (next < caseNum && wave.size() < maxWaveSize) {
+                int index = order.get(next++);
+                if (index < firstWrong.get()) {
+                    wave.add(index);
+                }
+            }
+            if (wave.isEmpty()) {
                 break;
             }
+            List<Callable<JSONObject>> waveTasks = new ArrayList<>(wave.size());
+            for (Integer index : wave) {
+                waveTasks.add(new UntilWrongTask(index, judgeTasks.get(index), firstWrong));
+            }
+            List<CompletableFuture<JSONObject>> futures = caseScheduler.submitAll(waveTasks);
+            // 等待本轮所有测试点结束（被跳过的会立即结束），保证返回后不再有测试点占用运行目录与沙箱文件
+            ExecutionException exception = null;
+            for (int i = 0; i < wave.size(); i++) {
+                try {
+                    results[wave.get(i)] = futures.get(i).get();
+                } catch (ExecutionException e) {
+                    if (exception == null) {
+                        exception = e;
+                    }
+                }
+            }
+            if (exception != null) {
+                throw exception;
+            }
+        }
+
+        int lastIndex = Math.min(firstWrong.get(), caseNum - 1);
+        List<JSONObject> result = new ArrayList<>(lastIndex + 1);
+        for (int index = 0; index <= lastIndex; index++) {
+            result.add(results[index]);
         }
         return result;
     }
 
     private List<JSONObject> defaultJudgeAllCase(List<JudgeTask> judgeTasks) throws InterruptedException, ExecutionException {
-        ExecutorService threadPool = ThreadPoolUtil.getInstance().getThreadPool();
-        CompletableFuture[] futures = new CompletableFuture[judgeTasks.size()];
-        for (int i = 0; i < judgeTasks.size(); i++) {
-            final JudgeTask judgeTask = judgeTasks.get(i);
-            futures[i]  = CompletableFuture.supplyAsync(() -> {
-                try {
-                    // 普通方法
-                    return judgeTask.call();
-                } catch (SystemException e) {
-                    throw new RuntimeException(e);
-                }
-            }, threadPool);
-        }
-        // allOf() 方法会等到所有的 CompletableFuture 都运行完成之后再返回
-        CompletableFuture<Void> headerFuture = CompletableFuture.allOf(futures);
-        // 都运行完了之后再继续执行
-        headerFuture.join();
+        List<CompletableFuture<JSONObject>> futures = caseScheduler.submitAll(judgeTasks);
+        // 每个测试点都一定会执行完成或异常结束，按顺序等待即可
         List<JSONObject> res = new ArrayList<>();
-        for (int i = 0; i < judgeTasks.size(); i++) {
-            res.add((JSONObject) futures[i].get());
+        for (CompletableFuture<JSONObject> future : futures) {
+            res.add(future.get());
         }
         return res;
     }
 
     private List<JudgeTask> getJudgeTasks(JudgeGlobalDTO judgeGlobalDTO) {
         List<JudgeTask> judgeTasks = new ArrayList<>();
-        final JSONArray testcaseList = (JSONArray) judgeGlobalDTO.getTestCaseInfo().get("testCases");
+        final List<TestCaseInfo.TestCase> testcaseList = judgeGlobalDTO.getTestCaseInfo().getTestCases();
         for (int index = 0; index < testcaseList.size(); index++) {
-            JSONObject testcase = (JSONObject) testcaseList.get(index);
+            TestCaseInfo.TestCase testcase = testcaseList.get(index);
             final int testCaseNum = index + 1;
             // 输入文件名
-            final String inputFileName = testcase.getStr("inputName");
+            final String inputFileName = testcase.getInputName();
             // 输出文件名
-            final String outputFileName = testcase.getStr("outputName");
+            final String outputFileName = testcase.getOutputName();
             // 题目数据的输入文件的路径
             final String testCaseInputPath = judgeGlobalDTO.getTestCasesDir() + File.separator + inputFileName;
             // 题目数据的输出文件的路径
             final String testCaseOutputPath = judgeGlobalDTO.getTestCasesDir() + File.separator + outputFileName;
             // 数据库表的测试样例id
-            final Long caseId = testcase.getLong("caseId", null);
+            final Long caseId = testcase.getCaseId();
             // 该测试点的满分
-            final Integer score = testcase.getInt("score", 0);
+            final Integer score = testcase.getScore() == null ? 0 : testcase.getScore();
 
-            final Long maxOutputSize = Math.max(testcase.getLong("outputSize", 0L) * 2, 16 * 1024 * 1024L);
+            final long outputSize = testcase.getOutputSize() == null ? 0L : testcase.getOutputSize();
+            final Long maxOutputSize = Math.max(outputSize * 2, 16 * 1024 * 1024L);
 
             JudgeDTO judgeDTO = JudgeDTO.builder()
                     .testCaseNum(testCaseNum)
@@ -135,12 +248,13 @@ public class JudgeRun {
         return judgeTasks;
     }
 
-    private JudgeGlobalDTO getJudgeGlobalDTO(Judge judge, Problem problem, String userFileId, String userFileSrc, Boolean getUserOutput) throws SystemException, UnsupportedEncodingException {
+    private JudgeGlobalDTO getJudgeGlobalDTO(Judge judge, Problem problem, String userFileId, String userFileSrc,
+                                             Boolean getUserOutput, TestCaseInfo testCasesInfo)
+            throws SystemException, UnsupportedEncodingException {
         Long submitId = judge.getSubmitId();
         String judgeLanguage = judge.getLanguage();
 
-        // 默认给题目限制时间+200ms用来测评
-        Long testTime = (long) problem.getTimeLimit() + 200;
+        Long testTime = getTestTime(problem);
 
         JudgeMode judgeMode = JudgeMode.getJudgeMode(problem.getJudgeMode());
         if (judgeMode == null) {
@@ -148,8 +262,6 @@ public class JudgeRun {
                     "The judge mode of problem " + problem.getProblemId() + " error:" + problem.getJudgeMode());
         }
 
-        // 从文件中加载测试数据json
-        JSONObject testCasesInfo = problemTestCaseUtils.loadTestCaseInfo(problem);
         if (testCasesInfo == null) {
             throw new SystemException("The evaluation data of the problem does not exist", null, null);
         }
@@ -166,6 +278,7 @@ public class JudgeRun {
 
         return JudgeGlobalDTO.builder()
                 .problemId(problem.getId())
+                .caseVersion(problem.getCaseVersion())
                 .judgeMode(judgeMode)
                 .userFileId(userFileId)
                 .userFileSrc(userFileSrc)
@@ -184,6 +297,44 @@ public class JudgeRun {
                 .removeEOLBlank(problem.getIsRemoveEndBlank()).build();
     }
 
+    /**
+     * 遇错即停模式下的测试点任务，开始前已知有更靠前的测试点非AC时直接跳过，返回null
+     */
+    class UntilWrongTask implements Callable<JSONObject> {
+        final int index;
+        final JudgeTask judgeTask;
+        final AtomicInteger firstWrong;
+
+        UntilWrongTask(int index, JudgeTask judgeTask, AtomicInteger firstWrong) {
+            this.index = index;
+            this.judgeTask = judgeTask;
+            this.firstWrong = firstWrong;
+        }
+
+        @Override
+        public JSONObject call() throws SystemException {
+            if (index > firstWrong.get()) {
+                return null;
+            }
+            JSONObject result;
+            try {
+                result = judgeTask.call();
+            } catch (SystemException | RuntimeException e) {
+                // 评测出错时跳过其余所有测试点
+                firstWrong.set(-1);
+                throw e;
+            }
+            boolean accepted = JudgeStatus.STATUS_ACCEPTED.getStatus().equals(result.getInt("status"));
+            if (!accepted) {
+                firstWrong.accumulateAndGet(index, Math::min);
+            }
+            JudgeGlobalDTO judgeGlobalDTO = judgeTask.judgeGlobalDTO;
+            caseFailureStatistics.record(judgeGlobalDTO.getProblemId(), judgeGlobalDTO.getCaseVersion(),
+                    judgeTask.judgeDTO.getTestCaseInputFileName(), accepted);
+            return result;
+        }
+    }
+
     class JudgeTask implements Callable<JSONObject> {
         JudgeDTO judgeDTO;
         JudgeGlobalDTO judgeGlobalDTO;
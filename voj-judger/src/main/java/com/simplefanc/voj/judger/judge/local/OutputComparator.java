@@ -0,0 +1,276 @@
+package com.simplefanc.voj.judger.judge.local;
+
+import com.simplefanc.voj.common.constants.JudgeStatus;
+
+import java.io.*;
+import java.util.Arrays;
+
+/**
+ * @Author: chenfan
+ * @Date: 2022/11/28 10:20
+ * @Description: 流式比对用户输出与标准输出，逐字节读取比较，不再将整个输出读入内存后做正则替换与MD5计算。
+ * 比对规则与原先一致：完全一致为AC，去掉全部空白符后一致为PE，开启去除行末空格时忽略行末与文末的空白符。
+ * 标准输出的\r\n视为\n，与原先生成测试数据信息时的处理一致；用户输出按原样比对，Windows风格换行的输出仍判为PE
+ */
+public class OutputComparator {
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private static final int NONE = -2;
+
+    private OutputComparator() {
+    }
+
+    /**
+     * 输出来源，比对失败进行PE判断时需要重新读取
+     */
+    @FunctionalInterface
+    public interface OutputSource {
+
+        InputStream open() throws IOException;
+
+        static OutputSource of(File file) {
+            return () -> new FileInputStream(file);
+        }
+
+        static OutputSource of(byte[] bytes) {
+            return () -> new ByteArrayInputStream(bytes);
+        }
+    }
+
+    /**
+     * @param userOutput       用户程序的输出，按原样比对
+     * @param expectedOutput   题目数据的标准输出，\r\n视为\n
+     * @param isRemoveEOLBlank 是否忽略行末空白符与文末空白符
+     * @MethodName compare
+     * @Description 比对用户输出与标准输出
+     * @Return AC、PE或WA的状态码
+     * @Since 2022/11/28
+     */
+    public static Integer compare(OutputSource userOutput, OutputSource expectedOutput, boolean isRemoveEOLBlank)
+            throws IOException {
+        // 如果当前题目选择默认去掉字符串末位空格
+        if (isRemoveEOLBlank) {
+            if (isSame(new EolBlankStripReader(user(userOutput)),
+                    new EolBlankStripReader(expected(expectedOutput)))) {
+                return JudgeStatus.STATUS_ACCEPTED.getStatus();
+            }
+            return JudgeStatus.STATUS_WRONG_ANSWER.getStatus();
+        }
+        // 不选择默认去掉文末空格 与原数据进行对比
+        if (isSame(user(userOutput), expected(expectedOutput))) {
+            return JudgeStatus.STATUS_ACCEPTED.getStatus();
+        }
+        // 如果不AC, 进行PE判断, 否则为WA
+        if (isSame(new AllBlankStripReader(user(userOutput)), new AllBlankStripReader(expected(expectedOutput)))) {
+            return JudgeStatus.STATUS_PRESENTATION_ERROR.getStatus();
+        }
+        return JudgeStatus.STATUS_WRONG_ANSWER.getStatus();
+    }
+
+    private static ByteReader user(OutputSource source) throws IOException {
+        return new RawReader(source.open());
+    }
+
+    /**
+     * 原先标准输出的各MD5都是将\r\n转换为\n后计算的
+     */
+    private static ByteReader expected(OutputSource source) throws IOException {
+        return new CrlfReader(new RawReader(source.open()));
+    }
+
+    private static boolean isSame(ByteReader user, ByteReader expected) throws IOException {
+        try (user; expected) {
+            int a;
+            int b;
+            do {
+                a = user.read();
+                b = expected.read();
+                if (a != b) {
+                    return false;
+                }
+            } while (a != -1);
+            return true;
+        }
+    }
+
+    /**
+     * 与正则中的\s一致：空格、\t、\n、\u000B、\f、\r
+     */
+    private static boolean isBlank(int c) {
+        return c == ' ' || c == '\t' || c == '\n' || c == 0x0B || c == '\f' || c == '\r';
+    }
+
+    private abstract static class ByteReader implements Closeable {
+
+        /**
+         * @return 下一个字节，读完返回-1
+         */
+        abstract int read() throws IOException;
+    }
+
+    private static class RawReader extends ByteReader {
+
+        private final InputStream in;
+
+        private final byte[] buffer = new byte[BUFFER_SIZE];
+
+        private int pos;
+
+        private int limit;
+
+        RawReader(InputStream in) {
+            this.in = in;
+        }
+
+        @Override
+        int read() throws IOException {
+            if (pos == limit) {
+                limit = in.read(buffer, 0, buffer.length);
+                pos = 0;
+                if (limit <= 0) {
+                    limit = 0;
+                    return -1;
+                }
+            }
+            return buffer[pos++] & 0xFF;
+        }
+
+        @Override
+        public void close() throws IOException {
+            in.close();
+        }
+    }
+
+    private abstract static class FilterReader extends ByteReader {
+
+        protected final ByteReader source;
+
+        FilterReader(ByteReader source) {
+            this.source = source;
+        }
+
+        @Override
+        public void close() throws IOException {
+            source.close();
+        }
+    }
+
+    /**
+     * 将\r\n转换为\n
+     */
+    private static class CrlfReader extends FilterReader {
+
+        private int pending = NONE;
+
+        CrlfReader(ByteReader source) {
+            super(source);
+        }
+
+        @Override
+        int read() throws IOException {
+            int c;
+            if (pending != NONE) {
+                c = pending;
+                pending = NONE;
+            } else {
+                c = source.read();
+            }
+            if (c == '\r') {
+                int next = source.read();
+                if (next == '\n') {
+                    return '\n';
+                }
+                pending = next;
+            }
+            return c;
+        }
+    }
+
+    /**
+     * 跳过全部空白符，用于PE判断
+     */
+    private static class AllBlankStripReader extends FilterReader {
+
+        AllBlankStripReader(ByteReader source) {
+            super(source);
+        }
+
+        @Override
+        int read() throws IOException {
+            int c;
+            do {
+                c = source.read();
+            } while (c != -1 && isBlank(c));
+            return c;
+        }
+    }
+
+    /**
+     * 去掉每行行末的空白符以及文末的全部空白符。
+     * 空白符先暂存，遇到换行则丢弃该行行末的空白符，遇到非空白符才将暂存的换行与空白符依次输出，读到文末则全部丢弃
+     */
+    private static class EolBlankStripReader extends FilterReader {
+
+        private int pendingNewlines;
+
+        private byte[] pendingBlanks = new byte[64];
+
+        private int pendingBlankSize;
+
+        private int blankPos;
+
+        private int pendingChar = NONE;
+
+        EolBlankStripReader(ByteReader source) {
+            super(source);
+        }
+
+        @Override
+        int read() throws IOException {
+            if (pendingNewlines > 0) {
+                pendingNewlines--;
+                return '\n';
+            }
+            if (blankPos < pendingBlankSize) {
+                return pendingBlanks[blankPos++] & 0xFF;
+            }
+            pendingBlankSize = 0;
+            blankPos = 0;
+            if (pendingChar != NONE) {
+                int c = pendingChar;
+                pendingChar = NONE;
+                return c;
+            }
+            while (true) {
+                int c = source.read();
+                if (c == -1) {
+                    // 文末的空白符全部丢弃
+                    pendingNewlines = 0;
+                    pendingBlankSize = 0;
+                    return -1;
+                }
+                if (c == '\n') {
+                    // 丢弃行末的空白符
+                    pendingNewlines++;
+                    pendingBlankSize = 0;
+                } else if (isBlank(c)) {
+                    appendBlank(c);
+                } else if (pendingNewlines == 0 && pendingBlankSize == 0) {
+                    return c;
+                } else {
+                    pendingChar = c;
+                    return read();
+                }
+            }
+        }
+
+        private void appendBlank(int c) {
+            if (pendingBlankSize == pendingBlanks.length) {
+                pendingBlanks = Arrays.copyOf(pendingBlanks, pendingBlanks.length * 2);
+            }
+            pendingBlanks[pendingBlankSize++] = (byte) c;
+        }
+    }
+
+}
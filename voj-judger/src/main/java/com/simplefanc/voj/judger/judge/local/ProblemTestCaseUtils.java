@@ -9,21 +9,24 @@ import cn.hutool.json.JSONArray;
 import cn.hutool.json.JSONObject;
 import cn.hutool.json.JSONUtil;
 import com.baomidou.mybatisplus.core.conditions.query.QueryWrapper;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
 import com.simplefanc.voj.common.constants.JudgeMode;
 import com.simplefanc.voj.common.pojo.entity.problem.Problem;
 import com.simplefanc.voj.common.pojo.entity.problem.ProblemCase;
 import com.simplefanc.voj.judger.common.constants.JudgeDir;
 import com.simplefanc.voj.judger.common.exception.SystemException;
 import com.simplefanc.voj.judger.dao.ProblemCaseEntityService;
+import com.simplefanc.voj.judger.judge.local.pojo.TestCaseInfo;
 import lombok.RequiredArgsConstructor;
 import org.springframework.stereotype.Component;
 import org.springframework.util.DigestUtils;
 
 import java.io.File;
 import java.nio.charset.StandardCharsets;
-import java.util.HashMap;
-import java.util.LinkedList;
-import java.util.List;
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 /**
  * @Author: chenfan
@@ -34,26 +37,141 @@ import java.util.List;
 @RequiredArgsConstructor
 public class ProblemTestCaseUtils {
 
+    /**
+     * 缓存的题目数量上限
+     */
+    private static final int MAX_CACHED_PROBLEM_NUM = 1000;
+
+    /**
+     * 题目测试数据描述信息的缓存 key:题目id，value中带有测试数据版本，版本变化时重新加载
+     */
+    private static final Cache<Long, TestCaseInfo> TEST_CASE_INFO_CACHE = Caffeine.newBuilder()
+            .maximumSize(MAX_CACHED_PROBLEM_NUM)
+            .expireAfterAccess(Duration.ofHours(12))
+            .build();
+
     private final ProblemCaseEntityService problemCaseEntityService;
 
-    public JSONObject loadTestCaseInfo(Problem problem) throws SystemException {
+    private final TestCaseSync testCaseSync;
+
+    /**
+     * @param problem         评测的题目
+     * @param testCaseSyncUrl 后台服务提供测试数据的地址，为空时只从数据库初始化
+     * @MethodName acquireTestCase
+     * @Description 准备好题目测试数据并持有该题目的读锁，评测结束后必须调用releaseTestCase。
+     * 持有期间测试数据文件夹不会被重新同步、重新生成或淘汰，缓存中的版本与题目的caseVersion一致时直接返回
+     * @Return TestCaseInfo
+     * @Since 2022/11/29
+     */
+    public TestCaseInfo acquireTestCase(Problem problem, String testCaseSyncUrl) throws SystemException {
+        Long problemId = problem.getId();
+        ReentrantReadWriteLock lock = testCaseSync.getTestCaseLock(problemId);
+        testCaseSync.markUsed(problemId);
+        lock.readLock().lock();
+        try {
+            TestCaseInfo testCaseInfo = getLoadedTestCaseInfo(problem);
+            if (testCaseInfo != null) {
+                return testCaseInfo;
+            }
+        } catch (RuntimeException e) {
+            lock.readLock().unlock();
+            throw e;
+        }
+        // 读锁不能升级为写锁，先释放
+        lock.readLock().unlock();
+        lock.writeLock().lock();
+        try {
+            // 等待期间可能已被其它评测任务准备好
+            TestCaseInfo testCaseInfo = getLoadedTestCaseInfo(problem);
+            if (testCaseInfo == null) {
+                testCaseInfo = parseTestCaseInfo(loadTestCaseInfoJson(problem, testCaseSyncUrl));
+                TEST_CASE_INFO_CACHE.put(problemId, testCaseInfo);
+            }
+            // 释放写锁前获取读锁，降级为读锁
+            lock.readLock().lock();
+            return testCaseInfo;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public void releaseTestCase(Long problemId) {
+        testCaseSync.getTestCaseLock(problemId).readLock().unlock();
+    }
+
+    /**
+     * 本地已有当前版本的测试数据时返回其描述信息，否则返回null，只读取不修改测试数据文件夹
+     */
+    private TestCaseInfo getLoadedTestCaseInfo(Problem problem) {
         Long problemId = problem.getId();
-        String testCasesDir = JudgeDir.TEST_CASE_DIR + File.separator + "problem_" + problem.getId();
+        String version = problem.getCaseVersion();
+        String infoPath = getTestCasesDir(problemId) + File.separator + "info";
+        // 测试数据文件夹可能已被淘汰
+        if (!FileUtil.exist(infoPath)) {
+            return null;
+        }
+        TestCaseInfo testCaseInfo = TEST_CASE_INFO_CACHE.getIfPresent(problemId);
+        if (testCaseInfo != null && Objects.equals(version, testCaseInfo.getVersion())) {
+            return testCaseInfo;
+        }
+        JSONObject testcaseInfoJson = JSONUtil.parseObj(new FileReader(infoPath, CharsetUtil.UTF_8).readString());
+        if (!version.equals(testcaseInfoJson.getStr("version", null))) {
+            return null;
+        }
+        testCaseInfo = parseTestCaseInfo(testcaseInfoJson);
+        TEST_CASE_INFO_CACHE.put(problemId, testCaseInfo);
+        return testCaseInfo;
+    }
+
+    private String getTestCasesDir(Long problemId) {
+        return JudgeDir.TEST_CASE_DIR + File.separator + "problem_" + problemId;
+    }
+
+    /**
+     * 本地没有当前版本的测试数据时，优先从后台服务按需拉取，失败再从数据库初始化，需持有该题目的写锁
+     */
+    private JSONObject loadTestCaseInfoJson(Problem problem, String testCaseSyncUrl) throws SystemException {
+        Long problemId = problem.getId();
+        String testCasesDir = getTestCasesDir(problemId);
         String version = problem.getCaseVersion();
         String mode = problem.getJudgeMode();
 
-        if (FileUtil.exist(testCasesDir + File.separator + "info")) {
-            FileReader fileReader = new FileReader(testCasesDir + File.separator + "info", CharsetUtil.UTF_8);
-            String infoStr = fileReader.readString();
-            JSONObject testcaseInfo = JSONUtil.parseObj(infoStr);
-            // 测试样例被改动需要重新生成
-            if (!version.equals(testcaseInfo.getStr("version", null))) {
-                return tryInitTestCaseInfo(testCasesDir, problemId, version, mode);
-            }
-            return testcaseInfo;
-        } else {
-            return tryInitTestCaseInfo(testCasesDir, problemId, version, mode);
+        String infoPath = testCasesDir + File.separator + "info";
+        if (testCaseSync.sync(testCaseSyncUrl, problemId, version, testCasesDir)) {
+            return JSONUtil.parseObj(new FileReader(infoPath, CharsetUtil.UTF_8).readString());
+        }
+        return tryInitTestCaseInfo(testCasesDir, problemId, version, mode);
+    }
+
+    /**
+     * 将info文件的json内容转换为测试数据描述信息
+     *
+     * @param testcaseInfo
+     * @return
+     */
+    private TestCaseInfo parseTestCaseInfo(JSONObject testcaseInfo) {
+        JSONArray testCaseArray = (JSONArray) testcaseInfo.get("testCases");
+        List<TestCaseInfo.TestCase> testCases = new ArrayList<>(testCaseArray.size());
+        for (int index = 0; index < testCaseArray.size(); index++) {
+            JSONObject testcase = (JSONObject) testCaseArray.get(index);
+            testCases.add(new TestCaseInfo.TestCase()
+                    .setCaseId(testcase.getLong("caseId", null))
+                    .setScore(testcase.getInt("score", null))
+                    .setInputName(testcase.getStr("inputName"))
+                    .setOutputName(testcase.getStr("outputName"))
+                    .setInputHash(testcase.getStr("inputHash"))
+                    .setInputSize(testcase.getLong("inputSize", null))
+                    .setOutputHash(testcase.getStr("outputHash"))
+                    .setOutputSize(testcase.getLong("outputSize", null))
+                    .setOutputMd5(testcase.getStr("outputMd5"))
+                    .setAllStrippedOutputMd5(testcase.getStr("allStrippedOutputMd5"))
+                    .setEofStrippedOutputMd5(testcase.getStr("EOFStrippedOutputMd5")));
         }
+        return new TestCaseInfo()
+                .setMode(testcaseInfo.getStr("mode"))
+                .setVersion(testcaseInfo.getStr("version"))
+                .setTestCasesSize(testCases.size())
+                .setTestCases(Collections.unmodifiableList(testCases));
     }
 
     /**
@@ -0,0 +1,370 @@
+package com.simplefanc.voj.judger.judge.local;
+
+import lombok.extern.slf4j.Slf4j;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.HttpClients;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.springframework.http.client.HttpComponentsClientHttpRequestFactory;
+import org.springframework.web.client.ResourceAccessException;
+import org.springframework.web.client.RestTemplate;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+
+/**
+ * @Author: chenfan
+ * @Date: 2022/12/10 9:30
+ * @Description: 安全沙箱的http客户端。与沙箱之间使用连接池保持长连接，编译、运行与文件操作分别使用不同的超时时间；
+ * 每个沙箱地址各有一个熔断器，连续多次连接失败或超时后暂停调用，全部地址都不可用时通知判题机停止接收评测任务。
+ * 沙箱的文件id只在上传或生成它的沙箱中有效，因此多个地址按配置顺序主备使用，只有前面的地址熔断时才使用后面的地址。
+ * 每次切换使用的沙箱，或当前沙箱从熔断中恢复（可能已重启）时代数加一，文件缓存据此丢弃失效的文件id
+ */
+@Slf4j(topic = "voj")
+public class SandboxClient {
+
+    public enum CallType {
+        /**
+         * 编译用户程序、特判程序与交互程序
+         */
+        COMPILE,
+        /**
+         * 运行测试点
+         */
+        RUN,
+        /**
+         * 上传、下载、删除与列出文件，以及查询沙箱版本
+         */
+        FILE
+    }
+
+    @FunctionalInterface
+    public interface SandboxCall<T> {
+
+        T call(RestTemplate restTemplate, String baseUrl);
+
+    }
+
+    private final List<Endpoint> endpoints = new ArrayList<>();
+
+    private final RestTemplate compileRestTemplate;
+
+    private final RestTemplate runRestTemplate;
+
+    private final RestTemplate fileRestTemplate;
+
+    /**
+     * 连续失败多少次后熔断
+     */
+    private final int failureThreshold;
+
+    /**
+     * 熔断后多久允许一次试探调用
+     */
+    private final long openMillis;
+
+    private final AtomicBoolean available = new AtomicBoolean(true);
+
+    private volatile ActiveEndpoint activeEndpoint;
+
+    private volatile Consumer<Boolean> availabilityListener;
+
+    public SandboxClient(List<String> baseUrls, int maxConnectionNumber, int connectTimeoutMillis,
+                         int compileTimeoutMillis, int runTimeoutMillis, int fileTimeoutMillis,
+                         int failureThreshold, long openMillis) {
+        for (String baseUrl : baseUrls) {
+            endpoints.add(new Endpoint(baseUrl));
+        }
+        if (endpoints.isEmpty()) {
+            throw new IllegalArgumentException("At least one sandbox url is required.");
+        }
+        // 使用连接池复用与沙箱之间的长连接，避免每个测试点都重新建立连接，三种调用共用同一个连接池
+        PoolingHttpClientConnectionManager connectionManager = new PoolingHttpClientConnectionManager();
+        connectionManager.setMaxTotal(maxConnectionNumber * endpoints.size());
+        connectionManager.setDefaultMaxPerRoute(maxConnectionNumber);
+        CloseableHttpClient httpClient = HttpClients.custom()
+                .setConnectionManager(connectionManager)
+                .evictIdleConnections(30, TimeUnit.SECONDS)
+                .build();
+        compileRestTemplate = buildRestTemplate(httpClient, connectTimeoutMillis, compileTimeoutMillis);
+        runRestTemplate = buildRestTemplate(httpClient, connectTimeoutMillis, runTimeoutMillis);
+        fileRestTemplate = buildRestTemplate(httpClient, connectTimeoutMillis, fileTimeoutMillis);
+        this.failureThreshold = failureThreshold;
+        this.openMillis = openMillis;
+        this.activeEndpoint = new ActiveEndpoint(0, endpoints.get(0).baseUrl);
+    }
+
+    private static RestTemplate buildRestTemplate(CloseableHttpClient httpClient, int connectTimeoutMillis,
+                                                  int readTimeoutMillis) {
+        HttpComponentsClientHttpRequestFactory requestFactory = new HttpComponentsClientHttpRequestFactory(httpClient);
+        requestFactory.setConnectTimeout(connectTimeoutMillis);
+        requestFactory.setConnectionRequestTimeout(connectTimeoutMillis);
+        requestFactory.setReadTimeout(readTimeoutMillis);
+        return new RestTemplate(requestFactory);
+    }
+
+    /**
+     * @param callType 调用类型，决定超时时间
+     * @param call     具体的调用
+     * @MethodName execute
+     * @Description 在第一个未熔断的沙箱上执行调用，连接失败或超时计入熔断，沙箱返回的错误响应不计入
+     * @Return 调用的结果
+     * @Since 2022/12/10
+     */
+    public <T> T execute(CallType callType, SandboxCall<T> call) {
+        Endpoint endpoint = chooseEndpoint();
+        if (endpoint == null) {
+            throw new ResourceAccessException("No sandbox service is available.");
+        }
+        switchTo(endpoint, false);
+        return execute(endpoint, callType, call);
+    }
+
+    /**
+     * @param baseUrl  沙箱地址，须为getBaseUrls中的一个
+     * @param callType 调用类型，决定超时时间
+     * @param call     具体的调用
+     * @MethodName executeOn
+     * @Description 在指定的沙箱上执行调用，用于删除在该沙箱中生成的文件，不会切换当前使用的沙箱
+     * @Return 调用的结果
+     * @Since 2022/12/10
+     */
+    public <T> T executeOn(String baseUrl, CallType callType, SandboxCall<T> call) {
+        for (Endpoint endpoint : endpoints) {
+            if (endpoint.baseUrl.equals(baseUrl)) {
+                if (endpoint.isOpen()) {
+                    throw new ResourceAccessException("Sandbox service " + baseUrl + " is not available.");
+                }
+                return execute(endpoint, callType, call);
+            }
+        }
+        throw new IllegalArgumentException("Unknown sandbox url " + baseUrl);
+    }
+
+    /**
+     * 当前使用的沙箱及其代数，上传或生成文件前获取，代数与之后获取的不一致说明文件id已失效
+     */
+    public ActiveEndpoint getActiveEndpoint() {
+        return activeEndpoint;
+    }
+
+    private <T> T execute(Endpoint endpoint, CallType callType, SandboxCall<T> call) {
+        try {
+            T result = call.call(getRestTemplate(callType), endpoint.baseUrl);
+            onSuccess(endpoint);
+            return result;
+        } catch (ResourceAccessException e) {
+            onFailure(endpoint, e);
+            throw e;
+        } catch (RuntimeException e) {
+            onSuccess(endpoint);
+            throw e;
+        }
+    }
+
+    /**
+     * 是否还有未熔断的沙箱
+     */
+    public boolean isAvailable() {
+        return available.get();
+    }
+
+    /**
+     * @param availabilityListener 参数为变化后是否可用
+     * @MethodName setAvailabilityListener
+     * @Description 全部沙箱熔断或有沙箱恢复时回调
+     * @Since 2022/12/10
+     */
+    public void setAvailabilityListener(Consumer<Boolean> availabilityListener) {
+        this.availabilityListener = availabilityListener;
+    }
+
+    /**
+     * @MethodName probe
+     * @Description 对已到试探时间的熔断沙箱发起一次版本查询，没有评测任务时也能及时恢复
+     * @Since 2022/12/10
+     */
+    public void probe() {
+        for (Endpoint endpoint : endpoints) {
+            if (!endpoint.isOpen() || !endpoint.tryStartProbe()) {
+                continue;
+            }
+            try {
+                fileRestTemplate.getForObject(endpoint.baseUrl + "/version", String.class);
+                onSuccess(endpoint);
+            } catch (ResourceAccessException e) {
+                onFailure(endpoint, e);
+            } catch (RuntimeException e) {
+                onSuccess(endpoint);
+            }
+        }
+    }
+
+    public List<String> getBaseUrls() {
+        List<String> baseUrls = new ArrayList<>(endpoints.size());
+        for (Endpoint endpoint : endpoints) {
+            baseUrls.add(endpoint.baseUrl);
+        }
+        return baseUrls;
+    }
+
+    private RestTemplate getRestTemplate(CallType callType) {
+        switch (callType) {
+            case COMPILE:
+                return compileRestTemplate;
+            case RUN:
+                return runRestTemplate;
+            default:
+                return fileRestTemplate;
+        }
+    }
+
+    private Endpoint chooseEndpoint() {
+        for (Endpoint endpoint : endpoints) {
+            if (!endpoint.isOpen()) {
+                return endpoint;
+            }
+        }
+        // 全部熔断时，允许到了试探时间的沙箱通过一次调用
+        for (Endpoint endpoint : endpoints) {
+            if (endpoint.tryStartProbe()) {
+                return endpoint;
+            }
+        }
+        return null;
+    }
+
+    private void onSuccess(Endpoint endpoint) {
+        if (endpoint.close()) {
+            log.info("安全沙箱{}已恢复", endpoint.baseUrl);
+            // 沙箱熔断期间可能已重启，其中的文件不再可信
+            switchTo(endpoint, true);
+        }
+        updateAvailability();
+    }
+
+    /**
+     * @param force 为true时表示该沙箱从熔断中恢复，若是当前使用的沙箱则增加代数；备用沙箱恢复时等真正切换过去再增加
+     */
+    private void switchTo(Endpoint endpoint, boolean force) {
+        if (!force && activeEndpoint.baseUrl.equals(endpoint.baseUrl)) {
+            return;
+        }
+        ActiveEndpoint current;
+        synchronized (this) {
+            current = activeEndpoint;
+            boolean changed = !current.baseUrl.equals(endpoint.baseUrl);
+            if (changed == force) {
+                return;
+            }
+            activeEndpoint = new ActiveEndpoint(current.generation + 1, endpoint.baseUrl);
+        }
+        if (force) {
+            log.warn("安全沙箱{}从熔断中恢复，之前缓存的文件id失效", endpoint.baseUrl);
+        } else {
+            log.warn("当前使用的安全沙箱由{}切换为{}，之前缓存的文件id失效", current.baseUrl, endpoint.baseUrl);
+        }
+    }
+
+    private void onFailure(Endpoint endpoint, Exception e) {
+        if (endpoint.recordFailure(failureThreshold, openMillis)) {
+            log.error("安全沙箱{}连续{}次调用失败，暂停调用{}ms-------------->{}", endpoint.baseUrl, failureThreshold,
+                    openMillis, e.getMessage());
+        }
+        updateAvailability();
+    }
+
+    private void updateAvailability() {
+        boolean current = endpoints.stream().anyMatch(endpoint -> !endpoint.isOpen());
+        if (available.compareAndSet(!current, current)) {
+            Consumer<Boolean> listener = availabilityListener;
+            if (listener != null) {
+                listener.accept(current);
+            }
+        }
+    }
+
+    public static class ActiveEndpoint {
+
+        private final long generation;
+
+        private final String baseUrl;
+
+        ActiveEndpoint(long generation, String baseUrl) {
+            this.generation = generation;
+            this.baseUrl = baseUrl;
+        }
+
+        public long getGeneration() {
+            return generation;
+        }
+
+        public String getBaseUrl() {
+            return baseUrl;
+        }
+    }
+
+    private static class Endpoint {
+
+        private final String baseUrl;
+
+        private int consecutiveFailures;
+
+        /**
+         * 熔断时为true，之后的调用直接失败，到了openUntil才允许一次试探调用
+         */
+        private boolean open;
+
+        private long openUntil;
+
+        private boolean probing;
+
+        Endpoint(String baseUrl) {
+            this.baseUrl = baseUrl;
+        }
+
+        synchronized boolean isOpen() {
+            return open;
+        }
+
+        synchronized boolean tryStartProbe() {
+            if (!open || probing || System.currentTimeMillis() < openUntil) {
+                return false;
+            }
+            probing = true;
+            return true;
+        }
+
+        /**
+         * @return 是否由未熔断变为熔断
+         */
+        synchronized boolean recordFailure(int failureThreshold, long openMillis) {
+            consecutiveFailures++;
+            probing = false;
+            if (open) {
+                openUntil = System.currentTimeMillis() + openMillis;
+                return false;
+            }
+            if (consecutiveFailures < failureThreshold) {
+                return false;
+            }
+            open = true;
+            openUntil = System.currentTimeMillis() + openMillis;
+            return true;
+        }
+
+        /**
+         * @return 是否由熔断恢复
+         */
+        synchronized boolean close() {
+            consecutiveFailures = 0;
+            probing = false;
+            boolean wasOpen = open;
+            open = false;
+            return wasOpen;
+        }
+    }
+
+}
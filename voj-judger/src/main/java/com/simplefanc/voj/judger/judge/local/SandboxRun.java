@@ -1,23 +1,39 @@
 package com.simplefanc.voj.judger.judge.local;
 
+import cn.hutool.core.io.FileUtil;
 import cn.hutool.core.util.StrUtil;
-import cn.hutool.json.JSONArray;
-import cn.hutool.json.JSONObject;
 import cn.hutool.json.JSONUtil;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.simplefanc.voj.common.constants.JudgeMode;
 import com.simplefanc.voj.common.constants.JudgeStatus;
 import com.simplefanc.voj.judger.common.exception.SystemException;
+import com.simplefanc.voj.judger.judge.local.pojo.*;
+import io.micrometer.core.instrument.Metrics;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.core.io.FileSystemResource;
 import org.springframework.http.HttpEntity;
 import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
 import org.springframework.http.MediaType;
-import org.springframework.http.ResponseEntity;
-import org.springframework.http.client.SimpleClientHttpRequestFactory;
+import org.springframework.util.LinkedMultiValueMap;
+import org.springframework.util.MultiValueMap;
 import org.springframework.web.client.RestClientResponseException;
-import org.springframework.web.client.RestTemplate;
 
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
 
 /**
  * @Author: chenfan
@@ -56,31 +72,46 @@ import java.util.Map;
  */
 @Slf4j(topic = "voj")
 public class SandboxRun {
+    private SandboxRun() {
+    }
+
     /**
-     * 单例模式
+     * 默认只有一个本地沙箱，判题机启动后由SandboxClientConfig按配置替换
      */
-    private static final SandboxRun INSTANCE = new SandboxRun();
+    private static volatile SandboxClient client = new SandboxClient(List.of("http://localhost:5050"), 64,
+            3000, 60000, 180000, 30000, 5, 10000);
 
-    private SandboxRun() {
+    public static SandboxClient getClient() {
+        return client;
     }
 
-    private static final RestTemplate REST_TEMPLATE;
-
-    static {
-        SimpleClientHttpRequestFactory requestFactory = new SimpleClientHttpRequestFactory();
-        requestFactory.setConnectTimeout(20000);
-        requestFactory.setReadTimeout(180000);
-        REST_TEMPLATE = new RestTemplate(requestFactory);
+    public static void setClient(SandboxClient sandboxClient) {
+        client = sandboxClient;
     }
 
-    public static RestTemplate getRestTemplate() {
-        return REST_TEMPLATE;
+    /**
+     * 当前使用的沙箱，沙箱切换或从熔断中恢复后返回新的对象，缓存的文件id只在同一个对象下有效
+     */
+    public static SandboxClient.ActiveEndpoint getActiveEndpoint() {
+        return client.getActiveEndpoint();
     }
 
-    private static final String SANDBOX_BASE_URL = "http://localhost:5050";
+    /**
+     * 是否还有可用的沙箱，全部熔断时判题机不再接收评测任务
+     */
+    public static boolean isAvailable() {
+        return client.isAvailable();
+    }
 
-    public static String getSandboxBaseUrl() {
-        return SANDBOX_BASE_URL;
+    /**
+     * @MethodName getVersion
+     * @Description 查询当前使用的沙箱的版本信息
+     * @Return 版本信息的json字符串
+     * @Since 2022/12/10
+     */
+    public static String getVersion() {
+        return client.execute(SandboxClient.CallType.FILE,
+                (restTemplate, baseUrl) -> restTemplate.getForObject(baseUrl + "/version", String.class));
     }
 
     private static final int MAX_PROCESS_NUMBER = 128;
@@ -93,27 +124,65 @@ public class SandboxRun {
 
     private static final int STDIO_SIZE_MB = 32;
 
+    /**
+     * @param testTime  用户程序的评测时间限制 ms
+     * @param judgeMode 评测模式
+     * @MethodName getMaxCaseMillis
+     * @Description 单个测试点在沙箱中的最长耗时，与评测测试点时设置的clockLimit一致
+     * @Return 毫秒数
+     * @Since 2022/12/9
+     */
+    public static long getMaxCaseMillis(long testTime, JudgeMode judgeMode) {
+        long userMillis = testTime * 3;
+        switch (judgeMode) {
+            case SPJ:
+                // 用户程序运行结束后再运行特判程序
+                return userMillis + TIME_LIMIT_MS * 3L;
+            case INTERACTIVE:
+                // 用户程序与交互程序同时运行，以交互程序的时间限制为准
+                return userMillis * 2;
+            default:
+                return userMillis;
+        }
+    }
+
+    /**
+     * 用户输出直接放入评测结果json中的最大字节数，超过部分截断，避免大输出整体读入内存
+     */
+    public static final int STDOUT_INLINE_MAX_SIZE = 1024 * 1024;
+
+    private static final String RUN_URI = "/run";
+
+    /**
+     * 请求直接序列化到http请求体，响应直接从http响应体解析，不经过中间的字符串与json树
+     */
+    private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper()
+            .configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false)
+            .configure(JsonGenerator.Feature.AUTO_CLOSE_TARGET, false);
+
+    private static final ObjectWriter REQUEST_WRITER = OBJECT_MAPPER.writerFor(SandboxRequest.class);
+
+    private static final ObjectReader RESULT_READER = OBJECT_MAPPER
+            .readerFor(new TypeReference<List<SandboxResult>>() {
+            });
+
+    private static final List<String> COPY_OUT_STDOUT_STDERR = List.of("stdout", "stderr");
+
+    private static final SandboxFile STDERR_COLLECTOR = SandboxFile.collector("stderr", 1024 * 1024 * 16L);
+
     /**
      * "files": [{ "content": "" }, { "name": "stdout", "max": 1024 * 1024 * 32 }, {
      * "name": "stderr", "max": 1024 * 1024 * 32 }]
      */
-    private static final JSONArray COMPILE_FILES = new JSONArray();
-
-    static {
-        JSONObject content = new JSONObject();
-        content.set("content", "");
-
-        JSONObject stdout = new JSONObject();
-        stdout.set("name", "stdout");
-        stdout.set("max", 1024 * 1024 * STDIO_SIZE_MB);
-
-        JSONObject stderr = new JSONObject();
-        stderr.set("name", "stderr");
-        stderr.set("max", 1024 * 1024 * STDIO_SIZE_MB);
-        COMPILE_FILES.put(content);
-        COMPILE_FILES.put(stdout);
-        COMPILE_FILES.put(stderr);
-    }
+    private static final List<SandboxFile> COMPILE_FILES = List.of(SandboxFile.ofContent(""),
+            SandboxFile.collector("stdout", 1024 * 1024L * STDIO_SIZE_MB),
+            SandboxFile.collector("stderr", 1024 * 1024L * STDIO_SIZE_MB));
+
+    /**
+     * 特判程序的标准输入为空，标准输出与错误输出各最多16MB
+     */
+    private static final List<SandboxFile> SPJ_FILES = List.of(SandboxFile.ofContent(""),
+            SandboxFile.collector("stdout", 1024 * 1024 * 16L), STDERR_COLLECTOR);
 
     public static final HashMap<String, Integer> RESULT_STATUS_MAP = new HashMap<>() {
         {
@@ -165,34 +234,164 @@ public class SandboxRun {
         }
     };
 
-    public JSONArray run(String uri, JSONObject param) throws SystemException {
+    private static List<SandboxResult> run(SandboxClient.CallType callType, SandboxRequest sandboxRequest)
+            throws SystemException {
+        long startTime = System.nanoTime();
+        try {
+            List<SandboxResult> results = client.execute(callType, (restTemplate, baseUrl) ->
+                    restTemplate.execute(baseUrl + RUN_URI, HttpMethod.POST, request -> {
+                        request.getHeaders().setContentType(MediaType.APPLICATION_JSON);
+                        REQUEST_WRITER.writeValue(request.getBody(), sandboxRequest);
+                    }, response -> RESULT_READER.<List<SandboxResult>>readValue(response.getBody())));
+            if (results == null || results.size() < sandboxRequest.getCmd().size()) {
+                throw new SystemException("Call SandBox Error.", null, "The sandbox returned incomplete results.");
+            }
+            long maxRunTime = 0;
+            for (SandboxResult result : results) {
+                result.setJudgeStatus(RESULT_STATUS_MAP.get(result.getStatus()));
+                if (result.getRunTime() != null) {
+                    maxRunTime = Math.max(maxRunTime, result.getRunTime());
+                }
+            }
+            // 扣除程序实际运行的时间，剩下的是http请求、json序列化与沙箱准备环境的额外开销
+            Metrics.timer("voj.sandbox.overhead", "uri", RUN_URI).record(
+                    Math.max(System.nanoTime() - startTime - maxRunTime, 0), TimeUnit.NANOSECONDS);
+            return results;
+        } catch (SystemException e) {
+            throw e;
+        } catch (RestClientResponseException ex) {
+            throw new SystemException("Cannot connect to sandbox service.", null, ex.getResponseBodyAsString());
+        } catch (Exception e) {
+            throw new SystemException("Call SandBox Error.", null, e.getMessage());
+        } finally {
+            // 包含沙箱运行程序、http请求与结果解析的总耗时
+            Metrics.timer("voj.sandbox.request", "uri", RUN_URI).record(System.nanoTime() - startTime,
+                    TimeUnit.NANOSECONDS);
+        }
+    }
+
+    /**
+     * @param fileId 沙箱中缓存文件的id
+     * @param dest   下载到本地的文件
+     * @MethodName downloadFile
+     * @Description 以流的方式将沙箱中的缓存文件下载到本地，避免大文件整体读入内存
+     * @Since 2022/11/28
+     */
+    public static void downloadFile(String fileId, File dest) throws SystemException {
+        try {
+            FileUtil.mkParentDirs(dest);
+            client.execute(SandboxClient.CallType.FILE, (restTemplate, baseUrl) ->
+                    restTemplate.execute(baseUrl + "/file/{0}", HttpMethod.GET, null, response -> {
+                        Files.copy(response.getBody(), dest.toPath(), StandardCopyOption.REPLACE_EXISTING);
+                        return null;
+                    }, fileId));
+        } catch (RestClientResponseException ex) {
+            throw new SystemException("Cannot download the file from sandbox service.", null,
+                    ex.getResponseBodyAsString());
+        } catch (Exception e) {
+            throw new SystemException("Call SandBox Error.", null, e.getMessage());
+        }
+    }
+
+    /**
+     * @param fileId  沙箱中缓存文件的id
+     * @param maxSize 最多读取的字节数
+     * @MethodName readFileHead
+     * @Description 读取沙箱中缓存文件的前maxSize个字节，超出部分不再下载
+     * @Return String
+     * @Since 2022/11/29
+     */
+    public static String readFileHead(String fileId, int maxSize) throws SystemException {
+        try {
+            return client.execute(SandboxClient.CallType.FILE, (restTemplate, baseUrl) ->
+                    restTemplate.execute(baseUrl + "/file/{0}", HttpMethod.GET, null,
+                            response -> new String(response.getBody().readNBytes(maxSize), StandardCharsets.UTF_8),
+                            fileId));
+        } catch (RestClientResponseException ex) {
+            throw new SystemException("Cannot download the file from sandbox service.", null,
+                    ex.getResponseBodyAsString());
+        } catch (Exception e) {
+            throw new SystemException("Call SandBox Error.", null, e.getMessage());
+        }
+    }
+
+    /**
+     * @param file 本地文件
+     * @MethodName uploadFile
+     * @Description 将本地文件上传到沙箱的文件缓存中，之后可通过文件id多次引用
+     * @Return 沙箱中的文件id
+     * @Since 2022/11/30
+     */
+    public static String uploadFile(File file) throws SystemException {
         HttpHeaders headers = new HttpHeaders();
-        headers.setContentType(MediaType.APPLICATION_JSON);
-        HttpEntity<String> request = new HttpEntity<>(JSONUtil.toJsonStr(param), headers);
-        ResponseEntity<String> postForEntity;
+        headers.setContentType(MediaType.MULTIPART_FORM_DATA);
+        MultiValueMap<String, Object> body = new LinkedMultiValueMap<>();
+        body.add("file", new FileSystemResource(file));
         try {
-            postForEntity = REST_TEMPLATE.postForEntity(SANDBOX_BASE_URL + uri, request, String.class);
-            // TODO 疑似出现OOM 普通评测：如果沙盒运行程序不是 Accepted 可以不获取 stdout
-            // 临时解决：顺序评测 and 降低程序的并发数
-            // 如果测试数据标准输出真的特别大 只有增大JVM配置
-            return JSONUtil.parseArray(postForEntity.getBody());
+            String fileId = client.execute(SandboxClient.CallType.FILE, (restTemplate, baseUrl) ->
+                    restTemplate.postForObject(baseUrl + "/file", new HttpEntity<>(body, headers), String.class));
+            // 返回的是json字符串
+            return StrUtil.strip(StrUtil.trim(fileId), "\"");
         } catch (RestClientResponseException ex) {
-            if (ex.getRawStatusCode() != 200) {
-                throw new SystemException("Cannot connect to sandbox service.", null, ex.getResponseBodyAsString());
-            }
+            throw new SystemException("Cannot upload the file to sandbox service.", null,
+                    ex.getResponseBodyAsString());
+        } catch (Exception e) {
+            throw new SystemException("Call SandBox Error.", null, e.getMessage());
+        }
+    }
+
+    /**
+     * @MethodName listFileIds
+     * @Description 获取沙箱文件缓存中的全部文件id，沙箱重启后之前的文件都会丢失
+     * @Return Set<String>
+     * @Since 2022/11/30
+     */
+    public static Set<String> listFileIds() throws SystemException {
+        try {
+            String files = client.execute(SandboxClient.CallType.FILE,
+                    (restTemplate, baseUrl) -> restTemplate.getForObject(baseUrl + "/file", String.class));
+            return JSONUtil.parseObj(files).keySet();
+        } catch (RestClientResponseException ex) {
+            throw new SystemException("Cannot list the files of sandbox service.", null,
+                    ex.getResponseBodyAsString());
         } catch (Exception e) {
             throw new SystemException("Call SandBox Error.", null, e.getMessage());
         }
-        return null;
     }
 
     public static void delFile(String fileId) {
         try {
-            REST_TEMPLATE.delete(SANDBOX_BASE_URL + "/file/{0}", fileId);
+            client.execute(SandboxClient.CallType.FILE, (restTemplate, baseUrl) -> {
+                restTemplate.delete(baseUrl + "/file/{0}", fileId);
+                return null;
+            });
+        } catch (RestClientResponseException ex) {
+            if (ex.getRawStatusCode() != 200) {
+                log.error("安全沙箱判题的删除内存中的文件缓存操作异常----------------->{}", ex.getResponseBodyAsString());
+            }
+        }
+    }
+
+    /**
+     * @param fileId          文件id
+     * @param sandboxEndpoint 生成该文件时使用的沙箱
+     * @MethodName delFile
+     * @Description 在生成文件的沙箱中删除文件，沙箱已切换时不会删到当前使用的沙箱；原沙箱不可用时文件由其--file-timeout清理
+     * @Since 2022/12/10
+     */
+    public static void delFile(String fileId, SandboxClient.ActiveEndpoint sandboxEndpoint) {
+        try {
+            client.executeOn(sandboxEndpoint.getBaseUrl(), SandboxClient.CallType.FILE, (restTemplate, baseUrl) -> {
+                restTemplate.delete(baseUrl + "/file/{0}", fileId);
+                return null;
+            });
         } catch (RestClientResponseException ex) {
             if (ex.getRawStatusCode() != 200) {
                 log.error("安全沙箱判题的删除内存中的文件缓存操作异常----------------->{}", ex.getResponseBodyAsString());
             }
+        } catch (RuntimeException e) {
+            log.warn("安全沙箱{}不可用，跳过删除文件{}----------------->{}", sandboxEndpoint.getBaseUrl(), fileId,
+                    e.getMessage());
         }
     }
 
@@ -212,214 +411,145 @@ public class SandboxRun {
      * @param copyOutDir        生成编译后的用户程序exe文件的指定路径
      * @MethodName compile
      * @Description 编译运行
-     * @Return
+     * @Return SandboxResult
      * @Since 2022/1/3
      */
-    public static JSONArray compile(Long maxCpuTime, Long maxRealTime, Long maxMemory, Long maxStack, String srcName,
-                                    String exeName, List<String> args, List<String> envs, String code, HashMap<String, String> extraFiles,
-                                    Boolean needCopyOutCached, Boolean needCopyOutExe, String copyOutDir) throws SystemException {
-        JSONObject cmd = new JSONObject();
-        cmd.set("args", args);
-        cmd.set("env", envs);
-        cmd.set("files", COMPILE_FILES);
-        // ms-->ns
-        cmd.set("cpuLimit", maxCpuTime * 1000 * 1000L);
-        cmd.set("clockLimit", maxRealTime * 1000 * 1000L);
-        // byte
-        cmd.set("memoryLimit", maxMemory);
-        cmd.set("procLimit", MAX_PROCESS_NUMBER);
-        cmd.set("stackLimit", maxStack);
-
-        JSONObject fileContent = new JSONObject();
-        fileContent.set("content", code);
-
-        JSONObject copyIn = new JSONObject();
-        copyIn.set(srcName, fileContent);
-
+    public static SandboxResult compile(Long maxCpuTime, Long maxRealTime, Long maxMemory, Long maxStack, String srcName,
+                                        String exeName, List<String> args, List<String> envs, String code, HashMap<String, String> extraFiles,
+                                        Boolean needCopyOutCached, Boolean needCopyOutExe, String copyOutDir) throws SystemException {
+        Map<String, SandboxFile> copyIn = new HashMap<>();
+        copyIn.put(srcName, SandboxFile.ofContent(code));
         if (extraFiles != null) {
             for (Map.Entry<String, String> entry : extraFiles.entrySet()) {
                 if (!StrUtil.isEmpty(entry.getKey()) && !StrUtil.isEmpty(entry.getValue())) {
-                    JSONObject content = new JSONObject();
-                    content.set("content", entry.getValue());
-                    copyIn.set(entry.getKey(), content);
+                    copyIn.put(entry.getKey(), SandboxFile.ofContent(entry.getValue()));
                 }
             }
         }
 
-        cmd.set("copyIn", copyIn);
-        cmd.set("copyOut", new JSONArray().put("stdout").put("stderr"));
-
-        if (needCopyOutCached) {
-            cmd.set("copyOutCached", new JSONArray().put(exeName));
-        }
+        SandboxCmd cmd = SandboxCmd.builder()
+                .args(args)
+                .env(envs)
+                .files(COMPILE_FILES)
+                // ms-->ns
+                .cpuLimit(maxCpuTime * 1000 * 1000L)
+                .clockLimit(maxRealTime * 1000 * 1000L)
+                // byte
+                .memoryLimit(maxMemory)
+                .procLimit(MAX_PROCESS_NUMBER)
+                .stackLimit(maxStack)
+                .copyIn(copyIn)
+                .copyOut(COPY_OUT_STDOUT_STDERR)
+                .copyOutCached(needCopyOutCached ? List.of(exeName) : null)
+                .copyOutDir(needCopyOutExe ? copyOutDir : null)
+                .build();
+
+        return run(SandboxClient.CallType.COMPILE, SandboxRequest.of(cmd)).get(0);
+    }
 
-        if (needCopyOutExe) {
-            cmd.set("copyOutDir", copyOutDir);
+    /**
+     * @param args        普通评测运行cmd的命令参数
+     * @param envs        普通评测运行的环境变量
+     * @param maxTime     评测的最大限制时间 ms
+     * @param maxMemory   评测的最大限制空间 mb
+     * @param maxStack    评测的最大限制栈空间 mb
+     * @param exeName     评测的用户程序名称
+     * @param fileId      评测的用户程序文件id
+     * @param fileSrc     评测的用户程序文件绝对路径，如果userFileId存在则为null
+     * @param cacheStdout 标准输出是否缓存在沙箱中只返回文件id，而不是直接放在返回的json中
+     * @MethodName buildTestCaseCmdTemplate
+     * @Description 生成同一提交各测试点共用的运行命令，评测各测试点时只需在其副本上设置输入输出
+     * @Return SandboxCmd
+     * @Since 2022/12/1
+     */
+    public static SandboxCmd buildTestCaseCmdTemplate(List<String> args, List<String> envs, Long maxTime,
+                                                      Long maxMemory, Integer maxStack, String exeName, String fileId,
+                                                      String fileSrc, Boolean cacheStdout) {
+        SandboxFile exeFile = !StrUtil.isEmpty(fileId) ? SandboxFile.ofFileId(fileId) : SandboxFile.ofSrc(fileSrc);
+        SandboxCmd.SandboxCmdBuilder cmd = SandboxCmd.builder()
+                .args(args)
+                .env(envs)
+                // ms-->ns
+                .cpuLimit(maxTime * 1000 * 1000L)
+                .clockLimit(maxTime * 1000 * 1000L * 3)
+                // byte
+                .memoryLimit((maxMemory + 100) * 1024 * 1024L)
+                .procLimit(MAX_PROCESS_NUMBER)
+                .stackLimit(maxStack * 1024 * 1024L)
+                .copyIn(Map.of(exeName, exeFile));
+        if (cacheStdout) {
+            // 标准输出可能很大，缓存在沙箱中，需要时再以流的方式下载
+            cmd.copyOut(List.of("stderr")).copyOutCached(List.of("stdout"));
+        } else {
+            cmd.copyOut(COPY_OUT_STDOUT_STDERR);
         }
-
-        JSONObject param = new JSONObject();
-        param.set("cmd", new JSONArray().put(cmd));
-
-        JSONArray result = INSTANCE.run("/run", param);
-        JSONObject tmp = (JSONObject) result.get(0);
-        ((JSONObject) result.get(0)).set("status", RESULT_STATUS_MAP.get(tmp.getStr("status")));
-        return result;
+        return cmd.build();
     }
 
     /**
-     * @param args          普通评测运行cmd的命令参数
-     * @param envs          普通评测运行的环境变量
+     * @param cmdTemplate   由buildTestCaseCmdTemplate生成的运行命令
      * @param testCasePath  题目数据的输入文件路径
-     * @param maxTime       评测的最大限制时间 ms
-     * @param maxOutputSize 评测的最大输出大小 kb
-     * @param maxStack      评测的最大限制栈空间 mb
-     * @param exeName       评测的用户程序名称
-     * @param fileId        评测的用户程序文件id
-     * @param fileSrc       评测的用户程序文件绝对路径，如果userFileId存在则为null
+     * @param maxOutputSize 评测的最大输出大小 b
      * @MethodName testCase
      * @Description 普通评测
-     * @Return JSONArray
+     * @Return SandboxResult
      * @Since 2022/1/3
      */
-    public static JSONArray testCase(List<String> args, List<String> envs, String testCasePath, Long maxTime,
-                                     Long maxMemory, Long maxOutputSize, Integer maxStack, String exeName, String fileId, String fileSrc)
+    public static SandboxResult testCase(SandboxCmd cmdTemplate, String testCasePath, Long maxOutputSize)
             throws SystemException {
-
-        JSONObject cmd = new JSONObject();
-        cmd.set("args", args);
-        cmd.set("env", envs);
-
-        JSONArray files = new JSONArray();
-        JSONObject content = new JSONObject();
-        content.set("src", testCasePath);
-
-        JSONObject stdout = new JSONObject();
-        stdout.set("name", "stdout");
-        stdout.set("max", maxOutputSize);
-
-        JSONObject stderr = new JSONObject();
-        stderr.set("name", "stderr");
-        stderr.set("max", 1024 * 1024 * 16);
-        files.put(content);
-        files.put(stdout);
-        files.put(stderr);
-
-        cmd.set("files", files);
-
-        // ms-->ns
-        cmd.set("cpuLimit", maxTime * 1000 * 1000L);
-        cmd.set("clockLimit", maxTime * 1000 * 1000L * 3);
-        // byte
-        cmd.set("memoryLimit", (maxMemory + 100) * 1024 * 1024L);
-        cmd.set("procLimit", MAX_PROCESS_NUMBER);
-        cmd.set("stackLimit", maxStack * 1024 * 1024L);
-
-        JSONObject exeFile = new JSONObject();
-        if (!StrUtil.isEmpty(fileId)) {
-            exeFile.set("fileId", fileId);
-        } else {
-            exeFile.set("src", fileSrc);
-        }
-        JSONObject copyIn = new JSONObject();
-        copyIn.set(exeName, exeFile);
-
-        cmd.set("copyIn", copyIn);
-        cmd.set("copyOut", new JSONArray().put("stdout").put("stderr"));
-
-        JSONObject param = new JSONObject();
-        param.set("cmd", new JSONArray().put(cmd));
+        SandboxCmd cmd = cmdTemplate.toBuilder()
+                .files(List.of(SandboxFile.ofSrc(testCasePath), SandboxFile.collector("stdout", maxOutputSize),
+                        STDERR_COLLECTOR))
+                .build();
 
         // 调用判题安全沙箱
-        JSONArray result = INSTANCE.run("/run", param);
-
-        final JSONObject jsonObject = (JSONObject) result.get(0);
-        jsonObject.set("status", RESULT_STATUS_MAP.get(jsonObject.getStr("status")));
-        return result;
+        return run(SandboxClient.CallType.RUN, SandboxRequest.of(cmd)).get(0);
     }
 
     /**
      * @param args                   特殊判题的运行cmd命令参数
      * @param envs                   特殊判题的运行环境变量
-     * @param userOutputFilePath     用户程序输出文件的路径
+     * @param userOutputFileId       用户程序输出缓存在沙箱中的文件id
      * @param userOutputFileName     用户程序输出文件的名字
      * @param testCaseInputFilePath  题目数据的输入文件的路径
      * @param testCaseInputFileName  题目数据的输入文件的名字
      * @param testCaseOutputFilePath 题目数据的输出文件的路径
      * @param testCaseOutputFileName 题目数据的输出文件的路径
-     * @param spjExeSrc              特殊判题的exe文件的路径
+     * @param spjExeFileId           特殊判题的exe文件在沙箱中的文件id
      * @param spjExeName             特殊判题的exe文件的名字
      * @MethodName spjCheckResult
      * @Description 特殊判题的评测
-     * @Return JSONArray
+     * @Return SandboxResult
      * @Since 2022/1/3
      */
-    public static JSONArray spjCheckResult(List<String> args, List<String> envs, String userOutputFilePath,
-                                           String userOutputFileName, String testCaseInputFilePath, String testCaseInputFileName,
-                                           String testCaseOutputFilePath, String testCaseOutputFileName, String spjExeSrc, String spjExeName)
+    public static SandboxResult spjCheckResult(List<String> args, List<String> envs, String userOutputFileId,
+                                               String userOutputFileName, String testCaseInputFilePath, String testCaseInputFileName,
+                                               String testCaseOutputFilePath, String testCaseOutputFileName, String spjExeFileId, String spjExeName)
             throws SystemException {
-
-        JSONObject cmd = new JSONObject();
-        cmd.set("args", args);
-        cmd.set("env", envs);
-
-        JSONArray outFiles = new JSONArray();
-
-        JSONObject content = new JSONObject();
-        content.set("content", "");
-
-        JSONObject outStdout = new JSONObject();
-        outStdout.set("name", "stdout");
-        outStdout.set("max", 1024 * 1024 * 16);
-
-        JSONObject outStderr = new JSONObject();
-        outStderr.set("name", "stderr");
-        outStderr.set("max", 1024 * 1024 * 16);
-
-        outFiles.put(content);
-        outFiles.put(outStdout);
-        outFiles.put(outStderr);
-        cmd.set("files", outFiles);
-
-        // ms-->ns
-        cmd.set("cpuLimit", TIME_LIMIT_MS * 1000 * 1000L);
-        cmd.set("clockLimit", TIME_LIMIT_MS * 1000 * 1000L * 3);
-        // byte
-        cmd.set("memoryLimit", MEMORY_LIMIT_MB * 1024 * 1024L);
-        cmd.set("procLimit", MAX_PROCESS_NUMBER);
-        cmd.set("stackLimit", STACK_LIMIT_MB * 1024 * 1024L);
-
-        JSONObject spjExeFile = new JSONObject();
-        spjExeFile.set("src", spjExeSrc);
-
-        JSONObject useOutputFileSrc = new JSONObject();
-        useOutputFileSrc.set("src", userOutputFilePath);
-
-        JSONObject stdInputFileSrc = new JSONObject();
-        stdInputFileSrc.set("src", testCaseInputFilePath);
-
-        JSONObject stdOutFileSrc = new JSONObject();
-        stdOutFileSrc.set("src", testCaseOutputFilePath);
-
-        JSONObject spjCopyIn = new JSONObject();
-
-        spjCopyIn.set(spjExeName, spjExeFile);
-        spjCopyIn.set(userOutputFileName, useOutputFileSrc);
-        spjCopyIn.set(testCaseInputFileName, stdInputFileSrc);
-        spjCopyIn.set(testCaseOutputFileName, stdOutFileSrc);
-
-        cmd.set("copyIn", spjCopyIn);
-        cmd.set("copyOut", new JSONArray().put("stdout").put("stderr"));
-
-        JSONObject param = new JSONObject();
-
-        param.set("cmd", new JSONArray().put(cmd));
+        Map<String, SandboxFile> copyIn = new HashMap<>();
+        copyIn.put(spjExeName, SandboxFile.ofFileId(spjExeFileId));
+        // 用户输出直接引用沙箱中缓存的文件，无需先下载到本地再上传
+        copyIn.put(userOutputFileName, SandboxFile.ofFileId(userOutputFileId));
+        copyIn.put(testCaseInputFileName, SandboxFile.ofSrc(testCaseInputFilePath));
+        copyIn.put(testCaseOutputFileName, SandboxFile.ofSrc(testCaseOutputFilePath));
+
+        SandboxCmd cmd = SandboxCmd.builder()
+                .args(args)
+                .env(envs)
+                .files(SPJ_FILES)
+                // ms-->ns
+                .cpuLimit(TIME_LIMIT_MS * 1000 * 1000L)
+                .clockLimit(TIME_LIMIT_MS * 1000 * 1000L * 3)
+                // byte
+                .memoryLimit(MEMORY_LIMIT_MB * 1024 * 1024L)
+                .procLimit(MAX_PROCESS_NUMBER)
+                .stackLimit(STACK_LIMIT_MB * 1024 * 1024L)
+                .copyIn(copyIn)
+                .copyOut(COPY_OUT_STDOUT_STDERR)
+                .build();
 
         // 调用判题安全沙箱
-        JSONArray result = INSTANCE.run("/run", param);
-
-        JSONObject tmp = (JSONObject) result.get(0);
-        ((JSONObject) result.get(0)).set("status", RESULT_STATUS_MAP.get(tmp.getStr("status")));
-        return result;
+        return run(SandboxClient.CallType.RUN, SandboxRequest.of(cmd)).get(0);
     }
 
     /**
@@ -437,161 +567,75 @@ public class SandboxRun {
      * @param userOutputFileName     用户程序的输出文件名字
      * @param interactArgs           交互程序运行的cmd命令参数
      * @param interactEnvs           交互程序运行的环境变量
-     * @param interactExeSrc         交互程序的exe文件路径
+     * @param interactExeFileId      交互程序的exe文件在沙箱中的文件id
      * @param interactExeName        交互程序的exe文件名字
      * @MethodName interactTestCase
      * @Description 交互评测
-     * @Return JSONArray
+     * @Return 用户程序与交互程序的运行结果
      * @Since 2022/1/3
      */
-    public static JSONArray interactTestCase(List<String> args, List<String> envs, String userExeName,
-                                             String userFileId, String userFileSrc, Long userMaxTime, Long userMaxMemory, Integer userMaxStack,
-                                             String testCaseInputPath, String testCaseInputFileName, String testCaseOutputFilePath,
-                                             String testCaseOutputFileName, String userOutputFileName, List<String> interactArgs,
-                                             List<String> interactEnvs, String interactExeSrc, String interactExeName) throws SystemException {
+    public static List<SandboxResult> interactTestCase(List<String> args, List<String> envs, String userExeName,
+                                                       String userFileId, String userFileSrc, Long userMaxTime, Long userMaxMemory, Integer userMaxStack,
+                                                       String testCaseInputPath, String testCaseInputFileName, String testCaseOutputFilePath,
+                                                       String testCaseOutputFileName, String userOutputFileName, List<String> interactArgs,
+                                                       List<String> interactEnvs, String interactExeFileId, String interactExeName) throws SystemException {
 
         /**
          * 注意：用户源代码需要先编译，若是通过编译需要先将文件存入内存，再利用管道判题，同时特殊判题程序必须已编译且存在（否则判题失败，系统错误）！
          */
 
-        JSONObject pipeInputCmd = new JSONObject();
-        pipeInputCmd.set("args", args);
-        pipeInputCmd.set("env", envs);
-
-        JSONArray files = new JSONArray();
-
-        JSONObject stderr = new JSONObject();
-        stderr.set("name", "stderr");
-        stderr.set("max", 1024 * 1024 * STDIO_SIZE_MB);
-
-        files.put(new JSONObject());
-        files.put(new JSONObject());
-        files.put(stderr);
-
-        String inTmp = files.toString().replace("{}", "null");
-        pipeInputCmd.set("files", JSONUtil.parseArray(inTmp, false));
-
-        // ms-->ns
-        pipeInputCmd.set("cpuLimit", userMaxTime * 1000 * 1000L);
-        pipeInputCmd.set("clockLimit", userMaxTime * 1000 * 1000L * 3);
-
-        // byte
-
-        pipeInputCmd.set("memoryLimit", (userMaxMemory + 100) * 1024 * 1024L);
-        pipeInputCmd.set("procLimit", MAX_PROCESS_NUMBER);
-        pipeInputCmd.set("stackLimit", userMaxStack * 1024 * 1024L);
-
-        JSONObject exeFile = new JSONObject();
-        if (!StrUtil.isEmpty(userFileId)) {
-            exeFile.set("fileId", userFileId);
-        } else {
-            exeFile.set("src", userFileSrc);
-        }
-        JSONObject copyIn = new JSONObject();
-        copyIn.set(userExeName, exeFile);
-
-        pipeInputCmd.set("copyIn", copyIn);
-        pipeInputCmd.set("copyOut", new JSONArray());
+        // 标准输入与标准输出由管道连接
+        SandboxFile stderr = SandboxFile.collector("stderr", 1024 * 1024L * STDIO_SIZE_MB);
+        SandboxFile exeFile = !StrUtil.isEmpty(userFileId) ? SandboxFile.ofFileId(userFileId)
+                : SandboxFile.ofSrc(userFileSrc);
+        SandboxCmd pipeInputCmd = SandboxCmd.builder()
+                .args(args)
+                .env(envs)
+                .files(Arrays.asList(null, null, stderr))
+                // ms-->ns
+                .cpuLimit(userMaxTime * 1000 * 1000L)
+                .clockLimit(userMaxTime * 1000 * 1000L * 3)
+                // byte
+                .memoryLimit((userMaxMemory + 100) * 1024 * 1024L)
+                .procLimit(MAX_PROCESS_NUMBER)
+                .stackLimit(userMaxStack * 1024 * 1024L)
+                .copyIn(Map.of(userExeName, exeFile))
+                .copyOut(List.of())
+                .build();
 
         // 管道输出，用户程序输出数据经过特殊判题程序后，得到的最终输出结果。
-        JSONObject pipeOutputCmd = new JSONObject();
-        pipeOutputCmd.set("args", interactArgs);
-        pipeOutputCmd.set("env", interactEnvs);
-
-        JSONArray outFiles = new JSONArray();
-
-        JSONObject outStderr = new JSONObject();
-        outStderr.set("name", "stderr");
-        outStderr.set("max", 1024 * 1024 * STDIO_SIZE_MB);
-        outFiles.put(new JSONObject());
-        outFiles.put(new JSONObject());
-        outFiles.put(outStderr);
-        String outTmp = outFiles.toString().replace("{}", "null");
-        pipeOutputCmd.set("files", JSONUtil.parseArray(outTmp, false));
-
-        // ms-->ns
-        pipeOutputCmd.set("cpuLimit", userMaxTime * 1000 * 1000L * 2);
-        pipeOutputCmd.set("clockLimit", userMaxTime * 1000 * 1000L * 3 * 2);
-        // byte
-        pipeOutputCmd.set("memoryLimit", (userMaxMemory + 100) * 1024 * 1024L * 2);
-        pipeOutputCmd.set("procLimit", MAX_PROCESS_NUMBER);
-        pipeOutputCmd.set("stackLimit", STACK_LIMIT_MB * 1024 * 1024L);
-
-        JSONObject spjExeFile = new JSONObject();
-        spjExeFile.set("src", interactExeSrc);
-
-        JSONObject stdInputFileSrc = new JSONObject();
-        stdInputFileSrc.set("src", testCaseInputPath);
-
-        JSONObject stdOutFileSrc = new JSONObject();
-        stdOutFileSrc.set("src", testCaseOutputFilePath);
-
-        JSONObject interactiveCopyIn = new JSONObject();
-        interactiveCopyIn.set(interactExeName, spjExeFile);
-        interactiveCopyIn.set(testCaseInputFileName, stdInputFileSrc);
-        interactiveCopyIn.set(testCaseOutputFileName, stdOutFileSrc);
-
-        pipeOutputCmd.set("copyIn", interactiveCopyIn);
-        pipeOutputCmd.set("copyOut", new JSONArray().put(userOutputFileName));
-
-        JSONArray cmdList = new JSONArray();
-        cmdList.put(pipeInputCmd);
-        cmdList.put(pipeOutputCmd);
-
-        JSONObject param = new JSONObject();
-        // 添加cmd指令
-        param.set("cmd", cmdList);
-
-        // 添加管道映射
-        JSONArray pipeMapping = new JSONArray();
-        // 用户程序
-        JSONObject user = new JSONObject();
-
-        JSONObject userIn = new JSONObject();
-        userIn.set("index", 0);
-        userIn.set("fd", 1);
-
-        JSONObject userOut = new JSONObject();
-        userOut.set("index", 1);
-        userOut.set("fd", 0);
-
-        user.set("in", userIn);
-        user.set("out", userOut);
-        user.set("max", STDIO_SIZE_MB * 1024 * 1024);
-        user.set("proxy", true);
-        user.set("name", "stdout");
-
-        // 评测程序
-        JSONObject judge = new JSONObject();
-
-        JSONObject judgeIn = new JSONObject();
-        judgeIn.set("index", 1);
-        judgeIn.set("fd", 1);
-
-        JSONObject judgeOut = new JSONObject();
-        judgeOut.set("index", 0);
-        judgeOut.set("fd", 0);
-
-        judge.set("in", judgeIn);
-        judge.set("out", judgeOut);
-        judge.set("max", STDIO_SIZE_MB * 1024 * 1024);
-        judge.set("proxy", true);
-        judge.set("name", "stdout");
-
-        // 添加到管道映射列表
-        pipeMapping.add(user);
-        pipeMapping.add(judge);
-
-        param.set("pipeMapping", pipeMapping);
+        Map<String, SandboxFile> interactiveCopyIn = new HashMap<>();
+        interactiveCopyIn.put(interactExeName, SandboxFile.ofFileId(interactExeFileId));
+        interactiveCopyIn.put(testCaseInputFileName, SandboxFile.ofSrc(testCaseInputPath));
+        interactiveCopyIn.put(testCaseOutputFileName, SandboxFile.ofSrc(testCaseOutputFilePath));
+        SandboxCmd pipeOutputCmd = SandboxCmd.builder()
+                .args(interactArgs)
+                .env(interactEnvs)
+                .files(Arrays.asList(null, null, stderr))
+                // ms-->ns
+                .cpuLimit(userMaxTime * 1000 * 1000L * 2)
+                .clockLimit(userMaxTime * 1000 * 1000L * 3 * 2)
+                // byte
+                .memoryLimit((userMaxMemory + 100) * 1024 * 1024L * 2)
+                .procLimit(MAX_PROCESS_NUMBER)
+                .stackLimit(STACK_LIMIT_MB * 1024 * 1024L)
+                .copyIn(interactiveCopyIn)
+                .copyOut(List.of(userOutputFileName))
+                .build();
+
+        long pipeMax = STDIO_SIZE_MB * 1024 * 1024L;
+        SandboxRequest request = SandboxRequest.of(pipeInputCmd, pipeOutputCmd).setPipeMapping(List.of(
+                // 用户程序的标准输出连接到交互程序的标准输入
+                new SandboxPipeMap(new SandboxPipeMap.PipeIndex(0, 1), new SandboxPipeMap.PipeIndex(1, 0),
+                        pipeMax, true, "stdout"),
+                // 交互程序的标准输出连接到用户程序的标准输入
+                new SandboxPipeMap(new SandboxPipeMap.PipeIndex(1, 1), new SandboxPipeMap.PipeIndex(0, 0),
+                        pipeMax, true, "stdout")));
 
         // 调用判题安全沙箱
-        JSONArray result = INSTANCE.run("/run", param);
-        JSONObject userRes = (JSONObject) result.get(0);
-        JSONObject interactiveRes = (JSONObject) result.get(1);
-        userRes.set("status", RESULT_STATUS_MAP.get(userRes.getStr("status")));
-        interactiveRes.set("status", RESULT_STATUS_MAP.get(interactiveRes.getStr("status")));
-        return result;
+        return run(SandboxClient.CallType.RUN, request);
     }
+
 }
 /*
      1. compile
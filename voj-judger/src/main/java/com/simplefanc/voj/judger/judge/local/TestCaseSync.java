@@ -0,0 +1,371 @@
+package com.simplefanc.voj.judger.judge.local;
+
+import cn.hutool.core.io.FileUtil;
+import cn.hutool.core.io.file.FileReader;
+import cn.hutool.core.util.CharsetUtil;
+import cn.hutool.core.util.StrUtil;
+import cn.hutool.crypto.digest.DigestUtil;
+import cn.hutool.json.JSONArray;
+import cn.hutool.json.JSONObject;
+import cn.hutool.json.JSONUtil;
+import com.simplefanc.voj.judger.common.constants.JudgeDir;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.*;
+import org.springframework.http.client.SimpleClientHttpRequestFactory;
+import org.springframework.stereotype.Component;
+import org.springframework.util.StreamUtils;
+import org.springframework.web.client.RestClientResponseException;
+import org.springframework.web.client.RestTemplate;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * @Author: chenfan
+ * @Date: 2022/11/30 11:08
+ * @Description: 从后台服务按需拉取题目测试数据。测试数据文件以内容摘要(sha256)标识，
+ * 下载后保存在本地缓存目录中，题目测试数据文件夹中的文件是它们的硬链接，题目测试数据更新时只需下载内容有变化的文件。
+ * 超过容量上限时先删除没有题目引用的文件，再按最近使用时间淘汰整个同步生成的题目测试数据文件夹
+ */
+@Slf4j(topic = "voj")
+@Component
+public class TestCaseSync {
+
+    private static final String JUDGE_TOKEN_HEADER = "Judge-Token";
+
+    private static final String PART_FILE_SUFFIX = ".part";
+
+    /**
+     * 同步生成的题目测试数据文件夹中的标记文件，只有这样的文件夹会被淘汰，手动上传的测试数据不会被删除
+     */
+    private static final String SYNC_MARK_FILE_NAME = ".sync";
+
+    /**
+     * 最近使用过的缓存文件不会被淘汰，避免刚下载的文件在使用前被删除
+     */
+    private static final long EVICT_PROTECT_MILLIS = 10 * 60 * 1000L;
+
+    /**
+     * 超过容量上限时淘汰到上限的该比例以下
+     */
+    private static final double EVICT_TARGET_RATIO = 0.9;
+
+    private static final RestTemplate REST_TEMPLATE;
+
+    /**
+     * key: 题目id。评测期间持有读锁，同步、重新生成或淘汰题目测试数据文件夹时持有写锁
+     */
+    private static final Map<Long, ReentrantReadWriteLock> TEST_CASE_LOCK_MAP = new ConcurrentHashMap<>();
+
+    /**
+     * key: 题目id，value: 最近一次评测使用该题目测试数据的时间
+     */
+    private static final Map<Long, Long> LAST_USED_TIME_MAP = new ConcurrentHashMap<>();
+
+    private static final Object EVICT_LOCK = new Object();
+
+    static {
+        SimpleClientHttpRequestFactory requestFactory = new SimpleClientHttpRequestFactory();
+        requestFactory.setConnectTimeout(3000);
+        requestFactory.setReadTimeout(30000);
+        REST_TEMPLATE = new RestTemplate(requestFactory);
+    }
+
+    @Value("${voj.judge.token}")
+    private String judgeToken;
+
+    @Value("${voj-judge-server.test-case-cache-size:10240}")
+    private Long maxCacheSizeMb;
+
+    /**
+     * 题目测试数据文件夹的读写锁，同一题目共用一个
+     */
+    public ReentrantReadWriteLock getTestCaseLock(Long problemId) {
+        return TEST_CASE_LOCK_MAP.computeIfAbsent(problemId, key -> new ReentrantReadWriteLock());
+    }
+
+    /**
+     * 记录题目测试数据的使用时间，淘汰时优先淘汰最久未使用的题目
+     */
+    public void markUsed(Long problemId) {
+        LAST_USED_TIME_MAP.put(problemId, System.currentTimeMillis());
+    }
+
+    /**
+     * @param syncUrl      后台服务提供测试数据的地址，随评测任务下发
+     * @param problemId    题目id
+     * @param version      题目测试数据的版本
+     * @param testCasesDir 本地题目测试数据文件夹
+     * @MethodName sync
+     * @Description 从后台服务同步指定版本的测试数据到本地题目测试数据文件夹，info文件最后写入，调用方需持有该题目的写锁
+     * @Return 是否同步成功，失败时由调用方回退到从数据库初始化
+     * @Since 2022/11/30
+     */
+    public boolean sync(String syncUrl, Long problemId, String version, String testCasesDir) {
+        if (StrUtil.isEmpty(syncUrl)) {
+            return false;
+        }
+        try {
+            return doSync(syncUrl, problemId, version, testCasesDir);
+        } catch (Exception e) {
+            log.error("从后台服务[" + syncUrl + "]同步题目" + problemId + "的测试数据发生异常-------------->", e);
+            return false;
+        }
+    }
+
+    private boolean doSync(String syncUrl, Long problemId, String version, String testCasesDir) throws IOException {
+        HttpHeaders headers = new HttpHeaders();
+        headers.set(JUDGE_TOKEN_HEADER, judgeToken);
+        String manifest = REST_TEMPLATE.exchange(syncUrl + "/{0}/manifest", HttpMethod.GET,
+                new HttpEntity<>(headers), String.class, problemId).getBody();
+        if (StrUtil.isEmpty(manifest)) {
+            return false;
+        }
+        JSONObject testCaseInfo = JSONUtil.parseObj(manifest);
+        // 后台服务的测试数据还在异步初始化中
+        if (!version.equals(testCaseInfo.getStr("version", null))) {
+            log.warn("后台服务中题目{}的测试数据版本为{}，与评测所需版本{}不一致", problemId,
+                    testCaseInfo.getStr("version", null), version);
+            return false;
+        }
+
+        // key: 测试数据文件名，value: 本地缓存文件
+        Map<String, File> fileMap = new HashMap<>();
+        boolean downloaded = false;
+        JSONArray testCases = testCaseInfo.getJSONArray("testCases");
+        for (int index = 0; index < testCases.size(); index++) {
+            JSONObject testCase = testCases.getJSONObject(index);
+            String inputHash = testCase.getStr("inputHash");
+            String outputHash = testCase.getStr("outputHash");
+            // 旧版本生成的测试数据没有内容摘要
+            if (StrUtil.isEmpty(inputHash) || StrUtil.isEmpty(outputHash)) {
+                return false;
+            }
+            downloaded |= fetchBlob(syncUrl, problemId, inputHash);
+            downloaded |= fetchBlob(syncUrl, problemId, outputHash);
+            fileMap.put(testCase.getStr("inputName"), getBlobFile(inputHash));
+            fileMap.put(testCase.getStr("outputName"), getBlobFile(outputHash));
+        }
+
+        // 重新生成题目测试数据文件夹，info文件存在即表示测试数据完整
+        FileUtil.del(testCasesDir);
+        FileUtil.mkdir(testCasesDir);
+        for (Map.Entry<String, File> entry : fileMap.entrySet()) {
+            linkOrCopy(entry.getValue(), new File(testCasesDir + File.separator + entry.getKey()));
+        }
+        FileUtil.touch(testCasesDir + File.separator + SYNC_MARK_FILE_NAME);
+        FileUtil.writeUtf8String(manifest, testCasesDir + File.separator + "info");
+
+        if (downloaded) {
+            evictIfNecessary(problemId);
+        }
+        return true;
+    }
+
+    /**
+     * 本地缓存中没有该文件时从后台服务下载，已下载部分的文件支持断点续传
+     *
+     * @param syncUrl
+     * @param problemId
+     * @param hash
+     * @return 是否进行了下载
+     * @throws IOException
+     */
+    private boolean fetchBlob(String syncUrl, Long problemId, String hash) throws IOException {
+        File blobFile = getBlobFile(hash);
+        if (blobFile.exists()) {
+            // 更新最近使用时间
+            blobFile.setLastModified(System.currentTimeMillis());
+            return false;
+        }
+        File partFile = new File(blobFile.getPath() + PART_FILE_SUFFIX);
+        FileUtil.mkParentDirs(partFile);
+        long downloadedSize = partFile.exists() ? partFile.length() : 0L;
+        try {
+            REST_TEMPLATE.execute(syncUrl + "/{0}/blob/{1}", HttpMethod.GET, request -> {
+                request.getHeaders().set(JUDGE_TOKEN_HEADER, judgeToken);
+                if (downloadedSize > 0) {
+                    request.getHeaders().setRange(Collections.singletonList(HttpRange.createByteRange(downloadedSize)));
+                }
+            }, response -> {
+                // 返回206时从断点处追加，否则重新下载整个文件
+                boolean append = response.getStatusCode() == HttpStatus.PARTIAL_CONTENT;
+                try (OutputStream out = new FileOutputStream(partFile, append)) {
+                    StreamUtils.copy(response.getBody(), out);
+                }
+                return null;
+            }, problemId, hash);
+        } catch (RestClientResponseException e) {
+            // 416说明之前已下载完整，交由下面的摘要校验
+            if (e.getRawStatusCode() != HttpStatus.REQUESTED_RANGE_NOT_SATISFIABLE.value()) {
+                throw e;
+            }
+        }
+        if (!hash.equals(DigestUtil.sha256Hex(partFile))) {
+            FileUtil.del(partFile);
+            throw new IOException("The content of test case file " + hash + " is inconsistent with its hash.");
+        }
+        Files.move(partFile.toPath(), blobFile.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                StandardCopyOption.ATOMIC_MOVE);
+        return true;
+    }
+
+    private File getBlobFile(String hash) {
+        return new File(JudgeDir.TEST_CASE_BLOB_DIR + File.separator + hash.substring(0, 2) + File.separator + hash);
+    }
+
+    /**
+     * 优先使用硬链接，避免同一份数据在磁盘上存两份，不在同一文件系统时再复制
+     */
+    private void linkOrCopy(File blobFile, File target) throws IOException {
+        try {
+            Files.createLink(target.toPath(), blobFile.toPath());
+        } catch (UnsupportedOperationException | IOException e) {
+            Files.copy(blobFile.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    /**
+     * 本地缓存超过容量上限时，先按最近使用时间从旧到新删除没有题目引用的文件，仍超过时再淘汰最久未使用的同步生成的题目测试数据文件夹。
+     * 题目测试数据文件夹中的硬链接会让文件继续占用磁盘，只有链接数为1的文件删除后才真正释放空间
+     *
+     * @param currentProblemId 当前正在同步的题目，调用方已持有其写锁，不淘汰
+     */
+    private void evictIfNecessary(Long currentProblemId) {
+        synchronized (EVICT_LOCK) {
+            List<File> blobFiles = FileUtil.loopFiles(JudgeDir.TEST_CASE_BLOB_DIR,
+                    file -> !file.getName().endsWith(PART_FILE_SUFFIX));
+            long totalSize = blobFiles.stream().mapToLong(File::length).sum();
+            long maxSize = maxCacheSizeMb * 1024 * 1024;
+            if (totalSize <= maxSize) {
+                return;
+            }
+            long targetSize = (long) (maxSize * EVICT_TARGET_RATIO);
+            long protectTime = System.currentTimeMillis() - EVICT_PROTECT_MILLIS;
+
+            blobFiles.sort(Comparator.comparingLong(File::lastModified));
+            for (File blobFile : blobFiles) {
+                if (totalSize <= targetSize) {
+                    break;
+                }
+                // 刚下载的文件可能还没有链接到题目测试数据文件夹
+                if (blobFile.lastModified() <= protectTime && getLinkCount(blobFile) <= 1) {
+                    totalSize -= blobFile.length();
+                    FileUtil.del(blobFile);
+                }
+            }
+
+            for (File problemDir : getSyncedProblemDirs()) {
+                if (totalSize <= targetSize) {
+                    break;
+                }
+                Long problemId = getProblemId(problemDir);
+                if (problemId == null || problemId.equals(currentProblemId)
+                        || getLastUsedTime(problemId, problemDir) > protectTime) {
+                    continue;
+                }
+                ReentrantReadWriteLock.WriteLock writeLock = getTestCaseLock(problemId).writeLock();
+                // 正在评测的题目不淘汰
+                if (!writeLock.tryLock()) {
+                    continue;
+                }
+                try {
+                    totalSize -= deleteProblemDir(problemDir);
+                } finally {
+                    writeLock.unlock();
+                }
+            }
+            log.info("测试数据本地缓存淘汰完成，当前占用{}MB", totalSize / 1024 / 1024);
+        }
+    }
+
+    /**
+     * 按最近使用时间从旧到新排列的同步生成的题目测试数据文件夹
+     */
+    private List<File> getSyncedProblemDirs() {
+        File[] dirs = new File(JudgeDir.TEST_CASE_DIR).listFiles(file -> file.isDirectory()
+                && new File(file, SYNC_MARK_FILE_NAME).exists());
+        if (dirs == null) {
+            return Collections.emptyList();
+        }
+        List<File> problemDirs = new ArrayList<>(Arrays.asList(dirs));
+        Map<File, Long> lastUsedTimeMap = new HashMap<>();
+        for (File problemDir : problemDirs) {
+            Long problemId = getProblemId(problemDir);
+            lastUsedTimeMap.put(problemDir, problemId == null ? 0L : getLastUsedTime(problemId, problemDir));
+        }
+        problemDirs.sort(Comparator.comparingLong(lastUsedTimeMap::get));
+        return problemDirs;
+    }
+
+    /**
+     * 删除题目测试数据文件夹，并删除因此不再被任何题目引用的文件
+     *
+     * @return 释放的缓存大小
+     */
+    private long deleteProblemDir(File problemDir) {
+        Set<File> linkedBlobFiles = new HashSet<>();
+        File infoFile = new File(problemDir, "info");
+        if (infoFile.exists()) {
+            JSONArray testCases = JSONUtil.parseObj(new FileReader(infoFile, CharsetUtil.UTF_8).readString())
+                    .getJSONArray("testCases");
+            for (int index = 0; testCases != null && index < testCases.size(); index++) {
+                JSONObject testCase = testCases.getJSONObject(index);
+                for (String hash : Arrays.asList(testCase.getStr("inputHash"), testCase.getStr("outputHash"))) {
+                    if (!StrUtil.isEmpty(hash)) {
+                        linkedBlobFiles.add(getBlobFile(hash));
+                    }
+                }
+            }
+        }
+        FileUtil.del(problemDir);
+        long freedSize = 0L;
+        for (File blobFile : linkedBlobFiles) {
+            if (blobFile.exists() && getLinkCount(blobFile) <= 1) {
+                freedSize += blobFile.length();
+                FileUtil.del(blobFile);
+            }
+        }
+        return freedSize;
+    }
+
+    private Long getProblemId(File problemDir) {
+        String name = problemDir.getName();
+        if (!name.startsWith("problem_")) {
+            return null;
+        }
+        try {
+            return Long.valueOf(name.substring("problem_".length()));
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    /**
+     * 判题机重启后没有内存中的使用记录，以同步时间代替
+     */
+    private long getLastUsedTime(Long problemId, File problemDir) {
+        Long lastUsedTime = LAST_USED_TIME_MAP.get(problemId);
+        return lastUsedTime != null ? lastUsedTime : new File(problemDir, SYNC_MARK_FILE_NAME).lastModified();
+    }
+
+    /**
+     * 文件的硬链接数，不支持时按1处理（此时题目测试数据文件夹中的是复制的文件）
+     */
+    private int getLinkCount(File file) {
+        try {
+            return (Integer) Files.getAttribute(file.toPath(), "unix:nlink");
+        } catch (UnsupportedOperationException | IllegalArgumentException | IOException e) {
+            return 1;
+        }
+    }
+
+}
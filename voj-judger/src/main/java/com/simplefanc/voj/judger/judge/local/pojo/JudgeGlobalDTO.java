@@ -1,6 +1,5 @@
 package com.simplefanc.voj.judger.judge.local.pojo;
 
-import cn.hutool.json.JSONObject;
 import com.simplefanc.voj.common.constants.JudgeMode;
 import com.simplefanc.voj.judger.common.constants.RunConfig;
 import lombok.Builder;
@@ -44,6 +43,11 @@ public class JudgeGlobalDTO implements Serializable {
      */
     private Long problemId;
 
+    /**
+     * 当前评测题目的测试数据版本
+     */
+    private String caseVersion;
+
     /**
      * 当前评测题目的模式
      */
@@ -90,9 +94,9 @@ public class JudgeGlobalDTO implements Serializable {
     String testCasesDir;
 
     /**
-     * 评测数据json内容
+     * 评测数据的描述信息
      */
-    private JSONObject testCaseInfo;
+    private TestCaseInfo testCaseInfo;
 
     /**
      * 交互程序或特判程序所需的额外文件 key:文件名，value：文件路径
@@ -104,6 +108,11 @@ public class JudgeGlobalDTO implements Serializable {
      */
     private Boolean needUserOutputFile;
 
+    /**
+     * 运行用户程序的沙箱命令模板，同一提交的各测试点共用，首次评测测试点时生成
+     */
+    private volatile SandboxCmd runCmdTemplate;
+
     /**
      * 是否需要自动移除评测数据的行末空格
      */
@@ -41,6 +41,11 @@ public class SandBoxRes {
      */
     private String stdout;
 
+    /**
+     * 单个程序的标准输出缓存在沙箱中的文件id，标准输出未缓存时为null
+     */
+    private String stdoutFileId;
+
     /**
      * 单个程序的错误信息
      */
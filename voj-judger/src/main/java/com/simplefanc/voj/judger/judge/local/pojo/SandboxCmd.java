@@ -0,0 +1,66 @@
+package com.simplefanc.voj.judger.judge.local.pojo;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import lombok.Builder;
+import lombok.Data;
+
+import java.io.Serializable;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * @Author: chenfan
+ * @Date: 2022/12/11 9:25
+ * @Description: 沙箱/run请求中的一条命令，只序列化非空字段。同一提交各测试点的命令只有files不同，
+ * 可先生成不含files的模板，再通过toBuilder填入各测试点的输入输出
+ */
+@Data
+@Builder(toBuilder = true)
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class SandboxCmd implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    private List<String> args;
+
+    private List<String> env;
+
+    /**
+     * 依次对应程序的文件描述符0、1、2，使用管道时为null
+     */
+    private List<SandboxFile> files;
+
+    /**
+     * ns
+     */
+    private Long cpuLimit;
+
+    /**
+     * ns
+     */
+    private Long clockLimit;
+
+    /**
+     * b
+     */
+    private Long memoryLimit;
+
+    private Integer procLimit;
+
+    /**
+     * b
+     */
+    private Long stackLimit;
+
+    /**
+     * key: 复制到沙箱容器中的文件名
+     */
+    private Map<String, SandboxFile> copyIn;
+
+    private List<String> copyOut;
+
+    private List<String> copyOutCached;
+
+    private String copyOutDir;
+
+}
@@ -0,0 +1,62 @@
+package com.simplefanc.voj.judger.judge.local.pojo;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import lombok.Data;
+import lombok.experimental.Accessors;
+
+import java.io.Serializable;
+
+/**
+ * @Author: chenfan
+ * @Date: 2022/12/11 9:20
+ * @Description: 沙箱命令中的文件，可以是内存中的内容、判题机本地文件、沙箱中缓存的文件或标准输出与错误输出的收集器，只序列化非空字段
+ */
+@Data
+@Accessors(chain = true)
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class SandboxFile implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * 文件内容
+     */
+    private String content;
+
+    /**
+     * 判题机本地文件的绝对路径
+     */
+    private String src;
+
+    /**
+     * 沙箱中缓存的文件id
+     */
+    private String fileId;
+
+    /**
+     * 收集器的名字，如stdout、stderr
+     */
+    private String name;
+
+    /**
+     * 收集器最多收集的字节数
+     */
+    private Long max;
+
+    public static SandboxFile ofContent(String content) {
+        return new SandboxFile().setContent(content);
+    }
+
+    public static SandboxFile ofSrc(String src) {
+        return new SandboxFile().setSrc(src);
+    }
+
+    public static SandboxFile ofFileId(String fileId) {
+        return new SandboxFile().setFileId(fileId);
+    }
+
+    public static SandboxFile collector(String name, long max) {
+        return new SandboxFile().setName(name).setMax(max);
+    }
+
+}
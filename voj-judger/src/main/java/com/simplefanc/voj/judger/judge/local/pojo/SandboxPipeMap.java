@@ -0,0 +1,49 @@
+package com.simplefanc.voj.judger.judge.local.pojo;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+/**
+ * @Author: chenfan
+ * @Date: 2022/12/11 9:30
+ * @Description: 交互评测中两条命令之间的管道映射，in的输出连接到out的输入
+ */
+@Data
+@AllArgsConstructor
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class SandboxPipeMap {
+
+    private PipeIndex in;
+
+    private PipeIndex out;
+
+    /**
+     * 经过代理时最多收集的字节数
+     */
+    private Long max;
+
+    /**
+     * 是否经过代理，经过代理时可收集管道中的数据
+     */
+    private Boolean proxy;
+
+    private String name;
+
+    @Data
+    @AllArgsConstructor
+    public static class PipeIndex {
+
+        /**
+         * 命令在cmd中的下标
+         */
+        private Integer index;
+
+        /**
+         * 文件描述符
+         */
+        private Integer fd;
+
+    }
+
+}
@@ -0,0 +1,27 @@
+package com.simplefanc.voj.judger.judge.local.pojo;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import lombok.Data;
+import lombok.experimental.Accessors;
+
+import java.util.List;
+
+/**
+ * @Author: chenfan
+ * @Date: 2022/12/11 9:32
+ * @Description: 沙箱/run接口的请求体
+ */
+@Data
+@Accessors(chain = true)
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class SandboxRequest {
+
+    private List<SandboxCmd> cmd;
+
+    private List<SandboxPipeMap> pipeMapping;
+
+    public static SandboxRequest of(SandboxCmd... cmd) {
+        return new SandboxRequest().setCmd(List.of(cmd));
+    }
+
+}
@@ -0,0 +1,66 @@
+package com.simplefanc.voj.judger.judge.local.pojo;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import lombok.Data;
+
+import java.util.Map;
+
+/**
+ * @Author: chenfan
+ * @Date: 2022/12/11 9:35
+ * @Description: 沙箱/run接口返回的单条命令的运行结果
+ */
+@Data
+@JsonIgnoreProperties(ignoreUnknown = true)
+public class SandboxResult {
+
+    /**
+     * 沙箱的运行状态，如Accepted、Time Limit Exceeded
+     */
+    private String status;
+
+    private Integer exitStatus;
+
+    private String error;
+
+    /**
+     * cpu时间 ns
+     */
+    private Long time;
+
+    /**
+     * b
+     */
+    private Long memory;
+
+    /**
+     * 真实时间 ns
+     */
+    private Long runTime;
+
+    /**
+     * copyOut的文件内容 key:文件名
+     */
+    private Map<String, String> files;
+
+    /**
+     * copyOutCached的文件id key:文件名
+     */
+    private Map<String, String> fileIds;
+
+    /**
+     * status对应的评测状态码，由SandboxRun填入
+     */
+    @JsonIgnore
+    private Integer judgeStatus;
+
+    public String getFile(String name) {
+        return files == null ? null : files.get(name);
+    }
+
+    public String getFileId(String name) {
+        return fileIds == null ? null : fileIds.get(name);
+    }
+
+}
@@ -0,0 +1,101 @@
+package com.simplefanc.voj.judger.judge.local.pojo;
+
+import lombok.Data;
+import lombok.experimental.Accessors;
+
+import java.io.Serializable;
+import java.util.List;
+
+/**
+ * @Author: chenfan
+ * @Date: 2022/11/29 20:15
+ * @Description: 题目测试数据的描述信息，对应测试数据文件夹下的info文件
+ */
+@Data
+@Accessors(chain = true)
+public class TestCaseInfo implements Serializable {
+
+    private static final long serialVersionUID = 666L;
+
+    /**
+     * 题目的评测模式
+     */
+    private String mode;
+
+    /**
+     * 测试数据的版本，与题目的caseVersion一致
+     */
+    private String version;
+
+    /**
+     * 测试点数量
+     */
+    private Integer testCasesSize;
+
+    /**
+     * 各测试点的描述信息，按测试点编号顺序排列
+     */
+    private List<TestCase> testCases;
+
+    @Data
+    @Accessors(chain = true)
+    public static class TestCase implements Serializable {
+
+        private static final long serialVersionUID = 666L;
+
+        /**
+         * 数据库表的测试样例id
+         */
+        private Long caseId;
+
+        /**
+         * 该测试点的满分
+         */
+        private Integer score;
+
+        /**
+         * 输入文件名
+         */
+        private String inputName;
+
+        /**
+         * 输出文件名
+         */
+        private String outputName;
+
+        /**
+         * 输入文件的内容摘要 sha256，由后台服务生成
+         */
+        private String inputHash;
+
+        /**
+         * 输入文件大小 b
+         */
+        private Long inputSize;
+
+        /**
+         * 输出文件的内容摘要 sha256，由后台服务生成
+         */
+        private String outputHash;
+
+        /**
+         * 输出文件大小 b，非普通评测时为空
+         */
+        private Long outputSize;
+
+        /**
+         * 输出数据的MD5
+         */
+        private String outputMd5;
+
+        /**
+         * 去掉全部空白符后输出数据的MD5
+         */
+        private String allStrippedOutputMd5;
+
+        /**
+         * 去掉行末空白符后输出数据的MD5
+         */
+        private String eofStrippedOutputMd5;
+    }
+}
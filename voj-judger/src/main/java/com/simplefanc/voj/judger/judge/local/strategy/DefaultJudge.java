@@ -1,21 +1,23 @@
 package com.simplefanc.voj.judger.judge.local.strategy;
 
+import cn.hutool.core.io.FileUtil;
 import cn.hutool.core.util.StrUtil;
-import cn.hutool.json.JSONArray;
 import cn.hutool.json.JSONObject;
 import com.simplefanc.voj.common.constants.JudgeStatus;
-import com.simplefanc.voj.judger.common.constants.RunConfig;
 import com.simplefanc.voj.judger.common.exception.SystemException;
 import com.simplefanc.voj.judger.judge.local.AbstractJudge;
+import com.simplefanc.voj.judger.judge.local.OutputComparator;
 import com.simplefanc.voj.judger.judge.local.SandboxRun;
 import com.simplefanc.voj.judger.judge.local.pojo.JudgeDTO;
 import com.simplefanc.voj.judger.judge.local.pojo.JudgeGlobalDTO;
 import com.simplefanc.voj.judger.judge.local.pojo.SandBoxRes;
+import com.simplefanc.voj.judger.judge.local.pojo.SandboxResult;
 import org.springframework.stereotype.Component;
-import org.springframework.util.DigestUtils;
 
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
 import java.util.List;
-import java.util.regex.Pattern;
 
 /**
  * @Author: chenfan
@@ -24,20 +26,29 @@ import java.util.regex.Pattern;
  */
 @Component
 public class DefaultJudge extends AbstractJudge {
-    private final static Pattern EOL_PATTERN = Pattern.compile("[^\\S\\n]+(?=\\n)");
 
     @Override
-    public JSONArray judgeCase(JudgeDTO judgeDTO, JudgeGlobalDTO judgeGlobalDTO) throws SystemException {
-        RunConfig runConfig = judgeGlobalDTO.getRunConfig();
-        // 调用安全沙箱使用测试点对程序进行测试
-        final List<String> args = parseRunCommand(runConfig, null, null, null);
-        return SandboxRun.testCase(args, runConfig.getEnvs(), judgeDTO.getTestCaseInputPath(), judgeGlobalDTO.getTestTime(),
-                judgeGlobalDTO.getMaxMemory(), judgeDTO.getMaxOutputSize(), judgeGlobalDTO.getMaxStack(),
-                runConfig.getExeName(), judgeGlobalDTO.getUserFileId(), judgeGlobalDTO.getUserFileSrc());
+    public List<SandboxResult> judgeCase(JudgeDTO judgeDTO, JudgeGlobalDTO judgeGlobalDTO) throws SystemException {
+        // 调用安全沙箱使用测试点对程序进行测试，标准输出缓存在沙箱中，只有运行通过需要比对时才以流的方式下载
+        return SandboxRun.testCase(getRunCmdTemplate(judgeGlobalDTO), judgeDTO.getTestCaseInputPath(),
+                judgeDTO.getMaxOutputSize());
     }
 
     @Override
-    public JSONObject processResult(SandBoxRes sandBoxRes, JudgeDTO judgeDTO, JudgeGlobalDTO judgeGlobalDTO) {
+    public JSONObject processResult(SandBoxRes sandBoxRes, JudgeDTO judgeDTO, JudgeGlobalDTO judgeGlobalDTO)
+            throws SystemException {
+        try {
+            return doProcessResult(sandBoxRes, judgeDTO, judgeGlobalDTO);
+        } finally {
+            // 删除沙箱中缓存的用户输出
+            if (!StrUtil.isEmpty(sandBoxRes.getStdoutFileId())) {
+                SandboxRun.delFile(sandBoxRes.getStdoutFileId());
+            }
+        }
+    }
+
+    private JSONObject doProcessResult(SandBoxRes sandBoxRes, JudgeDTO judgeDTO, JudgeGlobalDTO judgeGlobalDTO)
+            throws SystemException {
         JSONObject result = new JSONObject();
 
         StringBuilder errMsg = new StringBuilder();
@@ -63,9 +74,10 @@ public class DefaultJudge extends AbstractJudge {
             result.set("errMsg", str.substring(0, Math.min(1024 * 1024, str.length())));
         }
 
-        // 如果需要获取用户对于该题目的输出
-        if (judgeGlobalDTO.getNeedUserOutputFile()) {
-            result.set("output", sandBoxRes.getStdout());
+        // 如果需要获取用户对于该题目的输出，超过阈值的部分不放入结果
+        if (judgeGlobalDTO.getNeedUserOutputFile() && !StrUtil.isEmpty(sandBoxRes.getStdoutFileId())) {
+            result.set("output",
+                    SandboxRun.readFileHead(sandBoxRes.getStdoutFileId(), SandboxRun.STDOUT_INLINE_MAX_SIZE));
         }
 
         return result;
@@ -82,18 +94,16 @@ public class DefaultJudge extends AbstractJudge {
     }
 
 
-    private void success(SandBoxRes sandBoxRes, JudgeDTO judgeDTO, JudgeGlobalDTO judgeGlobalDTO, JSONObject result) {
+    private void success(SandBoxRes sandBoxRes, JudgeDTO judgeDTO, JudgeGlobalDTO judgeGlobalDTO, JSONObject result)
+            throws SystemException {
         // 对结果的时间损耗和空间损耗与题目限制做比较，判断是否mle和tle
         if (sandBoxRes.getTime() > judgeGlobalDTO.getMaxTime()) {
             result.set("status", JudgeStatus.STATUS_TIME_LIMIT_EXCEEDED.getStatus());
         } else if (sandBoxRes.getMemory() > judgeGlobalDTO.getMaxMemory() * 1024) {
             result.set("status", JudgeStatus.STATUS_MEMORY_LIMIT_EXCEEDED.getStatus());
         } else {
-            // 与原测试数据输出的md5进行对比 AC或者是WA
-            JSONObject testcaseInfo = (JSONObject) ((JSONArray) judgeGlobalDTO.getTestCaseInfo().get("testCases"))
-                    .get(judgeDTO.getTestCaseNum() - 1);
-            result.set("status",
-                    compareOutput(sandBoxRes.getStdout(), judgeGlobalDTO.getRemoveEOLBlank(), testcaseInfo));
+            // 与原测试数据输出进行流式比对 AC、PE或者是WA
+            result.set("status", compareOutput(sandBoxRes, judgeDTO, judgeGlobalDTO));
         }
     }
 
@@ -104,47 +114,38 @@ public class DefaultJudge extends AbstractJudge {
     }
 
     /**
-     * 根据评测结果与用户程序输出的字符串MD5进行对比
+     * 将用户程序输出与题目标准输出文件进行流式比对，标准输出缓存在沙箱中时先下载到评测工作目录
      *
-     * @param userOutput
-     * @param isRemoveEOLBlank
-     * @param testcaseInfo
+     * @param sandBoxRes
+     * @param judgeDTO
+     * @param judgeGlobalDTO
      * @return
      */
-    private Integer compareOutput(String userOutput, Boolean isRemoveEOLBlank, JSONObject testcaseInfo) {
-        // 如果当前题目选择默认去掉字符串末位空格
-        if (isRemoveEOLBlank) {
-            String userOutputMd5 = DigestUtils.md5DigestAsHex(rtrim(userOutput).getBytes());
-            if (userOutputMd5.equals(testcaseInfo.getStr("EOFStrippedOutputMd5"))) {
-                return JudgeStatus.STATUS_ACCEPTED.getStatus();
+    private Integer compareOutput(SandBoxRes sandBoxRes, JudgeDTO judgeDTO, JudgeGlobalDTO judgeGlobalDTO)
+            throws SystemException {
+        OutputComparator.OutputSource expectedOutput = OutputComparator.OutputSource
+                .of(new File(judgeDTO.getTestCaseOutputPath()));
+        File userOutputFile = null;
+        try {
+            OutputComparator.OutputSource userOutput;
+            if (!StrUtil.isEmpty(sandBoxRes.getStdoutFileId())) {
+                userOutputFile = new File(judgeGlobalDTO.getRunDir() + File.separator + judgeDTO.getTestCaseNum()
+                        + ".out");
+                SandboxRun.downloadFile(sandBoxRes.getStdoutFileId(), userOutputFile);
+                userOutput = OutputComparator.OutputSource.of(userOutputFile);
+            } else {
+                String stdout = StrUtil.nullToEmpty(sandBoxRes.getStdout());
+                userOutput = OutputComparator.OutputSource.of(stdout.getBytes(StandardCharsets.UTF_8));
+            }
+            return OutputComparator.compare(userOutput, expectedOutput, judgeGlobalDTO.getRemoveEOLBlank());
+        } catch (IOException e) {
+            throw new SystemException("Compare the output of test case " + judgeDTO.getTestCaseNum() + " error.",
+                    null, e.getMessage());
+        } finally {
+            if (userOutputFile != null) {
+                FileUtil.del(userOutputFile);
             }
-            return JudgeStatus.STATUS_WRONG_ANSWER.getStatus();
-        }
-        // 不选择默认去掉文末空格 与原数据进行对比
-        String userOutputMd5 = DigestUtils.md5DigestAsHex(userOutput.getBytes());
-        if (userOutputMd5.equals(testcaseInfo.getStr("outputMd5"))) {
-            return JudgeStatus.STATUS_ACCEPTED.getStatus();
-        }
-        // 如果不AC, 进行PE判断, 否则为WA
-        userOutputMd5 = DigestUtils.md5DigestAsHex(userOutput.replaceAll("\\s+", "").getBytes());
-        if (userOutputMd5.equals(testcaseInfo.getStr("allStrippedOutputMd5"))) {
-            return JudgeStatus.STATUS_PRESENTATION_ERROR.getStatus();
-        }
-        return JudgeStatus.STATUS_WRONG_ANSWER.getStatus();
-    }
-
-
-    /**
-     * 去除行末尾空白符
-     *
-     * @param value
-     * @return
-     */
-    private String rtrim(String value) {
-        if (value == null) {
-            return null;
         }
-        return EOL_PATTERN.matcher(StrUtil.trimEnd(value)).replaceAll("");
     }
 
 }
\ No newline at end of file
@@ -2,20 +2,21 @@ package com.simplefanc.voj.judger.judge.local.strategy;
 
 import cn.hutool.core.util.NumberUtil;
 import cn.hutool.core.util.StrUtil;
-import cn.hutool.json.JSONArray;
 import cn.hutool.json.JSONObject;
 import com.simplefanc.voj.common.constants.JudgeStatus;
 import com.simplefanc.voj.judger.common.constants.JudgeDir;
 import com.simplefanc.voj.judger.common.constants.RunConfig;
 import com.simplefanc.voj.judger.common.exception.SystemException;
 import com.simplefanc.voj.judger.judge.local.AbstractJudge;
+import com.simplefanc.voj.judger.judge.local.CheckerFileCache;
 import com.simplefanc.voj.judger.judge.local.SandboxRun;
 import com.simplefanc.voj.judger.judge.local.pojo.JudgeDTO;
 import com.simplefanc.voj.judger.judge.local.pojo.JudgeGlobalDTO;
 import com.simplefanc.voj.judger.judge.local.pojo.SandBoxRes;
+import com.simplefanc.voj.judger.judge.local.pojo.SandboxResult;
 import org.springframework.stereotype.Component;
 
-import java.io.File;
+import java.util.List;
 
 /**
  * @Author: chenfan
@@ -26,14 +27,14 @@ import java.io.File;
 public class InteractiveJudge extends AbstractJudge {
 
     @Override
-    public JSONArray judgeCase(JudgeDTO judgeDTO, JudgeGlobalDTO judgeGlobalDTO) throws SystemException {
+    public List<SandboxResult> judgeCase(JudgeDTO judgeDTO, JudgeGlobalDTO judgeGlobalDTO) throws SystemException {
 
         RunConfig runConfig = judgeGlobalDTO.getRunConfig();
         RunConfig interactiveRunConfig = judgeGlobalDTO.getInteractiveRunConfig();
 
-        // 交互程序的路径
-        String interactiveExeSrc = JudgeDir.INTERACTIVE_WORKPLACE_DIR + File.separator + judgeGlobalDTO.getProblemId()
-                + File.separator + interactiveRunConfig.getExeName();
+        // 交互程序在沙箱中的文件id
+        String interactiveExeFileId = CheckerFileCache.getFileId(JudgeDir.INTERACTIVE_WORKPLACE_DIR,
+                judgeGlobalDTO.getProblemId(), judgeGlobalDTO.getCaseVersion(), interactiveRunConfig.getExeName());
 
         String testCaseInputFileName = judgeGlobalDTO.getProblemId() + "_input";
         String testCaseOutputFileName = judgeGlobalDTO.getProblemId() + "_output";
@@ -47,7 +48,7 @@ public class InteractiveJudge extends AbstractJudge {
                 judgeDTO.getTestCaseOutputPath(), testCaseOutputFileName, userOutputFileName,
                 parseRunCommand(interactiveRunConfig, testCaseInputFileName,
                         userOutputFileName, testCaseOutputFileName),
-                interactiveRunConfig.getEnvs(), interactiveExeSrc, interactiveRunConfig.getExeName());
+                interactiveRunConfig.getEnvs(), interactiveExeFileId, interactiveRunConfig.getExeName());
     }
 
     @Override
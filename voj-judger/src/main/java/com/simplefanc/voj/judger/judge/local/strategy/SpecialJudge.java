@@ -1,23 +1,22 @@
 package com.simplefanc.voj.judger.judge.local.strategy;
 
-import cn.hutool.core.io.FileUtil;
-import cn.hutool.core.io.file.FileWriter;
 import cn.hutool.core.util.NumberUtil;
 import cn.hutool.core.util.StrUtil;
-import cn.hutool.json.JSONArray;
 import cn.hutool.json.JSONObject;
 import com.simplefanc.voj.common.constants.JudgeStatus;
 import com.simplefanc.voj.judger.common.constants.JudgeDir;
 import com.simplefanc.voj.judger.common.constants.RunConfig;
 import com.simplefanc.voj.judger.common.exception.SystemException;
 import com.simplefanc.voj.judger.judge.local.AbstractJudge;
+import com.simplefanc.voj.judger.judge.local.CheckerFileCache;
 import com.simplefanc.voj.judger.judge.local.SandboxRun;
 import com.simplefanc.voj.judger.judge.local.pojo.JudgeDTO;
 import com.simplefanc.voj.judger.judge.local.pojo.JudgeGlobalDTO;
 import com.simplefanc.voj.judger.judge.local.pojo.SandBoxRes;
+import com.simplefanc.voj.judger.judge.local.pojo.SandboxResult;
 import org.springframework.stereotype.Component;
 
-import java.io.File;
+import java.util.List;
 
 /**
  * @Author: chenfan
@@ -29,13 +28,10 @@ import java.io.File;
 public class SpecialJudge extends AbstractJudge {
 
     @Override
-    public JSONArray judgeCase(JudgeDTO judgeDTO, JudgeGlobalDTO judgeGlobalDTO) throws SystemException {
-        RunConfig runConfig = judgeGlobalDTO.getRunConfig();
-        // 调用安全沙箱使用测试点对程序进行测试
-        return SandboxRun.testCase(parseRunCommand(runConfig, null, null, null),
-                runConfig.getEnvs(), judgeDTO.getTestCaseInputPath(), judgeGlobalDTO.getTestTime(),
-                judgeGlobalDTO.getMaxMemory(), judgeDTO.getMaxOutputSize(), judgeGlobalDTO.getMaxStack(),
-                runConfig.getExeName(), judgeGlobalDTO.getUserFileId(), judgeGlobalDTO.getUserFileSrc());
+    public List<SandboxResult> judgeCase(JudgeDTO judgeDTO, JudgeGlobalDTO judgeGlobalDTO) throws SystemException {
+        // 调用安全沙箱使用测试点对程序进行测试，用户输出缓存在沙箱中供特判程序直接使用
+        return SandboxRun.testCase(getRunCmdTemplate(judgeGlobalDTO), judgeDTO.getTestCaseInputPath(),
+                judgeDTO.getMaxOutputSize());
     }
 
     @Override
@@ -47,7 +43,18 @@ public class SpecialJudge extends AbstractJudge {
     @Override
     public JSONObject processResult(SandBoxRes sandBoxRes, JudgeDTO judgeDTO, JudgeGlobalDTO judgeGlobalDTO)
             throws SystemException {
+        try {
+            return doProcessResult(sandBoxRes, judgeDTO, judgeGlobalDTO);
+        } finally {
+            // 删除沙箱中缓存的用户输出
+            if (!StrUtil.isEmpty(sandBoxRes.getStdoutFileId())) {
+                SandboxRun.delFile(sandBoxRes.getStdoutFileId());
+            }
+        }
+    }
 
+    private JSONObject doProcessResult(SandBoxRes sandBoxRes, JudgeDTO judgeDTO, JudgeGlobalDTO judgeGlobalDTO)
+            throws SystemException {
         JSONObject result = new JSONObject();
         StringBuilder errMsg = new StringBuilder();
         // 如果测试跑题无异常
@@ -92,28 +99,19 @@ public class SpecialJudge extends AbstractJudge {
         } else if (sandBoxRes.getMemory() > judgeGlobalDTO.getMaxMemory() * 1024) {
             result.set("status", JudgeStatus.STATUS_MEMORY_LIMIT_EXCEEDED.getStatus());
         } else {
-            // 对于当前测试样例，用户程序的输出对应生成的文件
-            String userOutputFilePath = judgeGlobalDTO.getRunDir() + File.separator + judgeDTO.getTestCaseNum()
-                    + ".out";
-            FileWriter stdWriter = new FileWriter(userOutputFilePath);
-            stdWriter.write(sandBoxRes.getStdout());
-
             RunConfig spjRunConfig = judgeGlobalDTO.getSpjRunConfig();
 
-            // 特判程序的路径
-            String spjExeSrc = JudgeDir.SPJ_WORKPLACE_DIR + File.separator + judgeGlobalDTO.getProblemId()
-                    + File.separator + spjRunConfig.getExeName();
+            // 特判程序在沙箱中的文件id
+            String spjExeFileId = CheckerFileCache.getFileId(JudgeDir.SPJ_WORKPLACE_DIR,
+                    judgeGlobalDTO.getProblemId(), judgeGlobalDTO.getCaseVersion(), spjRunConfig.getExeName());
 
             String userOutputFileName = judgeGlobalDTO.getProblemId() + "_user_output";
             String testCaseInputFileName = judgeGlobalDTO.getProblemId() + "_input";
             String testCaseOutputFileName = judgeGlobalDTO.getProblemId() + "_output";
             // 进行spj程序运行比对
-            JSONObject spjResult = spjRunAndCheckResult(userOutputFilePath, userOutputFileName,
+            JSONObject spjResult = spjRunAndCheckResult(sandBoxRes.getStdoutFileId(), userOutputFileName,
                     judgeDTO.getTestCaseInputPath(), testCaseInputFileName, judgeDTO.getTestCaseOutputPath(),
-                    testCaseOutputFileName, spjExeSrc, spjRunConfig);
-
-            // 删除用户输出文件
-            FileUtil.del(userOutputFilePath);
+                    testCaseOutputFileName, spjExeFileId, spjRunConfig);
 
             int code = spjResult.getInt("code");
             if (code == SPJ_WA) {
@@ -137,39 +135,37 @@ public class SpecialJudge extends AbstractJudge {
     }
 
     // TODO 参数过多
-    private JSONObject spjRunAndCheckResult(String userOutputFilePath, String userOutputFileName,
+    private JSONObject spjRunAndCheckResult(String userOutputFileId, String userOutputFileName,
                                             String testCaseInputFilePath, String testCaseInputFileName, String testCaseOutputFilePath,
-                                            String testCaseOutputFileName, String spjExeSrc, RunConfig spjRunConfig) throws SystemException {
+                                            String testCaseOutputFileName, String spjExeFileId, RunConfig spjRunConfig) throws SystemException {
 
         // 调用安全沙箱运行spj程序
-        JSONArray spjJudgeResultList = SandboxRun.spjCheckResult(
+        SandboxResult spjJudgeResult = SandboxRun.spjCheckResult(
                 parseRunCommand(spjRunConfig, testCaseInputFileName, userOutputFileName,
                         testCaseOutputFileName),
-                spjRunConfig.getEnvs(), userOutputFilePath, userOutputFileName, testCaseInputFilePath,
-                testCaseInputFileName, testCaseOutputFilePath, testCaseOutputFileName, spjExeSrc,
+                spjRunConfig.getEnvs(), userOutputFileId, userOutputFileName, testCaseInputFilePath,
+                testCaseInputFileName, testCaseOutputFilePath, testCaseOutputFileName, spjExeFileId,
                 spjRunConfig.getExeName());
 
         JSONObject result = new JSONObject();
 
-        JSONObject spjJudgeResult = (JSONObject) spjJudgeResultList.get(0);
-
         // 获取跑题用户输出或错误输出
-        String spjErrOut = ((JSONObject) spjJudgeResult.get("files")).getStr("stderr");
-        String spjStdOut = ((JSONObject) spjJudgeResult.get("files")).getStr("stdout");
+        String spjErrOut = spjJudgeResult.getFile("stderr");
+        String spjStdOut = spjJudgeResult.getFile("stdout");
         if (!StrUtil.isEmpty(spjErrOut)) {
             result.set("errMsg", spjErrOut);
         }
 
         // 退出状态码
-        int exitCode = spjJudgeResult.getInt("exitStatus");
+        int exitCode = spjJudgeResult.getExitStatus();
         // 如果测试跑题无异常
-        if (spjJudgeResult.getInt("status").intValue() == JudgeStatus.STATUS_ACCEPTED.getStatus()) {
+        if (spjJudgeResult.getJudgeStatus().intValue() == JudgeStatus.STATUS_ACCEPTED.getStatus()) {
             if (exitCode == JudgeStatus.STATUS_ACCEPTED.getStatus()) {
                 result.set("code", SPJ_AC);
             } else {
                 result.set("code", exitCode);
             }
-        } else if (spjJudgeResult.getInt("status").intValue() == JudgeStatus.STATUS_RUNTIME_ERROR.getStatus()) {
+        } else if (spjJudgeResult.getJudgeStatus().intValue() == JudgeStatus.STATUS_RUNTIME_ERROR.getStatus()) {
             if (exitCode == SPJ_WA || exitCode == SPJ_ERROR || exitCode == SPJ_AC || exitCode == SPJ_PE) {
                 result.set("code", exitCode);
             } else if (exitCode == SPJ_PC) {
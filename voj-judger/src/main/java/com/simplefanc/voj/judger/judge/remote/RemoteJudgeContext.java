@@ -7,6 +7,7 @@ import com.simplefanc.voj.common.pojo.entity.judge.Judge;
 import com.simplefanc.voj.common.pojo.entity.problem.Problem;
 import com.simplefanc.voj.judger.dao.JudgeEntityService;
 import com.simplefanc.voj.judger.dao.ProblemEntityService;
+import com.simplefanc.voj.judger.judge.local.JudgeCallback;
 import com.simplefanc.voj.judger.judge.remote.account.RemoteAccount;
 import com.simplefanc.voj.judger.judge.remote.account.RemoteAccountRepository;
 import com.simplefanc.voj.judger.judge.remote.pojo.SubmissionInfo;
@@ -38,6 +39,8 @@ public class RemoteJudgeContext {
 
     private final JudgeEntityService judgeEntityService;
 
+    private final JudgeCallback judgeCallback;
+
     @Value("${voj-judge-server.name}")
     private String judgeServerName;
 
@@ -65,6 +68,7 @@ public class RemoteJudgeContext {
         // 调用远程判题
         boolean isSubmitOk = remoteJudgeSubmitter.process(submissionInfo, account);
         if (isSubmitOk) {
+            judgeCallback.register(judge.getSubmitId(), toJudge.getCallbackUrl(), toJudge.getJudgeServerId());
             remoteJudgeQuerier.process(submissionInfo, account);
         }
     }
@@ -9,6 +9,7 @@ import com.simplefanc.voj.judger.dao.ContestRecordEntityService;
 import com.simplefanc.voj.judger.dao.JudgeCaseEntityService;
 import com.simplefanc.voj.judger.dao.JudgeEntityService;
 import com.simplefanc.voj.judger.dao.UserAcproblemEntityService;
+import com.simplefanc.voj.judger.judge.local.JudgeCallback;
 import com.simplefanc.voj.judger.judge.remote.account.RemoteAccount;
 import com.simplefanc.voj.judger.judge.remote.pojo.SubmissionInfo;
 import com.simplefanc.voj.judger.judge.remote.pojo.SubmissionRemoteStatus;
@@ -43,6 +44,8 @@ public class RemoteJudgeQuerier {
 
     private final ContestRecordEntityService contestRecordEntityService;
 
+    private final JudgeCallback judgeCallback;
+
     public void process(SubmissionInfo info, RemoteAccount account) {
         String key = UUID.randomUUID().toString() + info.submitId;
 
@@ -61,6 +64,8 @@ public class RemoteJudgeQuerier {
 
         String key;
 
+        JudgeStatus lastMidStatus;
+
         public QueryTask(SubmissionInfo info, RemoteAccount account, String key) {
             this.info = info;
             this.account = account;
@@ -113,6 +118,8 @@ public class RemoteJudgeQuerier {
                     // 如果是比赛提交
                     contestRecordEntityService.updateContestRecord(judge);
                 }
+                // 取消任务会中断当前线程，需先回调
+                judgeCallback.reportRemoteFinished(judge);
                 cancelFutureTask();
             }
         }
@@ -138,10 +145,16 @@ public class RemoteJudgeQuerier {
         }
 
         private void recordMidResult(JudgeStatus status) {
+            // 每次轮询都会得到中间状态，只在状态变化时写库并回调
+            if (status == lastMidStatus) {
+                return;
+            }
+            lastMidStatus = status;
             Judge judge = new Judge();
             judge.setSubmitId(info.submitId).setStatus(status.getStatus());
             // 写回数据库
             judgeEntityService.updateById(judge);
+            judgeCallback.reportProgress(judge.setCid(info.cid).setUid(info.uid).setPid(info.pid));
         }
 
         private void handleQueryFailure() {
@@ -153,6 +166,8 @@ public class RemoteJudgeQuerier {
             judgeEntityService.update(judgeUpdateWrapper);
 
             log.error("[{}] Get Result Failed!", info.remoteOj);
+            judgeCallback.reportRemoteFinished(new Judge().setSubmitId(info.submitId).setCid(info.cid)
+                    .setUid(info.uid).setPid(info.pid).setStatus(JudgeStatus.STATUS_SUBMITTED_FAILED.getStatus()));
             cancelFutureTask();
         }
 
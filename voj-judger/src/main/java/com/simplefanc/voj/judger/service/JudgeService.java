@@ -1,14 +1,13 @@
 package com.simplefanc.voj.judger.service;
 
 import com.simplefanc.voj.common.pojo.dto.ToJudge;
-import com.simplefanc.voj.common.pojo.entity.judge.Judge;
 import com.simplefanc.voj.judger.common.exception.SystemException;
 
 import java.util.HashMap;
 
 public interface JudgeService {
 
-    void judge(Judge judge);
+    void judge(ToJudge toJudge);
 
     void remoteJudge(ToJudge toJudge);
 
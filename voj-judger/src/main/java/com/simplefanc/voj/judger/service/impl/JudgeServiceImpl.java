@@ -10,10 +10,14 @@ import com.simplefanc.voj.judger.dao.ContestRecordEntityService;
 import com.simplefanc.voj.judger.dao.JudgeEntityService;
 import com.simplefanc.voj.judger.dao.ProblemEntityService;
 import com.simplefanc.voj.judger.dao.UserAcproblemEntityService;
+import com.simplefanc.voj.judger.judge.local.CaseScheduler;
+import com.simplefanc.voj.judger.judge.local.JudgeCallback;
 import com.simplefanc.voj.judger.judge.local.JudgeContext;
 import com.simplefanc.voj.judger.judge.remote.RemoteJudgeContext;
 import com.simplefanc.voj.judger.service.JudgeService;
 import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.scheduling.annotation.Async;
 import org.springframework.stereotype.Service;
 
 import java.util.HashMap;
@@ -24,6 +28,7 @@ import java.util.HashMap;
  * @Description:
  */
 @Service
+@Slf4j(topic = "voj")
 @RequiredArgsConstructor
 public class JudgeServiceImpl implements JudgeService {
 
@@ -39,28 +44,51 @@ public class JudgeServiceImpl implements JudgeService {
 
     private final RemoteJudgeContext remoteJudgeContext;
 
+    private final JudgeCallback judgeCallback;
+
+    private final CaseScheduler caseScheduler;
+
+    /**
+     * 异步评测，判题机接收任务后立即应答后台服务，评测结束后通过回调通知
+     */
+    @Async
     @Override
-    public void judge(Judge judge) {
-        Problem problem = problemEntityService.getById(judge.getPid());
-        // 【进行判题操作】！！！
-        Judge finalJudgeResult = judgeContext.judge(problem, judge);
-
-        // 更新该次提交
-        judgeEntityService.updateById(finalJudgeResult);
-
-        if (finalJudgeResult.getStatus().intValue() != JudgeStatus.STATUS_SUBMITTED_FAILED.getStatus()) {
-            // 更新其它表
-            // 非比赛提交
-            if (judge.getCid() == 0) {
-                // 如果是AC，就更新 user_acproblem表
-                if (JudgeStatus.STATUS_ACCEPTED.getStatus().equals(judge.getStatus())) {
-                    userAcproblemEntityService.saveOrUpdate(new UserAcproblem().setPid(judge.getPid())
-                            .setUid(judge.getUid()).setSubmitId(judge.getSubmitId()));
+    public void judge(ToJudge toJudge) {
+        Judge judge = toJudge.getJudge();
+        judgeCallback.register(judge.getSubmitId(), toJudge.getCallbackUrl(), toJudge.getJudgeServerId());
+        try {
+            Problem problem = problemEntityService.getById(judge.getPid());
+            // 【进行判题操作】！！！
+            Judge finalJudgeResult = judgeContext.judge(problem, judge, toJudge.getTestCaseSyncUrl());
+
+            // 更新该次提交
+            judgeEntityService.updateById(finalJudgeResult);
+
+            if (finalJudgeResult.getStatus().intValue() != JudgeStatus.STATUS_SUBMITTED_FAILED.getStatus()) {
+                // 更新其它表
+                // 非比赛提交
+                if (judge.getCid() == 0) {
+                    // 如果是AC，就更新 user_acproblem表
+                    if (JudgeStatus.STATUS_ACCEPTED.getStatus().equals(judge.getStatus())) {
+                        userAcproblemEntityService.saveOrUpdate(new UserAcproblem().setPid(judge.getPid())
+                                .setUid(judge.getUid()).setSubmitId(judge.getSubmitId()));
+                    }
+                } else {
+                    // 如果是比赛提交
+                    contestRecordEntityService.updateContestRecord(judge);
                 }
-            } else {
-                // 如果是比赛提交
-                contestRecordEntityService.updateContestRecord(judge);
             }
+        } catch (Exception e) {
+            log.error("提交id为" + judge.getSubmitId() + "的评测过程发生异常-------------------->", e);
+            judge.setStatus(JudgeStatus.STATUS_SYSTEM_ERROR.getStatus());
+            judgeEntityService.updateById(new Judge().setSubmitId(judge.getSubmitId())
+                    .setStatus(JudgeStatus.STATUS_SYSTEM_ERROR.getStatus())
+                    .setErrorMessage("Oops, something has gone wrong with the judgeServer. Please report this to administrator."));
+        } finally {
+            // 先释放再回调，后台服务收到回调后可能立即分发新的任务
+            caseScheduler.release();
+            // 无论成功与否都要通知后台服务，以便释放该判题机的资源
+            judgeCallback.reportFinished(judge);
         }
     }
 
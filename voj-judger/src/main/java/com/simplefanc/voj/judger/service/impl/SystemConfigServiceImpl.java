@@ -4,8 +4,11 @@ import cn.hutool.core.map.MapUtil;
 import cn.hutool.json.JSONUtil;
 import cn.hutool.system.oshi.OshiUtil;
 import com.simplefanc.voj.judger.common.constants.JudgeServerConstant;
+import com.simplefanc.voj.judger.judge.local.CaseScheduler;
+import com.simplefanc.voj.judger.judge.local.CompiledFileCache;
 import com.simplefanc.voj.judger.judge.local.SandboxRun;
 import com.simplefanc.voj.judger.service.SystemConfigService;
+import lombok.RequiredArgsConstructor;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
@@ -18,10 +21,8 @@ import java.util.HashMap;
  * @Description:
  */
 @Service
+@RequiredArgsConstructor
 public class SystemConfigServiceImpl implements SystemConfigService {
-    @Value("${voj-judge-server.max-task-num}")
-    private Integer maxTaskNum;
-
     @Value("${voj-judge-server.remote-judge.open}")
     private Boolean isOpenRemoteJudge;
 
@@ -34,6 +35,10 @@ public class SystemConfigServiceImpl implements SystemConfigService {
     @Value("${voj-judge-server.version}")
     private String judgeServerVersion;
 
+    private final CaseScheduler caseScheduler;
+
+    private final CompiledFileCache compiledFileCache;
+
     @Override
     public HashMap<String, Object> getSystemConfig() {
         HashMap<String, Object> result = new HashMap<>();
@@ -66,11 +71,9 @@ public class SystemConfigServiceImpl implements SystemConfigService {
         res.put("cpu", Runtime.getRuntime().availableProcessors());
         res.put("languages", JudgeServerConstant.LANGUAGE_LIST);
 
-        if (maxTaskNum == -1) {
-            res.put("maxTaskNum", Runtime.getRuntime().availableProcessors() + 1);
-        } else {
-            res.put("maxTaskNum", maxTaskNum);
-        }
+        res.put("maxTaskNum", caseScheduler.getCapacity());
+        res.put("caseScheduler", caseScheduler.getStatistics());
+        res.put("compiledFileCache", compiledFileCache.getStatistics());
         if (isOpenRemoteJudge) {
             res.put("isOpenRemoteJudge", true);
             if (remoteJudgeMaxTaskNum == -1) {
@@ -80,10 +83,11 @@ public class SystemConfigServiceImpl implements SystemConfigService {
             }
         }
 
+        res.put("sandboxUrls", SandboxRun.getClient().getBaseUrls());
+        res.put("isSandboxAvailable", SandboxRun.isAvailable());
         String versionResp;
         try {
-            versionResp = SandboxRun.getRestTemplate().getForObject(SandboxRun.getSandboxBaseUrl() + "/version",
-                    String.class);
+            versionResp = SandboxRun.getVersion();
         } catch (Exception e) {
             res.put("SandBoxMsg", MapUtil.builder().put("error", e.getMessage()).map());
             return res;
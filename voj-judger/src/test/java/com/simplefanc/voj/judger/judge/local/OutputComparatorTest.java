@@ -0,0 +1,180 @@
+package com.simplefanc.voj.judger.judge.local;
+
+import com.simplefanc.voj.common.constants.JudgeStatus;
+import org.junit.jupiter.api.Test;
+import org.springframework.util.DigestUtils;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+import java.util.regex.Pattern;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * @Author: chenfan
+ * @Date: 2022/11/28 10:20
+ * @Description: 流式比对与原先基于正则替换与MD5的比对结果一致
+ */
+public class OutputComparatorTest {
+
+    private static final Integer AC = JudgeStatus.STATUS_ACCEPTED.getStatus();
+
+    private static final Integer PE = JudgeStatus.STATUS_PRESENTATION_ERROR.getStatus();
+
+    private static final Integer WA = JudgeStatus.STATUS_WRONG_ANSWER.getStatus();
+
+    /**
+     * 原DefaultJudge中用户输出去除行末空白符的正则
+     */
+    private static final Pattern EOL_PATTERN = Pattern.compile("[^\\S\\n]+(?=\\n)");
+
+    private static final String[] TOKENS = {"a", "b", "1", " ", "\t", "\n", "\r\n"};
+
+    @Test
+    public void exactOutputIsAccepted() throws IOException {
+        assertEquals(AC, compare("1 2\n3\n", "1 2\n3\n", false));
+        assertEquals(AC, compare("1 2\n3\n", "1 2\n3\n", true));
+    }
+
+    @Test
+    public void crlfIsTreatedAsLfOnlyInExpectedOutput() throws IOException {
+        assertEquals(AC, compare("1 2\n3\n", "1 2\r\n3\r\n", false));
+        // 用户输出的\r\n按原样比对，与原先一样判为PE
+        assertEquals(PE, compare("1 2\r\n3\r\n", "1 2\n3\n", false));
+        assertEquals(PE, compare("1 2\r\n3\r\n", "1 2\r\n3\r\n", false));
+        // 开启去除行末空格时\r作为行末空白符被忽略
+        assertEquals(AC, compare("1 2\r\n3\r\n", "1 2\n3\n", true));
+        // 单独的\r不是换行
+        assertEquals(PE, compare("1 2\r3\n", "1 2\n3\n", false));
+        assertEquals(WA, compare("1 2\r3\n", "1 2\n3\n", true));
+    }
+
+    @Test
+    public void trailingBlanks() throws IOException {
+        assertEquals(PE, compare("1 2 \n3\t\n", "1 2\n3\n", false));
+        assertEquals(AC, compare("1 2 \n3\t\n", "1 2\n3\n", true));
+        assertEquals(AC, compare("1 2\n3", "1 2\n3\n\n  \n", true));
+        assertEquals(AC, compare("1 2\n3\n \n\n", "1 2\n3", true));
+        // 行首与行中的空白符不能忽略
+        assertEquals(WA, compare(" 1 2\n3\n", "1 2\n3\n", true));
+        assertEquals(WA, compare("1  2\n3\n", "1 2\n3\n", true));
+        // 行末空白符可以忽略，但空行不能
+        assertEquals(WA, compare("1 2\n\n3\n", "1 2\n3\n", true));
+    }
+
+    @Test
+    public void emptyOutput() throws IOException {
+        assertEquals(AC, compare("", "", false));
+        assertEquals(AC, compare("", "", true));
+        assertEquals(PE, compare("", " \n", false));
+        assertEquals(PE, compare("\n\n", "", false));
+        assertEquals(AC, compare("", " \n", true));
+        assertEquals(AC, compare("\r\n\t", "", true));
+        assertEquals(WA, compare("", "1\n", false));
+        assertEquals(WA, compare("", "1\n", true));
+        assertEquals(WA, compare("1\n", "", false));
+    }
+
+    @Test
+    public void presentationErrorAndWrongAnswerEdges() throws IOException {
+        assertEquals(PE, compare("12\n", "1 2\n", false));
+        assertEquals(PE, compare("1\n2\n", "1 2\n", false));
+        assertEquals(PE, compare("1 2", "1 2\n", false));
+        assertEquals(WA, compare("1 3\n", "1 2\n", false));
+        assertEquals(WA, compare("1 2 3\n", "1 2\n", false));
+        assertEquals(WA, compare("1 2\n", "1 2 3\n", false));
+        // 开启去除行末空格时不判PE
+        assertEquals(WA, compare("12\n", "1 2\n", true));
+    }
+
+    @Test
+    public void randomOutputsMatchOldMd5Comparison() throws IOException {
+        Random random = new Random(20221128L);
+        for (int i = 0; i < 20000; i++) {
+            String expected = randomOutput(random);
+            String user;
+            int kind = random.nextInt(6);
+            if (kind == 0) {
+                user = mutate(expected, random);
+            } else if (kind == 1) {
+                // Windows风格换行的用户输出
+                user = expected.replaceAll("\r?\n", "\r\n");
+            } else {
+                user = randomOutput(random);
+            }
+            for (boolean isRemoveEOLBlank : new boolean[]{false, true}) {
+                assertEquals(oldCompare(user, expected, isRemoveEOLBlank), compare(user, expected, isRemoveEOLBlank),
+                        "user=" + escape(user) + ", expected=" + escape(expected) + ", removeEOLBlank=" + isRemoveEOLBlank);
+            }
+        }
+    }
+
+    private static Integer compare(String user, String expected, boolean isRemoveEOLBlank) throws IOException {
+        return OutputComparator.compare(OutputComparator.OutputSource.of(user.getBytes(StandardCharsets.UTF_8)),
+                OutputComparator.OutputSource.of(expected.getBytes(StandardCharsets.UTF_8)), isRemoveEOLBlank);
+    }
+
+    /**
+     * 原先的比对方式：标准输出在生成测试数据信息时已将\r\n转换为\n并计算各MD5，
+     * 用户输出不做换行转换，按原DefaultJudge.compareOutput计算MD5比对
+     */
+    private static Integer oldCompare(String userOutput, String expected, boolean isRemoveEOLBlank) {
+        String output = expected.replaceAll("\r\n", "\n");
+        if (isRemoveEOLBlank) {
+            String eofStrippedOutputMd5 = md5(output.replaceAll("[^\\S\\r\\n]+(?=\\n|\\r)|\\s+(?=$)", ""));
+            String userOutputMd5 = md5(EOL_PATTERN.matcher(trimEnd(userOutput)).replaceAll(""));
+            return userOutputMd5.equals(eofStrippedOutputMd5) ? AC : WA;
+        }
+        if (md5(userOutput).equals(md5(output))) {
+            return AC;
+        }
+        if (md5(userOutput.replaceAll("\\s+", "")).equals(md5(output.replaceAll("\\s+", "")))) {
+            return PE;
+        }
+        return WA;
+    }
+
+    private static String md5(String value) {
+        return DigestUtils.md5DigestAsHex(value.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static String trimEnd(String value) {
+        int end = value.length();
+        while (end > 0 && Character.isWhitespace(value.charAt(end - 1))) {
+            end--;
+        }
+        return value.substring(0, end);
+    }
+
+    private static String randomOutput(Random random) {
+        StringBuilder builder = new StringBuilder();
+        int length = random.nextInt(12);
+        for (int i = 0; i < length; i++) {
+            builder.append(TOKENS[random.nextInt(TOKENS.length)]);
+        }
+        return builder.toString();
+    }
+
+    /**
+     * 在标准输出的基础上增删空白符或换行，覆盖AC、PE与WA的边界
+     */
+    private static String mutate(String expected, Random random) {
+        StringBuilder builder = new StringBuilder(expected);
+        int times = random.nextInt(3) + 1;
+        for (int i = 0; i < times; i++) {
+            int pos = random.nextInt(builder.length() + 1);
+            if (random.nextBoolean() || builder.length() == 0) {
+                builder.insert(pos, TOKENS[3 + random.nextInt(TOKENS.length - 3)]);
+            } else if (pos < builder.length() && Character.isWhitespace(builder.charAt(pos))) {
+                builder.deleteCharAt(pos);
+            }
+        }
+        return builder.toString();
+    }
+
+    private static String escape(String value) {
+        return value.replace("\r", "\\r").replace("\n", "\\n").replace("\t", "\\t");
+    }
+
+}